@@ -15,7 +15,9 @@ package com.github.sdbg.debug.core;
 
 import com.github.sdbg.debug.core.configs.ChromeAppLaunchConfigurationDelegate;
 import com.github.sdbg.debug.core.configs.ChromeLaunchConfigurationDelegate;
+import com.github.sdbg.debug.core.internal.android.ADBDeviceRegistry;
 import com.github.sdbg.debug.core.internal.android.ADBManager;
+import com.github.sdbg.debug.core.internal.sourcemaps.SourceMapCache;
 import com.github.sdbg.debug.core.internal.util.ResourceChangeManager;
 import com.github.sdbg.debug.core.util.ResourceServerManager;
 import com.github.sdbg.debug.core.util.Trace;
@@ -99,12 +101,23 @@ public class SDBGDebugCorePlugin extends Plugin implements DebugOptionsListener
 
   public static final String PREFS_SHOW_RUN_RESUME_DIALOG = "showRunResumeDialog";
 
+  public static final String PREFS_CONSOLE_BUFFER_SIZE = "consoleBufferSize";
+
+  public static final String PREFS_REUSE_BROWSER_PROCESS = "reuseBrowserProcess";
+
+  /**
+   * The default number of bytes of browser console output kept for each launch.
+   */
+  public static final int DEFAULT_CONSOLE_BUFFER_SIZE = 4 * 1024 * 1024;
+
   private ServiceTracker<DebugOptions, Object> debugTracker;
 
   private IEclipsePreferences prefs;
 
   private IUserAgentManager userAgentManager;
 
+  private SourceMapCache sourceMapCache;
+
   /**
    * Create a Status object with the given message and this plugin's ID.
    * 
@@ -229,6 +242,13 @@ public class SDBGDebugCorePlugin extends Plugin implements DebugOptionsListener
     return getPrefs().get(PREFS_BROWSER_NAME, "");
   }
 
+  /**
+   * @return the approximate number of bytes of browser console output to keep for each launch
+   */
+  public int getConsoleBufferSize() {
+    return getPrefs().getInt(PREFS_CONSOLE_BUFFER_SIZE, DEFAULT_CONSOLE_BUFFER_SIZE);
+  }
+
   public boolean getInvokeToString() {
     return getPrefs().getBoolean(PREFS_INVOKE_TOSTRING, true);
   }
@@ -237,6 +257,14 @@ public class SDBGDebugCorePlugin extends Plugin implements DebugOptionsListener
     return getPrefs().getBoolean(PREFS_DEFAULT_BROWSER, true);
   }
 
+  /**
+   * @return whether to keep a browser running for each launch configuration, and debug every
+   *         launch of it in a new tab, rather than start and kill a browser for each launch
+   */
+  public boolean getReuseBrowserProcess() {
+    return getPrefs().getBoolean(PREFS_REUSE_BROWSER_PROCESS, false);
+  }
+
   public IEclipsePreferences getPrefs() {
     if (prefs == null) {
       prefs = InstanceScope.INSTANCE.getNode(PLUGIN_ID);
@@ -245,6 +273,19 @@ public class SDBGDebugCorePlugin extends Plugin implements DebugOptionsListener
     return prefs;
   }
 
+  /**
+   * @return the on-disk cache of decoded source maps, kept in this plugin's state location
+   */
+  public synchronized SourceMapCache getSourceMapCache() {
+    if (sourceMapCache == null) {
+      sourceMapCache = new SourceMapCache(
+          getStateLocation().append("sourcemaps").toFile(),
+          SourceMapCache.DEFAULT_MAX_SIZE);
+    }
+
+    return sourceMapCache;
+  }
+
   public IUserAgentManager getUserAgentManager() {
     return userAgentManager;
   }
@@ -298,6 +339,16 @@ public class SDBGDebugCorePlugin extends Plugin implements DebugOptionsListener
     getPrefs().putBoolean(PREFS_INVOKE_TOSTRING, value);
   }
 
+  public void setReuseBrowserProcess(boolean value) {
+    getPrefs().putBoolean(PREFS_REUSE_BROWSER_PROCESS, value);
+
+    try {
+      getPrefs().flush();
+    } catch (BackingStoreException e) {
+
+    }
+  }
+
   public void setShowRunResumeDialogPref(boolean value) {
     getPrefs().putBoolean(PREFS_SHOW_RUN_RESUME_DIALOG, value);
   }
@@ -374,6 +425,7 @@ public class SDBGDebugCorePlugin extends Plugin implements DebugOptionsListener
     ChromeLaunchConfigurationDelegate.dispose();
     ChromeAppLaunchConfigurationDelegate.dispose();
 
+    ADBDeviceRegistry.shutdown();
     new ADBManager().killServer();
 
     if (debugEventListener != null) {
@@ -19,6 +19,7 @@ import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 import com.github.sdbg.debug.core.SDBGLaunchConfigWrapper;
 import com.github.sdbg.debug.core.SDBGLaunchConfigurationDelegate;
 import com.github.sdbg.debug.core.internal.util.BrowserManager;
+import com.github.sdbg.debug.core.internal.util.ResourceLookupCache;
 import com.github.sdbg.debug.core.model.IResourceResolver;
 import com.github.sdbg.debug.core.util.IBrowserTabChooser;
 import com.github.sdbg.debug.core.util.IBrowserTabInfo;
@@ -92,6 +93,11 @@ public class ChromeAppLaunchConfigurationDelegate extends SDBGLaunchConfiguratio
     private IContainer container;
     private String prefix;
 
+    private ResourceLookupCache<String, IResource> urlResources =
+        new ResourceLookupCache<String, IResource>();
+
+    private ResourceLookupCache<File, String> fileUrls = new ResourceLookupCache<File, String>();
+
     public ChromeAppResourceResolver(IContainer container, IBrowserTabInfo tab) {
       this.container = container;
 
@@ -109,13 +115,19 @@ public class ChromeAppLaunchConfigurationDelegate extends SDBGLaunchConfiguratio
 
     @Override
     public String getUrlForFile(File file) {
-      IFile[] files = ResourcesPlugin.getWorkspace().getRoot().findFilesForLocationURI(file.toURI());
-
-      if (files.length > 0) {
-        return getUrlForResource(files[0]);
-      } else {
-        return null;
-      }
+      return fileUrls.get(file, new ResourceLookupCache.Lookup<File, String>() {
+        @Override
+        public String lookup(File key) {
+          IFile[] files = ResourcesPlugin.getWorkspace().getRoot().findFilesForLocationURI(
+              key.toURI());
+
+          if (files.length > 0) {
+            return getUrlForResource(files[0]);
+          } else {
+            return null;
+          }
+        }
+      });
     }
 
     @Override
@@ -141,11 +153,16 @@ public class ChromeAppLaunchConfigurationDelegate extends SDBGLaunchConfiguratio
 
     @Override
     public IResource resolveUrl(String url) {
-      if (url.startsWith(prefix)) {
-        return container.findMember(url.substring(prefix.length()));
-      } else {
-        return null;
-      }
+      return urlResources.get(url, new ResourceLookupCache.Lookup<String, IResource>() {
+        @Override
+        public IResource lookup(String key) {
+          if (key.startsWith(prefix)) {
+            return container.findMember(key.substring(prefix.length()));
+          } else {
+            return null;
+          }
+        }
+      });
     }
 
     private String calcRelPath(IContainer container, IResource resource) {
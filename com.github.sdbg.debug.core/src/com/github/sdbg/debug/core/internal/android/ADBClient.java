@@ -0,0 +1,278 @@
+package com.github.sdbg.debug.core.internal.android;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * A client for the host protocol of the adb server, which saves starting the adb executable for
+ * every command. A request is a service name prefixed with its length, as four hex digits; the
+ * server answers OKAY, or FAIL followed by a length-prefixed message. Device services are reached
+ * by first switching the connection to the device's transport.
+ */
+public class ADBClient {
+  /**
+   * Receives the device lists sent while tracking devices.
+   */
+  public static interface DeviceListListener {
+    /**
+     * Called with the full list of devices, each time a device is attached, detached or changes
+     * state. The names of the devices are not known.
+     */
+    void devicesChanged(List<ADBDeviceInfo> devices);
+
+    /**
+     * Called when the connection to the adb server is lost, unless tracking was stopped.
+     */
+    void trackingFailed(IOException exception);
+  }
+
+  public static final int DEFAULT_PORT = 5037;
+
+  private static final int CONNECT_TIMEOUT = 2000;
+  private static final int READ_TIMEOUT = 30000;
+
+  private static final String OKAY = "OKAY", FAIL = "FAIL";
+
+  /**
+   * Parses the output of host:devices or host:devices-l; in the latter, the model names the device.
+   */
+  static List<ADBDeviceInfo> parseDevices(String list) {
+    List<ADBDeviceInfo> devices = new ArrayList<ADBDeviceInfo>();
+
+    for (String line : list.split("\n")) {
+      StringTokenizer stok = new StringTokenizer(line, " \t");
+      if (!stok.hasMoreTokens()) {
+        continue;
+      }
+
+      String id = stok.nextToken();
+      String state = stok.hasMoreTokens() ? stok.nextToken() : null;
+      String name = null;
+
+      while (stok.hasMoreTokens()) {
+        String token = stok.nextToken();
+        if (token.startsWith("model:")) {
+          name = token.substring("model:".length()).replace('_', ' ');
+        }
+      }
+
+      devices.add(new ADBDeviceInfo(id, name, state));
+    }
+
+    return devices;
+  }
+
+  private String host;
+  private int port;
+
+  public ADBClient() {
+    this("127.0.0.1", DEFAULT_PORT);
+  }
+
+  public ADBClient(String host, int port) {
+    this.host = host;
+    this.port = port;
+  }
+
+  public void forward(String deviceId, String local, String remote, boolean noRebind)
+      throws IOException {
+    execute("host-serial:" + deviceId + ":forward:" + (noRebind ? "norebind:" : "") + local + ";"
+        + remote);
+  }
+
+  public List<ADBDeviceInfo> getDevices() throws IOException {
+    return parseDevices(query("host:devices-l"));
+  }
+
+  public void kill() throws IOException {
+    execute("host:kill");
+  }
+
+  public void killForward(String deviceId, String local) throws IOException {
+    execute("host-serial:" + deviceId + ":killforward:" + local);
+  }
+
+  /**
+   * Runs a shell command on the device, and returns its output once it has finished.
+   */
+  public String shell(String deviceId, String command) throws IOException {
+    Socket socket = open();
+
+    try {
+      send(socket, "host:transport:" + deviceId);
+      send(socket, "shell:" + command);
+
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      InputStream in = socket.getInputStream();
+      byte[] buffer = new byte[4096];
+
+      for (int count = in.read(buffer); count != -1; count = in.read(buffer)) {
+        out.write(buffer, 0, count);
+      }
+
+      return out.toString("UTF-8");
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * Starts tracking the devices attached, over a connection kept open for the purpose; the
+   * listener is called on a thread of its own, first with the current list. Close the returned
+   * object to stop tracking.
+   */
+  public Closeable trackDevices(final DeviceListListener listener) throws IOException {
+    final Socket socket = open();
+
+    try {
+      send(socket, "host:track-devices");
+      socket.setSoTimeout(0);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+
+    final boolean[] closed = new boolean[1];
+
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          DataInputStream in = new DataInputStream(socket.getInputStream());
+
+          while (true) {
+            listener.devicesChanged(parseDevices(readString(in)));
+          }
+        } catch (IOException e) {
+          synchronized (closed) {
+            if (closed[0]) {
+              return;
+            }
+          }
+
+          listener.trackingFailed(e);
+        } finally {
+          try {
+            socket.close();
+          } catch (IOException e) {
+            // Best effort
+          }
+        }
+      }
+    }, "ADB Device Tracker");
+
+    thread.setDaemon(true);
+    thread.start();
+
+    return new Closeable() {
+      @Override
+      public void close() throws IOException {
+        synchronized (closed) {
+          closed[0] = true;
+        }
+
+        socket.close();
+      }
+    };
+  }
+
+  /**
+   * Sends a request the server only acknowledges.
+   */
+  private void execute(String request) throws IOException {
+    Socket socket = open();
+
+    try {
+      send(socket, request);
+    } finally {
+      socket.close();
+    }
+  }
+
+  private Socket open() throws IOException {
+    Socket socket = new Socket();
+
+    try {
+      socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+      socket.setSoTimeout(READ_TIMEOUT);
+      socket.setTcpNoDelay(true);
+    } catch (IOException e) {
+      socket.close();
+      throw e;
+    }
+
+    return socket;
+  }
+
+  /**
+   * Sends a request whose answer is a length-prefixed string.
+   */
+  private String query(String request) throws IOException {
+    Socket socket = open();
+
+    try {
+      send(socket, request);
+
+      return readString(new DataInputStream(socket.getInputStream()));
+    } finally {
+      socket.close();
+    }
+  }
+
+  private String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[readLength(in)];
+    in.readFully(bytes);
+
+    return new String(bytes, "UTF-8");
+  }
+
+  private int readLength(DataInputStream in) throws IOException {
+    byte[] length = new byte[4];
+    in.readFully(length);
+
+    try {
+      return Integer.parseInt(new String(length, "US-ASCII"), 16);
+    } catch (NumberFormatException e) {
+      throw new IOException("Invalid length from the adb server: "
+          + new String(length, "US-ASCII"));
+    }
+  }
+
+  /**
+   * Sends the request, and waits for the server to acknowledge it.
+   */
+  private void send(Socket socket, String request) throws IOException {
+    byte[] bytes = request.getBytes("UTF-8");
+
+    OutputStream out = socket.getOutputStream();
+    out.write(String.format("%04x", bytes.length).getBytes("US-ASCII"));
+    out.write(bytes);
+    out.flush();
+
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+    byte[] status = new byte[4];
+
+    try {
+      in.readFully(status);
+    } catch (EOFException e) {
+      throw new IOException("The adb server closed the connection on " + request);
+    }
+
+    String statusString = new String(status, "US-ASCII");
+    if (FAIL.equals(statusString)) {
+      throw new IOException("adb: " + readString(in));
+    } else if (!OKAY.equals(statusString)) {
+      throw new IOException("Unexpected response from the adb server: " + statusString);
+    }
+  }
+}
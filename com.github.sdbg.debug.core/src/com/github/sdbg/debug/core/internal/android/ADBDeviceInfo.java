@@ -3,12 +3,23 @@ package com.github.sdbg.debug.core.internal.android;
 import com.github.sdbg.debug.core.util.IDeviceInfo;
 
 public class ADBDeviceInfo implements IDeviceInfo {
+  /**
+   * The state of a device which is ready to be used; others include offline and unauthorized.
+   */
+  public static final String STATE_DEVICE = "device";
+
   private String id;
   private String name;
+  private String state;
 
   public ADBDeviceInfo(String id, String name) {
+    this(id, name, STATE_DEVICE);
+  }
+
+  public ADBDeviceInfo(String id, String name, String state) {
     this.id = id;
     this.name = name;
+    this.state = state;
   }
 
   @Override
@@ -20,4 +31,12 @@ public class ADBDeviceInfo implements IDeviceInfo {
   public String getName() {
     return name;
   }
+
+  public String getState() {
+    return state;
+  }
+
+  public boolean isReady() {
+    return STATE_DEVICE.equals(state);
+  }
 }
@@ -0,0 +1,491 @@
+package com.github.sdbg.debug.core.internal.android;
+
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * The Android devices attached, kept up to date in the background from the device lists the adb
+ * server pushes while tracking devices. The properties of each device are read as soon as it is
+ * attached, concurrently with those of the other devices, and kept until it is detached; listing
+ * the devices therefore costs no adb round trips once the registry is running.
+ */
+public class ADBDeviceRegistry implements ADBClient.DeviceListListener {
+  /**
+   * Receives the devices attached and detached. Calls are made one at a time, on a thread of the
+   * registry's own.
+   */
+  public static interface DeviceListener {
+    /**
+     * Called once the device is ready and its properties have been read.
+     */
+    void deviceAttached(ADBDeviceInfo device);
+
+    void deviceDetached(ADBDeviceInfo device);
+  }
+
+  private static class Device {
+    private String id;
+    private Future<Map<String, String>> properties;
+    private ADBDeviceInfo info;
+
+    Device(String id) {
+      this.id = id;
+    }
+  }
+
+  public static final String MODEL_PROPERTY = "ro.product.model";
+
+  private static final int PROBE_THREAD_COUNT = 8;
+
+  private static final long RETRY_DELAY = 2000;
+  private static final long LIST_TIMEOUT = 10000;
+
+  private static final Pattern PROPERTY_PATTERN = Pattern.compile("^\\[(.*?)\\]: \\[(.*)\\]\\s*$");
+
+  private static ADBDeviceRegistry registry;
+
+  public static ADBDeviceRegistry getRegistry() {
+    ADBDeviceRegistry newRegistry;
+
+    synchronized (ADBDeviceRegistry.class) {
+      if (registry != null) {
+        return registry;
+      }
+
+      newRegistry = registry = new ADBDeviceRegistry(new ADBClient());
+    }
+
+    // Starting may spawn the adb server; other callers get the registry without waiting for it.
+    newRegistry.start();
+
+    return newRegistry;
+  }
+
+  public static synchronized void shutdown() {
+    if (registry != null) {
+      registry.dispose();
+      registry = null;
+    }
+  }
+
+  /**
+   * Parses the output of getprop, which lists a property per line as [name]: [value].
+   */
+  static Map<String, String> parseProperties(String output) {
+    Map<String, String> properties = new HashMap<String, String>();
+
+    for (String line : output.split("\n")) {
+      Matcher matcher = PROPERTY_PATTERN.matcher(line);
+      if (matcher.matches()) {
+        properties.put(matcher.group(1), matcher.group(2));
+      }
+    }
+
+    return properties;
+  }
+
+  private static ThreadFactory createThreadFactory(final String name) {
+    return new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+      }
+    };
+  }
+
+  private ADBClient client;
+  private ADBManager manager;
+
+  private ScheduledExecutorService executor;
+  private ExecutorService events;
+
+  // The fields below are guarded by this
+  private List<DeviceListener> listeners = new ArrayList<DeviceListener>();
+  private Map<String, Device> devices = new LinkedHashMap<String, Device>();
+  private Closeable tracker;
+  private boolean starting;
+  // Set when the tracker being started fails before start() has stored it
+  private boolean startFailed;
+  private boolean tracking;
+  private IOException trackingError;
+  private boolean disposed;
+
+  ADBDeviceRegistry(ADBClient client) {
+    this.client = client;
+    this.manager = new ADBManager(client);
+
+    executor = Executors.newScheduledThreadPool(
+        PROBE_THREAD_COUNT,
+        createThreadFactory("ADB Device Probe"));
+    events = Executors.newSingleThreadExecutor(createThreadFactory("ADB Device Events"));
+  }
+
+  /**
+   * Adds a listener, which is first told of the devices attached already.
+   */
+  public void addListener(final DeviceListener listener) {
+    synchronized (this) {
+      listeners.add(listener);
+
+      for (final Device device : devices.values()) {
+        if (device.info != null) {
+          events.execute(new Runnable() {
+            @Override
+            public void run() {
+              listener.deviceAttached(device.info);
+            }
+          });
+        }
+      }
+    }
+  }
+
+  @Override
+  public void devicesChanged(List<ADBDeviceInfo> list) {
+    synchronized (this) {
+      if (disposed) {
+        return;
+      }
+
+      Map<String, Device> attached = new LinkedHashMap<String, Device>();
+
+      for (ADBDeviceInfo info : list) {
+        if (info.isReady()) {
+          Device device = devices.remove(info.getId());
+          attached.put(info.getId(), device != null ? device : probe(info.getId()));
+        }
+      }
+
+      for (Device device : devices.values()) {
+        detached(device);
+      }
+
+      devices = attached;
+      tracking = true;
+      trackingError = null;
+
+      notifyAll();
+    }
+  }
+
+  public void dispose() {
+    Closeable closing;
+
+    synchronized (this) {
+      disposed = true;
+      closing = tracker;
+      tracker = null;
+
+      notifyAll();
+    }
+
+    if (closing != null) {
+      try {
+        closing.close();
+      } catch (IOException e) {
+        // Best effort
+      }
+    }
+
+    executor.shutdownNow();
+    events.shutdown();
+  }
+
+  /**
+   * Returns the devices attached and ready. Properties still being read are waited for, as the
+   * devices are named after their model.
+   */
+  public List<ADBDeviceInfo> getDevices() throws CoreException {
+    long deadline = System.currentTimeMillis() + LIST_TIMEOUT;
+
+    start();
+
+    List<Device> snapshot;
+
+    synchronized (this) {
+      waitForList(deadline);
+      snapshot = new ArrayList<Device>(devices.values());
+    }
+
+    List<ADBDeviceInfo> result = new ArrayList<ADBDeviceInfo>();
+
+    for (Device device : snapshot) {
+      Map<String, String> properties = getProperties(device, deadline);
+      result.add(new ADBDeviceInfo(device.id, properties.get(MODEL_PROPERTY)));
+    }
+
+    return result;
+  }
+
+  /**
+   * Returns the properties of the given device, or null if it is not attached.
+   */
+  public Map<String, String> getProperties(String deviceId) throws CoreException {
+    long deadline = System.currentTimeMillis() + LIST_TIMEOUT;
+
+    start();
+
+    Device device;
+
+    synchronized (this) {
+      waitForList(deadline);
+      device = devices.get(deviceId);
+    }
+
+    return device != null ? getProperties(device, deadline) : null;
+  }
+
+  public synchronized void removeListener(DeviceListener listener) {
+    listeners.remove(listener);
+  }
+
+  @Override
+  public void trackingFailed(IOException exception) {
+    synchronized (this) {
+      if (disposed) {
+        return;
+      }
+
+      if (starting) {
+        // start() has yet to store the tracker; it drops it and starts again.
+        startFailed = true;
+      }
+
+      for (Device device : devices.values()) {
+        detached(device);
+      }
+
+      devices.clear();
+      tracker = null;
+      tracking = false;
+      trackingError = exception;
+
+      notifyAll();
+
+      if (starting) {
+        return;
+      }
+    }
+
+    scheduleStart();
+  }
+
+  /**
+   * Starts tracking devices, unless the registry is tracking them already. Should the adb server
+   * not be reachable, tracking is started again when the devices are next asked for.
+   */
+  void start() {
+    synchronized (this) {
+      if (disposed || starting || tracker != null) {
+        return;
+      }
+
+      starting = true;
+      startFailed = false;
+      trackingError = null;
+    }
+
+    Closeable newTracker;
+
+    try {
+      try {
+        newTracker = client.trackDevices(this);
+      } catch (ConnectException e) {
+        manager.startServer();
+        newTracker = client.trackDevices(this);
+      }
+    } catch (CoreException e) {
+      startFailed(new IOException(e.getMessage(), e));
+      return;
+    } catch (IOException e) {
+      startFailed(e);
+      return;
+    }
+
+    boolean close;
+    boolean retry;
+
+    synchronized (this) {
+      starting = false;
+      close = disposed || startFailed;
+      retry = !disposed && startFailed;
+      if (!close) {
+        tracker = newTracker;
+      }
+    }
+
+    if (close) {
+      try {
+        newTracker.close();
+      } catch (IOException e) {
+        // Best effort
+      }
+    }
+
+    if (retry) {
+      scheduleStart();
+    }
+  }
+
+  /**
+   * Called with the lock held.
+   */
+  private void detached(final Device device) {
+    device.properties.cancel(true);
+
+    if (device.info != null) {
+      fireEvent(device.info, false);
+    }
+  }
+
+  /**
+   * Queues the event for the listeners registered now; called with the lock held.
+   */
+  private void fireEvent(final ADBDeviceInfo info, final boolean attached) {
+    final List<DeviceListener> targets = new ArrayList<DeviceListener>(listeners);
+
+    events.execute(new Runnable() {
+      @Override
+      public void run() {
+        for (DeviceListener listener : targets) {
+          if (attached) {
+            listener.deviceAttached(info);
+          } else {
+            listener.deviceDetached(info);
+          }
+        }
+      }
+    });
+  }
+
+  private Map<String, String> getProperties(Device device, long deadline) {
+    try {
+      return device.properties.get(
+          Math.max(0, deadline - System.currentTimeMillis()),
+          TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      // Probing failed, and was logged
+    } catch (TimeoutException e) {
+      // Still probing
+    } catch (CancellationException e) {
+      // Detached meanwhile
+    }
+
+    return Collections.emptyMap();
+  }
+
+  /**
+   * Starts reading the properties of a device just attached; called with the lock held.
+   */
+  private Device probe(final String deviceId) {
+    final Device device = new Device(deviceId);
+
+    device.properties = executor.submit(new Callable<Map<String, String>>() {
+      @Override
+      public Map<String, String> call() throws Exception {
+        Map<String, String> properties;
+
+        try {
+          properties = parseProperties(client.shell(deviceId, "getprop"));
+        } catch (IOException e) {
+          SDBGDebugCorePlugin.logError("Reading the properties of device " + deviceId, e);
+          properties = Collections.emptyMap();
+        }
+
+        synchronized (ADBDeviceRegistry.this) {
+          if (!disposed && devices.get(deviceId) == device) {
+            device.info = new ADBDeviceInfo(deviceId, properties.get(MODEL_PROPERTY));
+            fireEvent(device.info, true);
+          }
+        }
+
+        return properties;
+      }
+    });
+
+    return device;
+  }
+
+  private void scheduleStart() {
+    try {
+      executor.schedule(new Runnable() {
+        @Override
+        public void run() {
+          start();
+        }
+      }, RETRY_DELAY, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      // Disposed
+    }
+  }
+
+  private void startFailed(IOException exception) {
+    synchronized (this) {
+      if (disposed) {
+        return;
+      }
+
+      starting = false;
+      trackingError = exception;
+      notifyAll();
+    }
+  }
+
+  /**
+   * Waits, with the lock held, for the first device list from the adb server.
+   */
+  private void waitForList(long deadline) throws CoreException {
+    while (!tracking && !disposed) {
+      long timeout = deadline - System.currentTimeMillis();
+      if (timeout <= 0 || trackingError != null) {
+        break;
+      }
+
+      try {
+        wait(timeout);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+    }
+
+    if (!tracking) {
+      throw new CoreException(new Status(
+          IStatus.ERROR,
+          SDBGDebugCorePlugin.PLUGIN_ID,
+          trackingError != null ? trackingError.toString()
+              : "Could not list the devices attached through adb",
+          trackingError));
+    }
+  }
+}
@@ -4,28 +4,31 @@ import com.github.sdbg.core.DartCore;
 import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 import com.github.sdbg.utilities.ProcessRunner;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.StringReader;
+import java.net.ConnectException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
-import java.util.StringTokenizer;
 
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IStatus;
 import org.eclipse.core.runtime.Platform;
 import org.eclipse.core.runtime.Status;
 
+/**
+ * Android devices, through adb. Listing devices, forwarding ports and running shell commands go
+ * straight to the adb server through an {@link ADBClient}; the adb executable is only run to start
+ * the server, and to copy files and launch long-running shell processes.
+ */
 public class ADBManager {
-  private static interface Converter<T> {
-    T convert(String line) throws IOException, CoreException;
+  private static interface Request<T> {
+    T run(ADBClient client) throws IOException;
   }
 
   private static File adbExecutable;
@@ -84,23 +87,22 @@ public class ADBManager {
 
   private Collection<String> forwards = new HashSet<String>();
 
+  private ADBClient client;
+
   public ADBManager() {
+    this(new ADBClient());
+  }
+
+  public ADBManager(ADBClient client) {
+    this.client = client;
   }
 
   public void addForward(String deviceId, String local, String remote) throws CoreException {
-    String forward = deviceId + "=" + local;
-    if (!forwards.contains(forward)) {
-      executeADB("-s", deviceId, "forward", local, remote);
-      forwards.add(forward);
-    }
+    addForward(deviceId, local, remote, false);
   }
 
   public void addForwardNoRebind(String deviceId, String local, String remote) throws CoreException {
-    String forward = deviceId + "=" + local;
-    if (!forwards.contains(forward)) {
-      executeADB("-s", deviceId, "forward", "--no-rebind", local, remote);
-      forwards.add(forward);
-    }
+    addForward(deviceId, local, remote, true);
   }
 
   public Process asyncShell(String deviceId, String... commands) throws CoreException {
@@ -122,21 +124,12 @@ public class ADBManager {
   }
 
   public List<ADBDeviceInfo> getDevices() throws CoreException {
-    return getData(new Converter<ADBDeviceInfo>() {
+    return request(new Request<List<ADBDeviceInfo>>() {
       @Override
-      public ADBDeviceInfo convert(String line) throws CoreException {
-        if (!line.startsWith("*") && !line.contains("List of devices attached")) {
-          StringTokenizer stok = new StringTokenizer(line, " \t");
-          if (stok.hasMoreTokens()) {
-            String id = stok.nextToken();
-            List<String> data = getData(null, "-s", id, "shell", "getprop", "ro.product.model");
-            return new ADBDeviceInfo(id, data.isEmpty() ? null : data.get(0));
-          }
-        }
-
-        return null;
+      public List<ADBDeviceInfo> run(ADBClient client) throws IOException {
+        return client.getDevices();
       }
-    }, "devices");
+    });
   }
 
   public void install(String deviceId, File apkLocation) throws CoreException {
@@ -144,7 +137,13 @@ public class ADBManager {
   }
 
   public void killServer() throws CoreException {
-    executeADB("kill-server");
+    try {
+      client.kill();
+    } catch (ConnectException e) {
+      // The server is not running
+    } catch (IOException e) {
+      throw wrapError(e);
+    }
   }
 
   public void pull(String deviceId, String remote, File fileOrDir) throws CoreException {
@@ -169,11 +168,17 @@ public class ADBManager {
     }
   }
 
-  public void removeForward(String deviceId, String local) throws CoreException {
+  public void removeForward(final String deviceId, final String local) throws CoreException {
     String forward = deviceId + "=" + local;
     if (forwards.contains(forward)) {
       try {
-        executeADB("-s", deviceId, "forward", "--remove", local);
+        request(new Request<Void>() {
+          @Override
+          public Void run(ADBClient client) throws IOException {
+            client.killForward(deviceId, local);
+            return null;
+          }
+        });
       } finally {
         forwards.remove(forward);
       }
@@ -184,16 +189,50 @@ public class ADBManager {
     removeForward(deviceId, "tcp:" + Integer.toString(localTCPPort));
   }
 
-  public void shell(String deviceId, String... commands) throws CoreException {
-    List<String> all = new ArrayList<String>(Arrays.asList("-s", deviceId, "shell"));
-    all.addAll(Arrays.asList(commands));
-    executeADB(all);
+  public String shell(final String deviceId, String... commands) throws CoreException {
+    final StringBuilder command = new StringBuilder();
+    for (String part : commands) {
+      if (command.length() > 0) {
+        command.append(' ');
+      }
+
+      command.append(part);
+    }
+
+    return request(new Request<String>() {
+      @Override
+      public String run(ADBClient client) throws IOException {
+        return client.shell(deviceId, command.toString());
+      }
+    });
   }
 
   public void uninstall(String deviceId, String appId) throws CoreException {
     shell(deviceId, "pm", "uninstall", "-k", appId);
   }
 
+  /**
+   * Starts the adb server, unless it is running already.
+   */
+  void startServer() throws CoreException {
+    executeADB("start-server");
+  }
+
+  private void addForward(final String deviceId, final String local, final String remote,
+      final boolean noRebind) throws CoreException {
+    String forward = deviceId + "=" + local;
+    if (!forwards.contains(forward)) {
+      request(new Request<Void>() {
+        @Override
+        public Void run(ADBClient client) throws IOException {
+          client.forward(deviceId, local, remote, noRebind);
+          return null;
+        }
+      });
+      forwards.add(forward);
+    }
+  }
+
   private String executeADB(List<String> arguments) throws CoreException {
     try {
       ProcessRunner runner = new ProcessRunner(prepareADB(arguments));
@@ -206,11 +245,7 @@ public class ADBManager {
 
       return runner.getStdOut();
     } catch (IOException e) {
-      throw new CoreException(new Status(
-          IStatus.ERROR,
-          SDBGDebugCorePlugin.PLUGIN_ID,
-          e.toString(),
-          e));
+      throw wrapError(e);
     }
   }
 
@@ -218,32 +253,6 @@ public class ADBManager {
     return executeADB(Arrays.asList(arguments));
   }
 
-  private <T> List<T> getData(Converter<T> converter, List<String> commands) throws CoreException {
-    try {
-      List<T> data = new ArrayList<T>();
-      BufferedReader reader = new BufferedReader(new StringReader(executeADB(commands)));
-      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
-        @SuppressWarnings("unchecked")
-        T entry = converter != null ? converter.convert(line.trim()) : (T) line.trim();
-        if (entry != null) {
-          data.add(entry);
-        }
-      }
-
-      return data;
-    } catch (IOException e) {
-      throw new CoreException(new Status(
-          IStatus.ERROR,
-          SDBGDebugCorePlugin.PLUGIN_ID,
-          e.toString(),
-          e));
-    }
-  }
-
-  private <T> List<T> getData(Converter<T> converter, String... commands) throws CoreException {
-    return getData(converter, Arrays.asList(commands));
-  }
-
   private ProcessBuilder prepareADB(List<String> arguments) throws CoreException {
     try {
       List<String> cmdLine = new ArrayList<String>();
@@ -263,4 +272,28 @@ public class ADBManager {
 //  private ProcessBuilder prepareADB(String... arguments) throws CoreException {
 //    return prepareADB(Arrays.asList(arguments));
 //  }
+
+  /**
+   * Runs the request against the adb server, starting the server if it is not running yet.
+   */
+  private <T> T request(Request<T> request) throws CoreException {
+    try {
+      try {
+        return request.run(client);
+      } catch (ConnectException e) {
+        startServer();
+        return request.run(client);
+      }
+    } catch (IOException e) {
+      throw wrapError(e);
+    }
+  }
+
+  private CoreException wrapError(IOException e) {
+    return new CoreException(new Status(
+        IStatus.ERROR,
+        SDBGDebugCorePlugin.PLUGIN_ID,
+        e.toString(),
+        e));
+  }
 }
@@ -34,7 +34,7 @@ public class ReversePortForwarderUtils {
       List<Forward> forwards) throws CoreException {
     final ADBManager manager = new ADBManager();
 
-    List<? extends IDeviceInfo> devices = manager.getDevices();
+    List<? extends IDeviceInfo> devices = ADBDeviceRegistry.getRegistry().getDevices();
     if (devices.isEmpty()) {
       throw new DebugException(
           new Status(
@@ -54,6 +54,7 @@ public class ReversePortForwarderUtils {
     pushDeviceExecutable(manager, deviceInfo.getId());
 
     final HostReversePortForwarder forwarder = new HostReversePortForwarder(forwards);
+    forwarder.setSelectorThreadCount(HostReversePortForwarder.getDefaultSelectorThreadCount());
 
     IProcess process = new RuntimeProcess(launch, prepareDeviceExecutableProcess(
         manager,
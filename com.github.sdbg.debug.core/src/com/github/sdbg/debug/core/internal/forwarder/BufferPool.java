@@ -0,0 +1,100 @@
+package com.github.sdbg.debug.core.internal.forwarder;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Direct buffers for the tunnels, in power of two sizes from {@link #MIN_BUFFER_SIZE} to
+ * {@link #MAX_BUFFER_SIZE}. Direct buffers are passed to the socket without being copied, and
+ * pooling them saves allocating one for every connection the browser opens.
+ */
+public class BufferPool {
+  public static final int MIN_BUFFER_SIZE = 8 * 1024, MAX_BUFFER_SIZE = 256 * 1024;
+
+  private static final int MAX_POOLED_BYTES = 4 * 1024 * 1024;
+
+  private static final BufferPool defaultPool = new BufferPool();
+
+  public static BufferPool getDefault() {
+    return defaultPool;
+  }
+
+  private Queue<ByteBuffer>[] buffers;
+
+  private AtomicLong pooledBytes = new AtomicLong();
+
+  @SuppressWarnings({"unchecked", "rawtypes"})
+  public BufferPool() {
+    buffers = new Queue[Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE / MIN_BUFFER_SIZE) + 1];
+    for (int i = 0; i < buffers.length; i++) {
+      buffers[i] = new ConcurrentLinkedQueue<ByteBuffer>();
+    }
+  }
+
+  /**
+   * Returns a cleared buffer of at least the given size, up to {@link #MAX_BUFFER_SIZE}.
+   */
+  public ByteBuffer acquire(int size) {
+    int sizeClass = getSizeClass(size);
+
+    ByteBuffer buffer = buffers[sizeClass].poll();
+    if (buffer != null) {
+      pooledBytes.addAndGet(-buffer.capacity());
+      buffer.clear();
+      return buffer;
+    } else {
+      return ByteBuffer.allocateDirect(MIN_BUFFER_SIZE << sizeClass);
+    }
+  }
+
+  public long getPooledBytes() {
+    return pooledBytes.get();
+  }
+
+  /**
+   * Returns a buffer twice the size of the given one, holding its content, and releases the given
+   * buffer. The buffer is expected to be in the state it is filled in: its content is between 0 and
+   * its position.
+   */
+  public ByteBuffer grow(ByteBuffer buffer) {
+    if (buffer.capacity() >= MAX_BUFFER_SIZE) {
+      return buffer;
+    }
+
+    ByteBuffer newBuffer = acquire(buffer.capacity() * 2);
+
+    buffer.flip();
+    newBuffer.put(buffer);
+    release(buffer);
+
+    return newBuffer;
+  }
+
+  /**
+   * Gives the buffer back to the pool. It must not be used afterwards.
+   */
+  public void release(ByteBuffer buffer) {
+    int sizeClass = getSizeClass(buffer.capacity());
+    if (!buffer.isDirect() || buffer.capacity() != MIN_BUFFER_SIZE << sizeClass) {
+      return;
+    }
+
+    if (pooledBytes.addAndGet(buffer.capacity()) <= MAX_POOLED_BYTES) {
+      buffers[sizeClass].offer(buffer);
+    } else {
+      // The pool is full; leave the buffer to the garbage collector.
+      pooledBytes.addAndGet(-buffer.capacity());
+    }
+  }
+
+  private int getSizeClass(int size) {
+    int sizeClass = 0;
+    while (sizeClass < buffers.length - 1 && MIN_BUFFER_SIZE << sizeClass < size) {
+      sizeClass++;
+    }
+
+    return sizeClass;
+  }
+}
@@ -35,7 +35,9 @@ public class DeviceReversePortForwarder extends ReversePortForwarder {
       ports[i] = Integer.parseInt(args[i + 1]);
     }
 
-    new DeviceReversePortForwarder(commandPort, ports).run();
+    DeviceReversePortForwarder forwarder = new DeviceReversePortForwarder(commandPort, ports);
+    forwarder.setSelectorThreadCount(getDefaultSelectorThreadCount());
+    forwarder.run();
   }
 
   private int commandPort;
@@ -191,17 +191,15 @@ public class HostReversePortForwarder extends ReversePortForwarder {
         Tunnel tunnel = createTunnel(tunnelId);
 
         try {
+          // Queued ahead of the data; it is sent once the channels are registered, by whichever
+          // selector the tunnel ends up on
+          tunnel.getLeftToRight().put(CMD_OPEN_CHANNEL_ACK);
+          tunnel.getLeftToRight().putInt(tunnelId);
+
           registerLeftChannel(tunnelId, openChannel(forward.getHost(), forward.getPort()));
           registerRightChannel(
               tunnelId,
               openChannel("localhost", ((SocketChannel) commandChannel).socket().getPort())); // TODO XXX FIXME
-
-          tunnel.getLeftToRight().put(CMD_OPEN_CHANNEL_ACK);
-          tunnel.getLeftToRight().putInt(tunnelId);
-
-          if (!tunnel.spoolLeftToRight(selector)) {
-            closeTunnel(tunnelId);
-          }
         } catch (IOException e) {
           logger.log(Level.INFO, "Spooling error: " + e.getMessage());
           closeTunnel(tunnelId);
@@ -8,7 +8,9 @@ import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.spi.SelectorProvider;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -20,16 +22,32 @@ public abstract class ReversePortForwarder {
 
   private static final int CMD_MAX_LENGTH = 10;
 
+  private static final int MAX_SELECTOR_THREADS = 4;
+
   private static int uuid;
 
+  /**
+   * Returns the number of tunnel selector threads worth using on this machine: one per core, up to
+   * {@link #MAX_SELECTOR_THREADS}, or none on a single core.
+   */
+  public static int getDefaultSelectorThreadCount() {
+    int cores = Runtime.getRuntime().availableProcessors();
+    return cores > 1 ? Math.min(cores, MAX_SELECTOR_THREADS) : 0;
+  }
+
   protected Selector selector;
 
   protected ByteChannel commandChannel;
   protected ByteBuffer commandReadBuffer, commandWriteBuffer;
 
+  // Guarded by tunnels, as tunnel selector threads close tunnels too
   private Map<Integer, Tunnel> tunnels = new HashMap<Integer, Tunnel>();
   private Map<ByteChannel, Integer> channels = new HashMap<ByteChannel, Integer>();
 
+  private int selectorThreadCount;
+  private List<TunnelSelector> tunnelSelectors = new ArrayList<TunnelSelector>();
+  private int nextTunnelSelector;
+
   protected String tracePrefix;
 
   protected final Logger logger;
@@ -38,12 +56,30 @@ public abstract class ReversePortForwarder {
     this.logger = logger;
   }
 
+  public int getSelectorThreadCount() {
+    return selectorThreadCount;
+  }
+
+  /**
+   * Sets the number of threads, each with its own selector, that the tunnels are spread over. With
+   * none, the default, the tunnels are spooled on the thread running the command channel. Takes
+   * effect when the forwarder is started.
+   */
+  public void setSelectorThreadCount(int selectorThreadCount) {
+    this.selectorThreadCount = selectorThreadCount;
+  }
+
   protected void closeTunnel(int tunnelId) {
-    Tunnel tunnel = tunnels.remove(tunnelId);
-    if (tunnel != null) {
-      channels.remove(tunnel.getLeftChannel());
-      channels.remove(tunnel.getRightChannel());
+    Tunnel tunnel;
+    synchronized (tunnels) {
+      tunnel = tunnels.remove(tunnelId);
+      if (tunnel != null) {
+        channels.remove(tunnel.getLeftChannel());
+        channels.remove(tunnel.getRightChannel());
+      }
+    }
 
+    if (tunnel != null) {
       tunnel.close();
     }
 
@@ -56,24 +92,35 @@ public abstract class ReversePortForwarder {
   }
 
   protected Tunnel createTunnel(int tunnelId) throws IOException {
-    if (tunnels.containsKey(tunnelId)) {
-      throw new IOException("Tunnel with ID " + tunnelId + " already exists");
-    }
-
     Tunnel tunnel = new Tunnel(logger, Integer.toString(tunnelId));
-    tunnels.put(tunnelId, tunnel);
+
+    synchronized (tunnels) {
+      if (tunnels.containsKey(tunnelId)) {
+        throw new IOException("Tunnel with ID " + tunnelId + " already exists");
+      }
+
+      tunnels.put(tunnelId, tunnel);
+    }
 
     logger.fine("Tunnel " + tunnelId + " registered");
     return tunnel;
   }
 
   protected void done() {
-    for (Tunnel tunnel : tunnels.values()) {
-      tunnel.close();
+    for (TunnelSelector tunnelSelector : tunnelSelectors) {
+      tunnelSelector.stop();
     }
 
-    tunnels.clear();
-    channels.clear();
+    tunnelSelectors.clear();
+
+    synchronized (tunnels) {
+      for (Tunnel tunnel : tunnels.values()) {
+        tunnel.close();
+      }
+
+      tunnels.clear();
+      channels.clear();
+    }
 
     if (selector != null) {
       try {
@@ -88,7 +135,10 @@ public abstract class ReversePortForwarder {
   }
 
   protected Tunnel getTunnel(int tunnelId) throws IOException {
-    Tunnel tunnel = tunnels.get(tunnelId);
+    Tunnel tunnel;
+    synchronized (tunnels) {
+      tunnel = tunnels.get(tunnelId);
+    }
     if (tunnel != null) {
       return tunnel;
     } else {
@@ -97,7 +147,10 @@ public abstract class ReversePortForwarder {
   }
 
   protected int getTunnelId(SelectionKey key) throws IOException {
-    Integer tunnelId = channels.get(key.channel());
+    Integer tunnelId;
+    synchronized (tunnels) {
+      tunnelId = channels.get(key.channel());
+    }
     if (tunnelId != null) {
       return tunnelId;
     } else {
@@ -111,6 +164,13 @@ public abstract class ReversePortForwarder {
 
     commandReadBuffer = ByteBuffer.allocate(8192);
     commandWriteBuffer = ByteBuffer.allocate(8192);
+
+    for (int i = 0; i < selectorThreadCount; i++) {
+      TunnelSelector tunnelSelector = new TunnelSelector(this, getClass().getSimpleName()
+          + " Tunnels " + i);
+      tunnelSelectors.add(tunnelSelector);
+      tunnelSelector.start();
+    }
   }
 
   protected boolean processCommand(byte cmd, ByteBuffer commandBuffer) throws IOException {
@@ -129,7 +189,13 @@ public abstract class ReversePortForwarder {
       } else if (key.isWritable()) {
         writeCommand();
       }
-    } else if (key.isReadable() || key.isWritable()) {
+    } else {
+      processTunnelKey(key);
+    }
+  }
+
+  protected void processTunnelKey(SelectionKey key) {
+    if (key.isReadable() || key.isWritable()) {
       try {
         int tunnelId = getTunnelId(key);
 
@@ -187,7 +253,9 @@ public abstract class ReversePortForwarder {
     } else {
       logger.fine("Left channel of tunnel " + tunnelId + " registered: " + leftChannel);
       tunnel.setLeftChannel(leftChannel);
-      channels.put(leftChannel, tunnelId);
+      synchronized (tunnels) {
+        channels.put(leftChannel, tunnelId);
+      }
       channelRegistered(tunnelId, tunnel);
     }
   }
@@ -199,7 +267,9 @@ public abstract class ReversePortForwarder {
     } else {
       logger.fine("Right channel of tunnel " + tunnelId + " registered: " + rightChannel);
       tunnel.setRightChannel(rightChannel);
-      channels.put(rightChannel, tunnelId);
+      synchronized (tunnels) {
+        channels.put(rightChannel, tunnelId);
+      }
       channelRegistered(tunnelId, tunnel);
     }
   }
@@ -227,10 +297,14 @@ public abstract class ReversePortForwarder {
 
   private void channelRegistered(int tunnelId, Tunnel tunnel) throws ClosedChannelException {
     if (tunnel.getLeftChannel() != null && tunnel.getRightChannel() != null) {
-      ((SelectableChannel) tunnel.getLeftChannel()).register(selector, SelectionKey.OP_READ
-          | SelectionKey.OP_WRITE);
-      ((SelectableChannel) tunnel.getRightChannel()).register(selector, SelectionKey.OP_READ
-          | SelectionKey.OP_WRITE);
+      if (!tunnelSelectors.isEmpty()) {
+        tunnelSelectors.get(nextTunnelSelector++ % tunnelSelectors.size()).register(tunnelId);
+      } else {
+        ((SelectableChannel) tunnel.getLeftChannel()).register(selector, SelectionKey.OP_READ
+            | SelectionKey.OP_WRITE);
+        ((SelectableChannel) tunnel.getRightChannel()).register(selector, SelectionKey.OP_READ
+            | SelectionKey.OP_WRITE);
+      }
       logger.fine("Tunnel " + tunnelId + " ready for work");
     }
   }
@@ -12,30 +12,52 @@ import java.nio.channels.WritableByteChannel;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Two channels and the data in flight between them. The buffers come from a {@link BufferPool};
+ * a buffer grows while reads keep filling it, and is given back to the pool whenever it has been
+ * emptied, so that idle tunnels hold no memory.
+ */
 public class Tunnel {
+  private static final int MAX_TRACE_LENGTH = 4096;
+
   private Logger logger;
   private String id;
+  private BufferPool pool;
 
   private ByteChannel leftChannel, rightChannel;
   private ByteBuffer leftToRight, rightToLeft;
+  private int leftToRightSize = BufferPool.MIN_BUFFER_SIZE,
+      rightToLeftSize = BufferPool.MIN_BUFFER_SIZE;
+
+  private boolean closed;
 
   public Tunnel(Logger logger, String id) {
+    this(logger, id, BufferPool.getDefault());
+  }
+
+  public Tunnel(Logger logger, String id, BufferPool pool) {
     this.logger = logger;
     this.id = id;
+    this.pool = pool;
   }
 
-  public void close() {
+  public synchronized void close() {
+    closed = true;
+
     close(leftChannel);
     close(rightChannel);
+
+    release(true);
+    release(false);
   }
 
   public ByteChannel getLeftChannel() {
     return leftChannel;
   }
 
-  public ByteBuffer getLeftToRight() {
+  public synchronized ByteBuffer getLeftToRight() {
     if (leftToRight == null) {
-      leftToRight = ByteBuffer.allocate(8192);
+      leftToRight = pool.acquire(leftToRightSize);
     }
 
     return leftToRight;
@@ -45,9 +67,9 @@ public class Tunnel {
     return rightChannel;
   }
 
-  public ByteBuffer getRightToLeft() {
+  public synchronized ByteBuffer getRightToLeft() {
     if (rightToLeft == null) {
-      rightToLeft = ByteBuffer.allocate(8192);
+      rightToLeft = pool.acquire(rightToLeftSize);
     }
 
     return rightToLeft;
@@ -79,12 +101,12 @@ public class Tunnel {
     }
   }
 
-  public boolean spoolLeftToRight(Selector selector) throws IOException {
-    return spool(selector, leftChannel, rightChannel, getLeftToRight());
+  public synchronized boolean spoolLeftToRight(Selector selector) throws IOException {
+    return !closed && spool(selector, true);
   }
 
-  public boolean spoolRightToLeft(Selector selector) throws IOException {
-    return spool(selector, rightChannel, leftChannel, getRightToLeft());
+  public synchronized boolean spoolRightToLeft(Selector selector) throws IOException {
+    return !closed && spool(selector, false);
   }
 
   private void close(Channel channel) {
@@ -97,17 +119,48 @@ public class Tunnel {
     }
   }
 
-  private boolean spool(Selector selector, ReadableByteChannel from, WritableByteChannel to,
-      ByteBuffer buff) throws IOException {
+  /**
+   * Gives the buffer of the given direction back to the pool. The field is cleared first, so that
+   * the buffer can never be released twice.
+   */
+  private void release(boolean leftToRightDirection) {
+    ByteBuffer buff = leftToRightDirection ? leftToRight : rightToLeft;
+
+    if (buff != null) {
+      setBuffer(leftToRightDirection, null);
+      pool.release(buff);
+    }
+  }
+
+  private void setBuffer(boolean leftToRightDirection, ByteBuffer buff) {
+    if (leftToRightDirection) {
+      leftToRight = buff;
+    } else {
+      rightToLeft = buff;
+    }
+  }
+
+  private boolean spool(Selector selector, boolean leftToRightDirection) throws IOException {
+    ReadableByteChannel from = leftToRightDirection ? leftChannel : rightChannel;
+    WritableByteChannel to = leftToRightDirection ? rightChannel : leftChannel;
+    ByteBuffer buff = leftToRightDirection ? getLeftToRight() : getRightToLeft();
+
+    boolean trace = logger != null && logger.isLoggable(Level.FINEST);
     int read = 0, written = 0;
 
     do {
       if (read > -1 && buff.hasRemaining()) {
         int oldPos = buff.position();
         read = from.read(buff);
-        if (logger != null && logger.isLoggable(Level.FINEST) && oldPos < buff.position()) {
-          logger.finest("Tunnel " + id + " spooling:\n" + "==== BEGIN DUMP ====\n"
-              + new String(buff.array(), oldPos, buff.position()) + "\n==== END DUMP ====");
+        if (trace && oldPos < buff.position()) {
+          trace(buff, oldPos);
+        }
+
+        if (read > 0 && !buff.hasRemaining()) {
+          // More is probably waiting; read it in bigger chunks from now on. The old buffer is back
+          // in the pool, so the field must not be left pointing at it.
+          buff = pool.grow(buff);
+          setBuffer(leftToRightDirection, buff);
         }
       } else {
         read = 0;
@@ -146,6 +199,31 @@ public class Tunnel {
       }
     }
 
-    return (read > -1 || buff.position() > 0) && written > -1;
+    boolean open = (read > -1 || buff.position() > 0) && written > -1;
+
+    if (leftToRightDirection) {
+      leftToRightSize = buff.capacity();
+    } else {
+      rightToLeftSize = buff.capacity();
+    }
+
+    if (buff.position() == 0) {
+      release(leftToRightDirection);
+    }
+
+    return open;
+  }
+
+  private void trace(ByteBuffer buff, int from) {
+    ByteBuffer data = buff.duplicate();
+    data.flip();
+    data.position(from);
+
+    byte[] bytes = new byte[Math.min(data.remaining(), MAX_TRACE_LENGTH)];
+    data.get(bytes);
+
+    logger.finest("Tunnel " + id + " spooling:\n" + "==== BEGIN DUMP ====\n" + new String(bytes)
+        + (data.hasRemaining() ? "\n... " + data.remaining() + " more bytes" : "")
+        + "\n==== END DUMP ====");
   }
 }
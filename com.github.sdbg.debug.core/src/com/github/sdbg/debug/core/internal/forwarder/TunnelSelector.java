@@ -0,0 +1,102 @@
+package com.github.sdbg.debug.core.internal.forwarder;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.spi.SelectorProvider;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+
+/**
+ * A thread spooling a share of the tunnels of a {@link ReversePortForwarder} on its own selector,
+ * so that the forwarder can use more than one core when there are many tunnels.
+ */
+class TunnelSelector implements Runnable {
+  private ReversePortForwarder forwarder;
+
+  private Selector selector;
+  private Thread thread;
+
+  private Queue<Integer> pendingTunnels = new ConcurrentLinkedQueue<Integer>();
+
+  private volatile boolean stopRequest;
+
+  public TunnelSelector(ReversePortForwarder forwarder, String name) throws IOException {
+    this.forwarder = forwarder;
+
+    selector = SelectorProvider.provider().openSelector();
+
+    thread = new Thread(this, name);
+    thread.setDaemon(true);
+  }
+
+  public void register(int tunnelId) {
+    pendingTunnels.add(tunnelId);
+    selector.wakeup();
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (!stopRequest) {
+        // Wait for an event one of the registered channels
+        selector.select();
+
+        registerPendingTunnels();
+
+        for (Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator(); selectedKeys.hasNext();) {
+          SelectionKey key = selectedKeys.next();
+          selectedKeys.remove();
+
+          if (key.isValid()) {
+            forwarder.processTunnelKey(key);
+          }
+        }
+      }
+    } catch (IOException e) {
+      forwarder.logger.log(Level.SEVERE, "PROTOCOL ERROR: " + e.getMessage(), e);
+    }
+  }
+
+  public void start() {
+    thread.start();
+  }
+
+  public void stop() {
+    stopRequest = true;
+    selector.wakeup();
+
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+    }
+
+    try {
+      selector.close();
+    } catch (IOException e) {
+      // Best effort
+    }
+  }
+
+  private void registerPendingTunnels() {
+    Integer tunnelId;
+    while ((tunnelId = pendingTunnels.poll()) != null) {
+      try {
+        Tunnel tunnel = forwarder.getTunnel(tunnelId);
+
+        ((SelectableChannel) tunnel.getLeftChannel()).register(selector, SelectionKey.OP_READ
+            | SelectionKey.OP_WRITE);
+        ((SelectableChannel) tunnel.getRightChannel()).register(selector, SelectionKey.OP_READ
+            | SelectionKey.OP_WRITE);
+      } catch (ClosedChannelException e) {
+        forwarder.closeTunnel(tunnelId);
+      } catch (IOException e) {
+        // The tunnel was closed before it got here
+      }
+    }
+  }
+}
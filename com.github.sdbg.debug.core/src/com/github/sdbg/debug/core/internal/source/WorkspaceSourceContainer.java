@@ -14,6 +14,7 @@
 
 package com.github.sdbg.debug.core.internal.source;
 
+import com.github.sdbg.debug.core.internal.util.ResourceLookupCache;
 import com.github.sdbg.utilities.ResourceUtil2;
 
 import org.eclipse.core.resources.IFile;
@@ -36,6 +37,8 @@ public class WorkspaceSourceContainer extends AbstractSourceContainer {
 
   private static final Object[] EMPTY_COLLECTION = new Object[0];
 
+  private static ResourceLookupCache<String, IResource> pathCache;
+
   public static IFile locatePathAsFile(String path) {
     IResource resource = locatePathAsResource(path);
 
@@ -51,6 +54,18 @@ public class WorkspaceSourceContainer extends AbstractSourceContainer {
       return null;
     }
 
+    return getPathCache().get(path, new ResourceLookupCache.Lookup<String, IResource>() {
+      @Override
+      public IResource lookup(String key) {
+        return findPathAsResource(key);
+      }
+    });
+  }
+
+  /**
+   * The uncached lookup behind {@link #locatePathAsResource(String)}.
+   */
+  static IResource findPathAsResource(String path) {
     // Look for a resource reference (/project/directory/file.dart).
     IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(path);
 
@@ -104,6 +119,14 @@ public class WorkspaceSourceContainer extends AbstractSourceContainer {
     return null;
   }
 
+  private static synchronized ResourceLookupCache<String, IResource> getPathCache() {
+    if (pathCache == null) {
+      pathCache = new ResourceLookupCache<String, IResource>();
+    }
+
+    return pathCache;
+  }
+
   public WorkspaceSourceContainer() {
 
   }
@@ -16,13 +16,16 @@ package com.github.sdbg.debug.core.internal.sourcemaps;
 
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
 import java.text.NumberFormat;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
@@ -50,31 +53,137 @@ public class SourceMap {
   public static final String SOURCE_MAP_EXT = ".map";
 
   public static SourceMap createFrom(File file) throws IOException {
-    String contents = Streams.loadAndClose(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    byte[] bytes = Streams.loadAndClose(new FileInputStream(file));
 
     try {
-      return createFrom(Path.fromOSString(file.getAbsolutePath()), contents);
+      SourceMap map = createFrom(Path.fromOSString(file.getAbsolutePath()), bytes, "UTF-8");
+
+      if (map.contents != null) {
+        map.contents.setFile(file, "UTF-8", bytes.length);
+      }
+
+      return map;
     } catch (JSONException e) {
       throw new IOException(e);
     }
   }
 
   public static SourceMap createFrom(IStorage storage) throws IOException, CoreException {
-    Reader reader;
-    if (storage instanceof IFile) {
-      reader = new InputStreamReader(storage.getContents(), ((IFile) storage).getCharset());
-    } else {
-      reader = new InputStreamReader(storage.getContents());
-    }
+    byte[] bytes = Streams.loadAndClose(storage.getContents());
 
     try {
-      String contents = Streams.loadAndClose(reader);
+      SourceMap map = createFrom(storage.getFullPath(), bytes, getCharset(storage));
+
+      bindContents(map, storage, bytes, null);
 
-      return createFrom(storage.getFullPath(), contents);
+      return map;
     } catch (JSONException e) {
       throw new IOException(e);
-    } finally {
-      reader.close();
+    }
+  }
+
+  /**
+   * Create a source map from the given storage, reusing the decoded form of the map from the cache
+   * when the storage contents have not changed since they were last parsed.
+   */
+  public static SourceMap createFrom(IStorage storage, SourceMapCache cache) throws IOException,
+      CoreException {
+    byte[] bytes = Streams.loadAndClose(storage.getContents());
+
+    // Both workspace files and URL storages have a toString() identifying their location.
+    String key = SourceMapCache.createKey(storage.toString(), bytes);
+
+    SourceMap map = cache.get(storage.getFullPath(), key);
+
+    if (map == null) {
+      try {
+        map = createFrom(storage.getFullPath(), bytes, getCharset(storage));
+      } catch (JSONException e) {
+        throw new IOException(e);
+      }
+
+      cache.put(key, map);
+    }
+
+    bindContents(map, storage, bytes, cache.getContentsFile(key));
+
+    return map;
+  }
+
+  /**
+   * Create a source map from its raw bytes. The "sourcesContent" member is not parsed; it is
+   * indexed instead, so that the content of a source can later be read from the map file.
+   */
+  static SourceMap createFrom(IPath path, byte[] bytes, String charset) throws JSONException,
+      UnsupportedEncodingException {
+    SourceMapContents contents = SourceMapContents.scan(bytes);
+    String str;
+
+    if (contents != null) {
+      str = new String(bytes, 0, contents.valueStart, charset) + "null"
+          + new String(bytes, contents.valueEnd, bytes.length - contents.valueEnd, charset);
+    } else {
+      str = new String(bytes, charset);
+    }
+
+    SourceMap map = createFrom(path, str);
+    map.contents = contents;
+    return map;
+  }
+
+  /**
+   * Point the content index of the map at a file holding the given raw bytes of the map: the
+   * workspace file itself if it is local, else the given copy of the bytes, kept in the cache. With
+   * neither, the map has no sources content, as the sources can be downloaded instead.
+   */
+  private static void bindContents(SourceMap map, IStorage storage, byte[] bytes, File copy)
+      throws CoreException {
+    if (map.contents == null || map.contents.getFile() != null) {
+      return;
+    }
+
+    String charset = getCharset(storage);
+
+    if (storage instanceof IFile && ((IFile) storage).getLocation() != null) {
+      File file = ((IFile) storage).getLocation().toFile();
+
+      if (file.isFile()) {
+        map.contents.setFile(file, charset, bytes.length);
+        return;
+      }
+    }
+
+    if (copy == null) {
+      // A copy outside the cache would not count against its size, and would pile up.
+      map.contents = null;
+      return;
+    }
+
+    try {
+      if (copy.isFile() && copy.length() == bytes.length) {
+        map.contents.setFile(copy, charset, bytes.length);
+        return;
+      }
+
+      FileOutputStream out = new FileOutputStream(copy);
+
+      try {
+        out.write(bytes);
+      } finally {
+        out.close();
+      }
+
+      map.contents.setFile(copy, charset, bytes.length);
+    } catch (IOException e) {
+      // The map is still usable; its sources content is not.
+    }
+  }
+
+  private static String getCharset(IStorage storage) throws CoreException {
+    if (storage instanceof IFile) {
+      return ((IFile) storage).getCharset();
+    } else {
+      return Charset.defaultCharset().name();
     }
   }
 
@@ -82,9 +191,12 @@ public class SourceMap {
     return new SourceMap(path, jsonObject);
   }
 
-  private static SourceMap createFrom(IPath path, String contents) throws JSONException {
+  static SourceMap createFrom(IPath path, String contents) throws JSONException {
+    // Strip the XSSI protection prefix; the spec allows a whole ")]}'" line.
     if (contents.startsWith(")]}")) {
-      contents = contents.substring(3);
+      int index = contents.indexOf('\n');
+
+      contents = index != -1 ? contents.substring(index + 1) : contents.substring(3);
     }
 
     return createFrom(path, new JSONObject(contents));
@@ -114,21 +226,26 @@ public class SourceMap {
    */
   private String[] sources;
 
+  /**
+   * The index of each entry in "sources", for reverse lookups.
+   */
+  private Map<String, Integer> sourceIndexes;
+
   /**
    * A list of symbol names used by the "mappings" entry.
    */
   private String[] names;
 
   /**
-   * An optional list of source content, useful when the "source" can’t be hosted.
+   * An optional list of source content, useful when the "source" can’t be hosted. Only the location
+   * of each content in the map file is kept.
    */
-  @SuppressWarnings("unused")
-  private String sourcesContent[];
+  private SourceMapContents contents;
 
   /**
-   * The full list of source map entries.
+   * The decoded source map entries.
    */
-  private SourceMapInfoEntry[] entries;
+  private SourceMapMappings mappings;
 
   public SourceMap() {
 
@@ -151,7 +268,6 @@ public class SourceMap {
     sourceRoot = obj.optString("sourceRoot");
 
     sources = parseStringArray(obj.getJSONArray("sources"));
-    sourcesContent = parseStringArray(obj.optJSONArray("sourcesContent"));
     names = parseStringArray(obj.getJSONArray("names"));
 
     // Prepend sourceRoot to the sources entries.
@@ -163,8 +279,26 @@ public class SourceMap {
 
     String mapStr = obj.getString("mappings");
 
-    List<SourceMapInfoEntry> result = SourceMapDecoder.decode(sources, names, mapStr);
-    entries = result.toArray(new SourceMapInfoEntry[result.size()]);
+    mappings = SourceMapDecoder.decode(sources, names, mapStr);
+
+    indexSources();
+  }
+
+  /**
+   * Create a source map from its already decoded parts.
+   */
+  SourceMap(IPath path, int version, String file, String sourceRoot, String[] sources,
+      String[] names, SourceMapMappings mappings, SourceMapContents contents) {
+    this.path = path;
+    this.version = version;
+    this.file = file;
+    this.sourceRoot = sourceRoot;
+    this.sources = sources;
+    this.names = names;
+    this.mappings = mappings;
+    this.contents = contents;
+
+    indexSources();
   }
 
   public String getFile() {
@@ -179,38 +313,21 @@ public class SourceMap {
    * @return the corresponding location in the original source
    */
   public SourceMapInfo getMappingFor(int line, int column) {
-    int index = findIndexForLine(line);
-
-    if (index == -1) {
-      return null;
-    }
-
-    SourceMapInfoEntry entry = entries[index];
+    int segment;
 
     // If column == -1, return the first mapping for that line.
     if (column == -1) {
-      return entry.getInfo();
+      segment = mappings.findFirstMappedSegment(line);
+    } else {
+      segment = mappings.findSegment(line, column);
     }
 
-    // Search for a matching mapping.
-    while (index < entries.length) {
-      entry = entries[index];
-
-      if (entry.column <= column) {
-        if (entry.endColumn == -1) {
-          return entry.getInfo();
-        }
-
-        if (column < entry.endColumn) {
-          return entry.getInfo();
-        }
-      }
-
-      index++;
+    if (segment == -1) {
+      // no mapping found
+      return null;
     }
 
-    // no mapping found
-    return null;
+    return createInfo(segment);
   }
 
   public IFile getMapSource() {
@@ -236,36 +353,64 @@ public class SourceMap {
   }
 
   /**
-   * Map from a location in a source file to a location in the generated source file.
+   * Map from a location in a source file to locations in the generated source file. One location is
+   * returned for each generated line the source line maps to; within a generated line, the first
+   * segment with a non-zero range is preferred.
    * 
    * @param file
    * @param line
-   * @param column
    * @return
    */
   public List<SourceMapInfo> getReverseMappingsFor(String file, int line) {
-    // TODO(devoncarew): calculate this information once for O(1) lookup
-    for (SourceMapInfoEntry entry : entries) {
-      SourceMapInfo info = entry.getInfo();
+    Integer sourceIndex = sourceIndexes.get(file);
 
-      if (info == null) {
-        continue;
-      }
+    if (sourceIndex == null) {
+      return Collections.emptyList();
+    }
+
+    int[] segments = mappings.getReverseSegments(sourceIndex, line);
+
+    if (segments.length == 0) {
+      return Collections.emptyList();
+    }
+
+    List<SourceMapInfo> result = new ArrayList<SourceMapInfo>();
+
+    int i = 0;
 
-      if (line == info.getLine()) {
-        if (file.equals(info.getFile())) {
-          // TODO(devoncarew): there will be several entries on this line
-          // We need to choose one that has a non-zero range, or is a catch-all entry
+    while (i < segments.length) {
+      int generatedLine = mappings.getLine(segments[i]);
+      int candidate = segments[i];
 
-          return Collections.singletonList(new SourceMapInfo(
-              path.toString(),
-              entry.line,
-              entry.column));
+      // The segments are in generated order, so all segments of this generated line are adjacent.
+      for (; i < segments.length && mappings.getLine(segments[i]) == generatedLine; i++) {
+        if (mappings.isZeroWidth(candidate, generatedLine)
+            && !mappings.isZeroWidth(segments[i], generatedLine)) {
+          candidate = segments[i];
         }
       }
+
+      result.add(new SourceMapInfo(path.toString(), generatedLine, mappings.columns[candidate]));
+    }
+
+    return result;
+  }
+
+  /**
+   * Read the content of the given source, as embedded in the map.
+   * 
+   * @param source
+   * @return the content, or null if the map does not embed the content of the source
+   * @throws IOException
+   */
+  public String getSourceContent(String source) throws IOException {
+    Integer sourceIndex = sourceIndexes.get(source);
+
+    if (contents == null || sourceIndex == null) {
+      return null;
     }
 
-    return Collections.emptyList();
+    return contents.getContent(sourceIndex);
   }
 
   public String[] getSourceNames() {
@@ -279,41 +424,58 @@ public class SourceMap {
     return version;
   }
 
+  /**
+   * @return whether the map embeds the content of the given source
+   */
+  public boolean hasSourceContent(String source) {
+    Integer sourceIndex = sourceIndexes.get(source);
+
+    return contents != null && sourceIndex != null && contents.hasContent(sourceIndex);
+  }
+
   @Override
   public String toString() {
     return "[" + getPath().lastSegment() + ", "
-        + NumberFormat.getNumberInstance().format(entries.length) + " lines]";
+        + NumberFormat.getNumberInstance().format(mappings.getLineCount()) + " lines]";
   }
 
-  private int findIndexForLine(int line) {
-    // TODO(devoncarew): test this binary search
+  SourceMapContents getContents() {
+    return contents;
+  }
 
-    int location = Arrays.binarySearch(
-        entries,
-        SourceMapInfoEntry.forLine(line),
-        SourceMapInfoEntry.lineComparator());
+  SourceMapMappings getMappings() {
+    return mappings;
+  }
 
-    if (location < 0) {
-      return -1;
-    }
+  String[] getNames() {
+    return names;
+  }
+
+  String getSourceRoot() {
+    return sourceRoot;
+  }
 
-    while (location > 0 && entries[location - 1].line == line) {
-      location--;
+  private SourceMapInfo createInfo(int segment) {
+    SourceMapInfo info = new SourceMapInfo(
+        sources[mappings.sourceIndexes[segment]],
+        mappings.originalLines[segment],
+        mappings.originalColumns[segment]);
+
+    int nameIndex = mappings.nameIndexes[segment];
+
+    if (nameIndex != SourceMapMappings.NO_INDEX) {
+      info.setName(names[nameIndex]);
     }
 
-    return location;
-
-//    for (int i = 0; i < entries.length; i++) {
-//      SourceMapInfoEntry entry = entries[i];
-//
-//      if (entry.line == line) {
-//        return i;
-//      } else if (entry.line > line) {
-//        return -1;
-//      }
-//    }
-//
-//    return -1;
+    return info;
+  }
+
+  private void indexSources() {
+    sourceIndexes = new HashMap<String, Integer>();
+
+    for (int i = sources.length - 1; i >= 0; i--) {
+      sourceIndexes.put(sources[i], i);
+    }
   }
 
   private String[] parseStringArray(JSONArray arr) throws JSONException {
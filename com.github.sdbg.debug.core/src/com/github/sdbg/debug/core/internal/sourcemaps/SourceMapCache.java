@@ -0,0 +1,468 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * An on-disk cache of decoded source maps, keyed by the location and content hash of the original
+ * map. A map which has not changed since it was last parsed is read back from its binary form
+ * instead of being parsed from JSON again.
+ * <p>
+ * Each entry is a single file holding a small header, the string tables of the map and the int
+ * columns of its {@link SourceMapMappings}, so that it can be read back with a single read.
+ * The embedded source content of a map is not part of its entry; the raw map can be kept next to
+ * the entry instead (see {@link #getContentsFile(String)}), and is evicted along with it.
+ * <p>
+ * The total size of the cache is bounded; the least recently used entries are evicted first.
+ */
+public class SourceMapCache {
+  /**
+   * The default maximum size of the cache, in bytes.
+   */
+  public static final long DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+  private static final int MAGIC = 0x53444d43; // SDMC
+  private static final int FORMAT_VERSION = 2;
+
+  private static final String CACHE_EXT = ".smc";
+  private static final String CONTENTS_EXT = SourceMap.SOURCE_MAP_EXT;
+
+  private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+  /**
+   * @return the cache key for a source map with the given location and contents
+   */
+  public static String createKey(String location, byte[] contents) {
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+
+      digest.update(location.getBytes("UTF-8"));
+      digest.update((byte) 0);
+      digest.update(contents);
+
+      byte[] hash = digest.digest();
+      char[] chars = new char[hash.length * 2];
+
+      for (int i = 0; i < hash.length; i++) {
+        chars[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0xF];
+        chars[i * 2 + 1] = HEX_DIGITS[hash[i] & 0xF];
+      }
+
+      return new String(chars);
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    } catch (UnsupportedEncodingException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  /**
+   * Checks that a count read from an entry fits in what is left of it, so that a corrupt entry is a
+   * cache miss rather than a huge allocation.
+   */
+  private static int checkLength(ByteBuffer buffer, int length, int elementSize)
+      throws IOException {
+    if (length < 0 || (long) length * elementSize > buffer.remaining()) {
+      throw new IOException("Corrupt source map cache entry");
+    }
+
+    return length;
+  }
+
+  /**
+   * Checks that the indexes read from an entry are {@link SourceMapMappings#NO_INDEX} or index an
+   * array of the given length, so that a corrupt entry is a cache miss rather than a failed lookup
+   * later on.
+   */
+  private static int[] checkIndexes(int[] indexes, int length) throws IOException {
+    for (int index : indexes) {
+      if (index < SourceMapMappings.NO_INDEX || index >= length) {
+        throw new IOException("Corrupt source map cache entry");
+      }
+    }
+
+    return indexes;
+  }
+
+  /**
+   * Checks that the line offsets read from an entry ascend from 0 within the segments.
+   */
+  private static int[] checkLineOffsets(int[] lineOffsets, int segmentCount) throws IOException {
+    int previous = 0;
+
+    for (int offset : lineOffsets) {
+      if (offset < previous || offset > segmentCount) {
+        throw new IOException("Corrupt source map cache entry");
+      }
+
+      previous = offset;
+    }
+
+    return lineOffsets;
+  }
+
+  private static long[] readLongs(ByteBuffer buffer, int length) throws IOException {
+    checkLength(buffer, length, 8);
+
+    long[] values = new long[length];
+
+    for (int i = 0; i < length; i++) {
+      values[i] = buffer.getLong();
+    }
+
+    return values;
+  }
+
+  private static int[] readInts(ByteBuffer buffer, int length) throws IOException {
+    checkLength(buffer, length, 4);
+
+    int[] values = new int[length];
+
+    IntBuffer ints = buffer.asIntBuffer();
+    ints.get(values);
+    buffer.position(buffer.position() + length * 4);
+
+    return values;
+  }
+
+  private static String readString(ByteBuffer buffer) throws IOException {
+    int length = buffer.getInt();
+
+    if (length == -1) {
+      return null;
+    }
+
+    byte[] bytes = new byte[checkLength(buffer, length, 1)];
+    buffer.get(bytes);
+
+    return new String(bytes, "UTF-8");
+  }
+
+  private static String[] readStrings(ByteBuffer buffer) throws IOException {
+    // Every string takes at least its length.
+    String[] strs = new String[checkLength(buffer, buffer.getInt(), 4)];
+
+    for (int i = 0; i < strs.length; i++) {
+      strs[i] = readString(buffer);
+    }
+
+    return strs;
+  }
+
+  private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+    for (int value : values) {
+      out.writeInt(value);
+    }
+  }
+
+  private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+    for (long value : values) {
+      out.writeLong(value);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String str) throws IOException {
+    if (str == null) {
+      out.writeInt(-1);
+    } else {
+      byte[] bytes = str.getBytes("UTF-8");
+
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  private static void writeStrings(DataOutputStream out, String[] strs) throws IOException {
+    out.writeInt(strs.length);
+
+    for (String str : strs) {
+      writeString(out, str);
+    }
+  }
+
+  private File directory;
+
+  private long maxSize;
+
+  public SourceMapCache(File directory, long maxSize) {
+    this.directory = directory;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Remove all the entries of the cache.
+   */
+  public synchronized void clear() {
+    for (File file : listEntries()) {
+      deleteEntry(file);
+    }
+  }
+
+  /**
+   * @return the cached source map for the given key, or null if there is no (valid) entry for it
+   */
+  public SourceMap get(IPath path, String key) {
+    File file = getFile(key);
+
+    if (!file.isFile()) {
+      return null;
+    }
+
+    try {
+      FileInputStream in = new FileInputStream(file);
+
+      try {
+        // Read into the heap rather than map the file; on Windows a mapped file cannot be deleted
+        // or replaced until the mapping is garbage collected.
+        FileChannel channel = in.getChannel();
+        long size = channel.size();
+
+        if (size > Integer.MAX_VALUE) {
+          throw new IOException("Corrupt source map cache entry");
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+
+        while (buffer.hasRemaining()) {
+          if (channel.read(buffer, buffer.position()) == -1) {
+            throw new EOFException();
+          }
+        }
+
+        buffer.flip();
+
+        SourceMap map = read(path, buffer);
+
+        if (map != null) {
+          // Mark the entry as recently used.
+          file.setLastModified(System.currentTimeMillis());
+        }
+
+        return map;
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      deleteEntry(file);
+    } catch (RuntimeException e) {
+      // A truncated or otherwise corrupt entry.
+      deleteEntry(file);
+    }
+
+    return null;
+  }
+
+  /**
+   * @return the file the raw map for the given key may be kept in, so that the embedded source
+   *         content of the map can be read from it
+   */
+  public File getContentsFile(String key) {
+    return new File(directory, key + CONTENTS_EXT);
+  }
+
+  public File getDirectory() {
+    return directory;
+  }
+
+  /**
+   * Store the decoded form of the given source map under the given key, then evict the least
+   * recently used entries if the cache has grown past its maximum size.
+   */
+  public void put(String key, SourceMap map) {
+    try {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+        return;
+      }
+
+      // Write to a temporary file first, so that readers never see a partially written entry.
+      File tempFile = File.createTempFile(key, ".tmp", directory);
+
+      try {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(
+            tempFile), 64 * 1024));
+
+        try {
+          write(out, map);
+        } finally {
+          out.close();
+        }
+
+        synchronized (this) {
+          File file = getFile(key);
+          file.delete();
+
+          if (tempFile.renameTo(file)) {
+            evict();
+          }
+        }
+      } finally {
+        tempFile.delete();
+      }
+    } catch (IOException e) {
+      // The cache is only an optimization.
+    }
+  }
+
+  private void evict() {
+    File[] files = listEntries();
+
+    long totalSize = 0;
+
+    for (File file : files) {
+      totalSize += getEntrySize(file);
+    }
+
+    if (totalSize <= maxSize) {
+      return;
+    }
+
+    Arrays.sort(files, new Comparator<File>() {
+      @Override
+      public int compare(File file1, File file2) {
+        long modified1 = file1.lastModified();
+        long modified2 = file2.lastModified();
+
+        return modified1 < modified2 ? -1 : (modified1 == modified2 ? 0 : 1);
+      }
+    });
+
+    for (int i = 0; i < files.length && totalSize > maxSize; i++) {
+      long length = getEntrySize(files[i]);
+
+      if (deleteEntry(files[i])) {
+        totalSize -= length;
+      }
+    }
+  }
+
+  private boolean deleteEntry(File file) {
+    getContentsFile(getKey(file)).delete();
+
+    return file.delete();
+  }
+
+  private long getEntrySize(File file) {
+    return file.length() + getContentsFile(getKey(file)).length();
+  }
+
+  private File getFile(String key) {
+    return new File(directory, key + CACHE_EXT);
+  }
+
+  private String getKey(File file) {
+    String name = file.getName();
+
+    return name.substring(0, name.length() - CACHE_EXT.length());
+  }
+
+  private File[] listEntries() {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept(File file) {
+        return file.isFile() && file.getName().endsWith(CACHE_EXT);
+      }
+    });
+
+    return files != null ? files : new File[0];
+  }
+
+  private SourceMap read(IPath path, ByteBuffer buffer) throws IOException {
+    if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+      return null;
+    }
+
+    int version = buffer.getInt();
+    String file = readString(buffer);
+    String sourceRoot = readString(buffer);
+    String[] sources = readStrings(buffer);
+    String[] names = readStrings(buffer);
+
+    int[] lineOffsets = readInts(buffer, buffer.getInt());
+    int segmentCount = buffer.getInt();
+
+    SourceMapMappings mappings = new SourceMapMappings(
+        sources.length,
+        checkLineOffsets(lineOffsets, segmentCount),
+        readInts(buffer, segmentCount),
+        checkIndexes(readInts(buffer, segmentCount), sources.length),
+        readInts(buffer, segmentCount),
+        readInts(buffer, segmentCount),
+        checkIndexes(readInts(buffer, segmentCount), names.length));
+
+    SourceMapContents contents = null;
+    int contentCount = buffer.getInt();
+
+    if (contentCount != -1) {
+      contents = new SourceMapContents(
+          null,
+          readLongs(buffer, contentCount),
+          readInts(buffer, contentCount));
+    }
+
+    return new SourceMap(path, version, file, sourceRoot, sources, names, mappings, contents);
+  }
+
+  private void write(DataOutputStream out, SourceMap map) throws IOException {
+    SourceMapMappings mappings = map.getMappings();
+
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+
+    out.writeInt(map.getVersion());
+    writeString(out, map.getFile());
+    writeString(out, map.getSourceRoot());
+    writeStrings(out, map.getSourceNames());
+    writeStrings(out, map.getNames());
+
+    out.writeInt(mappings.lineOffsets.length);
+    writeInts(out, mappings.lineOffsets);
+
+    out.writeInt(mappings.getSegmentCount());
+    writeInts(out, mappings.columns);
+    writeInts(out, mappings.sourceIndexes);
+    writeInts(out, mappings.originalLines);
+    writeInts(out, mappings.originalColumns);
+    writeInts(out, mappings.nameIndexes);
+
+    SourceMapContents contents = map.getContents();
+
+    if (contents == null) {
+      out.writeInt(-1);
+    } else {
+      out.writeInt(contents.offsets.length);
+      writeLongs(out, contents.offsets);
+      writeInts(out, contents.lengths);
+    }
+  }
+
+}
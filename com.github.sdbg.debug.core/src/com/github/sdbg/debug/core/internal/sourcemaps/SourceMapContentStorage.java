@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.eclipse.core.resources.IEncodedStorage;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.PlatformObject;
+
+/**
+ * An original source whose content is embedded in a source map ("sourcesContent"). The content is
+ * read from the map file each time it is asked for, rather than kept in memory.
+ */
+public class SourceMapContentStorage extends PlatformObject implements IEncodedStorage {
+  private static final String CHARSET = "UTF-8";
+
+  private SourceMap map;
+  private String source;
+  private IPath path;
+
+  /**
+   * @param map the source map embedding the content
+   * @param source the source name, as found in the map
+   * @param path the path to present the source under
+   */
+  public SourceMapContentStorage(SourceMap map, String source, IPath path) {
+    this.map = map;
+    this.source = source;
+    this.path = path;
+  }
+
+  @Override
+  public boolean equals(Object obj) {
+    if (this == obj) {
+      return true;
+    }
+
+    if (!(obj instanceof SourceMapContentStorage)) {
+      return false;
+    }
+
+    SourceMapContentStorage other = (SourceMapContentStorage) obj;
+
+    return map == other.map && source.equals(other.source);
+  }
+
+  @Override
+  public String getCharset() throws CoreException {
+    return CHARSET;
+  }
+
+  @Override
+  public InputStream getContents() throws CoreException {
+    String content;
+
+    try {
+      content = map.getSourceContent(source);
+    } catch (IOException e) {
+      throw new CoreException(SDBGDebugCorePlugin.createErrorStatus("Unable to read " + source
+          + " from " + map.getPath() + ": " + e.getMessage()));
+    }
+
+    if (content == null) {
+      throw new CoreException(SDBGDebugCorePlugin.createErrorStatus("No content for " + source
+          + " in " + map.getPath()));
+    }
+
+    try {
+      return new ByteArrayInputStream(content.getBytes(CHARSET));
+    } catch (IOException e) {
+      throw new CoreException(SDBGDebugCorePlugin.createErrorStatus(e.getMessage()));
+    }
+  }
+
+  @Override
+  public IPath getFullPath() {
+    return path;
+  }
+
+  @Override
+  public String getName() {
+    return path.lastSegment();
+  }
+
+  @Override
+  public int hashCode() {
+    return System.identityHashCode(map) * 31 + source.hashCode();
+  }
+
+  @Override
+  public boolean isReadOnly() {
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return "SourceMapContentStorage[" + map.getPath() + ", " + source + "]";
+  }
+
+}
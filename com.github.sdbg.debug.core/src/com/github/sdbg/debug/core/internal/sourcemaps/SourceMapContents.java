@@ -0,0 +1,354 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+import com.github.sdbg.utilities.Streams;
+
+/**
+ * The "sourcesContent" of a source map, left on disk. The content of each source is located by the
+ * byte range of its JSON string literal in the raw map file, and is only read and unescaped when it
+ * is asked for.
+ */
+class SourceMapContents {
+  static final long NO_CONTENT = -1;
+
+  private static final byte[] SOURCES_CONTENT_KEY = bytes("\"sourcesContent\"");
+  private static final byte[] NULL_LITERAL = bytes("null");
+
+  /**
+   * Find the "sourcesContent" member of the given raw source map, and index its strings.
+   * 
+   * @return the index, or null if the map has no (well formed) "sourcesContent" array
+   */
+  static SourceMapContents scan(byte[] bytes) {
+    int i = 0;
+
+    // Skip the XSSI protection prefix, if any.
+    if (bytes.length > 0 && bytes[0] == ')') {
+      while (i < bytes.length && bytes[i] != '\n') {
+        i++;
+      }
+    }
+
+    int depth = 0;
+    boolean expectKey = false;
+
+    while (i < bytes.length) {
+      byte b = bytes[i];
+
+      if (b == '"') {
+        int end = skipString(bytes, i);
+
+        if (end == -1) {
+          return null;
+        }
+
+        if (depth == 1 && expectKey) {
+          expectKey = false;
+
+          if (matches(bytes, i, SOURCES_CONTENT_KEY)) {
+            int valueStart = skipWhitespace(bytes, end);
+
+            if (valueStart < bytes.length && bytes[valueStart] == ':') {
+              return scanArray(bytes, skipWhitespace(bytes, valueStart + 1));
+            } else {
+              return null;
+            }
+          }
+        }
+
+        i = end;
+        continue;
+      }
+
+      if (b == '{' || b == '[') {
+        depth++;
+        expectKey = b == '{' && depth == 1;
+      } else if (b == '}' || b == ']') {
+        depth--;
+      } else if (b == ',' && depth == 1) {
+        expectKey = true;
+      }
+
+      i++;
+    }
+
+    return null;
+  }
+
+  private static byte[] bytes(String str) {
+    byte[] bytes = new byte[str.length()];
+
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) str.charAt(i);
+    }
+
+    return bytes;
+  }
+
+  private static boolean matches(byte[] bytes, int offset, byte[] literal) {
+    if (offset + literal.length > bytes.length) {
+      return false;
+    }
+
+    for (int i = 0; i < literal.length; i++) {
+      if (bytes[offset + i] != literal[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  private static SourceMapContents scanArray(byte[] bytes, int start) {
+    if (start >= bytes.length || bytes[start] != '[') {
+      return null;
+    }
+
+    long[] offsets = new long[16];
+    int[] lengths = new int[16];
+    int count = 0;
+
+    int i = skipWhitespace(bytes, start + 1);
+
+    if (i < bytes.length && bytes[i] == ']') {
+      return new SourceMapContents(null, new long[0], new int[0], start, i + 1);
+    }
+
+    while (i < bytes.length) {
+      if (count == offsets.length) {
+        offsets = Arrays.copyOf(offsets, count * 2);
+        lengths = Arrays.copyOf(lengths, count * 2);
+      }
+
+      if (bytes[i] == '"') {
+        int end = skipString(bytes, i);
+
+        if (end == -1) {
+          return null;
+        }
+
+        offsets[count] = i;
+        lengths[count] = end - i;
+        i = end;
+      } else if (matches(bytes, i, NULL_LITERAL)) {
+        offsets[count] = NO_CONTENT;
+        i += NULL_LITERAL.length;
+      } else {
+        return null;
+      }
+
+      count++;
+      i = skipWhitespace(bytes, i);
+
+      if (i < bytes.length && bytes[i] == ',') {
+        i = skipWhitespace(bytes, i + 1);
+      } else if (i < bytes.length && bytes[i] == ']') {
+        return new SourceMapContents(
+            null,
+            Arrays.copyOf(offsets, count),
+            Arrays.copyOf(lengths, count),
+            start,
+            i + 1);
+      } else {
+        return null;
+      }
+    }
+
+    return null;
+  }
+
+  /**
+   * @return the index just past the closing quote of the string starting at the given index, or -1
+   */
+  private static int skipString(byte[] bytes, int start) {
+    // Multi-byte UTF-8 sequences never contain '"' or '\\' bytes.
+    for (int i = start + 1; i < bytes.length; i++) {
+      if (bytes[i] == '\\') {
+        i++;
+      } else if (bytes[i] == '"') {
+        return i + 1;
+      }
+    }
+
+    return -1;
+  }
+
+  private static int skipWhitespace(byte[] bytes, int start) {
+    int i = start;
+
+    while (i < bytes.length
+        && (bytes[i] == ' ' || bytes[i] == '\t' || bytes[i] == '\n' || bytes[i] == '\r')) {
+      i++;
+    }
+
+    return i;
+  }
+
+  // Guarded by this
+  private File file;
+  private String charset;
+
+  /**
+   * The length and modification time of the file when it held the bytes that were indexed.
+   */
+  // Guarded by this
+  private long fileLength;
+  private long fileStamp;
+
+  /**
+   * The index of the current bytes of the file: this one, a rescan of the file if it has changed
+   * since it was set, or null if the rescan does not match the sources of the map.
+   */
+  // Guarded by this
+  private SourceMapContents current = this;
+
+  /**
+   * The byte offset of each string literal in the raw map, or {@link #NO_CONTENT}.
+   */
+  final long[] offsets;
+
+  /**
+   * The length in bytes of each string literal, quotes included.
+   */
+  final int[] lengths;
+
+  /**
+   * The byte range of the whole "sourcesContent" value in the raw map; only known after a scan.
+   */
+  final int valueStart;
+  final int valueEnd;
+
+  SourceMapContents(File file, long[] offsets, int[] lengths) {
+    this(file, offsets, lengths, -1, -1);
+  }
+
+  private SourceMapContents(File file, long[] offsets, int[] lengths, int valueStart, int valueEnd) {
+    this.file = file;
+    this.offsets = offsets;
+    this.lengths = lengths;
+    this.valueStart = valueStart;
+    this.valueEnd = valueEnd;
+  }
+
+  /**
+   * @return the content of the given source, or null if the map has none for it
+   */
+  String getContent(int sourceIndex) throws IOException {
+    if (!hasContent(sourceIndex)) {
+      return null;
+    }
+
+    File file;
+    String charset;
+    long stamp;
+    SourceMapContents index;
+
+    synchronized (this) {
+      if (this.file == null) {
+        return null;
+      }
+
+      if (this.file.length() != fileLength || this.file.lastModified() != fileStamp) {
+        rescan();
+      }
+
+      file = this.file;
+      charset = this.charset;
+      stamp = fileStamp;
+      index = current;
+    }
+
+    if (index == null || !index.hasContent(sourceIndex)) {
+      return null;
+    }
+
+    FileInputStream in = new FileInputStream(file);
+
+    try {
+      FileChannel channel = in.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocate(index.lengths[sourceIndex]);
+
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer, index.offsets[sourceIndex] + buffer.position()) == -1) {
+          throw new EOFException(file.toString());
+        }
+      }
+
+      if (file.lastModified() != stamp) {
+        throw new IOException(file + " changed while reading source content");
+      }
+
+      Object value = new JSONTokener(new String(buffer.array(), charset)).nextValue();
+
+      if (value instanceof String) {
+        return (String) value;
+      } else {
+        throw new IOException("Invalid source content in " + file);
+      }
+    } catch (JSONException e) {
+      throw new IOException(e);
+    } finally {
+      in.close();
+    }
+  }
+
+  synchronized File getFile() {
+    return file;
+  }
+
+  boolean hasContent(int sourceIndex) {
+    return sourceIndex >= 0 && sourceIndex < offsets.length && offsets[sourceIndex] != NO_CONTENT;
+  }
+
+  /**
+   * Set the raw map file the content is read from, the charset it was read with and the length of
+   * the bytes that were scanned. If the file no longer has that length, or is modified later, it is
+   * scanned again before its content is read.
+   */
+  synchronized void setFile(File file, String charset, long length) {
+    this.file = file;
+    this.charset = charset;
+    this.fileLength = length;
+    this.fileStamp = file.lastModified();
+    this.current = this;
+  }
+
+  /**
+   * Index the current bytes of the file. The offsets of the sources of the map are only reused if
+   * the file still has as many sources content entries.
+   */
+  private void rescan() throws IOException {
+    long stamp = file.lastModified();
+    byte[] bytes = Streams.loadAndClose(new FileInputStream(file));
+    SourceMapContents contents = scan(bytes);
+
+    fileLength = bytes.length;
+    fileStamp = stamp;
+    current = contents != null && contents.offsets.length == offsets.length ? contents : null;
+  }
+
+}
@@ -14,19 +14,25 @@
 
 package com.github.sdbg.debug.core.internal.sourcemaps;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.HashMap;
+import java.util.Map;
 
 class SourceMapDecoder {
 
-  public static List<SourceMapInfoEntry> decode(String[] sources, String[] names, String mapStr) {
+  public static SourceMapMappings decode(String[] sources, String[] names, String mapStr) {
     return new SourceMapDecoder(sources, names).decodeLines(mapStr);
   }
 
   private String[] sources;
   private String[] names;
 
-  private List<SourceMapInfoEntry> entries;
+  /**
+   * Maps each source index to the first index with the same name, so that a source listed more
+   * than once ends up in a single reverse index bucket.
+   */
+  private int[] canonicalSources;
+
+  private SourceMapMappings.Builder builder;
 
   int originalFileIndex = 0;
   int originalLine = 0;
@@ -36,71 +42,132 @@ class SourceMapDecoder {
   private SourceMapDecoder(String[] sources, String[] names) {
     this.sources = sources;
     this.names = names;
+
+    Map<String, Integer> firstIndexes = new HashMap<String, Integer>();
+    canonicalSources = new int[sources.length];
+
+    for (int i = 0; i < sources.length; i++) {
+      Integer firstIndex = firstIndexes.get(sources[i]);
+
+      if (firstIndex == null) {
+        firstIndexes.put(sources[i], i);
+        canonicalSources[i] = i;
+      } else {
+        canonicalSources[i] = firstIndex;
+      }
+    }
   }
 
-  List<SourceMapInfoEntry> decodeLines(String mapStr) {
+  SourceMapMappings decodeLines(String mapStr) {
     // In the given string, semi-colons demarcate lines and commas demarcate groups.
     // A;A;;;;;;;A;A;;A;A;A,mB,W,C,C,I,C,C;A,cAyVEA;AAAiB,QAAK,MAAFC
 
-    entries = new ArrayList<SourceMapInfoEntry>();
+    // The string is decoded in a single pass; the values of the current segment are collected in
+    // the fields array.
+    builder = new SourceMapMappings.Builder();
+    builder.startLine();
 
-    int lineNumber = 0;
+    int[] fields = new int[5];
+    int fieldCount = 0;
+    int generatedColumn = 0;
 
-    for (String line : mapStr.split(";")) {
-      if (line.length() > 0) {
-        decodeLine(line.split(","), lineNumber);
-      }
+    int value = 0;
+    int shift = 0;
 
-      lineNumber++;
-    }
+    for (int i = 0, length = mapStr.length(); i < length; i++) {
+      char c = mapStr.charAt(i);
 
-    return entries;
-  }
+      if (c == ',' || c == ';') {
+        generatedColumn = decodeSegment(fields, fieldCount, generatedColumn);
+        fieldCount = 0;
 
-  private void decodeLine(String[] mappings, int line) {
-    int generatedColumn = 0;
+        if (c == ';') {
+          builder.startLine();
+          generatedColumn = 0;
+        }
+      } else {
+        int digit = VlqDecoder.fromBase64(c);
 
-    SourceMapInfoEntry previousEntry = null;
+        if (digit == -1) {
+          throw new IllegalArgumentException("invalid character '" + c + "' at offset " + i
+              + " in source map mappings");
+        }
 
-    for (String mapping : mappings) {
-      int[] indexes = VlqDecoder.decode(mapping);
+        value += (digit & VlqDecoder.VLQ_BASE_MASK) << shift;
 
-      if (indexes.length == 1 || indexes.length == 4 || indexes.length == 5) {
-        generatedColumn += indexes[0];
+        if ((digit & VlqDecoder.VLQ_CONTINUATION_BIT) != 0) {
+          shift += VlqDecoder.VLQ_BASE_SHIFT;
+        } else {
+          if (fieldCount < fields.length) {
+            fields[fieldCount] = VlqDecoder.fromVLQSigned(value);
+          }
 
-        if (previousEntry != null) {
-          previousEntry.setEndColumn(generatedColumn);
+          fieldCount++;
+          value = 0;
+          shift = 0;
         }
+      }
+    }
 
-        if (indexes.length < 4) {
-          continue;
-        }
+    decodeSegment(fields, fieldCount, generatedColumn);
 
-        originalFileIndex += indexes[1];
-        originalLine += indexes[2];
-        originalColumn += indexes[3];
+    return builder.build(sources.length);
+  }
 
-        String originalFile = getString(sources, originalFileIndex);
+  /**
+   * Add the segment made of the first fieldCount values of fields, and return the new generated
+   * column.
+   */
+  private int decodeSegment(int[] fields, int fieldCount, int generatedColumn) {
+    if (fieldCount != 1 && fieldCount != 4 && fieldCount != 5) {
+      return generatedColumn;
+    }
 
-        SourceMapInfo info = new SourceMapInfo(originalFile, originalLine, originalColumn);
+    generatedColumn += fields[0];
+
+    if (fieldCount < 4) {
+      // This segment has no original location, but it still ends the preceding one.
+      builder.addSegment(
+          generatedColumn,
+          SourceMapMappings.NO_INDEX,
+          0,
+          0,
+          SourceMapMappings.NO_INDEX);
+      return generatedColumn;
+    }
 
-        if (indexes.length > 4) {
-          nameIndex += indexes[4];
-          info.setName(getString(names, nameIndex));
-        }
+    originalFileIndex += fields[1];
+    originalLine += fields[2];
+    originalColumn += fields[3];
 
-        previousEntry = new SourceMapInfoEntry(line, generatedColumn, info);
+    int mappedNameIndex = SourceMapMappings.NO_INDEX;
 
-        entries.add(previousEntry);
-      }
+    if (fieldCount > 4) {
+      nameIndex += fields[4];
+      mappedNameIndex = checkIndex(names, nameIndex);
+    }
+
+    int mappedFileIndex = checkIndex(sources, originalFileIndex);
+
+    if (mappedFileIndex != SourceMapMappings.NO_INDEX) {
+      mappedFileIndex = canonicalSources[mappedFileIndex];
     }
+
+    builder.addSegment(
+        generatedColumn,
+        mappedFileIndex,
+        originalLine,
+        originalColumn,
+        mappedNameIndex);
+
+    return generatedColumn;
   }
 
-  private String getString(String[] strs, int index) {
+  private int checkIndex(String[] strs, int index) {
     if (index >= 0 && index < strs.length) {
-      return strs[index];
+      return index;
     } else {
-      return null;
+      return SourceMapMappings.NO_INDEX;
     }
   }
 
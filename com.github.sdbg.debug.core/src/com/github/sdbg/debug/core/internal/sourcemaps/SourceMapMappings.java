@@ -0,0 +1,292 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+import java.util.Arrays;
+
+/**
+ * The decoded "mappings" of a source map, stored as parallel int columns instead of one object per
+ * segment. Segments are ordered by generated line and column; the segments of generated line
+ * <code>n</code> are found in <code>[lineOffsets[n], lineOffsets[n + 1])</code>.
+ * <p>
+ * Segments which do not map back to an original source (one field segments) are kept, with a
+ * source index of {@link #NO_INDEX}, as they terminate the range of the preceding segment.
+ * <p>
+ * A reverse index is built along with the table: for every source, the mapped segments ordered by
+ * original line and then by generated position.
+ */
+class SourceMapMappings {
+
+  /**
+   * Collects decoded segments, one generated line at a time.
+   */
+  static class Builder {
+    private int[] lineOffsets = new int[256];
+    private int lineCount;
+
+    private int[] columns = new int[1024];
+    private int[] sourceIndexes = new int[1024];
+    private int[] originalLines = new int[1024];
+    private int[] originalColumns = new int[1024];
+    private int[] nameIndexes = new int[1024];
+    private int segmentCount;
+
+    /**
+     * Add a segment to the current generated line.
+     */
+    void addSegment(int column, int sourceIndex, int originalLine, int originalColumn,
+        int nameIndex) {
+      if (segmentCount == columns.length) {
+        int capacity = segmentCount * 2;
+
+        columns = Arrays.copyOf(columns, capacity);
+        sourceIndexes = Arrays.copyOf(sourceIndexes, capacity);
+        originalLines = Arrays.copyOf(originalLines, capacity);
+        originalColumns = Arrays.copyOf(originalColumns, capacity);
+        nameIndexes = Arrays.copyOf(nameIndexes, capacity);
+      }
+
+      columns[segmentCount] = column;
+      sourceIndexes[segmentCount] = sourceIndex;
+      originalLines[segmentCount] = originalLine;
+      originalColumns[segmentCount] = originalColumn;
+      nameIndexes[segmentCount] = nameIndex;
+      segmentCount++;
+    }
+
+    SourceMapMappings build(int sourceCount) {
+      // Close the last line.
+      startLine();
+
+      return new SourceMapMappings(
+          sourceCount,
+          Arrays.copyOf(lineOffsets, lineCount),
+          Arrays.copyOf(columns, segmentCount),
+          Arrays.copyOf(sourceIndexes, segmentCount),
+          Arrays.copyOf(originalLines, segmentCount),
+          Arrays.copyOf(originalColumns, segmentCount),
+          Arrays.copyOf(nameIndexes, segmentCount));
+    }
+
+    /**
+     * Start a new generated line; segments added after this call belong to it.
+     */
+    void startLine() {
+      if (lineCount == lineOffsets.length) {
+        lineOffsets = Arrays.copyOf(lineOffsets, lineCount * 2);
+      }
+
+      lineOffsets[lineCount++] = segmentCount;
+    }
+  }
+
+  static final int NO_INDEX = -1;
+
+  final int[] lineOffsets;
+  final int[] columns;
+  final int[] sourceIndexes;
+  final int[] originalLines;
+  final int[] originalColumns;
+  final int[] nameIndexes;
+
+  /**
+   * The mapped segments of source <code>n</code> are found in
+   * <code>reverseSegments[sourceOffsets[n]]</code> to
+   * <code>reverseSegments[sourceOffsets[n + 1] - 1]</code>.
+   */
+  private int[] sourceOffsets;
+  private int[] reverseSegments;
+
+  SourceMapMappings(int sourceCount, int[] lineOffsets, int[] columns, int[] sourceIndexes,
+      int[] originalLines, int[] originalColumns, int[] nameIndexes) {
+    this.lineOffsets = lineOffsets;
+    this.columns = columns;
+    this.sourceIndexes = sourceIndexes;
+    this.originalLines = originalLines;
+    this.originalColumns = originalColumns;
+    this.nameIndexes = nameIndexes;
+
+    buildReverseIndex(sourceCount);
+  }
+
+  /**
+   * @return the first segment on the given line that maps to an original source, or -1
+   */
+  int findFirstMappedSegment(int line) {
+    if (line < 0 || line >= getLineCount()) {
+      return -1;
+    }
+
+    for (int i = lineOffsets[line]; i < lineOffsets[line + 1]; i++) {
+      if (sourceIndexes[i] != NO_INDEX) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * @return the mapped segment covering the given generated location, or -1
+   */
+  int findSegment(int line, int column) {
+    if (line < 0 || line >= getLineCount()) {
+      return -1;
+    }
+
+    // Find the last segment on the line starting at or before the column.
+    int low = lineOffsets[line];
+    int high = lineOffsets[line + 1] - 1;
+    int found = -1;
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+
+      if (columns[mid] <= column) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    if (found == -1 || sourceIndexes[found] == NO_INDEX) {
+      return -1;
+    }
+
+    return found;
+  }
+
+  /**
+   * @return the ending (non-inclusive) column of the given segment, or -1 if it extends to the end
+   *         of its line
+   */
+  int getEndColumn(int segment, int line) {
+    if (segment + 1 < lineOffsets[line + 1]) {
+      return columns[segment + 1];
+    } else {
+      return -1;
+    }
+  }
+
+  /**
+   * @return the generated line containing the given segment
+   */
+  int getLine(int segment) {
+    // Find the last line starting at or before the segment; empty lines share their offset with
+    // the line that follows them.
+    int low = 0;
+    int high = getLineCount() - 1;
+    int found = -1;
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+
+      if (lineOffsets[mid] <= segment) {
+        found = mid;
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    return found;
+  }
+
+  int getLineCount() {
+    return lineOffsets.length - 1;
+  }
+
+  /**
+   * @return the segments mapping to the given original source line, in generated order
+   */
+  int[] getReverseSegments(int sourceIndex, int originalLine) {
+    if (sourceIndex < 0 || sourceIndex + 1 >= sourceOffsets.length) {
+      return new int[0];
+    }
+
+    int end = sourceOffsets[sourceIndex + 1];
+
+    // Find the first segment for the original line.
+    int low = sourceOffsets[sourceIndex];
+    int high = end - 1;
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+
+      if (originalLines[reverseSegments[mid]] < originalLine) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+
+    int start = low;
+
+    while (low < end && originalLines[reverseSegments[low]] == originalLine) {
+      low++;
+    }
+
+    return Arrays.copyOfRange(reverseSegments, start, low);
+  }
+
+  int getSegmentCount() {
+    return columns.length;
+  }
+
+  /**
+   * @return true if the segment is immediately followed by another segment at the same column
+   */
+  boolean isZeroWidth(int segment, int line) {
+    return getEndColumn(segment, line) == columns[segment];
+  }
+
+  private void buildReverseIndex(int sourceCount) {
+    sourceOffsets = new int[sourceCount + 1];
+
+    for (int sourceIndex : sourceIndexes) {
+      if (sourceIndex != NO_INDEX) {
+        sourceOffsets[sourceIndex + 1]++;
+      }
+    }
+
+    for (int i = 0; i < sourceCount; i++) {
+      sourceOffsets[i + 1] += sourceOffsets[i];
+    }
+
+    // Bucket the segments by source, keyed by original line and then segment (generated) order.
+    long[] keys = new long[sourceOffsets[sourceCount]];
+    int[] positions = Arrays.copyOf(sourceOffsets, sourceCount);
+
+    for (int segment = 0; segment < sourceIndexes.length; segment++) {
+      int sourceIndex = sourceIndexes[segment];
+
+      if (sourceIndex != NO_INDEX) {
+        keys[positions[sourceIndex]++] = ((long) originalLines[segment] << 32) | segment;
+      }
+    }
+
+    reverseSegments = new int[keys.length];
+
+    for (int i = 0; i < sourceCount; i++) {
+      Arrays.sort(keys, sourceOffsets[i], sourceOffsets[i + 1]);
+    }
+
+    for (int i = 0; i < keys.length; i++) {
+      reverseSegments[i] = (int) keys[i];
+    }
+  }
+
+}
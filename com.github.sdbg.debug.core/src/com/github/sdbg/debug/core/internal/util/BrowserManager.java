@@ -17,12 +17,14 @@ import com.github.sdbg.core.DartCore;
 import com.github.sdbg.debug.core.DebugUIHelper;
 import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 import com.github.sdbg.debug.core.SDBGLaunchConfigWrapper;
+import com.github.sdbg.debug.core.internal.android.ADBDeviceRegistry;
 import com.github.sdbg.debug.core.internal.android.ADBManager;
 import com.github.sdbg.debug.core.internal.android.MobileBrowserUtils;
 import com.github.sdbg.debug.core.internal.util.ListeningStream.StreamListener;
 import com.github.sdbg.debug.core.internal.webkit.model.WebkitDebugTarget;
 import com.github.sdbg.debug.core.internal.webkit.protocol.ChromiumConnector;
 import com.github.sdbg.debug.core.internal.webkit.protocol.ChromiumTabInfo;
+import com.github.sdbg.debug.core.internal.webkit.protocol.ChromiumTargetWatcher;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection;
 import com.github.sdbg.debug.core.model.IResourceResolver;
 import com.github.sdbg.debug.core.util.IBrowserTabChooser;
@@ -36,6 +38,8 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Semaphore;
@@ -59,6 +63,9 @@ public class BrowserManager {
 
   private static final int DEVTOOLS_PORT_NUMBER = 9322;
 
+  /** Bounds, in milliseconds, of the delay between two attempts at listing the tabs of Chrome. */
+  private static final long MIN_TAB_RETRY_DELAY = 10, MAX_TAB_RETRY_DELAY = 100;
+
   private static final String CHROME_EXECUTABLE_PROPERTY = "chrome.location",
       CHROME_ENVIRONMENT_VARIABLE = "CHROME_LOCATION";
 
@@ -72,6 +79,9 @@ public class BrowserManager {
 
   private File browserExecutable;
 
+  /** The browsers kept running when the pool is enabled, by launch configuration name. */
+  private Map<String, PooledBrowser> pooledBrowsers = new HashMap<String, PooledBrowser>();
+
   public BrowserManager(String browserDataDirName) {
     this.browserDataDirName = browserDataDirName;
     this.launchSemaphore = new Semaphore(1);
@@ -135,7 +145,7 @@ public class BrowserManager {
         try {
           launchConfig.markAsLaunched();
 
-          List<? extends IDeviceInfo> devices = adbManager.getDevices();
+          List<? extends IDeviceInfo> devices = ADBDeviceRegistry.getRegistry().getDevices();
           if (devices.isEmpty()) {
             throw new DebugException(
                 new Status(
@@ -236,6 +246,8 @@ public class BrowserManager {
     if (!isProcessTerminated(browserProcess)) {
       browserProcess.destroy();
     }
+
+    disposePooledBrowsers();
   }
 
   public void launchBrowser(ILaunch launch, ILaunchConfiguration configuration,
@@ -294,20 +306,36 @@ public class BrowserManager {
             } catch (IOException e) {
               SDBGDebugCorePlugin.logError(e);
             }
+          } else if (enableDebugging && url != null && resourceResolver != null
+              && SDBGDebugCorePlugin.getPlugin().getReuseBrowserProcess()) {
+            terminateExistingBrowserProcess();
+
+            launchInPooledBrowser(
+                launch,
+                launchConfig,
+                resourceResolver,
+                browserTabChooser,
+                url,
+                monitor,
+                extraCommandLineArgs,
+                timer);
           } else {
+            disposePooledBrowsers();
             terminateExistingBrowserProcess();
 
             StringBuilder processDescription = new StringBuilder();
 
             int[] devToolsPortNumberHolder = new int[1];
-            ListeningStream browserOutput = startNewBrowserProcess(
+            browserProcess = startNewBrowserProcess(
                 launchConfig,
                 url,
                 monitor,
                 enableDebugging,
                 processDescription,
                 extraCommandLineArgs,
+                browserDataDirName,
                 devToolsPortNumberHolder);
+            ListeningStream browserOutput = readFromProcessPipes(browserProcess.getInputStream());
 
             sleep(100);
 
@@ -364,7 +392,7 @@ public class BrowserManager {
   }
 
   private List<String> buildArgumentsList(SDBGLaunchConfigWrapper launchConfig, String url,
-      int devToolsPortNumber, List<String> extraArguments) {
+      int devToolsPortNumber, List<String> extraArguments, String dataDirName) {
     List<String> arguments = new ArrayList<String>();
 
     arguments.add(getBrowserExecutable().getAbsolutePath());
@@ -376,7 +404,7 @@ public class BrowserManager {
 
     // In order to start up multiple Chrome processes, we need to specify a different user dir.
     arguments.add("--user-data-dir="
-        + getCreateUserDataDirectory(browserDataDirName).getAbsolutePath());
+        + getCreateUserDataDirectory(dataDirName).getAbsolutePath());
 
     // Whether or not it's actually the first run.
     arguments.add("--no-first-run");
@@ -445,10 +473,6 @@ public class BrowserManager {
                         : "")));
       }
 
-      // Even when Chrome has reported all the debuggable tabs to us, the debug server
-      // may not yet have started up. Delay a small fixed amount of time.
-      sleep(100);
-
       if (resolver == null) {
         resolver = createResourceResolver(launch, launchConfig.getConfig(), tab);
       }
@@ -516,6 +540,45 @@ public class BrowserManager {
     }
   }
 
+  /**
+   * Waits for a browser started for the pool to answer on its DevTools port.
+   * 
+   * @return the watcher of its tabs, or null if the browser does not support the Target domain, and
+   *         cannot be pooled
+   */
+  private ChromiumTargetWatcher connectTargetWatcher(Process process, int port,
+      ListeningStream browserOutput) throws CoreException {
+    long endTime = System.currentTimeMillis() + 20 * 1000L;
+    long retryDelay = MIN_TAB_RETRY_DELAY;
+
+    while (true) {
+      if (isProcessTerminated(process)) {
+        SDBGDebugCorePlugin.logError("Browser output: " + browserOutput.toString());
+
+        throw new CoreException(new Status(
+            IStatus.ERROR,
+            SDBGDebugCorePlugin.PLUGIN_ID,
+            "Could not launch browser - process terminated on startup"
+                + getProcessStreamMessage(browserOutput.toString())));
+      }
+
+      try {
+        return ChromiumTargetWatcher.connect(null, port);
+      } catch (IOException e) {
+        if (System.currentTimeMillis() > endTime) {
+          throw new CoreException(new Status(
+              IStatus.ERROR,
+              SDBGDebugCorePlugin.PLUGIN_ID,
+              "Unable to connect to Chrome: " + e.getMessage(),
+              e));
+        }
+      }
+
+      sleep((int) retryDelay);
+      retryDelay = Math.min(retryDelay * 2, MAX_TAB_RETRY_DELAY);
+    }
+  }
+
   private void describe(List<String> arguments, StringBuilder builder) {
     for (int i = 0; i < arguments.size(); i++) {
       if (i > 0) {
@@ -525,6 +588,14 @@ public class BrowserManager {
     }
   }
 
+  private void disposePooledBrowsers() {
+    for (PooledBrowser browser : pooledBrowsers.values()) {
+      browser.dispose();
+    }
+
+    pooledBrowsers.clear();
+  }
+
   private File findChromeExecutable() {
     // First, try the system property, as user-specified value is preferred
     File file = findChromeExecutable(
@@ -684,8 +755,11 @@ public class BrowserManager {
     }
   }
 
+  /**
+   * @param logFailure whether to log the tabs if none is chosen
+   */
   private IBrowserTabInfo findTargetTab(IBrowserTabChooser browserTabChooser,
-      List<? extends IBrowserTabInfo> tabs) throws CoreException {
+      List<? extends IBrowserTabInfo> tabs, boolean logFailure) throws CoreException {
     IBrowserTabInfo chosenTab = browserTabChooser.chooseTab(tabs);
 
     if (chosenTab != null) {
@@ -698,6 +772,10 @@ public class BrowserManager {
       return chosenTab;
     }
 
+    if (!logFailure) {
+      return null;
+    }
+
     StringBuilder builder = new StringBuilder("Unable to locate target Chrome tab [" + tabs.size()
         + " tabs]\n");
 
@@ -722,34 +800,75 @@ public class BrowserManager {
       ListeningStream dartiumOutput) throws IOException, CoreException {
     // Give Chromium 20 seconds to start up.
     long endTime = System.currentTimeMillis() + Math.max(maxStartupDelay, 0L);
-    while (true) {
-      if (runtimeProcess != null && isProcessTerminated(runtimeProcess)) {
-        throw new CoreException(new Status(
-            IStatus.ERROR,
-            SDBGDebugCorePlugin.PLUGIN_ID,
-            "Could not launch browser - process terminated while trying to connect. "
-                + "Try closing any running Chrome instances."
-                + getProcessStreamMessage(dartiumOutput.toString())));
-      }
 
-      try {
-        ChromiumTabInfo targetTab = (ChromiumTabInfo) findTargetTab(
-            browserTabChooser,
-            ChromiumConnector.getAvailableTabs(host, port));
-        if (targetTab != null || System.currentTimeMillis() > endTime && runtimeProcess == null) {
-          return targetTab;
+    // Until the browser answers, and when it has to be polled, wait a little longer every time.
+    long retryDelay = MIN_TAB_RETRY_DELAY;
+
+    // Watch the tabs over the browser websocket, unless the browser turns out not to support it.
+    boolean watchTargets = true;
+    ChromiumTargetWatcher watcher = null;
+
+    try {
+      while (true) {
+        if (runtimeProcess != null && isProcessTerminated(runtimeProcess)) {
+          throw new CoreException(new Status(
+              IStatus.ERROR,
+              SDBGDebugCorePlugin.PLUGIN_ID,
+              "Could not launch browser - process terminated while trying to connect. "
+                  + "Try closing any running Chrome instances."
+                  + getProcessStreamMessage(dartiumOutput.toString())));
         }
-      } catch (IOException exception) {
-        if (System.currentTimeMillis() > endTime) {
-          throw exception;
+
+        try {
+          if (watchTargets && watcher == null) {
+            watcher = ChromiumTargetWatcher.connect(host, port);
+            watchTargets = watcher != null;
+          }
+
+          long version = watcher != null ? watcher.getVersion() : 0;
+          List<ChromiumTabInfo> tabs = watcher != null ? watcher.getTabs()
+              : ChromiumConnector.getAvailableTabs(host, port);
+
+          boolean timedOut = System.currentTimeMillis() > endTime;
+
+          ChromiumTabInfo targetTab = (ChromiumTabInfo) findTargetTab(
+              browserTabChooser,
+              tabs,
+              timedOut);
+          if (targetTab != null || timedOut && runtimeProcess == null) {
+            return targetTab;
+          }
+
+          if (watcher != null) {
+            // Wake up now and then to check on the browser process.
+            watcher.awaitChange(version, Math.max(
+                1,
+                Math.min(MAX_TAB_RETRY_DELAY, endTime - System.currentTimeMillis())));
+          }
+        } catch (IOException exception) {
+          if (watcher != null) {
+            watcher.close();
+            watcher = null;
+          }
+
+          if (System.currentTimeMillis() > endTime) {
+            throw exception;
+          }
         }
-      }
 
-      if (runtimeProcess != null && System.currentTimeMillis() > endTime) {
-        throw new IOException("Timed out trying to connect to Chrome");
-      }
+        if (runtimeProcess != null && System.currentTimeMillis() > endTime) {
+          throw new IOException("Timed out trying to connect to Chrome");
+        }
 
-      sleep(25);
+        if (watcher == null) {
+          sleep((int) retryDelay);
+          retryDelay = Math.min(retryDelay * 2, MAX_TAB_RETRY_DELAY);
+        }
+      }
+    } finally {
+      if (watcher != null) {
+        watcher.close();
+      }
     }
   }
 
@@ -786,6 +905,16 @@ public class BrowserManager {
     return dataDir;
   }
 
+  /**
+   * @return what a browser started for the pool has to be started with again to be reused, apart
+   *         from its DevTools port and its initial page
+   */
+  private String getPoolSignature(SDBGLaunchConfigWrapper launchConfig,
+      List<String> extraArguments) throws CoreException {
+    return getBrowserExecutable().getAbsolutePath() + " " + extraArguments + " "
+        + Arrays.asList(launchConfig.getArgumentsAsArray()) + " " + launchConfig.getEnvironment();
+  }
+
   private String getProcessStreamMessage(String output) {
     StringBuilder msg = new StringBuilder();
 
@@ -814,6 +943,127 @@ public class BrowserManager {
     }
   }
 
+  /**
+   * Debugs the url in a new tab of the browser kept running for the launch configuration, starting
+   * the browser first if there is none yet. Terminating the launch closes the tab only.
+   */
+  private void launchInPooledBrowser(ILaunch launch, SDBGLaunchConfigWrapper launchConfig,
+      IResourceResolver resourceResolver, IBrowserTabChooser browserTabChooser, String url,
+      IProgressMonitor monitor, List<String> extraCommandLineArgs, LogTimer timer)
+      throws CoreException {
+    String name = launchConfig.getConfig().getName();
+    String signature = getPoolSignature(launchConfig, extraCommandLineArgs);
+
+    PooledBrowser browser = pooledBrowsers.get(name);
+
+    if (browser != null && (!browser.isAlive() || !browser.getSignature().equals(signature))) {
+      pooledBrowsers.remove(name);
+      browser.dispose();
+      browser = null;
+    }
+
+    if (browser == null) {
+      StringBuilder processDescription = new StringBuilder();
+
+      int[] devToolsPortNumberHolder = new int[1];
+      Process process = startNewBrowserProcess(
+          launchConfig,
+          url,
+          monitor,
+          true/*enableDebugging*/,
+          processDescription,
+          extraCommandLineArgs,
+          browserDataDirName + "-" + name.replaceAll("[^A-Za-z0-9_.-]", "_"),
+          devToolsPortNumberHolder);
+      ListeningStream browserOutput = readFromProcessPipes(process.getInputStream());
+
+      ChromiumTargetWatcher watcher = connectTargetWatcher(
+          process,
+          devToolsPortNumberHolder[0],
+          browserOutput);
+
+      if (watcher == null) {
+        trace("The browser does not support the Target domain; it cannot be kept running");
+
+        // Debug it as a browser started without the pool, in its initial tab.
+        browserProcess = process;
+
+        connectToChromiumDebug(
+            getBrowserExecutable().getName(),
+            launch,
+            launchConfig,
+            url,
+            monitor,
+            process,
+            timer,
+            true/*enableBreakpoints*/,
+            null,
+            devToolsPortNumberHolder[0],
+            20 * 1000L/*maxStartupDelay*/,
+            browserOutput,
+            processDescription.toString(),
+            resourceResolver,
+            browserTabChooser,
+            false/*remote*/);
+        return;
+      }
+
+      browser = new PooledBrowser(
+          process,
+          devToolsPortNumberHolder[0],
+          browserOutput,
+          processDescription.toString(),
+          signature,
+          watcher);
+      pooledBrowsers.put(name, browser);
+    } else {
+      monitor.worked(1);
+    }
+
+    final PooledBrowser.Tab tab;
+
+    try {
+      tab = browser.openTab(url);
+    } catch (IOException e) {
+      throw new CoreException(new Status(
+          IStatus.ERROR,
+          SDBGDebugCorePlugin.PLUGIN_ID,
+          "Could not open a tab in the browser: " + e.getMessage(),
+          e));
+    }
+
+    connectToChromiumDebug(
+        getBrowserExecutable().getName(),
+        launch,
+        launchConfig,
+        url,
+        monitor,
+        tab,
+        timer,
+        true/*enableBreakpoints*/,
+        null,
+        browser.getPort(),
+        20 * 1000L/*maxStartupDelay*/,
+        browser.getOutput(),
+        browser.getDescription(),
+        resourceResolver,
+        new IBrowserTabChooser() {
+          @Override
+          public IBrowserTabInfo chooseTab(List<? extends IBrowserTabInfo> tabs) {
+            for (IBrowserTabInfo info : tabs) {
+              String webSocketUrl = ((ChromiumTabInfo) info).getWebSocketDebuggerUrl();
+
+              if (webSocketUrl != null && webSocketUrl.endsWith("/" + tab.getTargetId())) {
+                return info;
+              }
+            }
+
+            return null;
+          }
+        },
+        false/*remote*/);
+  }
+
   private ListeningStream readFromProcessPipes(final InputStream in) {
     final ListeningStream output = new ListeningStream();
 
@@ -869,9 +1119,10 @@ public class BrowserManager {
    * @param browserName
    * @throws CoreException
    */
-  private ListeningStream startNewBrowserProcess(SDBGLaunchConfigWrapper launchConfig, String url,
+  private Process startNewBrowserProcess(SDBGLaunchConfigWrapper launchConfig, String url,
       IProgressMonitor monitor, boolean enableDebugging, StringBuilder argDescription,
-      List<String> extraArguments, int[] devToolsPortNumberHolder) throws CoreException {
+      List<String> extraArguments, String dataDirName, int[] devToolsPortNumberHolder)
+      throws CoreException {
 
     Process process = null;
     monitor.worked(1);
@@ -906,7 +1157,7 @@ public class BrowserManager {
     }
 
     List<String> arguments = buildArgumentsList(launchConfig, enableDebugging && url != null
-        ? INITIAL_PAGE : url, devToolsPortNumber, extraArguments);
+        ? INITIAL_PAGE : url, devToolsPortNumber, extraArguments, dataDirName);
     builder.command(arguments);
     builder.redirectErrorStream(true);
 
@@ -923,9 +1174,7 @@ public class BrowserManager {
           "Could not launch browser: " + e.toString()));
     }
 
-    browserProcess = process;
-
-    return readFromProcessPipes(browserProcess.getInputStream());
+    return process;
   }
 
   private void terminateExistingBrowserProcess() {
@@ -32,19 +32,30 @@ import org.eclipse.core.resources.ResourcesPlugin;
 public class LaunchConfigResourceResolver implements IResourceResolver {
   private SDBGLaunchConfigWrapper wrapper;
 
+  private ResourceLookupCache<String, IResource> urlResources =
+      new ResourceLookupCache<String, IResource>();
+
+  private ResourceLookupCache<File, String> fileUrls = new ResourceLookupCache<File, String>();
+
   public LaunchConfigResourceResolver(SDBGLaunchConfigWrapper wrapper) {
     this.wrapper = wrapper;
   }
 
   @Override
   public String getUrlForFile(File file) {
-    IFile[] files = ResourcesPlugin.getWorkspace().getRoot().findFilesForLocationURI(file.toURI());
-
-    if (files.length > 0) {
-      return getUrlForResource(files[0]);
-    } else {
-      return null;
-    }
+    return fileUrls.get(file, new ResourceLookupCache.Lookup<File, String>() {
+      @Override
+      public String lookup(File key) {
+        IFile[] files = ResourcesPlugin.getWorkspace().getRoot().findFilesForLocationURI(
+            key.toURI());
+
+        if (files.length > 0) {
+          return getUrlForResource(files[0]);
+        } else {
+          return null;
+        }
+      }
+    });
   }
 
   @Override
@@ -96,25 +107,12 @@ public class LaunchConfigResourceResolver implements IResourceResolver {
 
   @Override
   public IResource resolveUrl(String url) {
-    try {
-      URI uri = new URI(url);
-      String filePath = uri.getPath();
-      IContainer sourceDirectory = getSourceContainer();
-
-      if (sourceDirectory == null) {
-        return null;
-      }
-
-      IResource resource = sourceDirectory.findMember(filePath);
-
-      if (resource.exists()) {
-        return resource;
+    return urlResources.get(url, new ResourceLookupCache.Lookup<String, IResource>() {
+      @Override
+      public IResource lookup(String key) {
+        return findResource(key);
       }
-
-      return null;
-    } catch (Throwable t) {
-      return null;
-    }
+    });
   }
 
   private String calcRelPath(IContainer container, IResource resource) {
@@ -140,6 +138,28 @@ public class LaunchConfigResourceResolver implements IResourceResolver {
     }
   }
 
+  private IResource findResource(String url) {
+    try {
+      URI uri = new URI(url);
+      String filePath = uri.getPath();
+      IContainer sourceDirectory = getSourceContainer();
+
+      if (sourceDirectory == null) {
+        return null;
+      }
+
+      IResource resource = sourceDirectory.findMember(filePath);
+
+      if (resource.exists()) {
+        return resource;
+      }
+
+      return null;
+    } catch (Throwable t) {
+      return null;
+    }
+  }
+
   private IContainer getSourceContainer() {
     return wrapper.getProject();
   }
@@ -46,6 +46,13 @@ class ListeningStream {
     }
   }
 
+  /**
+   * Discards the text kept so far, so that a new listener is not passed it.
+   */
+  public synchronized void clear() {
+    buffer.setLength(0);
+  }
+
   public synchronized void setListener(StreamListener l) {
     listener = l;
 
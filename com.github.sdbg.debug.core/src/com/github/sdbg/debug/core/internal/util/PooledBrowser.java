@@ -0,0 +1,256 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.util;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.ChromiumTargetWatcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * A browser kept running by {@link BrowserManager} for a launch configuration, in which every
+ * launch of it is debugged in a new tab. The tab is opened in a browser context of its own, so it
+ * starts with an empty cache and storage, and closing it leaves the browser running for the next
+ * launch.
+ */
+class PooledBrowser {
+  /**
+   * A tab opened for a launch, which stands in for the browser process in the debug model: it is
+   * terminated when the tab is closed or the browser exits, and destroying it closes the tab only.
+   */
+  class Tab extends Process {
+    private String targetId;
+    private String browserContextId;
+
+    // Guarded by this
+    private boolean closed;
+
+    private Tab(String targetId, String browserContextId) {
+      this.targetId = targetId;
+      this.browserContextId = browserContextId;
+    }
+
+    @Override
+    public void destroy() {
+      synchronized (this) {
+        if (closed) {
+          return;
+        }
+
+        closed = true;
+      }
+
+      try {
+        if (browserContextId != null) {
+          // Closes the tab, and discards its cache and storage.
+          watcher.sendCommand(
+              "Target.disposeBrowserContext",
+              new JSONObject().put("browserContextId", browserContextId));
+        } else {
+          watcher.sendCommand("Target.closeTarget", new JSONObject().put("targetId", targetId));
+        }
+      } catch (IOException e) {
+        // The browser is gone already
+      } catch (JSONException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    public int exitValue() {
+      if (!isClosed()) {
+        throw new IllegalThreadStateException("The tab is open");
+      }
+
+      return 0;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      // The output of the browser is read by BrowserManager, for all the tabs.
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    public String getTargetId() {
+      return targetId;
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+      try {
+        while (!isClosed()) {
+          // Wake up now and then to check on the browser process.
+          watcher.awaitChange(watcher.getVersion(), EXIT_POLL_DELAY);
+        }
+      } catch (IOException e) {
+        // The browser closed the connection, as it exited
+        synchronized (this) {
+          closed = true;
+        }
+      }
+
+      return 0;
+    }
+
+    private synchronized boolean isClosed() {
+      // The browser reports a target before Target.createTarget returns, so a tab missing from the
+      // watcher has been closed. Unqualified, isAlive() is the Process.isAlive() of this tab.
+      if (!closed && (!PooledBrowser.this.isAlive() || !watcher.hasTarget(targetId))) {
+        closed = true;
+      }
+
+      return closed;
+    }
+  }
+
+  private static final long EXIT_POLL_DELAY = 500;
+
+  private static boolean isProcessTerminated(Process process) {
+    try {
+      process.exitValue();
+      return true;
+    } catch (IllegalThreadStateException e) {
+      return false;
+    }
+  }
+
+  private Process process;
+  private int port;
+  private ListeningStream output;
+  private String description;
+  private String signature;
+  private ChromiumTargetWatcher watcher;
+
+  private Tab tab;
+
+  /**
+   * @param signature identifies the command line the browser was started with, apart from its port
+   *          and initial page, to tell if a later launch can reuse it
+   */
+  PooledBrowser(Process process, int port, ListeningStream output, String description,
+      String signature, ChromiumTargetWatcher watcher) {
+    this.process = process;
+    this.port = port;
+    this.output = output;
+    this.description = description;
+    this.signature = signature;
+    this.watcher = watcher;
+  }
+
+  /**
+   * Closes the browser.
+   */
+  void dispose() {
+    watcher.close();
+
+    if (!isProcessTerminated(process)) {
+      process.destroy();
+    }
+  }
+
+  String getDescription() {
+    return description;
+  }
+
+  ListeningStream getOutput() {
+    return output;
+  }
+
+  int getPort() {
+    return port;
+  }
+
+  String getSignature() {
+    return signature;
+  }
+
+  boolean isAlive() {
+    return !isProcessTerminated(process);
+  }
+
+  /**
+   * Opens a blank tab for a launch of the url, closing the tab of the previous launch, as a launch
+   * without the pool would kill the browser it ran in.
+   */
+  Tab openTab(String url) throws IOException {
+    if (tab != null) {
+      tab.destroy();
+      tab = null;
+    }
+
+    output.clear();
+
+    try {
+      String browserContextId = null;
+
+      try {
+        browserContextId = watcher.sendCommand("Target.createBrowserContext", null).getString(
+            "browserContextId");
+      } catch (IOException e) {
+        // Browsers before Chrome 63 have a single context, which is cleared for the url instead;
+        // their HTTP cache cannot be cleared from the browser target.
+        clearStorage(url);
+      }
+
+      JSONObject params = new JSONObject().put("url", "about:blank");
+      if (browserContextId != null) {
+        params.put("browserContextId", browserContextId);
+      }
+
+      tab = new Tab(
+          watcher.sendCommand("Target.createTarget", params).getString("targetId"),
+          browserContextId);
+
+      return tab;
+    } catch (JSONException e) {
+      throw new IOException(e);
+    }
+  }
+
+  private void clearStorage(String url) throws IOException, JSONException {
+    URI uri = URI.create(url);
+    if (uri.getHost() == null) {
+      return;
+    }
+
+    String origin = uri.getScheme() + "://" + uri.getHost()
+        + (uri.getPort() != -1 ? ":" + uri.getPort() : "");
+
+    try {
+      watcher.sendCommand(
+          "Storage.clearDataForOrigin",
+          new JSONObject().put("origin", origin).put("storageTypes", "all"));
+    } catch (IOException e) {
+      // Not supported either; the tab keeps the storage of the previous launch
+    }
+  }
+}
@@ -25,16 +25,26 @@ import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.ResourcesPlugin;
 import org.eclipse.core.runtime.CoreException;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class to make listening for resource change events easier.
  */
 public class ResourceChangeManager implements IResourceChangeListener {
+  /**
+   * The delta flags, on a resource that is neither added nor removed, which change where resources
+   * can be found.
+   */
+  private static final int STRUCTURE_FLAGS = IResourceDelta.OPEN | IResourceDelta.MOVED_FROM
+      | IResourceDelta.MOVED_TO | IResourceDelta.REPLACED;
+
   private static ResourceChangeManager manager;
 
-  public static ResourceChangeManager getManager() {
+  private static AtomicLong structureStamp = new AtomicLong();
+
+  public static synchronized ResourceChangeManager getManager() {
     if (manager == null) {
       manager = new ResourceChangeManager();
     }
@@ -42,20 +52,30 @@ public class ResourceChangeManager implements IResourceChangeListener {
     return manager;
   }
 
-  public static void removeChangeParticipant(ResourceChangeParticipant listener) {
+  /**
+   * Return a stamp which changes whenever a resource is added, removed or moved, or a project is
+   * opened or closed. Changes to the content of files leave it alone. It only tracks changes while
+   * the manager exists; see {@link #getManager()}.
+   */
+  public static long getStructureStamp() {
+    return structureStamp.get();
+  }
+
+  public static synchronized void removeChangeParticipant(ResourceChangeParticipant listener) {
     if (manager != null) {
       manager.listeners.remove(listener);
     }
   }
 
-  public static void shutdown() {
+  public static synchronized void shutdown() {
     if (manager != null) {
       manager.dispose();
       manager = null;
     }
   }
 
-  private List<ResourceChangeParticipant> listeners = new ArrayList<ResourceChangeParticipant>();
+  private List<ResourceChangeParticipant> listeners =
+      new CopyOnWriteArrayList<ResourceChangeParticipant>();
 
   private ResourceChangeManager() {
     ResourcesPlugin.getWorkspace().addResourceChangeListener(this);
@@ -67,20 +87,31 @@ public class ResourceChangeManager implements IResourceChangeListener {
 
   @Override
   public void resourceChanged(IResourceChangeEvent event) {
-    if (listeners.size() == 0) {
-      return;
-    }
-
     if (event.getDelta() == null) {
       return;
     }
 
+    final boolean notify = !listeners.isEmpty();
+
     try {
       event.getDelta().accept(new IResourceDeltaVisitor() {
+        private boolean structureChanged;
+
         @Override
         public boolean visit(IResourceDelta delta) throws CoreException {
           IResource resource = delta.getResource();
 
+          if (!structureChanged && isStructureChange(delta)) {
+            // One change of the stamp covers the whole event.
+            structureChanged = true;
+            structureStamp.incrementAndGet();
+          }
+
+          if (!notify) {
+            // Only the stamp is wanted; stop walking once it has changed.
+            return !structureChanged;
+          }
+
           if (resource instanceof IFile) {
             IFile file = (IFile) resource;
 
@@ -131,6 +162,14 @@ public class ResourceChangeManager implements IResourceChangeListener {
     }
   }
 
+  private boolean isStructureChange(IResourceDelta delta) {
+    if (delta.getKind() == IResourceDelta.ADDED || delta.getKind() == IResourceDelta.REMOVED) {
+      return true;
+    }
+
+    return delta.getKind() == IResourceDelta.CHANGED && (delta.getFlags() & STRUCTURE_FLAGS) != 0;
+  }
+
   private void dispose() {
     ResourcesPlugin.getWorkspace().removeResourceChangeListener(this);
   }
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The results of a workspace lookup, such as a url to the resource it names, or a resource to its
+ * url. These lookups run for every script parsed, breakpoint set and stack frame shown.
+ * <p>
+ * Results, including failed lookups, are kept until a resource is added, removed or moved, or a
+ * project is opened or closed, as tracked by {@link ResourceChangeManager#getStructureStamp()}.
+ * Changes to the content of files don't affect them. The least recently used results are dropped
+ * once the cache is full.
+ */
+public class ResourceLookupCache<K, V> {
+
+  /**
+   * The lookup whose results are cached.
+   */
+  public static interface Lookup<K, V> {
+    /**
+     * @return the value for the given key, or null if there is none
+     */
+    public V lookup(K key);
+  }
+
+  private static final int DEFAULT_MAX_SIZE = 4096;
+
+  private final int maxSize;
+
+  private Map<K, V> entries;
+
+  private long stamp;
+
+  private long hitCount;
+  private long missCount;
+
+  public ResourceLookupCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public ResourceLookupCache(int maxSize) {
+    this.maxSize = maxSize;
+
+    entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > ResourceLookupCache.this.maxSize;
+      }
+    };
+
+    // Make sure changes to the workspace are being tracked.
+    ResourceChangeManager.getManager();
+
+    stamp = ResourceChangeManager.getStructureStamp();
+  }
+
+  /**
+   * Drop all the cached results.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * Return the cached result for the given key, or run the lookup and cache its result. The lookup
+   * is run without holding the cache's lock.
+   */
+  public V get(K key, Lookup<K, V> lookup) {
+    long currentStamp = ResourceChangeManager.getStructureStamp();
+
+    synchronized (this) {
+      if (stamp != currentStamp) {
+        entries.clear();
+        stamp = currentStamp;
+      }
+
+      if (entries.containsKey(key)) {
+        hitCount++;
+
+        return entries.get(key);
+      }
+
+      missCount++;
+    }
+
+    V value = lookup.lookup(key);
+
+    synchronized (this) {
+      // Don't keep a result the workspace may have changed under.
+      if (stamp == currentStamp && ResourceChangeManager.getStructureStamp() == currentStamp) {
+        entries.put(key, value);
+      }
+    }
+
+    return value;
+  }
+
+  /**
+   * @return the number of lookups answered from the cache
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return the number of lookups run
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "ResourceLookupCache[entries=" + entries.size() + ", hits=" + hitCount + ", misses="
+        + missCount + "]";
+  }
+
+}
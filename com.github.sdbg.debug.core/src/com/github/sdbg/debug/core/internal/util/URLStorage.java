@@ -33,7 +33,8 @@ public class URLStorage extends PlatformObject implements IStorage {
       if (other.url != null) {
         return false;
       }
-    } else if (!url.equals(other.url)) {
+    } else if (other.url == null || !url.toExternalForm().equals(other.url.toExternalForm())) {
+      // URL.equals() resolves the host names.
       return false;
     }
     return true;
@@ -66,7 +67,7 @@ public class URLStorage extends PlatformObject implements IStorage {
   public int hashCode() {
     final int prime = 31;
     int result = 1;
-    result = prime * result + ((url == null) ? 0 : url.hashCode());
+    result = prime * result + ((url == null) ? 0 : url.toExternalForm().hashCode());
     return result;
   }
 
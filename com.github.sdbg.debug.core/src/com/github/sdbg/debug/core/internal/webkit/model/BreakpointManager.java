@@ -93,6 +93,10 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
 
   private WebkitDebugTarget debugTarget;
 
+  /**
+   * Used from the source map parser threads as well as the debugger connection and UI threads;
+   * this map and the two collections below are guarded by this map.
+   */
   private Map<IBreakpoint, List<String>> breakpointToIdMap = new HashMap<IBreakpoint, List<String>>();
 
   private Map<String, IBreakpoint> breakpointsToUpdateMap = new HashMap<String, IBreakpoint>();
@@ -128,7 +132,7 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
   public void addBreakpointsConcerningScript(IStorage script) {
     SourceMapManager sourceMapManager = debugTarget.getSourceMapManager();
     for (String path : sourceMapManager.getSourcePaths(script)) {
-      for (IBreakpoint breakpoint : new ArrayList<IBreakpoint>(breakpointToIdMap.keySet())) {
+      for (IBreakpoint breakpoint : getTrackedBreakpoints()) {
         if (!isJSBreakpoint(breakpoint) && path.equals(getBreakpointPath(breakpoint))) {
           breakpointAdded(breakpoint);
         }
@@ -155,8 +159,13 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
 
     // We generate this change event in the handleBreakpointResolved() method - ignore one
     // instance of the event.
-    if (ignoredBreakpoints.contains(breakpoint)) {
-      ignoredBreakpoints.remove(breakpoint);
+    boolean ignored;
+
+    synchronized (breakpointToIdMap) {
+      ignored = ignoredBreakpoints.remove(breakpoint);
+    }
+
+    if (ignored) {
       return;
     }
 
@@ -169,12 +178,20 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
   @Override
   public void breakpointRemoved(IBreakpoint breakpoint, IMarkerDelta delta) {
     if (debugTarget.supportsBreakpoint(breakpoint)) {
-      List<String> breakpointIds = breakpointToIdMap.remove(breakpoint);
+      List<String> breakpointIds;
+
+      synchronized (breakpointToIdMap) {
+        breakpointIds = breakpointToIdMap.remove(breakpoint);
+
+        if (breakpointIds != null) {
+          for (String breakpointId : breakpointIds) {
+            breakpointsToUpdateMap.remove(breakpointId);
+          }
+        }
+      }
 
       if (breakpointIds != null) {
         for (String breakpointId : breakpointIds) {
-          breakpointsToUpdateMap.remove(breakpointId);
-
           try {
             debugTarget.getWebkitConnection().getDebugger().removeBreakpoint(breakpointId);
           } catch (IOException exception) {
@@ -204,14 +221,20 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
     // Null check for when the editor is shutting down.
     if (DebugPlugin.getDefault() != null) {
       if (deleteAll) {
-        try {
-          for (List<String> ids : breakpointToIdMap.values()) {
-            if (ids != null) {
-              for (String id : ids) {
-                debugTarget.getWebkitConnection().getDebugger().removeBreakpoint(id);
-              }
+        List<String> ids = new ArrayList<String>();
+
+        synchronized (breakpointToIdMap) {
+          for (List<String> breakpointIds : breakpointToIdMap.values()) {
+            if (breakpointIds != null) {
+              ids.addAll(breakpointIds);
             }
           }
+        }
+
+        try {
+          for (String id : ids) {
+            debugTarget.getWebkitConnection().getDebugger().removeBreakpoint(id);
+          }
         } catch (IOException exception) {
           if (!debugTarget.isTerminated()) {
             SDBGDebugCorePlugin.logError(exception);
@@ -273,7 +296,11 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
   @Override
   public void handleBreakpointResolved(WebkitBreakpoint webkitBreakpoint) {
     try {
-      IBreakpoint bp = breakpointsToUpdateMap.get(webkitBreakpoint.getBreakpointId());
+      IBreakpoint bp;
+
+      synchronized (breakpointToIdMap) {
+        bp = breakpointsToUpdateMap.get(webkitBreakpoint.getBreakpointId());
+      }
 
       if (bp != null && bp instanceof ILineBreakpoint) {
         ILineBreakpoint breakpoint = (ILineBreakpoint) bp;
@@ -281,7 +308,9 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
         int eclipseLine = WebkitLocation.webkitToElipseLine(webkitBreakpoint.getLocation().getLineNumber());
 
         if (breakpoint.getLineNumber() != eclipseLine) {
-          ignoredBreakpoints.add(breakpoint);
+          synchronized (breakpointToIdMap) {
+            ignoredBreakpoints.add(breakpoint);
+          }
 
           String message = "[breakpoint in "
               + (breakpoint instanceof SDBGBreakpoint ? ((SDBGBreakpoint) breakpoint).getName()
@@ -299,7 +328,7 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
 
   @Override
   public void handleGlobalObjectCleared() {
-    for (IBreakpoint breakpoint : new ArrayList<IBreakpoint>(breakpointToIdMap.keySet())) {
+    for (IBreakpoint breakpoint : getTrackedBreakpoints()) {
       if (!isJSBreakpoint(breakpoint)) {
     	// This excercise is necessary so that the V8 breakpoints are removed 
     	// and re-added later when the sourcemaps are re-parsed
@@ -313,7 +342,7 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
   public void removeBreakpointsConcerningScript(IStorage script) {
     SourceMapManager sourceMapManager = debugTarget.getSourceMapManager();
     for (String path : sourceMapManager.getSourcePaths(script)) {
-      for (IBreakpoint breakpoint : new ArrayList<IBreakpoint>(breakpointToIdMap.keySet())) {
+      for (IBreakpoint breakpoint : getTrackedBreakpoints()) {
         if (!isJSBreakpoint(breakpoint) && path.equals(getBreakpointPath(breakpoint))) {
           breakpointRemoved(breakpoint, null/*delta*/);
         }
@@ -448,6 +477,16 @@ public class BreakpointManager implements IBreakpointListener, ISDBGBreakpointMa
     return debugTarget.getResourceResolver();
   }
 
+  /**
+   * Breakpoints are re-added from the source map parser threads as well as the debugger connection
+   * thread, so work on a snapshot of the tracked breakpoints.
+   */
+  private List<IBreakpoint> getTrackedBreakpoints() {
+    synchronized (breakpointToIdMap) {
+      return new ArrayList<IBreakpoint>(breakpointToIdMap.keySet());
+    }
+  }
+
   private boolean isJSBreakpoint(IBreakpoint breakpoint) {
     return breakpoint instanceof SDBGBreakpoint; // TODO: Extend IBreakpointPathResolver so that it has a say on that as well 
   }
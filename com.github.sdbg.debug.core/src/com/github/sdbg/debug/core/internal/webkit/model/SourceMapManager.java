@@ -17,6 +17,7 @@ package com.github.sdbg.debug.core.internal.webkit.model;
 import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 import com.github.sdbg.debug.core.internal.source.WorkspaceSourceContainer;
 import com.github.sdbg.debug.core.internal.sourcemaps.SourceMap;
+import com.github.sdbg.debug.core.internal.sourcemaps.SourceMapContentStorage;
 import com.github.sdbg.debug.core.internal.sourcemaps.SourceMapInfo;
 import com.github.sdbg.debug.core.internal.util.URLStorage;
 import com.github.sdbg.debug.core.model.IResourceResolver;
@@ -30,10 +31,24 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
@@ -99,10 +114,158 @@ public class SourceMapManager {
     }
   }
 
+  /**
+   * A source map which has been published for a script, along with its source names relativised
+   * against the map location.
+   */
+  private static class LoadedMap {
+    private IStorage script;
+    private IStorage mapStorage;
+    private SourceMap map;
+    private String[] relativePaths;
+
+    LoadedMap(IStorage script, IStorage mapStorage, SourceMap map, String[] relativePaths) {
+      this.script = script;
+      this.mapStorage = mapStorage;
+      this.map = map;
+      this.relativePaths = relativePaths;
+    }
+  }
+
+  /**
+   * One source of a loaded map, as found in the index of map targets.
+   */
+  private static class MapTarget {
+    private LoadedMap loadedMap;
+    private int sourceIndex;
+
+    MapTarget(LoadedMap loadedMap, int sourceIndex) {
+      this.loadedMap = loadedMap;
+      this.sourceIndex = sourceIndex;
+    }
+
+    String getSourceName() {
+      return loadedMap.map.getSourceNames()[sourceIndex];
+    }
+  }
+
+  /**
+   * Parses the source map of one script on a worker thread, and publishes it if the script has not
+   * been parsed again (or the global object cleared) in the meantime.
+   */
+  private class ParseTask implements Runnable {
+    private IStorage script;
+    private String sourceMapUrl;
+    private Runnable completion;
+
+    ParseTask(IStorage script, String sourceMapUrl, Runnable completion) {
+      this.script = script;
+      this.sourceMapUrl = sourceMapUrl;
+      this.completion = completion;
+    }
+
+    @Override
+    public void run() {
+      if (!isPending()) {
+        return;
+      }
+
+      boolean published = false;
+
+      try {
+        trace("Checking script for sourcemaps: " + script);
+
+        IStorage mapStorage = findSourceMap(script, sourceMapUrl);
+        SourceMap map = parseSourceMap(mapStorage);
+        LoadedMap loadedMap = null;
+
+        if (map != null) {
+          String[] sourceNames = map.getSourceNames();
+          String[] relativePaths = new String[sourceNames.length];
+
+          for (int i = 0; i < sourceNames.length; i++) {
+            relativePaths[i] = relativisePath(mapStorage, sourceNames[i]);
+          }
+
+          loadedMap = new LoadedMap(script, mapStorage, map, relativePaths);
+        }
+
+        lock.writeLock().lock();
+
+        try {
+          if (pendingScripts.get(script) == this) {
+            pendingScripts.remove(script);
+
+            if (loadedMap != null) {
+              addLoadedMap(loadedMap);
+              published = true;
+              trace("Parsing sourcemap succeeded: " + mapStorage);
+            }
+          }
+        } finally {
+          lock.writeLock().unlock();
+        }
+      } catch (RuntimeException e) {
+        lock.writeLock().lock();
+
+        try {
+          if (pendingScripts.get(script) == this) {
+            pendingScripts.remove(script);
+          }
+        } finally {
+          lock.writeLock().unlock();
+        }
+
+        SDBGDebugCorePlugin.logError("Unable to parse the sourcemap of " + script, e);
+      }
+
+      if (published && completion != null) {
+        completion.run();
+      }
+    }
+
+    private boolean isPending() {
+      lock.readLock().lock();
+
+      try {
+        return pendingScripts.get(script) == this;
+      } finally {
+        lock.readLock().unlock();
+      }
+    }
+  }
+
+  /**
+   * The maximum number of source maps which are downloaded and parsed concurrently.
+   */
+  private static final int MAX_PARSER_THREADS = Math.max(
+      2,
+      Math.min(4, Runtime.getRuntime().availableProcessors()));
+
   private IResourceResolver resourceResolver;
 
-  private Map<IStorage, IStorage> sourceMapsStorages = new HashMap<IStorage, IStorage>();
-  private Map<IStorage, SourceMap> sourceMaps = new HashMap<IStorage, SourceMap>();
+  /**
+   * Guards the loaded maps, the index of map targets and the pending scripts. Lookups vastly
+   * outnumber updates, which only happen when a script is parsed or the global object cleared.
+   */
+  private ReadWriteLock lock = new ReentrantReadWriteLock();
+
+  private Map<IStorage, LoadedMap> loadedMaps = new HashMap<IStorage, LoadedMap>();
+
+  /**
+   * The sources of all the loaded maps, keyed by their relativised path.
+   */
+  private Map<String, List<MapTarget>> mapTargets = new HashMap<String, List<MapTarget>>();
+
+  /**
+   * The latest parse request for each script whose source map has not been published yet.
+   */
+  private Map<IStorage, ParseTask> pendingScripts = new HashMap<IStorage, ParseTask>();
+
+  private ExecutorService parserExecutor;
+
+  // Guarded by the write lock
+  private boolean disposed;
 
   static boolean isTracing() {
     return Trace.isTracing(Trace.SOURCEMAPS);
@@ -114,9 +277,40 @@ public class SourceMapManager {
 
   public SourceMapManager(IResourceResolver resourceResolver) {
     this.resourceResolver = resourceResolver;
+
+    final AtomicInteger threadCount = new AtomicInteger();
+
+    ThreadPoolExecutor executor = new ThreadPoolExecutor(
+        MAX_PARSER_THREADS,
+        MAX_PARSER_THREADS,
+        30,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Source map parser "
+                + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    executor.allowCoreThreadTimeOut(true);
+
+    parserExecutor = executor;
   }
 
   public void dispose() {
+    lock.writeLock().lock();
+
+    try {
+      disposed = true;
+      pendingScripts.clear();
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    parserExecutor.shutdownNow();
   }
 
   /**
@@ -133,28 +327,24 @@ public class SourceMapManager {
       trace("Get mappings for " + storage + ":" + line + ":" + column);
     }
 
-    synchronized (sourceMaps) {
-      IStorage mapStorage = sourceMapsStorages.get(storage);
-      if (mapStorage != null) {
-        SourceMap map = sourceMaps.get(mapStorage);
-        if (map != null) {
-          SourceMapInfo mapping = map.getMappingFor(line, column);
-
-          if (mapping != null) {
-            SourceLocation location = new SourceLocation(
-                resolveStorage(mapStorage, mapping.getFile()),
-                relativisePath(mapStorage, mapping.getFile()),
-                mapping.getLine(),
-                mapping.getColumn(),
-                mapping.getName());
-
-            if (isTracing()) {
-              trace("Found mapping: " + location);
-            }
+    LoadedMap loadedMap = getLoadedMap(storage);
 
-            return location;
-          }
+    if (loadedMap != null) {
+      SourceMapInfo mapping = loadedMap.map.getMappingFor(line, column);
+
+      if (mapping != null) {
+        SourceLocation location = new SourceLocation(
+            resolveSource(loadedMap, mapping.getFile()),
+            relativisePath(loadedMap.mapStorage, mapping.getFile()),
+            mapping.getLine(),
+            mapping.getColumn(),
+            mapping.getName());
+
+        if (isTracing()) {
+          trace("Found mapping: " + location);
         }
+
+        return location;
       }
     }
 
@@ -176,44 +366,29 @@ public class SourceMapManager {
 
     List<SourceLocation> mappings = new ArrayList<SourceMapManager.SourceLocation>();
 
-    synchronized (sourceMaps) {
-      for (IStorage scriptStorage : sourceMapsStorages.keySet()) {
-        IStorage mapStorage = sourceMapsStorages.get(scriptStorage);
-        SourceMap map = sourceMaps.get(mapStorage);
-
-        for (String path : map.getSourceNames()) {
-          // TODO(devoncarew): the files in the maps should all be pre-resolved
-          String relativePath = relativisePath(mapStorage, path);
-          if (isTracing()
-              && (targetPath.endsWith(relativePath) || relativePath.endsWith(targetPath))) {
-            trace("Potential match: " + relativePath + "(" + mapStorage + ", " + path + ")");
-          }
-
-          if (targetPath.equals(relativePath)) {
-            List<SourceMapInfo> reverseMappings = map.getReverseMappingsFor(path, line);
-            for (SourceMapInfo reverseMapping : reverseMappings) {
-              if (reverseMapping != null) {
-                IStorage mapSource = scriptStorage; //&&&!!! map.getMapSource();
-
-                if (mapSource != null) {
-                  mappings.add(new SourceLocation(
-                      mapSource,
-                      mapSource.getFullPath().toPortableString(),
-                      reverseMapping.getLine(),
-                      reverseMapping.getColumn(),
-                      reverseMapping.getName()));
-                }
-              }
-            }
-
-            if (isTracing() && !mappings.isEmpty()) {
-              trace("Found reverse mappings: " + mappings);
-            }
-          }
+    for (MapTarget target : getMapTargets(targetPath)) {
+      List<SourceMapInfo> reverseMappings = target.loadedMap.map.getReverseMappingsFor(
+          target.getSourceName(),
+          line);
+
+      for (SourceMapInfo reverseMapping : reverseMappings) {
+        if (reverseMapping != null) {
+          IStorage mapSource = target.loadedMap.script;
+
+          mappings.add(new SourceLocation(
+              mapSource,
+              mapSource.getFullPath().toPortableString(),
+              reverseMapping.getLine(),
+              reverseMapping.getColumn(),
+              reverseMapping.getName()));
         }
       }
     }
 
+    if (isTracing() && !mappings.isEmpty()) {
+      trace("Found reverse mappings: " + mappings);
+    }
+
     return mappings;
   }
 
@@ -223,25 +398,16 @@ public class SourceMapManager {
         trace("Get source storage: " + targetPath);
       }
 
-      synchronized (sourceMaps) {
-        for (IStorage mapStorage : sourceMaps.keySet()) {
-          SourceMap map = sourceMaps.get(mapStorage);
-          for (String path : map.getSourceNames()) {
-            String relativePath = relativisePath(mapStorage, path);
-            if (isTracing()
-                && (targetPath.endsWith(relativePath) || relativePath.endsWith(targetPath))) {
-              trace("Potential match: " + relativePath + "(" + mapStorage + ", " + path + ")");
-            }
-
-            if (targetPath.equals(relativePath)) {
-              if (isTracing()) {
-                trace("Confirmed - source storage");
-              }
+      List<MapTarget> targets = getMapTargets(targetPath);
 
-              return resolveStorage(mapStorage, path);
-            }
-          }
+      if (!targets.isEmpty()) {
+        if (isTracing()) {
+          trace("Confirmed - source storage");
         }
+
+        MapTarget target = targets.get(0);
+
+        return resolveSource(target.loadedMap, target.getSourceName());
       }
     }
 
@@ -249,25 +415,13 @@ public class SourceMapManager {
   }
 
   public List<String> getSourcePaths(IStorage storage) {
-    List<String> paths = new ArrayList<String>();
-
-    synchronized (sourceMaps) {
-      IStorage mapStorage = sourceMapsStorages.get(storage);
-      if (mapStorage != null) {
-        SourceMap map = sourceMaps.get(mapStorage);
-        if (map != null) {
-          String[] sourceNames = map.getSourceNames();
+    LoadedMap loadedMap = getLoadedMap(storage);
 
-          if (sourceNames != null) {
-            for (String sourceName : sourceNames) {
-              paths.add(relativisePath(mapStorage, sourceName));
-            }
-          }
-        }
-      }
+    if (loadedMap != null) {
+      return new ArrayList<String>(Arrays.asList(loadedMap.relativePaths));
+    } else {
+      return new ArrayList<String>();
     }
-
-    return paths;
   }
 
   /**
@@ -283,15 +437,13 @@ public class SourceMapManager {
         trace("Check for map source: " + storage);
       }
 
-      synchronized (sourceMaps) {
-        boolean result = sourceMapsStorages.containsKey(storage);
+      boolean result = getLoadedMap(storage) != null;
 
-        if (isTracing() && result) {
-          trace("Confirmed - map source");
-        }
-
-        return result;
+      if (isTracing() && result) {
+        trace("Confirmed - map source");
       }
+
+      return result;
     }
 
     return false;
@@ -303,24 +455,12 @@ public class SourceMapManager {
         trace("Check for map target: " + targetPath);
       }
 
-      synchronized (sourceMaps) {
-        for (IStorage mapStorage : sourceMaps.keySet()) {
-          SourceMap map = sourceMaps.get(mapStorage);
-          for (String path : map.getSourceNames()) {
-            String relativePath = relativisePath(mapStorage, path);
-            if (isTracing()
-                && (targetPath.endsWith(relativePath) || relativePath.endsWith(targetPath))) {
-              trace("Potential match: " + relativePath + "(" + mapStorage + ", " + path + ")");
-            }
-
-            if (targetPath.equals(relativePath)) {
-              if (isTracing()) {
-                trace("Confirmed - map target");
-              }
-              return true;
-            }
-          }
+      if (!getMapTargets(targetPath).isEmpty()) {
+        if (isTracing()) {
+          trace("Confirmed - map target");
         }
+
+        return true;
       }
     }
 
@@ -328,38 +468,80 @@ public class SourceMapManager {
   }
 
   void handleGlobalObjectCleared() {
-    synchronized (sourceMaps) {
-      sourceMapsStorages.clear();
-      sourceMaps.clear();
+    lock.writeLock().lock();
+
+    try {
+      // Parses in progress belong to the previous page; they will not be published.
+      pendingScripts.clear();
+      loadedMaps.clear();
+      mapTargets.clear();
+    } finally {
+      lock.writeLock().unlock();
     }
   }
 
-  void handleScriptParsed(IStorage script, String sourceMapUrl) {
-    synchronized (sourceMaps) {
-      IStorage mapStorage = sourceMapsStorages.remove(script);
-      if (mapStorage != null) {
-        sourceMaps.remove(script);
+  /**
+   * Drop the source map currently known for the script, and find and parse its new source map on a
+   * worker thread. The completion is run on that thread once the new map has been published; it is
+   * not run if the script has no source map, or if the parse was superseded.
+   * 
+   * @param script
+   * @param sourceMapUrl the source map URL reported by the debugger, or null
+   * @param completion
+   */
+  void handleScriptParsed(IStorage script, String sourceMapUrl, Runnable completion) {
+    ParseTask task = new ParseTask(script, sourceMapUrl, completion);
+
+    lock.writeLock().lock();
+
+    try {
+      if (disposed) {
+        // Scripts are still reported while the connection closes; there is no one to map them for.
+        return;
       }
-      trace("Checking script for sourcemaps: " + script);
-      processScript(script, sourceMapUrl);
+
+      removeLoadedMap(script);
+      pendingScripts.put(script, task);
+    } finally {
+      lock.writeLock().unlock();
+    }
+
+    try {
+      parserExecutor.execute(task);
+    } catch (RejectedExecutionException e) {
+      // Disposed in the meantime
     }
   }
 
-  private SourceMap parseSourceMap(IStorage mapStorage) {
-    if (mapStorage != null) {
-      try {
-        return SourceMap.createFrom(mapStorage);
-      } catch (IOException e) {
-        throw new RuntimeException(e);
-      } catch (CoreException e) {
-        throw new RuntimeException(e);
+  /**
+   * Publish a map and index its sources. Must be called with the write lock held.
+   */
+  private void addLoadedMap(LoadedMap loadedMap) {
+    removeLoadedMap(loadedMap.script);
+
+    loadedMaps.put(loadedMap.script, loadedMap);
+
+    String[] sourceNames = loadedMap.map.getSourceNames();
+    Set<String> indexedNames = new HashSet<String>();
+
+    for (int i = 0; i < loadedMap.relativePaths.length; i++) {
+      // Skip repeated source names; they resolve to the same source.
+      if (!indexedNames.add(sourceNames[i])) {
+        continue;
       }
-    }
 
-    return null;
+      List<MapTarget> targets = mapTargets.get(loadedMap.relativePaths[i]);
+
+      if (targets == null) {
+        targets = new ArrayList<MapTarget>(1);
+        mapTargets.put(loadedMap.relativePaths[i], targets);
+      }
+
+      targets.add(new MapTarget(loadedMap, i));
+    }
   }
 
-  private void processScript(IStorage script, String sourceMapUrl) {
+  private IStorage findSourceMap(IStorage script, String sourceMapUrl) {
     try {
       if (sourceMapUrl == null) {
         BufferedReader reader;
@@ -395,21 +577,11 @@ public class SourceMapManager {
         }
       }
 
-      IStorage mapStorage;
       if (sourceMapUrl != null) {
         trace("Found sourcemap with URL: " + sourceMapUrl);
-        mapStorage = resolveStorage(script, sourceMapUrl);
+        return resolveStorage(script, sourceMapUrl);
       } else {
-        mapStorage = null;
-      }
-
-      if (mapStorage != null) {
-        SourceMap map = parseSourceMap(mapStorage);
-        if (map != null) {
-          sourceMapsStorages.put(script, mapStorage);
-          sourceMaps.put(mapStorage, map);
-          trace("Parsing sourcemap succeeded: " + mapStorage);
-        }
+        return null;
       }
     } catch (IOException e) {
       throw new RuntimeException(e);
@@ -418,6 +590,55 @@ public class SourceMapManager {
     }
   }
 
+  private LoadedMap getLoadedMap(IStorage script) {
+    lock.readLock().lock();
+
+    try {
+      return loadedMaps.get(script);
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  /**
+   * @return a snapshot of the map sources with the given relativised path
+   */
+  private List<MapTarget> getMapTargets(String targetPath) {
+    lock.readLock().lock();
+
+    try {
+      List<MapTarget> targets = mapTargets.get(targetPath);
+
+      if (targets != null) {
+        return new ArrayList<MapTarget>(targets);
+      } else {
+        return Collections.emptyList();
+      }
+    } finally {
+      lock.readLock().unlock();
+    }
+  }
+
+  private SourceMap parseSourceMap(IStorage mapStorage) {
+    if (mapStorage != null) {
+      try {
+        SDBGDebugCorePlugin plugin = SDBGDebugCorePlugin.getPlugin();
+
+        if (plugin != null) {
+          return SourceMap.createFrom(mapStorage, plugin.getSourceMapCache());
+        } else {
+          return SourceMap.createFrom(mapStorage);
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      } catch (CoreException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    return null;
+  }
+
   // TODO: It may turn out that this processing is language specific 
   // and should be assisted by the language-specific integrations
   private String relativisePath(IStorage relativeStorage, String path) {
@@ -456,6 +677,51 @@ public class SourceMapManager {
     return path;
   }
 
+  /**
+   * Drop the map of the given script, and its sources from the index. Must be called with the write
+   * lock held.
+   */
+  private void removeLoadedMap(IStorage script) {
+    LoadedMap loadedMap = loadedMaps.remove(script);
+
+    if (loadedMap == null) {
+      return;
+    }
+
+    for (String relativePath : loadedMap.relativePaths) {
+      List<MapTarget> targets = mapTargets.get(relativePath);
+
+      if (targets != null) {
+        for (Iterator<MapTarget> iter = targets.iterator(); iter.hasNext();) {
+          if (iter.next().loadedMap == loadedMap) {
+            iter.remove();
+          }
+        }
+
+        if (targets.isEmpty()) {
+          mapTargets.remove(relativePath);
+        }
+      }
+    }
+  }
+
+  /**
+   * Resolve a source of a loaded map. Sources which are not in the workspace are served from the
+   * content embedded in the map, when there is one, rather than downloaded.
+   */
+  private IStorage resolveSource(LoadedMap loadedMap, String path) {
+    IStorage storage = resolveStorage(loadedMap.mapStorage, path);
+
+    if ((storage == null || storage instanceof URLStorage)
+        && loadedMap.map.hasSourceContent(path)) {
+      return new SourceMapContentStorage(loadedMap.map, path, Path.fromPortableString(relativisePath(
+          loadedMap.mapStorage,
+          path)));
+    }
+
+    return storage;
+  }
+
   private IStorage resolveStorage(IStorage relativeStorage, String path) {
     if (path.startsWith("file:")) {
       try {
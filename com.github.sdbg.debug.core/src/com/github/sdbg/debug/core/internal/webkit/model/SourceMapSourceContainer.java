@@ -22,6 +22,7 @@ import org.eclipse.debug.core.sourcelookup.containers.AbstractSourceContainer;
 
 /**
  * An ISourceContainer that searches in active debug connections and returns remote script objects.
+ * Sources which are only available as content embedded in a source map are served from the map.
  */
 public class SourceMapSourceContainer extends AbstractSourceContainer {
   public static final String TYPE_ID = DebugPlugin.getUniqueIdentifier()
@@ -19,10 +19,12 @@ import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallback;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPropertyDescriptor;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitResult;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
 
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
@@ -39,10 +41,17 @@ class VariableCollector {
 
   private CountDownLatch latch;
 
+  private volatile boolean cancelled;
+
   private List<IVariable> variables = new ArrayList<IVariable>();
 
   private List<WebkitPropertyDescriptor> webkitProperties = new ArrayList<WebkitPropertyDescriptor>();
 
+  /**
+   * Waiting for the collection to finish; guarded by this collector.
+   */
+  private List<IVariablesCallback> callbacks = new ArrayList<IVariablesCallback>();
+
   public static VariableCollector createCollector(WebkitDebugTarget target,
       WebkitDebugVariable variable, List<WebkitRemoteObject> remoteObjects) {
     final VariableCollector collector = new VariableCollector(
@@ -52,7 +61,7 @@ class VariableCollector {
 
     for (final WebkitRemoteObject obj : remoteObjects) {
       try {
-        target.getConnection().getRuntime().getProperties(
+        target.getPropertyCache().getProperties(
             obj,
             true,
             false,
@@ -97,7 +106,7 @@ class VariableCollector {
 
     for (final WebkitRemoteObject obj : remoteObjects) {
       try {
-        target.getConnection().getRuntime().getProperties(
+        target.getPropertyCache().getProperties(
             obj,
             true,
             false,
@@ -134,6 +143,8 @@ class VariableCollector {
   public VariableCollector(WebkitDebugTarget target, List<IVariable> variables) {
     this.target = target;
     this.variables.addAll(variables);
+
+    latch = new CountDownLatch(0);
   }
 
   private VariableCollector(WebkitDebugTarget target, int work) {
@@ -147,10 +158,57 @@ class VariableCollector {
     latch = new CountDownLatch(work);
   }
 
+  /**
+   * Stop waiting for the outstanding property requests; anyone blocked in {@link #getVariables()}
+   * or waiting on a callback gets the variables collected so far. Results arriving afterwards are
+   * dropped.
+   */
+  public void cancel() {
+    cancelled = true;
+
+    List<IVariablesCallback> ready;
+
+    synchronized (this) {
+      while (latch.getCount() > 0) {
+        latch.countDown();
+      }
+
+      ready = takeCallbacks();
+    }
+
+    notifyCallbacks(ready);
+  }
+
   public IVariable[] getVariables() throws InterruptedException {
     latch.await();
 
-    return variables.toArray(new IVariable[variables.size()]);
+    synchronized (this) {
+      return variables.toArray(new IVariable[variables.size()]);
+    }
+  }
+
+  /**
+   * Get the variables once they have all been collected, without blocking the calling thread. The
+   * callback is run right away if they already have been.
+   */
+  public void getVariables(IVariablesCallback callback) {
+    IVariable[] result;
+
+    synchronized (this) {
+      if (latch.getCount() > 0) {
+        callbacks.add(callback);
+
+        return;
+      }
+
+      result = variables.toArray(new IVariable[variables.size()]);
+    }
+
+    callback.variablesComputed(result);
+  }
+
+  public boolean isCancelled() {
+    return cancelled;
   }
 
   public List<WebkitPropertyDescriptor> getWebkitProperties() throws InterruptedException {
@@ -159,11 +217,27 @@ class VariableCollector {
     return webkitProperties;
   }
 
-  private void collectFields(WebkitResult<WebkitPropertyDescriptor[]> results, boolean shouldSort,
-      boolean collectStatics, boolean isLocal) {
+  private void collectFields(WebkitResult<WebkitPropertyDescriptor[]> results,
+      boolean shouldSort, boolean collectStatics, boolean isLocal) {
+    boolean gettingStaticFields;
+
+    synchronized (this) {
+      gettingStaticFields = collectFieldsResults(results, shouldSort, collectStatics, isLocal);
+    }
+
+    if (!gettingStaticFields) {
+      worked();
+    }
+  }
+
+  /**
+   * @return whether a request for the static fields was sent, which counts the work down instead
+   */
+  private boolean collectFieldsResults(WebkitResult<WebkitPropertyDescriptor[]> results,
+      boolean shouldSort, boolean collectStatics, boolean isLocal) {
     boolean gettingStaticFields = false;
 
-    if (!results.isError()) {
+    if (!results.isError() && !cancelled) {
       WebkitPropertyDescriptor[] properties = results.getResult();
 
       if (shouldSort) {
@@ -187,29 +261,27 @@ class VariableCollector {
           // Static fields are now shown using the object inspector (Inspect Type...).
 //          if (parentVariable != null && collectStatics) {
 //            if (WebkitPropertyDescriptor.STATIC_FIELDS.equals(descriptor.getName())) {
-//              gettingStaticFields = collectStaticFields(descriptor.getValue(), latch);
+//              gettingStaticFields = collectStaticFields(descriptor.getValue());
 //            }
 //          }
         }
       }
     }
 
-    if (!gettingStaticFields) {
-      latch.countDown();
-    }
+    return gettingStaticFields;
   }
 
   @SuppressWarnings("unused")
-  private boolean collectStaticFields(final WebkitRemoteObject classInfo, final CountDownLatch latch) {
+  private boolean collectStaticFields(final WebkitRemoteObject classInfo) {
     try {
-      target.getConnection().getRuntime().getProperties(
+      target.getPropertyCache().getProperties(
           classInfo,
           true,
           false,
           new WebkitCallback<WebkitPropertyDescriptor[]>() {
             @Override
             public void handleResult(WebkitResult<WebkitPropertyDescriptor[]> result) {
-              collectStaticFieldsResults(result, latch);
+              collectStaticFieldsResults(result);
             }
           });
 
@@ -219,26 +291,27 @@ class VariableCollector {
     }
   }
 
-  private void collectStaticFieldsResults(WebkitResult<WebkitPropertyDescriptor[]> results,
-      CountDownLatch latch) {
+  private void collectStaticFieldsResults(WebkitResult<WebkitPropertyDescriptor[]> results) {
     try {
-      if (!results.isError()) {
-        for (WebkitPropertyDescriptor descriptor : sort(results.getResult())) {
-          if (descriptor.isEnumerable()) {
-            WebkitDebugVariable variable = new WebkitDebugVariable(target, descriptor);
+      synchronized (this) {
+        if (!results.isError() && !cancelled) {
+          for (WebkitPropertyDescriptor descriptor : sort(results.getResult())) {
+            if (descriptor.isEnumerable()) {
+              WebkitDebugVariable variable = new WebkitDebugVariable(target, descriptor);
 
-            variable.setIsStatic(true);
+              variable.setIsStatic(true);
 
-            if (parentVariable != null) {
-              variable.setParent(parentVariable);
-            }
+              if (parentVariable != null) {
+                variable.setParent(parentVariable);
+              }
 
-            variables.add(variable);
+              variables.add(variable);
+            }
           }
         }
       }
     } finally {
-      latch.countDown();
+      worked();
     }
   }
 
@@ -302,13 +375,59 @@ class VariableCollector {
   }
 
   private WebkitPropertyDescriptor[] sort(WebkitPropertyDescriptor[] properties) {
+    // The arrays come from the property cache and are shared; sort a copy.
+    properties = properties.clone();
+
     Arrays.sort(properties);
 
     return properties;
   }
 
+  private void notifyCallbacks(List<IVariablesCallback> ready) {
+    if (ready.isEmpty()) {
+      return;
+    }
+
+    IVariable[] result;
+
+    synchronized (this) {
+      result = variables.toArray(new IVariable[variables.size()]);
+    }
+
+    for (IVariablesCallback callback : ready) {
+      try {
+        callback.variablesComputed(result);
+      } catch (Throwable t) {
+        SDBGDebugCorePlugin.logError(t);
+      }
+    }
+  }
+
+  /**
+   * @return the callbacks to run if all the work is done, or an empty list
+   */
+  private List<IVariablesCallback> takeCallbacks() {
+    if (latch.getCount() > 0 || callbacks.isEmpty()) {
+      return Collections.emptyList();
+    }
+
+    List<IVariablesCallback> ready = callbacks;
+
+    callbacks = new ArrayList<IVariablesCallback>();
+
+    return ready;
+  }
+
   private void worked() {
-    latch.countDown();
+    List<IVariablesCallback> ready;
+
+    synchronized (this) {
+      latch.countDown();
+
+      ready = takeCallbacks();
+    }
+
+    notifyCallbacks(ready);
   }
 
 }
@@ -18,12 +18,18 @@ import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallback;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPropertyDescriptor;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitResult;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRuntime.CallArgument;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.debug.core.DebugException;
 import org.eclipse.debug.core.model.IIndexedValue;
@@ -32,15 +38,87 @@ import org.eclipse.debug.core.model.IVariable;
 /**
  * This subclass of WebkitDebugValue is used specifically for array types. The Eclipse debugging
  * framework will display arrays in groups of 100 elements if it can identify which IValues are
- * arrays.
+ * arrays. The elements are fetched a page at a time, and kept for the life of the value.
  */
 public class WebkitDebugIndexedValue extends WebkitDebugValue implements IIndexedValue {
 
+  /**
+   * The elements of one page of the array, fetched together.
+   */
+  private static class PageRequest {
+    private int start;
+    private WebkitRemoteObject[] elements;
+    private CountDownLatch latch = new CountDownLatch(1);
+    private Runnable listener;
+
+    /**
+     * @param listener run once the request is done, or null
+     */
+    PageRequest(int start, int length, Runnable listener) {
+      this.start = start;
+      this.elements = new WebkitRemoteObject[length];
+      this.listener = listener;
+    }
+
+    void done(boolean succeeded) {
+      if (!succeeded) {
+        elements = null;
+      }
+
+      latch.countDown();
+
+      if (listener != null) {
+        listener.run();
+      }
+    }
+  }
+
+  /**
+   * Elements are fetched in pages of this size, which line up with the partitions the Variables
+   * view shows arrays in.
+   */
+  static final int PAGE_SIZE = 100;
+
+  private static final long PAGE_TIMEOUT = 3000;
+
+  /**
+   * Copies a range of the array into a new array, so that its elements can be fetched with one
+   * Runtime.getProperties call.
+   */
+  private static final String SLICE_FUNCTION = "function(start, end) { "
+      + "return Array.prototype.slice.call(this, start, end); }";
+
+  /**
+   * The pages fetched so far, by page index; guarded by itself.
+   */
+  private Map<Integer, WebkitRemoteObject[]> pages = new HashMap<Integer, WebkitRemoteObject[]>();
+
   WebkitDebugIndexedValue(WebkitDebugTarget target, WebkitDebugVariable variable,
       WebkitRemoteObject value) {
     super(target, variable, value);
   }
 
+  @Override
+  public void computeVariables(final IVariablesCallback callback) {
+    computeListLength(new IListLengthCallback() {
+      @Override
+      public void listLengthComputed(int length) {
+        computeElements(length, 0, length, callback);
+      }
+    });
+  }
+
+  @Override
+  public void computeVariables(final int offset, final int length,
+      final IVariablesCallback callback) {
+    computeListLength(new IListLengthCallback() {
+      @Override
+      public void listLengthComputed(int size) {
+        computeElements(Math.max(size, offset + length), offset, length, callback);
+      }
+    });
+  }
+
   @Override
   public int getInitialOffset() {
     return 0;
@@ -53,30 +131,16 @@ public class WebkitDebugIndexedValue extends WebkitDebugValue implements IIndexe
 
   @Override
   public IVariable getVariable(int offset) throws DebugException {
-    try {
-      WebkitRemoteObject result = getIndexAt(value, offset);
-
-      if (result == null) {
-        result = WebkitRemoteObject.createNull();
-      }
-
-      return new WebkitDebugVariable(getTarget(), WebkitPropertyDescriptor.createIndexProperty(
-          offset,
-          result));
-    } catch (IOException e) {
-      throw createDebugException(e);
-    }
+    return getVariables(offset, 1)[0];
   }
 
   @Override
   public IVariable[] getVariables(int offset, int length) throws DebugException {
-    IVariable[] results = new IVariable[length];
-
-    for (int i = 0; i < length; i++) {
-      results[i] = getVariable(offset + i);
+    try {
+      return createVariables(offset, getElements(offset, length));
+    } catch (IOException e) {
+      throw createDebugException(e);
     }
-
-    return results;
   }
 
   @Override
@@ -107,32 +171,278 @@ public class WebkitDebugIndexedValue extends WebkitDebugValue implements IIndexe
     }
   }
 
-  private WebkitRemoteObject getIndexAt(WebkitRemoteObject listObject, int offset)
-      throws IOException {
-    final WebkitRemoteObject[] results = new WebkitRemoteObject[1];
+  /**
+   * Wait for each of the given requests for up to {@link #PAGE_TIMEOUT}.
+   */
+  private void awaitPages(List<PageRequest> requests) {
+    for (PageRequest request : requests) {
+      try {
+        request.latch.await(PAGE_TIMEOUT, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+    }
+  }
+
+  /**
+   * Fetch the elements in the given range without blocking the calling thread. Elements that
+   * cannot be fetched are shown as null.
+   * 
+   * @param size the length of the array
+   */
+  private void computeElements(final int size, final int offset, final int length,
+      final IVariablesCallback callback) {
+    final List<Integer> missingPages = getMissingPages(offset, length);
+
+    final Runnable finish = new Runnable() {
+      @Override
+      public void run() {
+        WebkitRemoteObject[] elements = new WebkitRemoteObject[length];
+
+        synchronized (pages) {
+          for (int i = 0; i < length; i++) {
+            int index = offset + i;
+            WebkitRemoteObject[] page = pages.get(index / PAGE_SIZE);
+
+            if (page != null && index % PAGE_SIZE < page.length) {
+              elements[i] = page[index % PAGE_SIZE];
+            }
+          }
+        }
+
+        callback.variablesComputed(createVariables(offset, elements));
+      }
+    };
+
+    if (missingPages.isEmpty()) {
+      finish.run();
+
+      return;
+    }
+
+    final AtomicInteger remaining = new AtomicInteger(missingPages.size());
+
+    Runnable listener = new Runnable() {
+      @Override
+      public void run() {
+        if (remaining.decrementAndGet() == 0) {
+          finish.run();
+        }
+      }
+    };
+
+    for (int page : missingPages) {
+      try {
+        fetchPage(page, size, listener);
+      } catch (IOException e) {
+        listener.run();
+      }
+    }
+  }
+
+  /**
+   * @param elements the elements starting at the given offset; holes in the array are null
+   */
+  private IVariable[] createVariables(int offset, WebkitRemoteObject[] elements) {
+    IVariable[] results = new IVariable[elements.length];
+
+    for (int i = 0; i < elements.length; i++) {
+      WebkitRemoteObject element = elements[i];
+
+      if (element == null) {
+        element = WebkitRemoteObject.createNull();
+      }
+
+      results[i] = new WebkitDebugVariable(
+          getTarget(),
+          WebkitPropertyDescriptor.createIndexProperty(offset + i, element));
+    }
+
+    return results;
+  }
 
-    final CountDownLatch latch = new CountDownLatch(1);
+  /**
+   * Request the elements of one page: a slice of the array is made, and its properties fetched.
+   * The page is kept once it has been fetched.
+   * 
+   * @param listener run once the request is done, or null
+   */
+  private PageRequest fetchPage(int page, int size, Runnable listener) throws IOException {
+    int start = page * PAGE_SIZE;
+    final PageRequest request = new PageRequest(
+        start,
+        Math.min(PAGE_SIZE, size - start),
+        listener);
 
     getConnection().getRuntime().callFunctionOn(
-        listObject.getObjectId(),
-        "() => this[" + offset + "]",
-        null,
+        value.getObjectId(),
+        SLICE_FUNCTION,
+        Arrays.asList(CallArgument.fromInt(start), CallArgument.fromInt(start
+            + request.elements.length)),
         false,
         new WebkitCallback<WebkitRemoteObject>() {
           @Override
           public void handleResult(WebkitResult<WebkitRemoteObject> result) {
-            results[0] = result.getResult();
-            latch.countDown();
+            if (result.isError() || result.getWasThrown() || result.getResult() == null
+                || !result.getResult().hasObjectId()) {
+              pageDone(request, false);
+            } else {
+              fetchSliceElements(result.getResult(), request);
+            }
           }
         });
 
+    return request;
+  }
+
+  private List<PageRequest> fetchPages(List<Integer> pageIndexes, int size) throws IOException {
+    List<PageRequest> requests = new ArrayList<PageRequest>();
+
+    for (int page : pageIndexes) {
+      requests.add(fetchPage(page, size, null));
+    }
+
+    return requests;
+  }
+
+  private void fetchSliceElements(final WebkitRemoteObject slice, final PageRequest request) {
+    try {
+      getConnection().getRuntime().getProperties(
+          slice,
+          true,
+          false,
+          new WebkitCallback<WebkitPropertyDescriptor[]>() {
+            @Override
+            public void handleResult(WebkitResult<WebkitPropertyDescriptor[]> result) {
+              if (result.isError() || result.getResult() == null) {
+                pageDone(request, false);
+              } else {
+                for (WebkitPropertyDescriptor descriptor : result.getResult()) {
+                  int index = parseIndex(descriptor.getName());
+
+                  if (index >= 0 && index < request.elements.length) {
+                    request.elements[index] = descriptor.getValue();
+                  }
+                }
+
+                pageDone(request, true);
+              }
+
+              releaseSlice(slice);
+            }
+          });
+    } catch (IOException e) {
+      pageDone(request, false);
+    }
+  }
+
+  /**
+   * @return the elements in the given range; holes in the array are null
+   */
+  private WebkitRemoteObject[] getElements(int offset, int length) throws IOException {
+    WebkitRemoteObject[] elements = new WebkitRemoteObject[length];
+
+    if (length == 0) {
+      return elements;
+    }
+
+    int size = Math.max(getSizeQuietly(), offset + length);
+
+    // Send the requests for all the missing pages before waiting on any of them. A page that could
+    // not be fetched is asked for once more; its elements are left null if that fails too.
+    List<PageRequest> requests = fetchPages(getMissingPages(offset, length), size);
+
+    awaitPages(requests);
+    awaitPages(fetchPages(getFailedPages(requests), size));
+
+    for (int i = 0; i < length; i++) {
+      int index = offset + i;
+      WebkitRemoteObject[] page;
+
+      synchronized (pages) {
+        page = pages.get(index / PAGE_SIZE);
+      }
+
+      if (page != null && index % PAGE_SIZE < page.length) {
+        elements[i] = page[index % PAGE_SIZE];
+      }
+    }
+
+    return elements;
+  }
+
+  /**
+   * @return the indexes of the pages of the given requests that have not been fetched
+   */
+  private List<Integer> getFailedPages(List<PageRequest> requests) {
+    List<Integer> failedPages = new ArrayList<Integer>();
+
+    synchronized (pages) {
+      for (PageRequest request : requests) {
+        if (!pages.containsKey(request.start / PAGE_SIZE)) {
+          failedPages.add(request.start / PAGE_SIZE);
+        }
+      }
+    }
+
+    return failedPages;
+  }
+
+  /**
+   * @return the indexes of the pages covering the given range that have not been fetched yet
+   */
+  private List<Integer> getMissingPages(int offset, int length) {
+    List<Integer> missingPages = new ArrayList<Integer>();
+
+    if (length == 0) {
+      return missingPages;
+    }
+
+    synchronized (pages) {
+      for (int page = offset / PAGE_SIZE; page <= (offset + length - 1) / PAGE_SIZE; page++) {
+        if (!pages.containsKey(page)) {
+          missingPages.add(page);
+        }
+      }
+    }
+
+    return missingPages;
+  }
+
+  private int getSizeQuietly() {
     try {
-      latch.await(3, TimeUnit.SECONDS);
-    } catch (InterruptedException e) {
-      return null;
+      return getSize();
+    } catch (DebugException e) {
+      return 0;
+    }
+  }
+
+  private void pageDone(PageRequest request, boolean succeeded) {
+    if (succeeded) {
+      synchronized (pages) {
+        pages.put(request.start / PAGE_SIZE, request.elements);
+      }
     }
 
-    return results[0];
+    request.done(succeeded);
+  }
+
+  private int parseIndex(String name) {
+    try {
+      return Integer.parseInt(name);
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  private void releaseSlice(WebkitRemoteObject slice) {
+    try {
+      getConnection().getRuntime().releaseObject(slice.getObjectId());
+    } catch (IOException e) {
+      // This is a best-effort call.
+
+    }
   }
 
 }
@@ -52,7 +52,8 @@ class WebkitDebugProcess extends PlatformObject implements IProcess {
     this.javaProcess = javaProcess;
 
     launchTime = new Date();
-    streamMonitor = new WebkitStreamMonitor();
+    streamMonitor = new WebkitStreamMonitor(
+        SDBGDebugCorePlugin.getPlugin().getConsoleBufferSize());
 
     if (javaProcess != null) {
       new Thread(new Runnable() {
@@ -20,6 +20,7 @@ import com.github.sdbg.debug.core.internal.util.DebuggerUtils;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallFrame;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallback;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitLocation;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPropertyDescriptor;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitResult;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitScope;
@@ -28,12 +29,16 @@ import com.github.sdbg.debug.core.model.IExceptionStackFrame;
 import com.github.sdbg.debug.core.model.ISDBGStackFrame;
 import com.github.sdbg.debug.core.model.ISDBGValue.IValueCallback;
 import com.github.sdbg.debug.core.model.IVariableResolver;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.resources.IStorage;
 import org.eclipse.core.runtime.IStatus;
@@ -53,17 +58,43 @@ import org.eclipse.debug.core.model.IWatchExpressionListener;
  */
 public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackFrame,
     ISDBGStackFrame, IExceptionStackFrame, IVariableResolver, IExpressionEvaluator {
+  private static final int LOOKUP_TIMEOUT = 1000;
+
+  /**
+   * Drops the result of a computation which is made ahead of time, only to have the frame cache it.
+   */
+  private static final IValueCallback CACHE_ONLY = new IValueCallback() {
+    @Override
+    public void detailComputed(String stringValue) {
+      // The frame has cached the result; it is read from there when asked for.
+    }
+  };
+
   private IThread thread;
 
   private WebkitCallFrame webkitFrame;
 
-  private boolean isExceptionStackFrame;
+  private WebkitRemoteObject exception;
 
-  private VariableCollector variableCollector = VariableCollector.empty();
+  /**
+   * The detail text of the exception, once computed; guarded by this frame.
+   */
+  private String exceptionDisplayText;
+
+  /**
+   * Created the first time the variables are asked for, or when the frame is prefetched.
+   */
+  private VariableCollector variableCollector;
   private IValue classValue;
 
   private IValue globalScopeValue;
 
+  /**
+   * The results of findVariable(), including the names that were not found. Lookups that failed
+   * are not kept.
+   */
+  private Map<String, IVariable> foundVariables = new HashMap<String, IVariable>();
+
   public WebkitDebugStackFrame(IDebugTarget target, IThread thread, WebkitCallFrame webkitFrame) {
     this(target, thread, webkitFrame, null);
   }
@@ -74,8 +105,7 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
 
     this.thread = thread;
     this.webkitFrame = webkitFrame;
-
-    fillInWebkitVariables(exception);
+    this.exception = exception;
   }
 
   @Override
@@ -108,6 +138,38 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
     return getThread().canTerminate();
   }
 
+  @Override
+  public void computeExceptionDisplayText(final IValueCallback callback) {
+    synchronized (this) {
+      if (exceptionDisplayText != null || exception == null) {
+        callback.detailComputed(exceptionDisplayText);
+
+        return;
+      }
+    }
+
+    final WebkitDebugValue exceptionValue = WebkitDebugValue.create(getTarget(), null, exception);
+
+    exceptionValue.computeDetail(new IValueCallback() {
+      @Override
+      public void detailComputed(String stringValue) {
+        String text = "Exception: "
+            + (stringValue != null ? stringValue : exceptionValue.getDisplayString());
+
+        synchronized (WebkitDebugStackFrame.this) {
+          exceptionDisplayText = text;
+        }
+
+        callback.detailComputed(text);
+      }
+    });
+  }
+
+  @Override
+  public void computeVariables(IVariablesCallback callback) {
+    getVariableCollector().getVariables(callback);
+  }
+
   @Override
   public void evaluateExpression(final String expression, final IWatchExpressionListener listener) {
     try {
@@ -151,45 +213,19 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
 
   @Override
   public IVariable findVariable(String varName) throws DebugException {
-    // search in locals
-    for (IVariable var : getVariables()) {
-      if (var.getName().equals(varName)) {
-        return var;
-      }
-    }
-
-    // search in instance variables
-    IVariable thisVar = getThisVariable();
-
-    if (thisVar != null) {
-      IValue thisValue = thisVar.getValue();
-
-      for (IVariable var : thisValue.getVariables()) {
-        if (var.getName().equals(varName)) {
-          return var;
-        }
+    synchronized (foundVariables) {
+      if (foundVariables.containsKey(varName)) {
+        return foundVariables.get(varName);
       }
     }
 
-    // search statics
-    if (getClassValue() != null) {
-      for (IVariable var : getClassValue().getVariables()) {
-        if (var.getName().equals(varName)) {
-          return var;
-        }
-      }
-    }
+    IVariable variable = searchVariable(varName);
 
-    // search globals
-    if (getGlobalsScope() != null) {
-      for (IVariable var : getGlobalsScope().getVariables()) {
-        if (var.getName().equals(varName)) {
-          return var;
-        }
-      }
+    synchronized (foundVariables) {
+      foundVariables.put(varName, variable);
     }
 
-    return null;
+    return variable;
   }
 
   @SuppressWarnings("rawtypes")
@@ -214,13 +250,10 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
 
   @Override
   public String getExceptionDisplayText() throws DebugException {
-    WebkitDebugVariable variable = (WebkitDebugVariable) getVariables()[0];
-    WebkitDebugValue exceptionValue = (WebkitDebugValue) variable.getValue();
-
     final String[] result = new String[1];
     final CountDownLatch latch = new CountDownLatch(1);
 
-    exceptionValue.computeDetail(new IValueCallback() {
+    computeExceptionDisplayText(new IValueCallback() {
       @Override
       public void detailComputed(String stringValue) {
         result[0] = stringValue;
@@ -230,12 +263,14 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
     });
 
     try {
-      latch.await(1000, TimeUnit.MILLISECONDS);
+      if (latch.await(LOOKUP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        return result[0];
+      }
     } catch (InterruptedException e) {
-      return "Exception: " + exceptionValue.getDisplayString();
+      Thread.currentThread().interrupt();
     }
 
-    return "Exception: " + result[0];
+    return "Exception: " + WebkitDebugValue.create(getTarget(), null, exception).getDisplayString();
   }
 
   @Override
@@ -326,7 +361,7 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
   @Override
   public IVariable[] getVariables() throws DebugException {
     try {
-      return variableCollector.getVariables();
+      return getVariableCollector().getVariables();
     } catch (InterruptedException e) {
       throw new DebugException(new Status(
           IStatus.ERROR,
@@ -338,7 +373,7 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
 
   @Override
   public boolean hasException() {
-    return isExceptionStackFrame;
+    return exception != null;
   }
 
   @Override
@@ -482,13 +517,38 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
   }
 
   /**
-   * Fill in the IVariables from the Webkit variables.
-   * 
-   * @param exception can be null
+   * Stop waiting for the variables of this frame, if they are being collected. Called when the
+   * frame goes away, on resume.
    */
-  private void fillInWebkitVariables(WebkitRemoteObject exception) {
-    isExceptionStackFrame = (exception != null);
+  void cancelVariables() {
+    VariableCollector collector;
+
+    synchronized (this) {
+      collector = variableCollector;
+    }
+
+    if (collector != null) {
+      collector.cancel();
+    }
+  }
+
+  /**
+   * Start collecting the variables of this frame, and the exception text, ahead of them being asked
+   * for.
+   */
+  void prefetchVariables() {
+    getVariableCollector();
+
+    if (hasException()) {
+      computeExceptionDisplayText(CACHE_ONLY);
+    }
+  }
 
+  /**
+   * Create the collector for the IVariables of this frame, which sends a request for the properties
+   * of each local scope.
+   */
+  private VariableCollector createVariableCollector() {
     List<WebkitRemoteObject> remoteObjects = new ArrayList<WebkitRemoteObject>();
 
     WebkitRemoteObject thisObject = null;
@@ -503,7 +563,7 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
       }
     }
 
-    variableCollector = VariableCollector.createCollector(
+    return VariableCollector.createCollector(
         getTarget(),
         thisObject,
         remoteObjects,
@@ -511,6 +571,50 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
         exception);
   }
 
+  /**
+   * Evaluate the given name on this frame.
+   * 
+   * @return a variable for the value, or null if the name is not defined here
+   * @throws DebugException if the VM could not be asked, or did not answer in time
+   */
+  private IVariable evaluateVariable(String varName) throws DebugException {
+    final WebkitRemoteObject[] value = new WebkitRemoteObject[1];
+    final CountDownLatch latch = new CountDownLatch(1);
+
+    try {
+      getConnection().getDebugger().evaluateOnCallFrame(
+          webkitFrame.getCallFrameId(),
+          varName,
+          true,
+          new WebkitCallback<WebkitRemoteObject>() {
+            @Override
+            public void handleResult(WebkitResult<WebkitRemoteObject> result) {
+              if (!result.isError()) {
+                value[0] = result.getResult();
+              }
+
+              latch.countDown();
+            }
+          });
+
+      if (!latch.await(LOOKUP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+        throw createDebugException(new TimeoutException("timed out looking up " + varName));
+      }
+    } catch (IOException e) {
+      throw createDebugException(e);
+    } catch (InterruptedException e) {
+      throw createDebugException(e);
+    }
+
+    if (value[0] == null) {
+      return null;
+    }
+
+    return new WebkitDebugVariable(getTarget(), WebkitPropertyDescriptor.createObjectDescriptor(
+        value[0],
+        varName));
+  }
+
   private String getCallerName() {
     String name = null;
 
@@ -556,4 +660,75 @@ public class WebkitDebugStackFrame extends WebkitDebugElement implements IStackF
       return null;
     }
   }
+
+  private synchronized VariableCollector getVariableCollector() {
+    if (variableCollector == null) {
+      // Once the thread has resumed, the scope objects are gone.
+      if (getThread().isSuspended()) {
+        variableCollector = createVariableCollector();
+      } else {
+        variableCollector = VariableCollector.empty();
+      }
+    }
+
+    return variableCollector;
+  }
+
+  private boolean isIdentifier(String name) {
+    if (name.length() == 0 || !Character.isJavaIdentifierStart(name.charAt(0))) {
+      return false;
+    }
+
+    for (int i = 1; i < name.length(); i++) {
+      if (!Character.isJavaIdentifierPart(name.charAt(i))) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Look for the given name in the locals of this frame, then in the fields of this and the static
+   * fields of its class, and finally in the VM.
+   */
+  private IVariable searchVariable(String varName) throws DebugException {
+    // search in locals
+    for (IVariable var : getVariables()) {
+      if (var.getName().equals(varName)) {
+        return var;
+      }
+    }
+
+    // search in instance variables
+    IVariable thisVar = getThisVariable();
+
+    if (thisVar != null) {
+      IValue thisValue = thisVar.getValue();
+
+      for (IVariable var : thisValue.getVariables()) {
+        if (var.getName().equals(varName)) {
+          return var;
+        }
+      }
+    }
+
+    // search statics
+    if (getClassValue() != null) {
+      for (IVariable var : getClassValue().getVariables()) {
+        if (var.getName().equals(varName)) {
+          return var;
+        }
+      }
+    }
+
+    // Resolve anything else - closure variables and globals - in the VM, rather than enumerating
+    // the global object.
+    if (isIdentifier(varName)) {
+      return evaluateVariable(varName);
+    }
+
+    return null;
+  }
+
 }
@@ -34,6 +34,7 @@ import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitNode;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPage;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitResult;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRuntime.RuntimeListener;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitScript;
 import com.github.sdbg.debug.core.model.IResourceResolver;
 import com.github.sdbg.debug.core.model.ISDBGDebugTarget;
@@ -79,6 +80,7 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
   private DOMResourceTrackersManager domResourceTrackersManager;
   private boolean canSetScriptSource;
   private SourceMapManager sourceMapManager;
+  private WebkitPropertyCache propertyCache;
   private ADBManager adbManager;
   private IProject project;
 
@@ -126,6 +128,8 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
 
     sourceMapManager = new SourceMapManager(resourceResolver);
 
+    propertyCache = new WebkitPropertyCache(connection);
+
     connection.getDebugger().setResteppingManager(new WebkitResteppingManagerImpl(this));
   }
 
@@ -275,6 +279,13 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
     return process;
   }
 
+  /**
+   * @return the properties of the remote objects seen during the current suspend
+   */
+  public WebkitPropertyCache getPropertyCache() {
+    return propertyCache;
+  }
+
   @Override
   public IThread[] getThreads() throws DebugException {
     if (debugThread != null) {
@@ -381,6 +392,7 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
     	// and only then the breakpoints  
         sourceMapManager.handleGlobalObjectCleared();
         breakpointManager.handleGlobalObjectCleared();
+        propertyCache.clear();
       }
 
       @Override
@@ -395,6 +407,7 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
 
       @Override
       public void debuggerResumed() {
+        propertyCache.clear();
         debugThread.handleDebuggerResumed();
       }
 
@@ -404,13 +417,30 @@ public class WebkitDebugTarget extends WebkitDebugElement implements IBreakpoint
         //TODO: Too chatty Trace.trace("Script " + script + " loaded");
 
         if (script.hasScriptSource() || script.getSourceMapURL() != null) {
-          IStorage storage = new WebkitScriptStorage(script, script.getScriptSource());
+          final IStorage storage = new WebkitScriptStorage(script, script.getScriptSource());
           breakpointManager.removeBreakpointsConcerningScript(storage);
-          sourceMapManager.handleScriptParsed(storage, script.getSourceMapURL());
-          breakpointManager.addBreakpointsConcerningScript(storage);
+
+          // The source map is fetched and parsed off this (websocket) thread; the breakpoints are
+          // re-added once it has been published.
+          sourceMapManager.handleScriptParsed(storage, script.getSourceMapURL(), new Runnable() {
+            @Override
+            public void run() {
+              ISDBGBreakpointManager manager = breakpointManager;
+
+              if (manager != null) {
+                manager.addBreakpointsConcerningScript(storage);
+              }
+            }
+          });
         }
       }
     });
+    connection.getRuntime().addRuntimeListener(new RuntimeListener() {
+      @Override
+      public void objectGroupReleased(String objectGroup) {
+        propertyCache.clear();
+      }
+    });
     connection.getDebugger().enable();
 
     IBreakpointManager eclipseBpManager = DebugPlugin.getDefault().getBreakpointManager();
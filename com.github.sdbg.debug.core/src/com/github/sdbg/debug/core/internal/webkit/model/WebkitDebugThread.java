@@ -250,6 +250,13 @@ public class WebkitDebugThread extends WebkitDebugElement implements ISDBGThread
   }
 
   void handleDebuggerResumed() {
+    // Drop any variable requests still outstanding for the old frames.
+    for (IStackFrame frame : suspendedFrames) {
+      if (frame instanceof WebkitDebugStackFrame) {
+        ((WebkitDebugStackFrame) frame).cancelVariables();
+      }
+    }
+
     // clear data
     suspended = false;
     suspendedFrames = EMPTY_FRAMES;
@@ -280,6 +287,12 @@ public class WebkitDebugThread extends WebkitDebugElement implements ISDBGThread
       frames.add(frame);
     }
 
+    // The variables of the other frames are only fetched when the frames are looked at, but the top
+    // frame is nearly always selected right away.
+    if (!frames.isEmpty()) {
+      ((WebkitDebugStackFrame) frames.get(0)).prefetchVariables();
+    }
+
     return frames.toArray(new IStackFrame[frames.size()]);
   }
 
@@ -22,6 +22,7 @@ import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPropertyDescrip
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitResult;
 import com.github.sdbg.debug.core.model.ISDBGValue;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
 
 import java.io.IOException;
 import java.util.Collections;
@@ -99,6 +100,32 @@ public class WebkitDebugValue extends WebkitDebugElement implements IValue, ISDB
     }
   }
 
+  @Override
+  public void computeListLength(final IListLengthCallback callback) {
+    if (!isListValue()) {
+      callback.listLengthComputed(0);
+
+      return;
+    }
+
+    value.getListLength(getConnection(), new WebkitCallback<Integer>() {
+      @Override
+      public void handleResult(WebkitResult<Integer> result) {
+        callback.listLengthComputed(result.getResult().intValue());
+      }
+    });
+  }
+
+  @Override
+  public void computeVariables(IVariablesCallback callback) {
+    getVariableCollector().getVariables(callback);
+  }
+
+  @Override
+  public void computeVariables(int offset, int length, IVariablesCallback callback) {
+    callback.variablesComputed(new IVariable[0]);
+  }
+
   @Override
   public void evaluateExpression(final String expression, final IWatchExpressionListener listener) {
     String exprText = expression;
@@ -162,12 +189,8 @@ public class WebkitDebugValue extends WebkitDebugElement implements IValue, ISDB
    * @throws DebugException
    */
   public IValue getClassValue() {
-    if (variableCollector == null) {
-      populate();
-    }
-
     try {
-      for (WebkitPropertyDescriptor property : variableCollector.getWebkitProperties()) {
+      for (WebkitPropertyDescriptor property : getVariableCollector().getWebkitProperties()) {
         if (WebkitPropertyDescriptor.STATIC_FIELDS_OBJECT.equals(property.getName())) {
           return WebkitDebugValue.create(getTarget(), null, property.getValue());
         }
@@ -226,12 +249,8 @@ public class WebkitDebugValue extends WebkitDebugElement implements IValue, ISDB
   }
 
   public IValue getLibraryValue() {
-    if (variableCollector == null) {
-      populate();
-    }
-
     try {
-      for (WebkitPropertyDescriptor property : variableCollector.getWebkitProperties()) {
+      for (WebkitPropertyDescriptor property : getVariableCollector().getWebkitProperties()) {
         if (WebkitPropertyDescriptor.LIBRARY_OBJECT.equals(property.getName())) {
           return WebkitDebugValue.create(getTarget(), null, property.getValue());
         }
@@ -265,11 +284,7 @@ public class WebkitDebugValue extends WebkitDebugElement implements IValue, ISDB
   @Override
   public IVariable[] getVariables() throws DebugException {
     try {
-      if (variableCollector == null) {
-        populate();
-      }
-
-      return variableCollector.getVariables();
+      return getVariableCollector().getVariables();
     } catch (Throwable t) {
       throw createDebugException(t);
     }
@@ -311,6 +326,14 @@ public class WebkitDebugValue extends WebkitDebugElement implements IValue, ISDB
     fireEvent(new DebugEvent(this, DebugEvent.CHANGE, DebugEvent.CONTENT));
   }
 
+  protected synchronized VariableCollector getVariableCollector() {
+    if (variableCollector == null) {
+      populate();
+    }
+
+    return variableCollector;
+  }
+
   protected void populate() {
     if (value.hasObjectId()) {
       variableCollector = VariableCollector.createCollector(
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.model;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitCallback;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitFuture;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitPropertyDescriptor;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRemoteObject;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitResult;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The properties of remote objects, fetched while the VM is suspended. Remote objects do not
+ * outlive a suspend, so the cache is cleared when the VM resumes or the object group holding them
+ * is released. Concurrent requests for the properties of the same object share one
+ * Runtime.getProperties call.
+ * <p>
+ * The property descriptor arrays handed out are shared, and must not be modified.
+ */
+public class WebkitPropertyCache {
+  private WebkitConnection connection;
+
+  private Map<String, WebkitFuture<WebkitPropertyDescriptor[]>> entries =
+      new HashMap<String, WebkitFuture<WebkitPropertyDescriptor[]>>();
+
+  private long hitCount;
+  private long missCount;
+
+  WebkitPropertyCache(WebkitConnection connection) {
+    this.connection = connection;
+  }
+
+  /**
+   * Drop all the cached properties. Requests in flight still complete their callbacks, but their
+   * results are not kept.
+   */
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  /**
+   * @return the number of property requests answered from the cache, or joined to a request
+   *         already in flight
+   */
+  public synchronized long getHitCount() {
+    return hitCount;
+  }
+
+  /**
+   * @return the number of property requests sent to the VM
+   */
+  public synchronized long getMissCount() {
+    return missCount;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "WebkitPropertyCache[entries=" + entries.size() + ", hits=" + hitCount + ", misses="
+        + missCount + "]";
+  }
+
+  /**
+   * Get the properties of the given object; see
+   * {@link com.github.sdbg.debug.core.internal.webkit.protocol.WebkitRuntime#getProperties}. The
+   * callback is run right away, on the calling thread, if the properties are already known.
+   */
+  void getProperties(WebkitRemoteObject object, boolean ownProperties,
+      boolean accessorPropertiesOnly, WebkitCallback<WebkitPropertyDescriptor[]> callback)
+      throws IOException {
+    if (object.getObjectId() == null) {
+      connection.getRuntime().getProperties(
+          object,
+          ownProperties,
+          accessorPropertiesOnly,
+          callback);
+      return;
+    }
+
+    final String key = object.getObjectId() + (ownProperties ? ":own" : ":all")
+        + (accessorPropertiesOnly ? ":accessors" : "");
+
+    final WebkitFuture<WebkitPropertyDescriptor[]> future;
+    boolean send = false;
+
+    synchronized (this) {
+      WebkitFuture<WebkitPropertyDescriptor[]> entry = entries.get(key);
+
+      if (entry != null) {
+        hitCount++;
+        future = entry;
+      } else {
+        missCount++;
+        future = new WebkitFuture<WebkitPropertyDescriptor[]>();
+        entries.put(key, future);
+        send = true;
+      }
+    }
+
+    if (send) {
+      // Errors are not kept; the next request for the object tries again.
+      future.addCallback(new WebkitCallback<WebkitPropertyDescriptor[]>() {
+        @Override
+        public void handleResult(WebkitResult<WebkitPropertyDescriptor[]> result) {
+          if (result.isError()) {
+            remove(key, future);
+          }
+        }
+      });
+
+      try {
+        connection.getRuntime().getProperties(
+            object,
+            ownProperties,
+            accessorPropertiesOnly,
+            future);
+      } catch (IOException e) {
+        // Let any requests that joined this one fail too.
+        WebkitResult<WebkitPropertyDescriptor[]> result = WebkitResult.createWithError(
+            e.toString());
+
+        future.handleResult(result);
+
+        throw e;
+      }
+    }
+
+    future.addCallback(callback);
+  }
+
+  private synchronized void remove(String key, WebkitFuture<WebkitPropertyDescriptor[]> future) {
+    if (entries.get(key) == future) {
+      entries.remove(key);
+    }
+  }
+
+}
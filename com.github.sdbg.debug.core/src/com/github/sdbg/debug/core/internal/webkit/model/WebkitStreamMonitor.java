@@ -14,39 +14,133 @@
 
 package com.github.sdbg.debug.core.internal.webkit.model;
 
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConsole;
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConsole.CallFrame;
 
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.eclipse.debug.core.IStreamListener;
 import org.eclipse.debug.core.model.IStreamMonitor;
 
 /**
  * This is a Webkit specific implementation of an IStreamMonitor.
+ * <p>
+ * Console messages are kept as records in a ring buffer, bounded by an approximate number of bytes;
+ * the oldest records are dropped once it is full. New records are handed to the listeners in
+ * batches, at most once every {@link #DELIVERY_INTERVAL} milliseconds, and a message repeated while
+ * a batch is pending is sent once, with its count.
  */
 class WebkitStreamMonitor implements IStreamMonitor, WebkitConsole.ConsoleListener {
+
+  /**
+   * A console message, and the number of times in a row it was logged.
+   */
+  private static class ConsoleRecord {
+    // The rough number of bytes a record takes, besides the characters of its text.
+    private static final int OVERHEAD = 64;
+
+    String text;
+    int count;
+    boolean delivered;
+
+    ConsoleRecord(String text, int count) {
+      this.text = text;
+      this.count = count;
+    }
+
+    int getSize() {
+      return text.length() * 2 + OVERHEAD;
+    }
+
+    void render(StringBuilder builder) {
+      builder.append(text);
+
+      if (count > 1) {
+        builder.append(" (x");
+        builder.append(count);
+        builder.append(')');
+      }
+
+      builder.append('\n');
+    }
+  }
+
+  static final long DELIVERY_INTERVAL = 100;
+
   private final static String FAILED_TO_LOAD = "Failed to load resource";
   private final static String CHROME_THUMB = "chrome://thumb/";
   private final static String CHROME_SEARCH_PAGE = "chrome-search://";
   private final static String NEWTAB_MESSAGE = "_/chrome/newtab?";
 
-  private List<IStreamListener> listeners = new ArrayList<IStreamListener>();
+  private static ScheduledExecutorService deliveryExecutor;
+
+  private static synchronized ScheduledExecutorService getDeliveryExecutor() {
+    if (deliveryExecutor == null) {
+      deliveryExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "Webkit console output");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+
+    return deliveryExecutor;
+  }
+
+  private List<IStreamListener> listeners = new CopyOnWriteArrayList<IStreamListener>();
 
-  private String lastMessage;
-  private String lastUrl;
-  private int lastLine;
-  private List<CallFrame> lastStackTrace;
+  private int lastRepeatCount;
 
-  private StringBuilder buffer = new StringBuilder();
+  private final int maxBufferSize;
+  private final long deliveryInterval;
+
+  // The records, oldest first; the undelivered ones are at the end. Guarded by this.
+  private Deque<ConsoleRecord> records = new ArrayDeque<ConsoleRecord>();
+  private ConsoleRecord lastRecord;
+  private int bufferSize;
+  private int undeliveredCount;
+  private int droppedCount;
+  private int undeliveredDroppedCount;
+
+  private boolean deliveryScheduled;
+  private long lastDeliveryTime;
+
+  private Runnable deliverRunnable = new Runnable() {
+    @Override
+    public void run() {
+      deliver();
+    }
+  };
 
   private WebkitConnection connection;
 
   public WebkitStreamMonitor() {
+    this(SDBGDebugCorePlugin.DEFAULT_CONSOLE_BUFFER_SIZE);
+  }
 
+  /**
+   * @param maxBufferSize the approximate number of bytes of console output to keep
+   */
+  public WebkitStreamMonitor(int maxBufferSize) {
+    this(maxBufferSize, DELIVERY_INTERVAL);
+  }
+
+  WebkitStreamMonitor(int maxBufferSize, long deliveryInterval) {
+    this.maxBufferSize = maxBufferSize;
+    this.deliveryInterval = deliveryInterval;
   }
 
   @Override
@@ -54,20 +148,38 @@ class WebkitStreamMonitor implements IStreamMonitor, WebkitConsole.ConsoleListen
     listeners.add(listener);
   }
 
+  /**
+   * Returns the output delivered to the listeners so far, as much of it as the buffer holds; output
+   * waiting to be delivered is left out, as it will reach the listeners anyway.
+   */
   @Override
-  public String getContents() {
-    return buffer.toString();
+  public synchronized String getContents() {
+    StringBuilder builder = new StringBuilder(bufferSize / 2);
+
+    if (droppedCount > 0) {
+      appendDropped(builder, droppedCount);
+    }
+
+    for (ConsoleRecord record : records) {
+      if (!record.delivered) {
+        break;
+      }
+
+      record.render(builder);
+    }
+
+    return builder.toString();
   }
 
   @Override
   public void messageAdded(final String message, final String url, int line,
       List<CallFrame> stackTrace) {
-    lastMessage = message;
-    lastUrl = url;
-    lastLine = line;
-    lastStackTrace = stackTrace;
-
-    if (!shouldIgnoreMessage(message, url)) {
+    if (shouldIgnoreMessage(message, url)) {
+      synchronized (this) {
+        lastRecord = null;
+        lastRepeatCount = 1;
+      }
+    } else {
       String text = message;
 
       // If we get a failed to load message, also include the url that didn't load.
@@ -90,25 +202,36 @@ class WebkitStreamMonitor implements IStreamMonitor, WebkitConsole.ConsoleListen
         }
       }
 
-      text += "\n";
-
-      buffer.append(text);
-
-      for (IStreamListener listener : listeners.toArray(new IStreamListener[listeners.size()])) {
-        listener.streamAppended(text, this);
-      }
+      addRecord(String.valueOf(text), 1, false);
     }
   }
 
   @Override
   public void messageRepeatCountUpdated(int count) {
-    messageAdded(lastMessage, lastUrl, lastLine, lastStackTrace);
+    ConsoleRecord record;
+    int repeats;
+
+    synchronized (this) {
+      record = lastRecord;
+      repeats = Math.max(1, count - lastRepeatCount);
+      lastRepeatCount = count;
+    }
+
+    // Repeats of an ignored message are ignored too.
+    if (record != null) {
+      addRecord(record.text, repeats, true);
+    }
   }
 
   @Override
-  public void messagesCleared() {
-    lastMessage = null;
-    buffer.setLength(0);
+  public synchronized void messagesCleared() {
+    lastRecord = null;
+
+    records.clear();
+    bufferSize = 0;
+    undeliveredCount = 0;
+    droppedCount = 0;
+    undeliveredDroppedCount = 0;
   }
 
   @Override
@@ -133,6 +256,13 @@ class WebkitStreamMonitor implements IStreamMonitor, WebkitConsole.ConsoleListen
     messageAdded(message, null, -1, null);
   }
 
+  /**
+   * @return the approximate number of bytes of console output held
+   */
+  synchronized int getBufferSize() {
+    return bufferSize;
+  }
+
   boolean shouldIgnoreMessage(String message, String url) {
     if (message == null || url == null) {
       return false;
@@ -162,4 +292,99 @@ class WebkitStreamMonitor implements IStreamMonitor, WebkitConsole.ConsoleListen
     return false;
   }
 
+  /**
+   * Adds the given number of occurrences of a message, and schedules the delivery of the records
+   * added.
+   * 
+   * @param repeat whether this is a repeat count update for the last message
+   */
+  private synchronized void addRecord(String text, int count, boolean repeat) {
+    if (!repeat) {
+      lastRepeatCount = 1;
+    }
+
+    if (lastRecord != null && !lastRecord.delivered && lastRecord.text.equals(text)) {
+      lastRecord.count += count;
+    } else {
+      lastRecord = new ConsoleRecord(text, count);
+
+      records.addLast(lastRecord);
+      bufferSize += lastRecord.getSize();
+      undeliveredCount++;
+
+      trimRecords();
+    }
+
+    if (!deliveryScheduled) {
+      deliveryScheduled = true;
+
+      long delay = Math.max(0, lastDeliveryTime + deliveryInterval - System.currentTimeMillis());
+      getDeliveryExecutor().schedule(deliverRunnable, delay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void appendDropped(StringBuilder builder, int count) {
+    builder.append("[" + count + (count == 1 ? " message" : " messages")
+        + " dropped from the console]\n");
+  }
+
+  /**
+   * Hands the undelivered records to the listeners, as one piece of text.
+   */
+  private void deliver() {
+    String text;
+
+    synchronized (this) {
+      deliveryScheduled = false;
+      lastDeliveryTime = System.currentTimeMillis();
+
+      if (undeliveredCount == 0 && undeliveredDroppedCount == 0) {
+        return;
+      }
+
+      StringBuilder builder = new StringBuilder();
+
+      if (undeliveredDroppedCount > 0) {
+        appendDropped(builder, undeliveredDroppedCount);
+        undeliveredDroppedCount = 0;
+      }
+
+      // The undelivered records are the newest ones.
+      ConsoleRecord[] undelivered = new ConsoleRecord[undeliveredCount];
+      Iterator<ConsoleRecord> iter = records.descendingIterator();
+      for (int i = undelivered.length - 1; i >= 0; i--) {
+        undelivered[i] = iter.next();
+      }
+
+      for (ConsoleRecord record : undelivered) {
+        record.render(builder);
+        record.delivered = true;
+      }
+
+      undeliveredCount = 0;
+      text = builder.toString();
+    }
+
+    for (IStreamListener listener : listeners) {
+      listener.streamAppended(text, this);
+    }
+  }
+
+  /**
+   * Drops the oldest records until the buffer is within its size; the newest record is always
+   * kept.
+   */
+  private void trimRecords() {
+    while (bufferSize > maxBufferSize && records.size() > 1) {
+      ConsoleRecord record = records.removeFirst();
+      bufferSize -= record.getSize();
+      droppedCount++;
+
+      if (!record.delivered) {
+        undeliveredCount--;
+        undeliveredDroppedCount++;
+      }
+    }
+  }
+
 }
@@ -64,6 +64,31 @@ import com.github.sdbg.utilities.Streams;
  */
 public class ChromiumConnector {
 
+  /**
+   * Return the URL of the browser-level websocket, on which the Target domain reports tabs as they
+   * are opened; null if the browser does not provide one.
+   * 
+   * @param host
+   * @param port
+   * @return
+   * @throws IOException if the browser cannot be reached
+   */
+  public static String getBrowserWebSocketUrl(String host, int port) throws IOException {
+    HttpUrlConnector connection = new HttpUrlConnector(host, port, "/json/version");
+
+    String text = readText(connection, connection.getInputStream());
+
+    if (connection.getStatusCode() != 200) {
+      return null;
+    }
+
+    try {
+      return JsonUtils.getString(new JSONObject(text), "webSocketDebuggerUrl");
+    } catch (JSONException exception) {
+      return null;
+    }
+  }
+
   /**
    * Return the list of open tabs for this browser.
    * 
@@ -15,6 +15,7 @@
 package com.github.sdbg.debug.core.internal.webkit.protocol;
 
 import com.github.sdbg.debug.core.util.IBrowserTabInfo;
+import com.github.sdbg.utilities.NetUtils;
 
 import java.net.URI;
 import java.util.Comparator;
@@ -52,6 +53,25 @@ public class ChromiumTabInfo implements IBrowserTabInfo {
     return tab;
   }
 
+  /**
+   * Creates the tab for a target reported by the Target domain; a target another debugger is
+   * attached to has no websocket URL, as in /json.
+   */
+  static ChromiumTabInfo fromTargetInfo(String host, int port, JSONObject targetInfo)
+      throws JSONException {
+    ChromiumTabInfo tab = new ChromiumTabInfo(host, port);
+
+    tab.title = JsonUtils.getString(targetInfo, "title");
+    tab.url = JsonUtils.getString(targetInfo, "url");
+
+    if (!targetInfo.optBoolean("attached")) {
+      tab.webSocketDebuggerUrl = "ws://" + (host != null ? host : NetUtils.getLoopbackAddress())
+          + ":" + port + "/devtools/page/" + targetInfo.getString("targetId");
+    }
+
+    return tab;
+  }
+
   static Comparator<ChromiumTabInfo> getComparator() {
     return new Comparator<ChromiumTabInfo>() {
       @Override
@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import de.roderick.weberknecht.WebSocket;
+import de.roderick.weberknecht.WebSocketEventHandler;
+import de.roderick.weberknecht.WebSocketException;
+import de.roderick.weberknecht.WebSocketMessage;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * The tabs of a Chromium browser, kept up to date from the Target domain events sent on the
+ * browser-level websocket. Unlike polling /json, this learns of a tab the moment it is created, and
+ * makes no requests to the browser while waiting for it. Other commands of the browser target can
+ * be sent on the same connection.
+ * 
+ * @see ChromiumConnector#getBrowserWebSocketUrl(String, int)
+ */
+public class ChromiumTargetWatcher {
+  private static final long DISCOVERY_TIMEOUT = 5000;
+
+  private static final long COMMAND_TIMEOUT = 5000;
+
+  private static final int DISCOVER_TARGETS_ID = 1;
+
+  /**
+   * The target types listed by /json; the Target domain also reports the browser itself, and newer
+   * browsers a "tab" target around each page, neither of which can be debugged as a tab.
+   */
+  private static final Set<String> TAB_TYPES = new HashSet<String>(Arrays.asList(
+      "page",
+      "background_page",
+      "app",
+      "iframe",
+      "webview",
+      "service_worker",
+      "shared_worker",
+      "worker",
+      "other"));
+
+  /**
+   * Connects to the browser, and waits until it has reported the targets open already.
+   * 
+   * @return the watcher, or null if the browser does not provide the browser-level websocket or the
+   *         Target domain, in which case /json has to be polled
+   * @throws IOException if the browser cannot be reached
+   */
+  public static ChromiumTargetWatcher connect(String host, int port) throws IOException {
+    String url = ChromiumConnector.getBrowserWebSocketUrl(host, port);
+    if (url == null) {
+      return null;
+    }
+
+    ChromiumTargetWatcher watcher = new ChromiumTargetWatcher(host, port);
+
+    try {
+      if (!watcher.open(URI.create(url))) {
+        watcher.close();
+        return null;
+      }
+    } catch (IOException e) {
+      watcher.close();
+      throw e;
+    }
+
+    return watcher;
+  }
+
+  private String host;
+  private int port;
+
+  private WebSocket websocket;
+
+  // The fields below are guarded by this
+  private Map<String, ChromiumTabInfo> targets = new LinkedHashMap<String, ChromiumTabInfo>();
+  private long version;
+  private boolean discovering;
+  private boolean unsupported;
+  private boolean closed;
+  private int nextCommandId = DISCOVER_TARGETS_ID + 1;
+  private Map<Integer, JSONObject> responses = new HashMap<Integer, JSONObject>();
+  // Commands given up on; their responses are dropped when they come
+  private Set<Integer> abandonedCommands = new HashSet<Integer>();
+
+  private ChromiumTargetWatcher(String host, int port) {
+    this.host = host;
+    this.port = port;
+  }
+
+  /**
+   * Waits for the tabs to change from the given version, or for the timeout to expire.
+   * 
+   * @return whether the tabs changed
+   * @throws IOException if the browser closed the connection
+   */
+  public synchronized boolean awaitChange(long fromVersion, long timeoutMillis) throws IOException {
+    long endTime = System.currentTimeMillis() + timeoutMillis;
+
+    try {
+      while (version == fromVersion && !closed) {
+        long timeout = endTime - System.currentTimeMillis();
+        if (timeout <= 0) {
+          return false;
+        }
+
+        wait(timeout);
+      }
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    }
+
+    if (version == fromVersion) {
+      throw new IOException("The browser closed the DevTools connection");
+    }
+
+    return true;
+  }
+
+  public void close() {
+    WebSocket socket;
+
+    synchronized (this) {
+      markClosed();
+      socket = websocket;
+      websocket = null;
+    }
+
+    if (socket != null) {
+      try {
+        socket.close();
+      } catch (WebSocketException e) {
+        // Best effort
+      }
+    }
+  }
+
+  /**
+   * @return whether the tab with this target id, as returned by Target.createTarget, is open
+   */
+  public synchronized boolean hasTarget(String targetId) {
+    return targets.containsKey(targetId);
+  }
+
+  /**
+   * Sends a command of the browser target, such as Target.createTarget, and waits for its result.
+   * 
+   * @throws IOException if the browser reports an error, or does not answer in time
+   */
+  public JSONObject sendCommand(String method, JSONObject params) throws IOException {
+    WebSocket socket;
+    int id;
+
+    synchronized (this) {
+      if (closed) {
+        throw new IOException("The browser closed the DevTools connection");
+      }
+
+      socket = websocket;
+      id = nextCommandId++;
+    }
+
+    try {
+      JSONObject request = new JSONObject().put("id", id).put("method", method);
+      if (params != null) {
+        request.put("params", params);
+      }
+
+      socket.send(request.toString());
+    } catch (JSONException exception) {
+      throw new IOException(exception);
+    } catch (WebSocketException exception) {
+      throw new IOException(exception);
+    }
+
+    long endTime = System.currentTimeMillis() + COMMAND_TIMEOUT;
+
+    synchronized (this) {
+      try {
+        while (!responses.containsKey(id) && !closed) {
+          long timeout = endTime - System.currentTimeMillis();
+          if (timeout <= 0) {
+            abandonedCommands.add(id);
+            throw new IOException("Timed out waiting for the browser to answer " + method);
+          }
+
+          wait(timeout);
+        }
+      } catch (InterruptedException e) {
+        abandonedCommands.add(id);
+        throw new IOException(e);
+      }
+
+      JSONObject response = responses.remove(id);
+      if (response == null) {
+        throw new IOException("The browser closed the DevTools connection");
+      }
+
+      JSONObject error = response.optJSONObject("error");
+      if (error != null) {
+        throw new IOException(method + " failed: " + error.optString("message"));
+      }
+
+      JSONObject result = response.optJSONObject("result");
+      return result != null ? result : new JSONObject();
+    }
+  }
+
+  /**
+   * Returns the tabs open, in the order {@link ChromiumConnector#getAvailableTabs(String, int)}
+   * returns them.
+   */
+  public synchronized List<ChromiumTabInfo> getTabs() {
+    List<ChromiumTabInfo> tabs = new ArrayList<ChromiumTabInfo>(targets.values());
+    Collections.sort(tabs, ChromiumTabInfo.getComparator());
+
+    return tabs;
+  }
+
+  /**
+   * Returns a number which changes whenever a tab is opened, closed or navigates.
+   */
+  public synchronized long getVersion() {
+    return version;
+  }
+
+  /**
+   * @return whether the browser reports its targets
+   */
+  private boolean open(URI uri) throws IOException {
+    WebSocket socket;
+
+    try {
+      socket = new WebSocket(uri);
+      socket.setEventHandler(new WebSocketEventHandler() {
+        @Override
+        public void onClose() {
+          synchronized (ChromiumTargetWatcher.this) {
+            markClosed();
+          }
+        }
+
+        @Override
+        public void onMessage(WebSocketMessage message) {
+          processMessage(message.getText());
+        }
+
+        @Override
+        public void onOpen() {
+        }
+
+        @Override
+        public void onPing() {
+        }
+
+        @Override
+        public void onPong() {
+        }
+      });
+
+      synchronized (this) {
+        websocket = socket;
+      }
+
+      socket.connect();
+      socket.send("{\"id\":" + DISCOVER_TARGETS_ID
+          + ",\"method\":\"Target.setDiscoverTargets\",\"params\":{\"discover\":true}}");
+    } catch (WebSocketException exception) {
+      throw new IOException(exception);
+    }
+
+    long endTime = System.currentTimeMillis() + DISCOVERY_TIMEOUT;
+
+    synchronized (this) {
+      try {
+        while (!discovering && !unsupported && !closed) {
+          long timeout = endTime - System.currentTimeMillis();
+          if (timeout <= 0) {
+            throw new IOException("Timed out waiting for the browser to report its targets");
+          }
+
+          wait(timeout);
+        }
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+
+      if (closed && !discovering) {
+        throw new IOException("The browser closed the DevTools connection");
+      }
+
+      return discovering;
+    }
+  }
+
+  /**
+   * Called with the lock held, when the connection is closed from either end. The tabs are no
+   * longer known, so none are reported as open.
+   */
+  private void markClosed() {
+    closed = true;
+    targets.clear();
+    responses.clear();
+    abandonedCommands.clear();
+
+    notifyAll();
+  }
+
+  private void processMessage(String text) {
+    try {
+      JSONObject message = new JSONObject(text);
+
+      synchronized (this) {
+        if (message.optInt("id") == DISCOVER_TARGETS_ID) {
+          // The targets open already are reported before the response.
+          if (message.has("error")) {
+            unsupported = true;
+          } else {
+            discovering = true;
+          }
+        } else if (message.has("id")) {
+          int id = message.getInt("id");
+
+          if (!abandonedCommands.remove(id) && !closed) {
+            responses.put(id, message);
+          }
+        } else {
+          String method = message.optString("method");
+          JSONObject params = message.optJSONObject("params");
+
+          if (params == null) {
+            return;
+          }
+
+          if (method.equals("Target.targetCreated") || method.equals("Target.targetInfoChanged")) {
+            JSONObject targetInfo = params.getJSONObject("targetInfo");
+
+            if (isTab(targetInfo.optString("type"))) {
+              targets.put(
+                  targetInfo.getString("targetId"),
+                  ChromiumTabInfo.fromTargetInfo(host, port, targetInfo));
+            }
+          } else if (method.equals("Target.targetDestroyed")) {
+            if (targets.remove(params.getString("targetId")) == null) {
+              return;
+            }
+          } else {
+            return;
+          }
+
+          version++;
+        }
+
+        notifyAll();
+      }
+    } catch (JSONException e) {
+      // Not a message we know of
+    }
+  }
+
+  /**
+   * @return whether targets of this type are listed by /json
+   */
+  private boolean isTab(String type) {
+    return TAB_TYPES.contains(type);
+  }
+}
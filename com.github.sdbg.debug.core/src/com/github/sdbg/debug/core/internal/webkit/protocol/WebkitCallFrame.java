@@ -34,22 +34,24 @@ public class WebkitCallFrame {
     List<WebkitCallFrame> frames = new ArrayList<WebkitCallFrame>();
 
     for (int i = 0; i < arr.length(); i++) {
-      WebkitCallFrame frame = createFrom(arr.getJSONObject(i));
-
-      // If we are on the first frame and there are at least 3 frames:
-      if (i == 0 && arr.length() > 2) {
-        if (DebuggerUtils.isInternalMethodName(frame.getFunctionName())) {
-          // Strip out the first frame if it's _noSuchMethod. There will be another
-          // "Object.noSuchMethod" on the stack. This sucks, but it's where we're choosing to put
-          // the fix.
-          continue;
-        }
-      }
+      frames.add(createFrom(arr.getJSONObject(i)));
+    }
+
+    return stripInternalFrame(frames);
+  }
+
+  static List<WebkitCallFrame> readListFrom(WebkitJsonReader reader) throws JSONException {
+    List<WebkitCallFrame> frames = new ArrayList<WebkitCallFrame>();
+
+    reader.beginArray();
 
-      frames.add(frame);
+    while (reader.hasNext()) {
+      frames.add(readFrom(reader));
     }
 
-    return frames;
+    reader.endArray();
+
+    return stripInternalFrame(frames);
   }
 
   private static WebkitCallFrame createFrom(JSONObject object) throws JSONException {
@@ -67,6 +69,52 @@ public class WebkitCallFrame {
     return frame;
   }
 
+  private static WebkitCallFrame readFrom(WebkitJsonReader reader) throws JSONException {
+    WebkitCallFrame frame = new WebkitCallFrame();
+
+    reader.beginObject();
+
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+
+      if (name.equals("callFrameId")) {
+        frame.callFrameId = reader.nextString();
+      } else if (name.equals("functionName")) {
+        frame.functionName = reader.nextString();
+      } else if (name.equals("location")) {
+        frame.location = WebkitLocation.readFrom(reader);
+      } else if (name.equals("this")) {
+        frame.thisObject = WebkitRemoteObject.readFrom(reader);
+      } else if (name.equals("scopeChain")) {
+        frame.scopeChain = WebkitScope.readArrayFrom(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+
+    if (frame.location == null || frame.thisObject == null) {
+      throw new JSONException("Call frame has no location or this object");
+    }
+
+    return frame;
+  }
+
+  private static List<WebkitCallFrame> stripInternalFrame(List<WebkitCallFrame> frames) {
+    // If there are at least 3 frames:
+    if (frames.size() > 2) {
+      if (DebuggerUtils.isInternalMethodName(frames.get(0).getFunctionName())) {
+        // Strip out the first frame if it's _noSuchMethod. There will be another
+        // "Object.noSuchMethod" on the stack. This sucks, but it's where we're choosing to put
+        // the fix.
+        frames.remove(0);
+      }
+    }
+
+    return frames;
+  }
+
   private String callFrameId;
 
   private String functionName;
@@ -26,8 +26,15 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -84,6 +91,108 @@ public class WebkitConnection {
     public void handleNotification(String method, JSONObject params) throws JSONException;
   }
 
+  /**
+   * A callback which decodes its reply straight from the message text, rather than from a
+   * {@link JSONObject}.
+   */
+  static abstract class StreamingCallback implements Callback {
+    @Override
+    public void handleResult(JSONObject reply) throws JSONException {
+      Object result = reply.opt("result");
+      WebkitJsonReader reader = result == null ? null : new WebkitJsonReader(result.toString());
+
+      readResult(reply.opt("error"), reader);
+    }
+
+    /**
+     * @param error the "error" member of the reply, or null
+     * @param result a reader positioned at the "result" member of the reply, or null
+     */
+    abstract void readResult(Object error, WebkitJsonReader result) throws JSONException;
+  }
+
+  /**
+   * A notification handler which decodes the notification parameters straight from the message
+   * text, rather than from a {@link JSONObject}.
+   */
+  static abstract class StreamingNotificationHandler implements NotificationHandler {
+    @Override
+    public void handleNotification(String method, JSONObject params) throws JSONException {
+      readNotification(method, params == null ? null : new WebkitJsonReader(params.toString()));
+    }
+
+    /**
+     * @param method
+     * @param params a reader positioned at the "params" member of the notification, or null
+     */
+    abstract void readNotification(String method, WebkitJsonReader params) throws JSONException;
+  }
+
+  /**
+   * A request which has been sent, or is queued to be sent, and awaits its reply.
+   */
+  private static class PendingRequest {
+    private int id;
+    private String message;
+    private Callback callback;
+    private long deadline;
+
+    PendingRequest(int id, String message, Callback callback, long deadline) {
+      this.id = id;
+      this.message = message;
+      this.callback = callback;
+      this.deadline = deadline;
+    }
+
+    void fail(String message) {
+      if (callback != null) {
+        try {
+          callback.handleResult(WebkitResult.createJsonErrorResult(message));
+        } catch (JSONException e) {
+
+        } catch (Throwable exception) {
+          SDBGDebugCorePlugin.logError(exception);
+        }
+      }
+    }
+  }
+
+  /**
+   * The default maximum number of requests awaiting a reply. Further requests are queued until
+   * replies come in.
+   */
+  public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 64;
+
+  /**
+   * The default time to wait for the reply to a request, in milliseconds, before completing its
+   * callback with an error.
+   */
+  public static final long DEFAULT_REQUEST_TIMEOUT = 30000;
+
+  private static final long DEADLINE_CHECK_INTERVAL = 250;
+
+  /**
+   * Checks the request deadlines of all connections, and writes out the requests queued behind a
+   * full pipeline as replies make room for them, so that the websocket reader thread never blocks
+   * on a write.
+   */
+  private static ScheduledExecutorService pipelineExecutor;
+
+  private static synchronized ScheduledExecutorService getPipelineExecutor() {
+    if (pipelineExecutor == null) {
+      pipelineExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "Webkit request pipeline");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+
+    return pipelineExecutor;
+  }
+
   private URI webSocketUri;
 
   private String host;
@@ -106,8 +215,37 @@ public class WebkitConnection {
 
   private int requestId = 0;
 
+  private int maxInFlightRequests = DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+  private long requestTimeout = DEFAULT_REQUEST_TIMEOUT;
+
   private Map<String, NotificationHandler> notificationHandlers = new HashMap<String, NotificationHandler>();
-  private Map<Integer, Callback> callbackMap = new HashMap<Integer, Callback>();
+
+  /**
+   * Notifications are handled off the websocket reader thread, so that handlers doing heavy work
+   * do not hold up the replies to requests.
+   */
+  private WebkitNotificationDispatcher notificationDispatcher = new WebkitNotificationDispatcher();
+
+  /**
+   * The requests which have been sent, by id, and the requests waiting for room in the pipeline.
+   * Both are guarded by this connection.
+   */
+  private Map<Integer, PendingRequest> inFlightRequests = new HashMap<Integer, PendingRequest>();
+  private LinkedList<PendingRequest> queuedRequests = new LinkedList<PendingRequest>();
+
+  /**
+   * Whether a thread is currently writing queued requests to the websocket.
+   */
+  private boolean sending;
+
+  private ScheduledFuture<?> deadlineCheck;
+
+  private Runnable flush = new Runnable() {
+    @Override
+    public void run() {
+      flushRequests();
+    }
+  };
 
   private List<WebkitConnectionListener> connectionListeners = new ArrayList<WebkitConnectionListener>();
 
@@ -139,6 +277,10 @@ public class WebkitConnection {
   }
 
   public void close() throws IOException {
+    stopDeadlineCheck();
+
+    notificationDispatcher.close();
+
     if (websocket != null) {
       try {
         websocket.close();
@@ -191,6 +333,8 @@ public class WebkitConnection {
       });
 
       websocket.connect();
+
+      startDeadlineCheck();
     } catch (WebSocketException exception) {
       throw new IOException(exception);
     } catch (Throwable exception) {
@@ -223,6 +367,13 @@ public class WebkitConnection {
     return debugger;
   }
 
+  /**
+   * @return the maximum number of requests awaiting a reply
+   */
+  public synchronized int getMaxInFlightRequests() {
+    return maxInFlightRequests;
+  }
+
   public WebkitDom getDom() {
     if (dom == null) {
       dom = new WebkitDom(this);
@@ -263,6 +414,13 @@ public class WebkitConnection {
     return page;
   }
 
+  /**
+   * @return the default time to wait for the reply to a request, in milliseconds
+   */
+  public synchronized long getRequestTimeout() {
+    return requestTimeout;
+  }
+
   public WebkitRuntime getRuntime() {
     if (runtime == null) {
       runtime = new WebkitRuntime(this);
@@ -299,35 +457,108 @@ public class WebkitConnection {
     connectionListeners.remove(listener);
   }
 
+  /**
+   * Set the maximum number of requests awaiting a reply. Requests sent past that number are queued,
+   * and written out as replies come in.
+   */
+  public void setMaxInFlightRequests(int maxInFlightRequests) {
+    synchronized (this) {
+      this.maxInFlightRequests = Math.max(1, maxInFlightRequests);
+    }
+
+    flushRequests();
+  }
+
+  /**
+   * Set the default time to wait for the reply to a request, in milliseconds. When it elapses, the
+   * callback of the request is completed with an error.
+   */
+  public synchronized void setRequestTimeout(long requestTimeout) {
+    this.requestTimeout = requestTimeout;
+  }
+
   protected void notifyClosed() {
     for (WebkitConnectionListener listener : connectionListeners) {
       listener.connectionClosed(this);
     }
 
-    // Clean up the callbackMap on termination.
-    List<Callback> callbacks = new ArrayList<Callback>(callbackMap.values());
+    stopDeadlineCheck();
 
-    for (Callback callback : callbacks) {
-      try {
-        callback.handleResult(WebkitResult.createJsonErrorResult("connection termination"));
-      } catch (JSONException e) {
+    // Complete the outstanding requests on termination.
+    List<PendingRequest> requests;
 
-      }
+    synchronized (this) {
+      requests = new ArrayList<PendingRequest>(inFlightRequests.values());
+      requests.addAll(queuedRequests);
+
+      inFlightRequests.clear();
+      queuedRequests.clear();
     }
 
-    callbackMap.clear();
+    for (PendingRequest request : requests) {
+      request.fail("connection termination");
+    }
   }
 
   protected void processWebSocketMessage(WebSocketMessage message) {
+    processMessage(message.getText());
+  }
+
+  /**
+   * Route an inbound message on its "id" or "method" member. Only the top level of the message is
+   * scanned here; the "params" or "result" member is decoded later, by whoever handles it, and not
+   * at all for notifications nobody listens to.
+   */
+  void processMessage(String text) {
+    //TODO: too chatty SDBGDebugCorePlugin.log("<== " + text);
+
     try {
-      JSONObject object = new JSONObject(message.getText());
+      WebkitJsonReader reader = new WebkitJsonReader(text);
+
+      boolean hasId = false;
+      int id = -1;
+      String method = null;
+      NotificationHandler handler = null;
+      int paramsPos = -1;
+      int resultPos = -1;
+      int errorPos = -1;
+
+      reader.beginObject();
+
+      while (reader.hasNext()) {
+        String name = reader.nextName();
+
+        if (name.equals("id")) {
+          hasId = true;
+          id = reader.nextInt();
+        } else if (name.equals("method")) {
+          method = reader.nextString();
+          handler = getNotificationHandler(method);
+
+          if (handler == null && !hasId) {
+            traceUnhandledNotification(method, text);
+            return;
+          }
+        } else if (name.equals("params")) {
+          paramsPos = reader.getPosition();
+          reader.skipValue();
+        } else if (name.equals("result")) {
+          resultPos = reader.getPosition();
+          reader.skipValue();
+        } else if (name.equals("error")) {
+          errorPos = reader.getPosition();
+          reader.skipValue();
+        } else {
+          reader.skipValue();
+        }
+      }
 
-      //TODO: too chatty SDBGDebugCorePlugin.log("<== " + object);
+      reader.endObject();
 
-      if (object.has("id")) {
-        processResponse(object);
-      } else {
-        processNotification(object);
+      if (hasId) {
+        processResponse(text, id, resultPos, errorPos);
+      } else if (handler != null) {
+        processNotification(text, method, handler, paramsPos);
       }
     } catch (JSONException exception) {
       SDBGDebugCorePlugin.logError(exception);
@@ -344,90 +575,241 @@ public class WebkitConnection {
 
   protected void sendRequest(JSONObject request, Callback callback) throws IOException,
       JSONException {
+    sendRequest(request, callback, getRequestTimeout());
+  }
+
+  /**
+   * Send a request. The callback is always completed: with the reply, or with an error result if
+   * the request cannot be written, no reply arrives within the given timeout, or the connection is
+   * closed first.
+   * <p>
+   * Requests are queued, and written out in order by whichever thread finds the queue idle. When
+   * the maximum number of requests in flight is reached, they are written as replies come in.
+   * 
+   * @param request
+   * @param callback
+   * @param timeout the time to wait for the reply, in milliseconds
+   * @throws IOException if the connection is not open
+   * @throws JSONException
+   */
+  protected void sendRequest(JSONObject request, Callback callback, long timeout)
+      throws IOException, JSONException {
     if (!isConnected()) {
       throw new IOException("connection terminated");
     }
 
-    int id = 0;
+    int id;
 
-    try {
-      synchronized (this) {
-        id = getNextRequestId();
+    synchronized (this) {
+      id = getNextRequestId();
+    }
+
+    request.put("id", id);
 
-        request.put("id", id);
+    // TODO: Too chatty SDBGDebugCorePlugin.log("==> " + request);
 
-        if (callback != null) {
-          callbackMap.put(id, callback);
+    PendingRequest pendingRequest = new PendingRequest(
+        id,
+        request.toString(),
+        callback,
+        System.currentTimeMillis() + timeout);
+
+    synchronized (this) {
+      queuedRequests.add(pendingRequest);
+    }
+
+    flushRequests();
+  }
+
+  /**
+   * Complete the requests whose deadline has passed with an error.
+   */
+  private void checkDeadlines() {
+    long now = System.currentTimeMillis();
+    List<PendingRequest> expired = new ArrayList<PendingRequest>();
+
+    synchronized (this) {
+      for (Iterator<PendingRequest> iter = inFlightRequests.values().iterator(); iter.hasNext();) {
+        PendingRequest request = iter.next();
+
+        if (request.deadline <= now) {
+          expired.add(request);
+          iter.remove();
         }
       }
 
-      // TODO: Too chatty SDBGDebugCorePlugin.log("==> " + request);
+      for (Iterator<PendingRequest> iter = queuedRequests.iterator(); iter.hasNext();) {
+        PendingRequest request = iter.next();
 
-      websocket.send(request.toString());
-    } catch (WebSocketException exception) {
-      if (callback != null) {
-        synchronized (this) {
-          callbackMap.remove(id);
+        if (request.deadline <= now) {
+          expired.add(request);
+          iter.remove();
         }
       }
+    }
 
-      throw new IOException(exception);
+    if (!expired.isEmpty()) {
+      for (PendingRequest request : expired) {
+        WIPTrace.trace("No reply for command id " + request.id);
+
+        request.fail("request timed out");
+      }
+
+      flushRequests();
     }
   }
 
-  private int getNextRequestId() {
-    return ++requestId;
-  }
+  /**
+   * Write out the queued requests for which there is room in the pipeline. Requests queued by other
+   * threads while this one is writing are picked up in the same pass, so that a burst of requests
+   * goes out in one batch.
+   */
+  private void flushRequests() {
+    while (true) {
+      List<PendingRequest> batch = new ArrayList<PendingRequest>();
+      WebSocket socket;
 
-  private void processNotification(JSONObject object) throws JSONException {
-    // Two notifications we receive but don't do anything with:
-    //   "Profiler.resetProfiles", "CSS.mediaQueryResultChanged"
+      synchronized (this) {
+        if (sending) {
+          return;
+        }
 
-    final String[] ignoreDomains = {"Profiler.", "Inspector."};
+        while (!queuedRequests.isEmpty() && inFlightRequests.size() < maxInFlightRequests) {
+          PendingRequest request = queuedRequests.removeFirst();
+
+          inFlightRequests.put(request.id, request);
+          batch.add(request);
+        }
 
-    if (object.has("method")) {
-      String method = object.getString("method");
-      String prefix = method;
-      int index = prefix.indexOf('.');
-      if (index != -1) {
-        prefix = prefix.substring(0, index + 1);
+        if (batch.isEmpty()) {
+          return;
+        }
+
+        sending = true;
+        socket = websocket;
       }
 
-      NotificationHandler handler = notificationHandlers.get(prefix);
+      int sent = 0;
 
-      if (handler != null) {
-        if (object.has("params")) {
-          handler.handleNotification(method, object.getJSONObject("params"));
-        } else {
-          handler.handleNotification(method, null);
+      try {
+        if (socket == null) {
+          throw new WebSocketException("connection terminated");
         }
-      } else {
-        for (String domain : ignoreDomains) {
-          if (domain.equals(prefix)) {
-            return;
+
+        for (PendingRequest request : batch) {
+          socket.send(request.message);
+          sent++;
+        }
+      } catch (WebSocketException exception) {
+        List<PendingRequest> failed = batch.subList(sent, batch.size());
+
+        synchronized (this) {
+          for (PendingRequest request : failed) {
+            inFlightRequests.remove(request.id);
           }
         }
 
-        WIPTrace.trace("no handler for notification: " + object);
+        for (PendingRequest request : failed) {
+          request.fail(exception.getMessage() != null ? exception.getMessage()
+              : exception.toString());
+        }
+      } finally {
+        synchronized (this) {
+          sending = false;
+        }
       }
     }
   }
 
-  private void processResponse(JSONObject result) throws JSONException {
-    try {
-      int id = result.optInt("id", -1);
+  private int getNextRequestId() {
+    return ++requestId;
+  }
+
+  private void startDeadlineCheck() {
+    stopDeadlineCheck();
+
+    Runnable check = new Runnable() {
+      @Override
+      public void run() {
+        checkDeadlines();
+      }
+    };
+
+    synchronized (this) {
+      deadlineCheck = getPipelineExecutor().scheduleWithFixedDelay(
+          check,
+          DEADLINE_CHECK_INTERVAL,
+          DEADLINE_CHECK_INTERVAL,
+          TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private synchronized void stopDeadlineCheck() {
+    if (deadlineCheck != null) {
+      deadlineCheck.cancel(false);
+      deadlineCheck = null;
+    }
+  }
+
+  private NotificationHandler getNotificationHandler(String method) {
+    int index = method.indexOf('.');
+
+    return notificationHandlers.get(index == -1 ? method : method.substring(0, index + 1));
+  }
+
+  /**
+   * Queue a notification to be handled after the previous notifications of its domain. Its
+   * parameters are decoded on the dispatch thread.
+   */
+  private void processNotification(final String text, final String method,
+      final NotificationHandler handler, final int paramsPos) {
+    int index = method.indexOf('.');
+    String prefix = index == -1 ? method : method.substring(0, index + 1);
 
-      Callback callback;
+    notificationDispatcher.dispatch(prefix, new Runnable() {
+      @Override
+      public void run() {
+        try {
+          WebkitJsonReader params = paramsPos == -1 ? null : new WebkitJsonReader(text, paramsPos);
+
+          if (handler instanceof StreamingNotificationHandler) {
+            ((StreamingNotificationHandler) handler).readNotification(method, params);
+          } else {
+            handler.handleNotification(method, params == null ? null : params.nextObject());
+          }
+        } catch (JSONException exception) {
+          SDBGDebugCorePlugin.logError(exception);
+        }
+      }
+    });
+  }
+
+  private void processResponse(String text, int id, int resultPos, int errorPos) {
+    try {
+      PendingRequest request;
+      boolean queued;
 
       synchronized (this) {
-        callback = callbackMap.remove(id);
+        request = inFlightRequests.remove(id);
+        queued = !queuedRequests.isEmpty();
       }
 
-      if (callback != null) {
-        callback.handleResult(result);
-      } else if (result.has("error")) {
+      if (request != null && queued) {
+        // Let a queued request take the place of this one, writing it from the pipeline thread.
+        getPipelineExecutor().execute(flush);
+      }
+
+      Object error = errorPos == -1 ? null : new WebkitJsonReader(text, errorPos).nextValue();
+
+      if (request != null && request.callback instanceof StreamingCallback) {
+        WebkitJsonReader result = resultPos == -1 ? null : new WebkitJsonReader(text, resultPos);
+
+        ((StreamingCallback) request.callback).readResult(error, result);
+      } else if (request != null && request.callback != null) {
+        request.callback.handleResult(new JSONObject(text));
+      } else if (error != null) {
         // If we get an error back, and nobody was listening for the result, then log it.
-        WebkitResult<?> webkitResult = WebkitResult.createFrom(result);
+        WebkitResult<?> webkitResult = WebkitResult.createFrom(new JSONObject(text));
 
         WIPTrace.trace("Error from command id " + id + ": " + webkitResult.getError());
       }
@@ -436,4 +818,19 @@ public class WebkitConnection {
     }
   }
 
+  private void traceUnhandledNotification(String method, String text) {
+    // Two notifications we receive but don't do anything with:
+    //   "Profiler.resetProfiles", "CSS.mediaQueryResultChanged"
+
+    final String[] ignoreDomains = {"Profiler.", "Inspector."};
+
+    for (String domain : ignoreDomains) {
+      if (method.startsWith(domain)) {
+        return;
+      }
+    }
+
+    WIPTrace.trace("no handler for notification: " + text);
+  }
+
 }
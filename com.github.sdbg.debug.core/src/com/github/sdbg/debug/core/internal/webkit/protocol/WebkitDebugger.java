@@ -15,7 +15,8 @@
 package com.github.sdbg.debug.core.internal.webkit.protocol;
 
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection.Callback;
-import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection.NotificationHandler;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection.StreamingCallback;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection.StreamingNotificationHandler;
 import com.github.sdbg.utilities.URIUtilities;
 
 import java.io.IOException;
@@ -25,7 +26,6 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -189,10 +189,17 @@ public class WebkitDebugger extends WebkitDomain {
   public WebkitDebugger(WebkitConnection connection) {
     super(connection);
 
-    connection.registerNotificationHandler("Debugger.", new NotificationHandler() {
+    connection.registerNotificationHandler("Debugger.", new StreamingNotificationHandler() {
       @Override
-      public void handleNotification(String method, JSONObject params) throws JSONException {
-        handleDebuggerNotification(method, params);
+      void readNotification(String method, WebkitJsonReader params) throws JSONException {
+        // The two notifications that carry the most data are decoded straight from the message.
+        if (method.equals(DEBUGGER_SCRIPT_PARSED)) {
+          handleScriptParsed(WebkitScript.readFrom(params));
+        } else if (method.equals(DEBUGGER_PAUSED)) {
+          readPaused(params);
+        } else {
+          handleDebuggerNotification(method, params == null ? null : params.nextObject());
+        }
       }
     });
   }
@@ -246,6 +253,21 @@ public class WebkitDebugger extends WebkitDomain {
 
   public void evaluateOnCallFrame(String callFrameId, String expression,
       final WebkitCallback<WebkitRemoteObject> callback) throws IOException {
+    evaluateOnCallFrame(callFrameId, expression, false, callback);
+  }
+
+  /**
+   * Evaluates an expression on the given call frame.
+   * 
+   * @param callFrameId
+   * @param expression
+   * @param silent if true, the evaluation does not pause on exceptions or write to the console,
+   *          and the console command line API is not in scope; for lookups the user did not type
+   * @param callback
+   * @throws IOException
+   */
+  public void evaluateOnCallFrame(String callFrameId, String expression, boolean silent,
+      final WebkitCallback<WebkitRemoteObject> callback) throws IOException {
     if (callback == null) {
       throw new IllegalArgumentException("callback is required");
     }
@@ -254,13 +276,15 @@ public class WebkitDebugger extends WebkitDomain {
       JSONObject request = new JSONObject();
 
       request.put("method", "Debugger.evaluateOnCallFrame");
-      request.put(
-          "params",
-          new JSONObject().put("callFrameId", callFrameId).put("expression", expression).put(
-              "objectGroup",
-              OBJECT_GROUP_KEY).put("returnByValue", false).put("includeCommandLineAPI", true).put(
-              "doNotPauseOnExceptionsAndMuteConsole",
-              false));
+      JSONObject params = new JSONObject();
+      params.put("callFrameId", callFrameId);
+      params.put("expression", expression);
+      params.put("objectGroup", OBJECT_GROUP_KEY);
+      params.put("returnByValue", false);
+      params.put("includeCommandLineAPI", !silent);
+      params.put("doNotPauseOnExceptionsAndMuteConsole", silent);
+
+      request.put("params", params);
 
       connection.sendRequest(request, new Callback() {
         @Override
@@ -345,10 +369,10 @@ public class WebkitDebugger extends WebkitDomain {
       request.put("method", "Debugger.getScriptSource");
       request.put("params", new JSONObject().put("scriptId", scriptId));
 
-      connection.sendRequest(request, new Callback() {
+      connection.sendRequest(request, new StreamingCallback() {
         @Override
-        public void handleResult(JSONObject result) throws JSONException {
-          callback.handleResult(convertGetScriptSourceResult(result));
+        void readResult(Object error, WebkitJsonReader result) throws JSONException {
+          callback.handleResult(readGetScriptSourceResult(error, result));
         }
       });
     } catch (JSONException exception) {
@@ -369,35 +393,23 @@ public class WebkitDebugger extends WebkitDomain {
    */
   public void populateScriptSource(WebkitScript script) throws IOException {
     if (!script.hasScriptSource()) {
-      final IOException[] error = new IOException[1];
-      final String[] source = new String[1];
+      WebkitFuture<String> future = new WebkitFuture<String>();
 
-      final CountDownLatch latch = new CountDownLatch(1);
+      getScriptSource(script.getScriptId(), future);
 
-      getScriptSource(script.getScriptId(), new WebkitCallback<String>() {
-        @Override
-        public void handleResult(WebkitResult<String> result) {
-          if (result.isError()) {
-            error[0] = new IOException("error retrieving script source");
-          } else {
-            source[0] = result.getResult();
-          }
-
-          latch.countDown();
-        }
-      });
+      WebkitResult<String> result;
 
       try {
-        latch.await();
+        result = future.get();
       } catch (InterruptedException e) {
         throw new IOException(e);
       }
 
-      if (error[0] != null) {
-        throw error[0];
+      if (result.isError()) {
+        throw new IOException("error retrieving script source");
       }
 
-      script.setScriptSource(source[0]);
+      script.setScriptSource(result.getResult());
     }
   }
 
@@ -676,17 +688,7 @@ public class WebkitDebugger extends WebkitDomain {
         listener.debuggerGlobalObjectCleared();
       }
     } else if (method.equals(DEBUGGER_SCRIPT_PARSED)) {
-      WebkitScript script = WebkitScript.createFrom(params);
-
-      // We get a blizzard of empty script parsed events from Webkit due to the way they integrated
-      // the Dart VM into the Webkit debugger.
-      if (script.getUrl().length() > 0) {
-        scriptMap.put(script.getScriptId(), script);
-
-        for (DebuggerListener listener : listeners) {
-          listener.debuggerScriptParsed(script);
-        }
-      }
+      handleScriptParsed(WebkitScript.createFrom(params));
     } else if (method.equals(DEBUGGER_BREAKPOINT_RESOLVED)) {
       WebkitBreakpoint breakpoint = WebkitBreakpoint.createFrom(params);
 
@@ -706,21 +708,7 @@ public class WebkitDebugger extends WebkitDomain {
         exception = WebkitRemoteObject.createFrom(params.getJSONObject("data"));
       }
 
-      if (resteppingManager != null) {
-        resteppingManager.onDebuggerPaused(frames, reason, exception);
-      }
-
-      if (resteppingManager != null && resteppingManager.isResteppingNeeded()) {
-        try {
-          sendSimpleCommand(resteppingManager.getRestepCommand());
-        } catch (IOException e) {
-          throw new JSONException(e);
-        }
-      } else {
-        for (DebuggerListener listener : listeners) {
-          listener.debuggerPaused(reason, frames, exception);
-        }
-      }
+      handlePaused(reason, frames, exception);
     } else {
       WIPTrace.trace("unhandled notification: " + method);
     }
@@ -789,16 +777,6 @@ public class WebkitDebugger extends WebkitDomain {
     return result;
   }
 
-  private WebkitResult<String> convertGetScriptSourceResult(JSONObject object) throws JSONException {
-    WebkitResult<String> result = WebkitResult.createFrom(object);
-
-    if (object.has("result")) {
-      result.setResult(JsonUtils.getString(object.getJSONObject("result"), "scriptSource"));
-    }
-
-    return result;
-  }
-
   private WebkitResult<String> convertSetBreakpointByUrlResult(JSONObject object,
       List<WebkitBreakpoint> resolvedBreakpoints) throws JSONException {
     // "result":{
@@ -866,7 +844,93 @@ public class WebkitDebugger extends WebkitDomain {
     return result;
   }
 
+  private void handlePaused(PausedReasonType reason, List<WebkitCallFrame> frames,
+      WebkitRemoteObject exception) throws JSONException {
+    if (resteppingManager != null) {
+      resteppingManager.onDebuggerPaused(frames, reason, exception);
+    }
+
+    if (resteppingManager != null && resteppingManager.isResteppingNeeded()) {
+      try {
+        sendSimpleCommand(resteppingManager.getRestepCommand());
+      } catch (IOException e) {
+        throw new JSONException(e);
+      }
+    } else {
+      for (DebuggerListener listener : listeners) {
+        listener.debuggerPaused(reason, frames, exception);
+      }
+    }
+  }
+
   private void handleResumed() {
     clearRemoteObjects();
   }
+
+  private void handleScriptParsed(WebkitScript script) {
+    // We get a blizzard of empty script parsed events from Webkit due to the way they integrated
+    // the Dart VM into the Webkit debugger.
+    if (script.getUrl().length() > 0) {
+      scriptMap.put(script.getScriptId(), script);
+
+      for (DebuggerListener listener : listeners) {
+        listener.debuggerScriptParsed(script);
+      }
+    }
+  }
+
+  private WebkitResult<String> readGetScriptSourceResult(Object error, WebkitJsonReader reader)
+      throws JSONException {
+    WebkitResult<String> result = WebkitResult.createWithError(error);
+
+    if (reader != null) {
+      reader.beginObject();
+
+      while (reader.hasNext()) {
+        if (reader.nextName().equals("scriptSource")) {
+          result.setResult(reader.nextString());
+        } else {
+          reader.skipValue();
+        }
+      }
+
+      reader.endObject();
+    }
+
+    return result;
+  }
+
+  private void readPaused(WebkitJsonReader params) throws JSONException {
+    String reason = null;
+    List<WebkitCallFrame> frames = null;
+    WebkitRemoteObject data = null;
+
+    params.beginObject();
+
+    while (params.hasNext()) {
+      String name = params.nextName();
+
+      if (name.equals("reason")) {
+        reason = params.nextString();
+      } else if (name.equals("callFrames")) {
+        frames = WebkitCallFrame.readListFrom(params);
+      } else if (name.equals("data") && params.peek() == '{') {
+        data = WebkitRemoteObject.readFrom(params);
+      } else {
+        params.skipValue();
+      }
+    }
+
+    params.endObject();
+
+    if (reason == null || frames == null) {
+      throw new JSONException("Malformed " + DEBUGGER_PAUSED + " notification");
+    }
+
+    PausedReasonType reasonType = PausedReasonType.value(reason);
+
+    // The data field contains exception info.
+    handlePaused(reasonType, frames, reasonType == PausedReasonType.exception ? data : null);
+  }
+
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+/**
+ * A snapshot of the notification dispatch metrics of one protocol domain.
+ *
+ * @see WebkitNotificationDispatcher#getStats()
+ */
+class WebkitDispatchStats {
+  private String domain;
+  private int queueDepth;
+  private int maxQueueDepth;
+  private long dispatchCount;
+  private long totalLatency;
+  private long maxLatency;
+
+  WebkitDispatchStats(String domain, int queueDepth, int maxQueueDepth, long dispatchCount,
+      long totalLatency, long maxLatency) {
+    this.domain = domain;
+    this.queueDepth = queueDepth;
+    this.maxQueueDepth = maxQueueDepth;
+    this.dispatchCount = dispatchCount;
+    this.totalLatency = totalLatency;
+    this.maxLatency = maxLatency;
+  }
+
+  /**
+   * @return the average time between the arrival of a notification and the start of its handling,
+   *         in milliseconds
+   */
+  public double getAverageLatency() {
+    return dispatchCount == 0 ? 0 : (double) totalLatency / dispatchCount;
+  }
+
+  public long getDispatchCount() {
+    return dispatchCount;
+  }
+
+  /**
+   * @return the domain prefix, e.g. "Debugger."
+   */
+  public String getDomain() {
+    return domain;
+  }
+
+  /**
+   * @return the longest time between the arrival of a notification and the start of its handling,
+   *         in milliseconds
+   */
+  public long getMaxLatency() {
+    return maxLatency;
+  }
+
+  /**
+   * @return the largest number of notifications that were waiting at once
+   */
+  public int getMaxQueueDepth() {
+    return maxQueueDepth;
+  }
+
+  /**
+   * @return the number of notifications waiting to be handled
+   */
+  public int getQueueDepth() {
+    return queueDepth;
+  }
+
+  @Override
+  public String toString() {
+    return "[" + domain + " queued=" + queueDepth + ", maxQueued=" + maxQueueDepth + ", dispatched="
+        + dispatchCount + ", avgLatency=" + String.format("%.1f", getAverageLatency())
+        + "ms, maxLatency=" + maxLatency + "ms]";
+  }
+}
@@ -21,7 +21,6 @@ import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitNode.WebkitAttr
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -269,29 +268,22 @@ public class WebkitDom extends WebkitDomain {
   }
 
   public WebkitNode getDocumentSync() throws IOException {
-    @SuppressWarnings("unchecked")
-    final WebkitResult<WebkitNode>[] result = new WebkitResult[1];
-    final CountDownLatch latch = new CountDownLatch(1);
+    WebkitFuture<WebkitNode> future = new WebkitFuture<WebkitNode>();
 
-    getDocument(new WebkitCallback<WebkitNode>() {
-      @Override
-      public void handleResult(WebkitResult<WebkitNode> r) {
-        result[0] = r;
+    getDocument(future);
 
-        latch.countDown();
-      }
-    });
+    WebkitResult<WebkitNode> result;
 
     try {
-      latch.await();
+      result = future.get();
     } catch (InterruptedException e) {
-
+      throw new IOException(e);
     }
 
-    if (result[0].isError()) {
-      throw new IOException(result[0].getErrorMessage());
+    if (result.isError()) {
+      throw new IOException(result.getErrorMessage());
     } else {
-      return result[0].getResult();
+      return result.getResult();
     }
   }
 
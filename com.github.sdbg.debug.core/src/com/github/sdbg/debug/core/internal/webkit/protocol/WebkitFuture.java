@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A {@link WebkitCallback} which can be waited on, or have further callbacks chained to it. Pass it
+ * wherever a callback is expected:
+ *
+ * <pre>
+ * WebkitFuture&lt;String&gt; future = new WebkitFuture&lt;String&gt;();
+ * debugger.getScriptSource(scriptId, future);
+ * WebkitResult&lt;String&gt; result = future.get();
+ * </pre>
+ *
+ * Requests sent through a {@link WebkitConnection} always complete, with an error result if no
+ * reply arrives before their deadline or the connection is closed, so {@link #get()} does not need
+ * a timeout of its own.
+ */
+public class WebkitFuture<T> implements WebkitCallback<T>, Future<WebkitResult<T>> {
+  private CountDownLatch latch = new CountDownLatch(1);
+
+  private WebkitResult<T> result;
+  private boolean cancelled;
+
+  private List<WebkitCallback<T>> callbacks = new ArrayList<WebkitCallback<T>>();
+
+  public WebkitFuture() {
+
+  }
+
+  /**
+   * Add a callback to run with the result. It is run right away, on the calling thread, if the
+   * result is already known; else on the thread completing this future.
+   */
+  public void addCallback(WebkitCallback<T> callback) {
+    WebkitResult<T> knownResult;
+
+    synchronized (this) {
+      if (!isDone()) {
+        callbacks.add(callback);
+        return;
+      }
+
+      knownResult = result;
+    }
+
+    if (knownResult != null) {
+      callback.handleResult(knownResult);
+    }
+  }
+
+  /**
+   * Stop waiting for the result. The request itself is not withdrawn; its reply is ignored.
+   */
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    synchronized (this) {
+      if (isDone()) {
+        return false;
+      }
+
+      cancelled = true;
+      callbacks.clear();
+    }
+
+    latch.countDown();
+
+    return true;
+  }
+
+  /**
+   * @return the result; never null
+   * @throws CancellationException if this future was cancelled
+   */
+  @Override
+  public WebkitResult<T> get() throws InterruptedException {
+    latch.await();
+
+    return getResult();
+  }
+
+  @Override
+  public WebkitResult<T> get(long timeout, TimeUnit unit) throws InterruptedException,
+      TimeoutException {
+    if (!latch.await(timeout, unit)) {
+      throw new TimeoutException();
+    }
+
+    return getResult();
+  }
+
+  @Override
+  public void handleResult(WebkitResult<T> result) {
+    List<WebkitCallback<T>> toNotify;
+
+    synchronized (this) {
+      if (isDone()) {
+        return;
+      }
+
+      this.result = result;
+
+      toNotify = callbacks;
+      callbacks = null;
+    }
+
+    latch.countDown();
+
+    for (WebkitCallback<T> callback : toNotify) {
+      callback.handleResult(result);
+    }
+  }
+
+  @Override
+  public synchronized boolean isCancelled() {
+    return cancelled;
+  }
+
+  @Override
+  public synchronized boolean isDone() {
+    return result != null || cancelled;
+  }
+
+  private synchronized WebkitResult<T> getResult() {
+    if (cancelled) {
+      throw new CancellationException();
+    }
+
+    return result;
+  }
+
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+/**
+ * A pull reader over the text of a protocol message. It lets the hot messages be decoded straight
+ * into protocol objects, and the parts nobody looks at be skipped, without building the
+ * intermediate {@link JSONObject} tree.
+ * 
+ * <pre>
+ * reader.beginObject();
+ * while (reader.hasNext()) {
+ *   String name = reader.nextName();
+ *   if (name.equals("scriptId")) {
+ *     scriptId = reader.nextString();
+ *   } else {
+ *     reader.skipValue();
+ *   }
+ * }
+ * reader.endObject();
+ * </pre>
+ * 
+ * Like org.json, the reader is lenient about commas. Values are converted the way the JSONObject
+ * getters convert them, so both decoding paths give the same results.
+ */
+class WebkitJsonReader {
+  private String text;
+  private int pos;
+
+  WebkitJsonReader(String text) {
+    this(text, 0);
+  }
+
+  /**
+   * @param text the message text
+   * @param pos the offset of the value to read, as returned by {@link #getPosition()}
+   */
+  WebkitJsonReader(String text, int pos) {
+    this.text = text;
+    this.pos = pos;
+  }
+
+  void beginArray() throws JSONException {
+    consume('[');
+  }
+
+  void beginObject() throws JSONException {
+    consume('{');
+  }
+
+  void endArray() throws JSONException {
+    skipComma();
+    consume(']');
+  }
+
+  void endObject() throws JSONException {
+    skipComma();
+    consume('}');
+  }
+
+  /**
+   * @return the offset of the next token; a new reader created at it reads the same value
+   */
+  int getPosition() {
+    skipWhitespace();
+
+    return pos;
+  }
+
+  /**
+   * @return whether the current array or object has another element
+   */
+  boolean hasNext() throws JSONException {
+    skipComma();
+
+    char c = peek();
+
+    return c != '}' && c != ']';
+  }
+
+  /**
+   * Read a boolean, accepting "true" and "false" strings as JSONObject.getBoolean() does.
+   */
+  boolean nextBoolean() throws JSONException {
+    skipWhitespace();
+
+    if (text.startsWith("true", pos)) {
+      pos += 4;
+      return true;
+    }
+
+    if (text.startsWith("false", pos)) {
+      pos += 5;
+      return false;
+    }
+
+    int start = pos;
+    Object value = nextValue();
+
+    if (value instanceof String) {
+      if (((String) value).equalsIgnoreCase("true")) {
+        return true;
+      } else if (((String) value).equalsIgnoreCase("false")) {
+        return false;
+      }
+    }
+
+    throw syntaxError("Expected a boolean", start);
+  }
+
+  /**
+   * Read an int, converting other numbers and numeric strings as JSONObject.getInt() does.
+   */
+  int nextInt() throws JSONException {
+    skipWhitespace();
+
+    int start = pos;
+    int i = pos;
+    boolean negative = false;
+
+    if (i < text.length() && text.charAt(i) == '-') {
+      negative = true;
+      i++;
+    }
+
+    long value = 0;
+    int digits = 0;
+
+    while (i < text.length() && digits < 10) {
+      char c = text.charAt(i);
+
+      if (c < '0' || c > '9') {
+        break;
+      }
+
+      value = value * 10 + (c - '0');
+      digits++;
+      i++;
+    }
+
+    if (digits > 0 && (i == text.length() || isDelimiter(text.charAt(i)))) {
+      value = negative ? -value : value;
+
+      if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+        pos = i;
+        return (int) value;
+      }
+    }
+
+    // Fractions, exponents, large numbers and strings.
+    Object obj = nextValue();
+
+    try {
+      return obj instanceof Number ? ((Number) obj).intValue()
+          : (int) Double.parseDouble(String.valueOf(obj));
+    } catch (NumberFormatException e) {
+      throw syntaxError("Expected a number", start);
+    }
+  }
+
+  /**
+   * Read the name of an object member, and the colon after it.
+   */
+  String nextName() throws JSONException {
+    skipComma();
+
+    if (pos >= text.length() || text.charAt(pos) != '"') {
+      throw syntaxError("Expected a member name", pos);
+    }
+
+    String name = readString();
+
+    consume(':');
+
+    return name;
+  }
+
+  /**
+   * Read a JSON object into a {@link JSONObject}, for the parts of a message that have no streaming
+   * decoder.
+   */
+  JSONObject nextObject() throws JSONException {
+    int start = getPosition();
+    Object value = nextValue();
+
+    if (value instanceof JSONObject) {
+      return (JSONObject) value;
+    } else {
+      throw syntaxError("Expected an object", start);
+    }
+  }
+
+  /**
+   * Read a string. Other values are converted to a string, as JSONObject.getString() does.
+   */
+  String nextString() throws JSONException {
+    skipWhitespace();
+
+    if (pos < text.length() && text.charAt(pos) == '"') {
+      return readString();
+    } else {
+      return String.valueOf(nextValue());
+    }
+  }
+
+  /**
+   * Read any value, as org.json would: a String, Boolean, Integer, Long, Double, JSONObject,
+   * JSONArray or JSONObject.NULL.
+   */
+  Object nextValue() throws JSONException {
+    skipWhitespace();
+
+    if (pos < text.length() && text.charAt(pos) == '"') {
+      return readString();
+    }
+
+    int start = pos;
+
+    skipValue();
+
+    return new JSONTokener(text.substring(start, pos)).nextValue();
+  }
+
+  /**
+   * @return the first character of the next token, or 0 at the end of the text
+   */
+  char peek() {
+    skipWhitespace();
+
+    return pos < text.length() ? text.charAt(pos) : 0;
+  }
+
+  /**
+   * Skip the next value, whatever it is, without decoding it.
+   */
+  void skipValue() throws JSONException {
+    char c = peek();
+
+    if (c == '"') {
+      pos = skipString(pos);
+    } else if (c == '{' || c == '[') {
+      int depth = 0;
+
+      while (pos < text.length()) {
+        c = text.charAt(pos);
+
+        if (c == '"') {
+          pos = skipString(pos);
+          continue;
+        }
+
+        pos++;
+
+        if (c == '{' || c == '[') {
+          depth++;
+        } else if (c == '}' || c == ']') {
+          depth--;
+
+          if (depth == 0) {
+            return;
+          }
+        }
+      }
+
+      throw syntaxError("Unterminated value", pos);
+    } else {
+      int start = pos;
+
+      while (pos < text.length() && !isDelimiter(text.charAt(pos))) {
+        pos++;
+      }
+
+      if (pos == start) {
+        throw syntaxError("Expected a value", pos);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return "WebkitJsonReader[" + pos + "]";
+  }
+
+  private void consume(char expected) throws JSONException {
+    skipWhitespace();
+
+    if (pos >= text.length() || text.charAt(pos) != expected) {
+      throw syntaxError("Expected '" + expected + "'", pos);
+    }
+
+    pos++;
+  }
+
+  private boolean isDelimiter(char c) {
+    return c == ',' || c == '}' || c == ']' || c == ':' || c <= ' ';
+  }
+
+  /**
+   * Read the string starting at the current position. Strings without escapes, which is most of
+   * them, are returned as a substring of the message.
+   */
+  private String readString() throws JSONException {
+    int start = pos + 1;
+
+    for (int i = start; i < text.length(); i++) {
+      char c = text.charAt(i);
+
+      if (c == '"') {
+        pos = i + 1;
+        return text.substring(start, i);
+      }
+
+      if (c == '\\') {
+        return readEscapedString(start, i);
+      }
+    }
+
+    throw syntaxError("Unterminated string", pos);
+  }
+
+  private String readEscapedString(int start, int escape) throws JSONException {
+    StringBuilder builder = new StringBuilder(escape - start + 16);
+    builder.append(text, start, escape);
+
+    int i = escape;
+
+    while (i < text.length()) {
+      char c = text.charAt(i++);
+
+      if (c == '"') {
+        pos = i;
+        return builder.toString();
+      }
+
+      if (c != '\\') {
+        builder.append(c);
+        continue;
+      }
+
+      if (i >= text.length()) {
+        break;
+      }
+
+      c = text.charAt(i++);
+
+      switch (c) {
+        case 'b':
+          builder.append('\b');
+          break;
+        case 'f':
+          builder.append('\f');
+          break;
+        case 'n':
+          builder.append('\n');
+          break;
+        case 'r':
+          builder.append('\r');
+          break;
+        case 't':
+          builder.append('\t');
+          break;
+        case 'u':
+          if (i + 4 > text.length()) {
+            throw syntaxError("Illegal escape", i);
+          }
+
+          try {
+            builder.append((char) Integer.parseInt(text.substring(i, i + 4), 16));
+          } catch (NumberFormatException e) {
+            throw syntaxError("Illegal escape", i);
+          }
+
+          i += 4;
+          break;
+        default:
+          builder.append(c);
+          break;
+      }
+    }
+
+    throw syntaxError("Unterminated string", start - 1);
+  }
+
+  private void skipComma() {
+    skipWhitespace();
+
+    if (pos < text.length() && text.charAt(pos) == ',') {
+      pos++;
+    }
+  }
+
+  /**
+   * @return the offset just past the closing quote of the string starting at the given offset
+   */
+  private int skipString(int start) throws JSONException {
+    for (int i = start + 1; i < text.length(); i++) {
+      char c = text.charAt(i);
+
+      if (c == '\\') {
+        i++;
+      } else if (c == '"') {
+        return i + 1;
+      }
+    }
+
+    throw syntaxError("Unterminated string", start);
+  }
+
+  private void skipWhitespace() {
+    while (pos < text.length() && text.charAt(pos) <= ' ') {
+      pos++;
+    }
+  }
+
+  private JSONException syntaxError(String message, int offset) {
+    return new JSONException(message + " at character " + offset);
+  }
+
+}
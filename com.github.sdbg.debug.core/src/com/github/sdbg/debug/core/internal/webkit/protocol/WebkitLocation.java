@@ -42,6 +42,33 @@ public class WebkitLocation {
     return location;
   }
 
+  static WebkitLocation readFrom(WebkitJsonReader reader) throws JSONException {
+    WebkitLocation location = new WebkitLocation();
+
+    location.lineNumber = -1;
+    location.columnNumber = -1;
+
+    reader.beginObject();
+
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+
+      if (name.equals("scriptId")) {
+        location.scriptId = reader.nextString();
+      } else if (name.equals("lineNumber")) {
+        location.lineNumber = reader.nextInt();
+      } else if (name.equals("columnNumber")) {
+        location.columnNumber = reader.nextInt();
+      } else {
+        reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+
+    return location;
+  }
+
   private int columnNumber;
 
   private int lineNumber;
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ *
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.eclipse.org/legal/epl-v10.html
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs protocol notification handlers off the websocket reader thread. The notifications of one
+ * domain are handled one at a time, in the order they arrived; different domains are handled
+ * concurrently. The handlers of all connections share one pool of daemon threads, which is never
+ * shut down; its idle threads expire on their own.
+ */
+class WebkitNotificationDispatcher {
+
+  /**
+   * The pending notifications of one domain. It is scheduled on the executor while it has any.
+   */
+  private class DomainQueue implements Runnable {
+    private String domain;
+
+    private LinkedList<Runnable> handlers = new LinkedList<Runnable>();
+    private LinkedList<Long> arrivalTimes = new LinkedList<Long>();
+    private boolean scheduled;
+
+    private int maxQueueDepth;
+    private long dispatchCount;
+    private long totalLatency;
+    private long maxLatency;
+    private long lastWarningTime;
+
+    DomainQueue(String domain) {
+      this.domain = domain;
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable handler;
+        long latency;
+
+        synchronized (this) {
+          if (handlers.isEmpty() || closed) {
+            handlers.clear();
+            arrivalTimes.clear();
+            scheduled = false;
+            return;
+          }
+
+          handler = handlers.removeFirst();
+          latency = System.currentTimeMillis() - arrivalTimes.removeFirst();
+
+          dispatchCount++;
+          totalLatency += latency;
+          maxLatency = Math.max(maxLatency, latency);
+        }
+
+        if (latency >= SLOW_DISPATCH_LATENCY) {
+          warnSlow(latency);
+        }
+
+        try {
+          handler.run();
+        } catch (Throwable exception) {
+          SDBGDebugCorePlugin.logError(exception);
+        }
+      }
+    }
+
+    /**
+     * @return true if the queue needs to be scheduled
+     */
+    synchronized boolean add(Runnable handler) {
+      handlers.add(handler);
+      arrivalTimes.add(System.currentTimeMillis());
+
+      maxQueueDepth = Math.max(maxQueueDepth, handlers.size());
+
+      if (scheduled) {
+        return false;
+      } else {
+        scheduled = true;
+        return true;
+      }
+    }
+
+    synchronized void clear() {
+      handlers.clear();
+      arrivalTimes.clear();
+      scheduled = false;
+    }
+
+    synchronized WebkitDispatchStats getStats() {
+      return new WebkitDispatchStats(
+          domain,
+          handlers.size(),
+          maxQueueDepth,
+          dispatchCount,
+          totalLatency,
+          maxLatency);
+    }
+
+    private void warnSlow(long latency) {
+      int queueDepth;
+
+      synchronized (this) {
+        long now = System.currentTimeMillis();
+
+        if (now - lastWarningTime < SLOW_DISPATCH_LATENCY) {
+          return;
+        }
+
+        lastWarningTime = now;
+        queueDepth = handlers.size();
+      }
+
+      WIPTrace.trace("Notifications for " + domain + " are falling behind: " + latency
+          + "ms latency, " + queueDepth + " queued");
+    }
+  }
+
+  /**
+   * Dispatch latencies above this, in milliseconds, are traced.
+   */
+  private static final long SLOW_DISPATCH_LATENCY = 500;
+
+  private static final AtomicInteger threadCount = new AtomicInteger();
+
+  private static ExecutorService executor;
+
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      executor = Executors.newCachedThreadPool(new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "Webkit notifications "
+              + threadCount.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+    }
+
+    return executor;
+  }
+
+  private Map<String, DomainQueue> queues = new LinkedHashMap<String, DomainQueue>();
+
+  private volatile boolean closed;
+
+  WebkitNotificationDispatcher() {
+
+  }
+
+  /**
+   * Drop the queued notifications, and any dispatched later. A handler that is already running
+   * completes.
+   */
+  void close() {
+    List<DomainQueue> closedQueues;
+
+    synchronized (this) {
+      closed = true;
+      closedQueues = new ArrayList<DomainQueue>(queues.values());
+    }
+
+    for (DomainQueue queue : closedQueues) {
+      queue.clear();
+    }
+  }
+
+  /**
+   * Queue a notification handler behind the other notifications of its domain.
+   */
+  void dispatch(String domain, Runnable handler) {
+    DomainQueue queue;
+
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+
+      queue = queues.get(domain);
+
+      if (queue == null) {
+        queue = new DomainQueue(domain);
+        queues.put(domain, queue);
+      }
+    }
+
+    if (queue.add(handler)) {
+      try {
+        getExecutor().execute(queue);
+      } catch (RejectedExecutionException e) {
+        SDBGDebugCorePlugin.logError(e);
+        queue.clear();
+      }
+    }
+  }
+
+  synchronized List<WebkitDispatchStats> getStats() {
+    List<WebkitDispatchStats> stats = new ArrayList<WebkitDispatchStats>();
+
+    for (DomainQueue queue : queues.values()) {
+      stats.add(queue.getStats());
+    }
+
+    return stats;
+  }
+
+}
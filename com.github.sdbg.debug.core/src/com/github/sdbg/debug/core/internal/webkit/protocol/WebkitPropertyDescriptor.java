@@ -14,6 +14,9 @@
 
 package com.github.sdbg.debug.core.internal.webkit.protocol;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -96,32 +99,62 @@ public class WebkitPropertyDescriptor implements Comparable<WebkitPropertyDescri
       descriptor.value = WebkitRemoteObject.createFrom(params.getJSONObject("value"));
     }
 
-    // __proto__
-    if (descriptor.name.equals("__proto__")) {
-      descriptor.enumerable = false;
+    descriptor.patchup();
+
+    return descriptor;
+  }
+
+  static WebkitPropertyDescriptor[] readArrayFrom(WebkitJsonReader reader) throws JSONException {
+    List<WebkitPropertyDescriptor> results = new ArrayList<WebkitPropertyDescriptor>();
+
+    reader.beginArray();
+
+    while (reader.hasNext()) {
+      results.add(readFrom(reader));
     }
 
-    if (descriptor.value != null) {
-      if (descriptor.value.isDartFunction()) {
-        descriptor.enumerable = false;
-      }
+    reader.endArray();
 
-      // [runtimeType, _Type]
-      if (descriptor.name.equals("runtimeType") && "_Type".equals(descriptor.value.getClassName())) {
-        descriptor.enumerable = false;
-      }
+    return results.toArray(new WebkitPropertyDescriptor[results.size()]);
+  }
 
-      // Patch up the className for the @staticFields property.
-      if (STATIC_FIELDS_OBJECT.equals(descriptor.name)) {
-        descriptor.value.className = "Type";
-      }
+  static WebkitPropertyDescriptor readFrom(WebkitJsonReader reader) throws JSONException {
+    WebkitPropertyDescriptor descriptor = new WebkitPropertyDescriptor();
 
-      // Patch up the className for the @library property.
-      if (LIBRARY_OBJECT.equals(descriptor.name)) {
-        descriptor.value.className = "Library";
+    reader.beginObject();
+
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+
+      if (name.equals("name")) {
+        descriptor.name = reader.nextString();
+      } else if (name.equals("value")) {
+        descriptor.value = WebkitRemoteObject.readFrom(reader);
+      } else if (name.equals("writable")) {
+        descriptor.writable = reader.nextBoolean();
+      } else if (name.equals("configurable")) {
+        descriptor.configurable = reader.nextBoolean();
+      } else if (name.equals("enumerable")) {
+        descriptor.enumerable = reader.nextBoolean();
+      } else if (name.equals("wasThrown")) {
+        descriptor.wasThrown = reader.nextBoolean();
+      } else if (name.equals("get")) {
+        descriptor.getterFunction = WebkitRemoteObject.readFrom(reader);
+      } else if (name.equals("set")) {
+        descriptor.setterFunction = WebkitRemoteObject.readFrom(reader);
+      } else {
+        reader.skipValue();
       }
     }
 
+    reader.endObject();
+
+    if (descriptor.name == null) {
+      throw new JSONException("Property descriptor has no name");
+    }
+
+    descriptor.patchup();
+
     return descriptor;
   }
 
@@ -196,4 +229,32 @@ public class WebkitPropertyDescriptor implements Comparable<WebkitPropertyDescri
     return "[" + name + "," + value + "]";
   }
 
+  private void patchup() {
+    // __proto__
+    if (name.equals("__proto__")) {
+      enumerable = false;
+    }
+
+    if (value != null) {
+      if (value.isDartFunction()) {
+        enumerable = false;
+      }
+
+      // [runtimeType, _Type]
+      if (name.equals("runtimeType") && "_Type".equals(value.getClassName())) {
+        enumerable = false;
+      }
+
+      // Patch up the className for the @staticFields property.
+      if (STATIC_FIELDS_OBJECT.equals(name)) {
+        value.className = "Type";
+      }
+
+      // Patch up the className for the @library property.
+      if (LIBRARY_OBJECT.equals(name)) {
+        value.className = "Library";
+      }
+    }
+  }
+
 }
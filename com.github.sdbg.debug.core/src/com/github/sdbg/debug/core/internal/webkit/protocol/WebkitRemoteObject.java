@@ -15,8 +15,8 @@
 package com.github.sdbg.debug.core.internal.webkit.protocol;
 
 import java.io.IOException;
-import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -40,7 +40,7 @@ public class WebkitRemoteObject {
 
   private String value;
 
-  private int listLength = -1;
+  private volatile int listLength = -1;
 
   public static WebkitRemoteObject createFrom(JSONObject params) throws JSONException {
     WebkitRemoteObject remoteObject = new WebkitRemoteObject();
@@ -68,6 +68,36 @@ public class WebkitRemoteObject {
 
     return obj;
   }
+  static WebkitRemoteObject readFrom(WebkitJsonReader reader) throws JSONException {
+    WebkitRemoteObject remoteObject = new WebkitRemoteObject();
+
+    reader.beginObject();
+
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+
+      if (name.equals("type")) {
+        remoteObject.type = reader.nextString();
+      } else if (name.equals("objectId")) {
+        remoteObject.objectId = reader.nextString();
+      } else if (name.equals("className")) {
+        remoteObject.className = reader.nextString();
+      } else if (name.equals("description")) {
+        remoteObject.description = reader.nextString();
+      } else if (name.equals("subtype")) {
+        remoteObject.subtype = reader.nextString();
+      } else if (name.equals("value")) {
+        remoteObject.value = reader.nextString();
+      } else {
+        reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+
+    return remoteObject;
+  }
+
 
   @Override
   public boolean equals(Object obj) {
@@ -110,38 +140,64 @@ public class WebkitRemoteObject {
    */
   public int getListLength(WebkitConnection connection) {
     if (listLength == -1) {
-      final CountDownLatch latch = new CountDownLatch(1);
+      WebkitFuture<Integer> future = new WebkitFuture<Integer>();
 
       try {
-        connection.getRuntime().callListLength(objectId, new WebkitCallback<Integer>() {
-          @Override
-          public void handleResult(WebkitResult<Integer> result) {
-            if (result.isError()) {
-              listLength = 0;
-            } else if (result.getResult() == null) {
-              listLength = 0;
-            } else {
-              listLength = result.getResult().intValue();
-            }
-
-            latch.countDown();
-          }
-        });
+        connection.getRuntime().callListLength(objectId, future);
+
+        WebkitResult<Integer> result = future.get(3, TimeUnit.SECONDS);
+
+        if (result.isError() || result.getResult() == null) {
+          listLength = 0;
+        } else {
+          listLength = result.getResult().intValue();
+        }
       } catch (IOException e) {
         listLength = 0;
-        latch.countDown();
-      }
-
-      try {
-        latch.await(3, TimeUnit.SECONDS);
       } catch (InterruptedException e) {
 
+      } catch (TimeoutException e) {
+
       }
     }
 
     return listLength;
   }
 
+  /**
+   * Get the length of the list without blocking; see {@link #getListLength(WebkitConnection)}. The
+   * callback is run right away if the length is already known.
+   * 
+   * @param connection
+   * @param callback
+   */
+  public void getListLength(WebkitConnection connection, final WebkitCallback<Integer> callback) {
+    if (listLength != -1) {
+      callback.handleResult(createListLengthResult());
+
+      return;
+    }
+
+    try {
+      connection.getRuntime().callListLength(objectId, new WebkitCallback<Integer>() {
+        @Override
+        public void handleResult(WebkitResult<Integer> result) {
+          if (result.isError() || result.getResult() == null) {
+            listLength = 0;
+          } else {
+            listLength = result.getResult().intValue();
+          }
+
+          callback.handleResult(createListLengthResult());
+        }
+      });
+    } catch (IOException e) {
+      listLength = 0;
+
+      callback.handleResult(createListLengthResult());
+    }
+  }
+
   public String getObjectId() {
     return objectId;
   }
@@ -254,4 +310,12 @@ public class WebkitRemoteObject {
   void setDescription(String value) {
     description = value;
   }
+
+  private WebkitResult<Integer> createListLengthResult() {
+    WebkitResult<Integer> result = new WebkitResult<Integer>();
+
+    result.setResult(listLength);
+
+    return result;
+  }
 }
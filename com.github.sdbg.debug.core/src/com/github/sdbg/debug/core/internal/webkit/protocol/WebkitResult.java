@@ -33,6 +33,19 @@ public class WebkitResult<T> {
     return result;
   }
 
+  /**
+   * @param error the error, e.g. the "error" member of a reply; or null for a result without error
+   */
+  public static <T> WebkitResult<T> createWithError(Object error) {
+    WebkitResult<T> result = new WebkitResult<T>();
+
+    if (error != null) {
+      result.setError(error);
+    }
+
+    return result;
+  }
+
   static JSONObject createJsonErrorResult(String message) throws JSONException {
     JSONObject obj = new JSONObject();
 
@@ -15,8 +15,10 @@
 package com.github.sdbg.debug.core.internal.webkit.protocol;
 
 import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection.Callback;
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection.StreamingCallback;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.json.JSONArray;
@@ -90,10 +92,25 @@ public class WebkitRuntime extends WebkitDomain {
 
   }
 
+  public static interface RuntimeListener {
+    /**
+     * Fired when a group of remote objects is released; the objects are no longer valid.
+     * 
+     * @param objectGroup
+     */
+    public void objectGroupReleased(String objectGroup);
+  }
+
+  private List<RuntimeListener> listeners = new ArrayList<RuntimeListener>();
+
   public WebkitRuntime(WebkitConnection connection) {
     super(connection);
   }
 
+  public void addRuntimeListener(RuntimeListener listener) {
+    listeners.add(listener);
+  }
+
   /**
    * Calls function with given declaration on the given object. Object group of the result is
    * inherited from the target object.
@@ -299,10 +316,10 @@ public class WebkitRuntime extends WebkitDomain {
       request.put("method", "Runtime.getProperties");
       request.put("params", params);
 
-      connection.sendRequest(request, new Callback() {
+      connection.sendRequest(request, new StreamingCallback() {
         @Override
-        public void handleResult(JSONObject result) throws JSONException {
-          callback.handleResult(convertGetPropertiesResult(object, result));
+        void readResult(Object error, WebkitJsonReader result) throws JSONException {
+          callback.handleResult(readGetPropertiesResult(error, result));
         }
       });
     } catch (JSONException exception) {
@@ -346,6 +363,14 @@ public class WebkitRuntime extends WebkitDomain {
     } catch (JSONException exception) {
       throw new IOException(exception);
     }
+
+    for (RuntimeListener listener : listeners) {
+      listener.objectGroupReleased(objectGroup);
+    }
+  }
+
+  public void removeRuntimeListener(RuntimeListener listener) {
+    listeners.remove(listener);
   }
 
   /**
@@ -393,14 +418,22 @@ public class WebkitRuntime extends WebkitDomain {
     return arr;
   }
 
-  private WebkitResult<WebkitPropertyDescriptor[]> convertGetPropertiesResult(
-      WebkitRemoteObject parentObject, JSONObject object) throws JSONException {
-    WebkitResult<WebkitPropertyDescriptor[]> result = WebkitResult.createFrom(object);
+  private WebkitResult<WebkitPropertyDescriptor[]> readGetPropertiesResult(Object error,
+      WebkitJsonReader reader) throws JSONException {
+    WebkitResult<WebkitPropertyDescriptor[]> result = WebkitResult.createWithError(error);
 
-    if (object.has("result")) {
-      JSONObject obj = object.getJSONObject("result");
+    if (reader != null) {
+      reader.beginObject();
+
+      while (reader.hasNext()) {
+        if (reader.nextName().equals("result")) {
+          result.setResult(WebkitPropertyDescriptor.readArrayFrom(reader));
+        } else {
+          reader.skipValue();
+        }
+      }
 
-      result.setResult(WebkitPropertyDescriptor.createFrom(obj.getJSONArray("result")));
+      reader.endObject();
     }
 
     return result;
@@ -14,6 +14,9 @@
 
 package com.github.sdbg.debug.core.internal.webkit.protocol;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -52,6 +55,46 @@ public class WebkitScope {
     return scope;
   }
 
+  static WebkitScope[] readArrayFrom(WebkitJsonReader reader) throws JSONException {
+    List<WebkitScope> scopes = new ArrayList<WebkitScope>();
+
+    reader.beginArray();
+
+    while (reader.hasNext()) {
+      scopes.add(readFrom(reader));
+    }
+
+    reader.endArray();
+
+    return scopes.toArray(new WebkitScope[scopes.size()]);
+  }
+
+  private static WebkitScope readFrom(WebkitJsonReader reader) throws JSONException {
+    WebkitScope scope = new WebkitScope();
+
+    reader.beginObject();
+
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+
+      if (name.equals("type")) {
+        scope.type = reader.nextString();
+      } else if (name.equals("object")) {
+        scope.object = WebkitRemoteObject.readFrom(reader);
+      } else {
+        reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+
+    if (scope.object == null) {
+      throw new JSONException("Scope has no object");
+    }
+
+    return scope;
+  }
+
   public WebkitRemoteObject getObject() {
     return object;
   }
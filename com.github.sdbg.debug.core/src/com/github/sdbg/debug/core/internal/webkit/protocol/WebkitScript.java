@@ -28,7 +28,7 @@ public class WebkitScript {
     script.scriptId = JsonUtils.getString(params, "scriptId");
     script.url = JsonUtils.getString(params, "url");
     script.startLine = JsonUtils.getInt(params, "startLine", -1);
-    script.startColumn = JsonUtils.getInt(params, "startLine", -1);
+    script.startColumn = JsonUtils.getInt(params, "startColumn", -1);
     script.endLine = JsonUtils.getInt(params, "endLine", -1);
     script.endColumn = JsonUtils.getInt(params, "endColumn", -1);
     script.isContentScript = JsonUtils.getBoolean(params, "isContentScript");
@@ -39,6 +39,47 @@ public class WebkitScript {
     return script;
   }
 
+  static WebkitScript readFrom(WebkitJsonReader reader) throws JSONException {
+    WebkitScript script = new WebkitScript();
+
+    script.startLine = -1;
+    script.startColumn = -1;
+    script.endLine = -1;
+    script.endColumn = -1;
+
+    reader.beginObject();
+
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+
+      if (name.equals("scriptId")) {
+        script.scriptId = reader.nextString();
+      } else if (name.equals("url")) {
+        script.url = reader.nextString();
+      } else if (name.equals("startLine")) {
+        script.startLine = reader.nextInt();
+      } else if (name.equals("startColumn")) {
+        script.startColumn = reader.nextInt();
+      } else if (name.equals("endLine")) {
+        script.endLine = reader.nextInt();
+      } else if (name.equals("endColumn")) {
+        script.endColumn = reader.nextInt();
+      } else if (name.equals("isContentScript")) {
+        script.isContentScript = reader.nextBoolean();
+      } else if (name.equals("sourceMapURL")) {
+        script.sourceMapURL = reader.nextString();
+      } else {
+        reader.skipValue();
+      }
+    }
+
+    reader.endObject();
+
+    script.patchupScriptUrl();
+
+    return script;
+  }
+
   private String sourceMapURL;
 
   private boolean isContentScript;
@@ -14,6 +14,8 @@
 
 package com.github.sdbg.debug.core.model;
 
+import com.github.sdbg.debug.core.model.ISDBGValue.IValueCallback;
+
 import org.eclipse.debug.core.DebugException;
 import org.eclipse.debug.core.model.IStackFrame;
 
@@ -22,6 +24,11 @@ import org.eclipse.debug.core.model.IStackFrame;
  */
 public interface IExceptionStackFrame extends IStackFrame {
 
+  /**
+   * Get the text of {@link #getExceptionDisplayText()} without blocking the calling thread.
+   */
+  public void computeExceptionDisplayText(IValueCallback callback);
+
   public String getExceptionDisplayText() throws DebugException;
 
   public String getLongName();
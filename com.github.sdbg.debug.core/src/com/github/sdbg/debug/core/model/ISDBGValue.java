@@ -22,6 +22,13 @@ import org.eclipse.debug.core.model.IValue;
  * A sub-class of IValue that adds additional meta-information about the value.
  */
 public interface ISDBGValue extends IValue, IExpressionEvaluator {
+  /**
+   * Receives the length of a list value.
+   */
+  public static interface IListLengthCallback {
+    public void listLengthComputed(int length);
+  }
+
   //&&&
   public static interface IValueCallback {
     public void detailComputed(String stringValue);
@@ -30,6 +37,24 @@ public interface ISDBGValue extends IValue, IExpressionEvaluator {
   //&&&
   public void computeDetail(final IValueCallback callback);
 
+  /**
+   * Get the list length without blocking the calling thread. Once known, the length is also
+   * returned by {@link #getListLength()} without a round trip to the VM.
+   */
+  public void computeListLength(IListLengthCallback callback);
+
+  /**
+   * Get the variables of this value without blocking the calling thread.
+   */
+  public void computeVariables(IVariablesCallback callback);
+
+  /**
+   * Get the elements in the given range of a list value without blocking the calling thread. Once
+   * fetched, they are also returned by the IIndexedValue getVariables(int, int) without a round
+   * trip to the VM. Values that are not lists have no elements.
+   */
+  public void computeVariables(int offset, int length, IVariablesCallback callback);
+
   //&&&
   public String getDisplayString();
 
@@ -39,7 +64,8 @@ public interface ISDBGValue extends IValue, IExpressionEvaluator {
   public String getId();
 
   /**
-   * Returns the list length, if isListValue() is true.
+   * Returns the list length, if isListValue() is true. This waits for the VM; see
+   * {@link #computeListLength(IListLengthCallback)}.
    */
   public int getListLength();
 
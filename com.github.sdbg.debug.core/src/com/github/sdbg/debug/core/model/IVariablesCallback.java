@@ -0,0 +1,30 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.model;
+
+import org.eclipse.debug.core.model.IVariable;
+
+/**
+ * Receives the variables of a stack frame or value once they have been fetched from the VM. The
+ * callback may be run on any thread, including the one that asked for the variables.
+ */
+public interface IVariablesCallback {
+
+  /**
+   * @param variables the variables; the ones that could not be fetched are left out
+   */
+  public void variablesComputed(IVariable[] variables);
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The gzipped content of the files served by the {@link ResourceServer}. An entry is used for as
+ * long as the file's modification time and length are unchanged; the least recently served entries
+ * are dropped once the cache holds more than {@link #MAX_CACHE_SIZE} bytes.
+ */
+class CompressedContentCache {
+  private static class Entry {
+    long lastModified;
+    long length;
+    byte[] content;
+  }
+
+  static final int MAX_CACHE_SIZE = 16 * 1024 * 1024;
+
+  /**
+   * Files larger than this are compressed each time they are served, rather than crowding
+   * everything else out of the cache.
+   */
+  private static final int MAX_ENTRY_SIZE = MAX_CACHE_SIZE / 4;
+
+  private Map<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+  private long size;
+
+  /**
+   * Drop all the cached content.
+   */
+  synchronized void clear() {
+    entries.clear();
+    size = 0;
+  }
+
+  /**
+   * Return the gzipped content of the given file, compressing it if the cached content is missing
+   * or stale.
+   * 
+   * @param file the file to serve
+   * @param lastModified the modification time of the file, as it was validated for the request
+   * @param length the length of the file, as it was validated for the request
+   * @return the gzipped content
+   * @throws IOException
+   */
+  byte[] getContent(File file, long lastModified, long length) throws IOException {
+    String key = file.getAbsolutePath();
+
+    synchronized (this) {
+      Entry entry = entries.get(key);
+
+      if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+        return entry.content;
+      }
+    }
+
+    byte[] content = compress(file, length);
+
+    // Don't keep content if the file changed while it was being read.
+    if (file.lastModified() == lastModified && file.length() == length
+        && content.length <= MAX_ENTRY_SIZE) {
+      Entry entry = new Entry();
+
+      entry.lastModified = lastModified;
+      entry.length = length;
+      entry.content = content;
+
+      put(key, entry);
+    }
+
+    return content;
+  }
+
+  /**
+   * @return the number of bytes of compressed content held
+   */
+  synchronized long getSize() {
+    return size;
+  }
+
+  private byte[] compress(File file, long length) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream((int) Math.min(length / 4 + 64, 65536));
+    GZIPOutputStream out = new GZIPOutputStream(bytes, 8192);
+    InputStream in = new FileInputStream(file);
+
+    try {
+      byte[] buffer = new byte[8192];
+
+      int count = in.read(buffer);
+
+      while (count != -1) {
+        out.write(buffer, 0, count);
+
+        count = in.read(buffer);
+      }
+    } finally {
+      in.close();
+    }
+
+    out.close();
+
+    return bytes.toByteArray();
+  }
+
+  private synchronized void put(String key, Entry entry) {
+    Entry previous = entries.put(key, entry);
+
+    if (previous != null) {
+      size -= previous.content.length;
+    }
+
+    size += entry.content.length;
+
+    Iterator<Entry> iter = entries.values().iterator();
+
+    while (size > MAX_CACHE_SIZE && iter.hasNext()) {
+      size -= iter.next().content.length;
+      iter.remove();
+    }
+  }
+
+}
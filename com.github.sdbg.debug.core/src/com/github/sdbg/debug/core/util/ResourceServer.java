@@ -16,6 +16,7 @@ package com.github.sdbg.debug.core.util;
 
 import com.github.sdbg.core.DartCore;
 import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+import com.github.sdbg.debug.core.internal.util.ResourceLookupCache;
 import com.github.sdbg.debug.core.model.IResourceResolver;
 import com.github.sdbg.utilities.NetUtils;
 import com.github.sdbg.utilities.Streams;
@@ -23,18 +24,29 @@ import com.github.sdbg.utilities.Streams;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.net.ServerSocket;
-import java.net.Socket;
+import java.net.InetSocketAddress;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -45,14 +57,54 @@ import org.eclipse.core.runtime.CoreException;
 
 /**
  * A web server that serves up workspace resources.
+ * <p>
+ * Connections waiting for a request are watched by a single selector thread. When a request
+ * arrives, its connection is handed to a bounded pool of handler threads, which serve the request
+ * and then hand the connection back. Idle keep-alive connections don't hold a thread, so the
+ * number of threads stays fixed however many browsers and devices are loading pages.
  */
 public class ResourceServer implements IResourceResolver {
-  private ServerSocket serverSocket;
+  /**
+   * The number of requests served at once; further requests wait for a free handler.
+   */
+  private static final int HANDLER_THREAD_COUNT = 8;
+
+  /**
+   * How long a connection may sit idle waiting for its next request.
+   */
+  static final int KEEP_ALIVE_TIMEOUT = 15000;
+
+  private static final int IDLE_CHECK_INTERVAL = 1000;
 
-  private ExecutorService threadPool;
+  private ServerSocketChannel serverChannel;
+
+  private Selector selector;
+
+  private ThreadPoolExecutor threadPool;
 
   private Set<String> previousAgents = new HashSet<String>();
 
+  /**
+   * The open connections, kept so that shutdown() can close connections in any state.
+   */
+  private Set<ResourceServerHandler> connections = new HashSet<ResourceServerHandler>();
+
+  /**
+   * Connections that have been served, waiting to be watched by the selector again.
+   */
+  private Queue<ResourceServerHandler> idleConnections =
+      new ConcurrentLinkedQueue<ResourceServerHandler>();
+
+  private CompressedContentCache compressedContent = new CompressedContentCache();
+
+  private ResourceLookupCache<String, IResource> urlResources =
+      new ResourceLookupCache<String, IResource>();
+
+  private ResourceLookupCache<IResource, String> resourceUrlRegexes =
+      new ResourceLookupCache<IResource, String>();
+
+  private ResourceLookupCache<File, String> fileUrls = new ResourceLookupCache<File, String>();
+
   /**
    * Create a ResourceServer; serve its resources from any free port.
    * 
@@ -68,8 +120,31 @@ public class ResourceServer implements IResourceResolver {
    * @throws IOException
    */
   public ResourceServer(int port) throws IOException {
-    serverSocket = new ServerSocket(port);
-    threadPool = Executors.newCachedThreadPool();
+    serverChannel = ServerSocketChannel.open();
+    serverChannel.socket().bind(new InetSocketAddress(port));
+    serverChannel.configureBlocking(false);
+
+    selector = Selector.open();
+    serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+    final AtomicInteger threadCount = new AtomicInteger();
+
+    threadPool = new ThreadPoolExecutor(
+        HANDLER_THREAD_COUNT,
+        HANDLER_THREAD_COUNT,
+        60,
+        TimeUnit.SECONDS,
+        new LinkedBlockingQueue<Runnable>(),
+        new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "Web Server Handler "
+                + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    threadPool.allowCoreThreadTimeOut(true);
 
     new Thread(new Runnable() {
       @Override
@@ -87,18 +162,24 @@ public class ResourceServer implements IResourceResolver {
   }
 
   public int getPort() {
-    return serverSocket.getLocalPort();
+    return serverChannel.socket().getLocalPort();
   }
 
   @Override
   public String getUrlForFile(File file) {
-    IFile[] files = ResourcesPlugin.getWorkspace().getRoot().findFilesForLocationURI(file.toURI());
-
-    if (files.length > 0) {
-      return getUrlForResource(files[0]);
-    } else {
-      return null;
-    }
+    return fileUrls.get(file, new ResourceLookupCache.Lookup<File, String>() {
+      @Override
+      public String lookup(File key) {
+        IFile[] files = ResourcesPlugin.getWorkspace().getRoot().findFilesForLocationURI(
+            key.toURI());
+
+        if (files.length > 0) {
+          return getUrlForResource(files[0]);
+        } else {
+          return null;
+        }
+      }
+    });
   }
 
   @Override
@@ -108,27 +189,37 @@ public class ResourceServer implements IResourceResolver {
 
   @Override
   public String getUrlRegexForResource(IResource resource) {
-    IProject project = resource.getProject();
-    File projectDir = project.getLocation().toFile();
+    return resourceUrlRegexes.get(resource, new ResourceLookupCache.Lookup<IResource, String>() {
+      @Override
+      public String lookup(IResource key) {
+        IProject project = key.getProject();
+        File projectDir = project.getLocation().toFile();
 
-    return projectDir.getName() + "/" + resource.getProjectRelativePath().toPortableString();
+        return projectDir.getName() + "/" + key.getProjectRelativePath().toPortableString();
+      }
+    });
   }
 
   @Override
   public IResource resolveUrl(String url) {
-    try {
-      URI uri = new URI(url);
-      String filePath = uri.getPath();
-      IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(filePath);
+    return urlResources.get(url, new ResourceLookupCache.Lookup<String, IResource>() {
+      @Override
+      public IResource lookup(String key) {
+        try {
+          URI uri = new URI(key);
+          String filePath = uri.getPath();
+          IResource resource = ResourcesPlugin.getWorkspace().getRoot().findMember(filePath);
+
+          if (resource.exists()) {
+            return resource;
+          }
 
-      if (resource.exists()) {
-        return resource;
+          return null;
+        } catch (Throwable t) {
+          return null;
+        }
       }
-
-      return null;
-    } catch (Throwable t) {
-      return null;
-    }
+    });
   }
 
   /**
@@ -136,10 +227,47 @@ public class ResourceServer implements IResourceResolver {
    */
   public void shutdown() {
     try {
-      serverSocket.close();
+      serverChannel.close();
+      selector.close();
     } catch (IOException exception) {
       SDBGDebugCorePlugin.logError(exception);
     }
+
+    List<ResourceServerHandler> openConnections;
+
+    synchronized (connections) {
+      openConnections = new ArrayList<ResourceServerHandler>(connections);
+      connections.clear();
+    }
+
+    for (ResourceServerHandler connection : openConnections) {
+      connection.close();
+    }
+
+    threadPool.shutdown();
+    compressedContent.clear();
+  }
+
+  /**
+   * Called by the handler of a connection once it has closed it.
+   */
+  void connectionClosed(ResourceServerHandler connection) {
+    synchronized (connections) {
+      connections.remove(connection);
+    }
+  }
+
+  /**
+   * Called by the handler of a connection once it has served the requests received so far; the
+   * connection is watched for the next request.
+   */
+  void connectionIdle(ResourceServerHandler connection) {
+    idleConnections.add(connection);
+    selector.wakeup();
+  }
+
+  CompressedContentCache getCompressedContent() {
+    return compressedContent;
   }
 
   protected String getAvailableAppsContent() throws IOException {
@@ -195,6 +323,41 @@ public class ResourceServer implements IResourceResolver {
     }
   }
 
+  private void accept() throws IOException {
+    SocketChannel channel = serverChannel.accept();
+
+    if (channel == null) {
+      return;
+    }
+
+    ResourceServerHandler connection = new ResourceServerHandler(this, channel);
+
+    synchronized (connections) {
+      connections.add(connection);
+    }
+
+    channel.configureBlocking(false);
+    channel.register(selector, SelectionKey.OP_READ, connection);
+  }
+
+  /**
+   * Close the connections that have been waiting too long for their next request.
+   */
+  private void closeIdleConnections() {
+    long now = System.currentTimeMillis();
+
+    for (SelectionKey key : selector.keys()) {
+      if (key.isValid() && key.attachment() instanceof ResourceServerHandler) {
+        ResourceServerHandler connection = (ResourceServerHandler) key.attachment();
+
+        if (now - connection.getIdleSince() > KEEP_ALIVE_TIMEOUT) {
+          key.cancel();
+          connection.close();
+        }
+      }
+    }
+  }
+
   private List<IFile> getAllExecutableFiles() {
     final List<IFile> files = new ArrayList<IFile>();
 
@@ -240,7 +403,7 @@ public class ResourceServer implements IResourceResolver {
           "http",
           null,
           NetUtils.getLoopbackAddress(),
-          serverSocket.getLocalPort(),
+          getPort(),
           path,
           null,
           null);
@@ -252,6 +415,24 @@ public class ResourceServer implements IResourceResolver {
     }
   }
 
+  /**
+   * Watch the connections handed back by the handlers for their next request.
+   */
+  private void registerIdleConnections() {
+    ResourceServerHandler connection = idleConnections.poll();
+
+    while (connection != null) {
+      try {
+        connection.getChannel().configureBlocking(false);
+        connection.getChannel().register(selector, SelectionKey.OP_READ, connection);
+      } catch (IOException e) {
+        connection.close();
+      }
+
+      connection = idleConnections.poll();
+    }
+  }
+
   private String replaceTemplate(String template, String target, String replace) {
     target = "${" + target + "}";
 
@@ -264,15 +445,68 @@ public class ResourceServer implements IResourceResolver {
   }
 
   private void startServer() {
+    long lastIdleCheck = System.currentTimeMillis();
+
     try {
       while (true) {
-        Socket socket = serverSocket.accept();
+        registerIdleConnections();
+
+        // Keys selected by the selectNow() below are still waiting to be handled.
+        if (selector.selectedKeys().isEmpty()) {
+          selector.select(IDLE_CHECK_INTERVAL);
+        } else {
+          selector.selectNow();
+        }
+
+        List<ResourceServerHandler> ready = new ArrayList<ResourceServerHandler>();
 
-        threadPool.execute(new ResourceServerHandler(this, socket));
+        for (Iterator<SelectionKey> iter = selector.selectedKeys().iterator(); iter.hasNext();) {
+          SelectionKey key = iter.next();
+          iter.remove();
+
+          if (!key.isValid()) {
+            continue;
+          }
+
+          if (key.isAcceptable()) {
+            accept();
+          } else if (key.isReadable()) {
+            key.cancel();
+            ready.add((ResourceServerHandler) key.attachment());
+          }
+        }
+
+        if (!ready.isEmpty()) {
+          // Deregister the cancelled keys, so the channels can be put back into blocking mode.
+          selector.selectNow();
+
+          for (ResourceServerHandler connection : ready) {
+            try {
+              connection.getChannel().configureBlocking(true);
+              threadPool.execute(connection);
+            } catch (IOException e) {
+              connection.close();
+            } catch (RejectedExecutionException e) {
+              // The server has been shut down.
+              connection.close();
+            }
+          }
+        }
+
+        if (System.currentTimeMillis() - lastIdleCheck >= IDLE_CHECK_INTERVAL) {
+          lastIdleCheck = System.currentTimeMillis();
+
+          closeIdleConnections();
+        }
       }
-    } catch (IOException e) {
-      // The server socket was closed by the shutdown() call.
+    } catch (ClosedSelectorException e) {
+      // The selector was closed by the shutdown() call.
 
+    } catch (IOException e) {
+      // The server channel was closed by the shutdown() call.
+      if (serverChannel.isOpen()) {
+        SDBGDebugCorePlugin.logError(e);
+      }
     }
   }
 
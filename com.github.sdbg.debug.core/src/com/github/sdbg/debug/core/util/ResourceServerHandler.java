@@ -17,34 +17,45 @@ package com.github.sdbg.debug.core.util;
 import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
 import com.github.sdbg.utilities.Streams;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.io.RandomAccessFile;
 import java.io.UnsupportedEncodingException;
 import java.net.ConnectException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketException;
+import java.net.SocketTimeoutException;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.Charset;
 import java.text.DateFormat;
+import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.TimeZone;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -63,19 +74,103 @@ import org.json.JSONObject;
 // Server: Apache/1.3.3.7 (Unix) (Red-Hat/Linux)
 // Last-Modified: Wed, 08 Jan 2003 23:11:55 GMT
 // Content-Length: 438
-// Connection: close
+// Connection: keep-alive
 // Content-Type: text/html; charset=UTF-8
 
 /**
- * Handles an incoming http request, serving files from the workspace (or error pages) as necessary.
+ * Handles the http requests of a connection, serving files from the workspace (or error pages) as
+ * necessary. The handler is run each time its connection has a request ready; file content is sent
+ * straight from the file's channel to the socket.
  */
 class ResourceServerHandler implements Runnable {
+  /**
+   * A part of a response body served from a file: either some bytes, or a region of the file.
+   */
+  private static class BodyPart {
+    public static BodyPart fromBytes(byte[] bytes) {
+      BodyPart part = new BodyPart();
+
+      part.bytes = bytes;
+      part.length = bytes.length;
+
+      return part;
+    }
+
+    public static BodyPart fromFile(long start, long length) {
+      BodyPart part = new BodyPart();
+
+      part.start = start;
+      part.length = length;
+
+      return part;
+    }
+
+    public byte[] bytes;
+    public long start;
+    public long length;
+  }
+
+  /**
+   * Reads from the socket within a deadline, however slowly the bytes trickle in; the socket
+   * timeout alone only bounds each read.
+   */
+  private class DeadlineInputStream extends FilterInputStream {
+    private long deadline;
+
+    DeadlineInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      checkDeadline();
+
+      return super.read();
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+      checkDeadline();
+
+      return super.read(buffer, offset, length);
+    }
+
+    /**
+     * @param deadline the time by which reads must be done, or 0 for the socket timeout alone
+     */
+    void setDeadline(long deadline) throws SocketException {
+      this.deadline = deadline;
+
+      if (deadline == 0) {
+        socket.setSoTimeout(ResourceServer.KEEP_ALIVE_TIMEOUT);
+      }
+    }
+
+    private void checkDeadline() throws IOException {
+      if (deadline != 0) {
+        long remaining = deadline - System.currentTimeMillis();
+
+        if (remaining <= 0) {
+          throw new SocketTimeoutException("Request header not received in time");
+        }
+
+        socket.setSoTimeout((int) Math.min(remaining, ResourceServer.KEEP_ALIVE_TIMEOUT));
+      }
+    }
+  }
+
   private static class HttpHeader {
     public static final String METHOD_GET = "GET";
     public static final String METHOD_HEAD = "HEAD";
     public static final String METHOD_POST = "POST";
 
     private static final String RANGE = "Range";
+    private static final String HTTP_1_1 = "HTTP/1.1";
+
+    /**
+     * Requests for more ranges than this are answered with the whole file.
+     */
+    private static final int MAX_RANGES = 64;
 
     public String method;
     public String file;
@@ -83,6 +178,28 @@ class ResourceServerHandler implements Runnable {
 
     public Map<String, String> headers = new LinkedHashMap<String, String>();
 
+    /**
+     * @return whether the client will take a gzipped response body
+     */
+    public boolean acceptsGzip() {
+      String encodings = getHeaderKey(ACCEPT_ENCODING);
+
+      if (encodings == null) {
+        return false;
+      }
+
+      for (String encoding : encodings.split(",")) {
+        // Accept-Encoding: gzip, deflate; gzip;q=0 turns it off.
+        String[] strs = encoding.trim().split(";");
+
+        if (strs[0].trim().equalsIgnoreCase("gzip")) {
+          return strs.length == 1 || !strs[1].trim().matches("q=0(\\.0*)?");
+        }
+      }
+
+      return false;
+    }
+
     public int getContentLength() {
       String len = headers.get(CONTENT_LENGTH);
 
@@ -115,41 +232,90 @@ class ResourceServerHandler implements Runnable {
       return null;
     }
 
-    public List<int[]> getRanges() {
-      // Range: bytes=0-99,500-1499,4000-
-      if (headers.containsKey(RANGE)) {
-        String rangeStr = getHeaderKey(RANGE);
+    /**
+     * Parse the Range header against a file of the given length.
+     * 
+     * @return the satisfiable ranges, as the offsets of their first and last bytes; an empty list
+     *         if none of the ranges can be satisfied; or null if there is no valid Range header,
+     *         and the whole file should be sent
+     */
+    public List<long[]> getRanges(long length) {
+      // Range: bytes=0-99,500-1499,4000-,-500
+      String rangeStr = getHeaderKey(RANGE);
+
+      if (rangeStr == null || !rangeStr.startsWith("bytes=")) {
+        return null;
+      }
 
-        if (rangeStr.startsWith("bytes=")) {
-          rangeStr = rangeStr.substring("bytes=".length());
+      String[] strs = rangeStr.substring("bytes=".length()).split(",");
 
-          String[] strs = rangeStr.split(",");
+      if (strs.length > MAX_RANGES) {
+        return null;
+      }
 
-          List<int[]> result = new ArrayList<int[]>();
+      List<long[]> result = new ArrayList<long[]>();
 
-          for (String str : strs) {
-            int index = str.indexOf('-');
+      for (String str : strs) {
+        str = str.trim();
 
-            try {
-              if (index == 0) {
-                result.add(new int[] {0, Integer.parseInt(str.substring(1))});
-              } else if (index == str.length() - 1) {
-                result.add(new int[] {Integer.parseInt(str.substring(0, index)), -1});
-              } else if (index != -1) {
-                result.add(new int[] {
-                    Integer.parseInt(str.substring(0, index)),
-                    Integer.parseInt(str.substring(index + 1))});
+        int index = str.indexOf('-');
+
+        if (index == -1) {
+          return null;
+        }
+
+        long first;
+        long last;
+
+        try {
+          if (index == 0) {
+            // -500 is the last 500 bytes.
+            first = Math.max(0, length - Long.parseLong(str.substring(1)));
+            last = length - 1;
+          } else {
+            first = Long.parseLong(str.substring(0, index));
+
+            if (index == str.length() - 1) {
+              // 4000- is everything from offset 4000.
+              last = length - 1;
+            } else {
+              last = Long.parseLong(str.substring(index + 1));
+
+              if (last < first) {
+                return null;
               }
-            } catch (NumberFormatException nfe) {
 
+              last = Math.min(last, length - 1);
             }
           }
+        } catch (NumberFormatException nfe) {
+          return null;
+        }
 
-          return result;
+        if (first < length && first <= last) {
+          result.add(new long[] {first, last});
         }
       }
 
-      return null;
+      return result;
+    }
+
+    public boolean hasRanges() {
+      return getHeaderKey(RANGE) != null;
+    }
+
+    /**
+     * @return whether the client wants the connection kept open after the response; this is the
+     *         default for HTTP/1.1
+     */
+    public boolean isKeepAlive() {
+      String connection = getHeaderKey(CONNECTION);
+
+      if (HTTP_1_1.equals(version)) {
+        return connection == null || !connection.toLowerCase().contains("close");
+      } else {
+        return connection != null && connection.toLowerCase().contains("keep-alive");
+      }
     }
 
     @Override
@@ -172,21 +338,36 @@ class ResourceServerHandler implements Runnable {
     public static final int OK = 200; // "OK"
     public static final int PARTIAL_CONTENT = 206; // "Partial Content"
     public static final int REDIRECT = 302; // "Found"
+    public static final int NOT_MODIFIED = 304; // "Not Modified"
     public static final int NOT_FOUND = 404; // "Not Found"
     public static final int UNAUTHORIZED = 401; // "Unauthorized"
-
-    public static final DateFormat RFC_1123_DATE_FORMAT = new SimpleDateFormat(
-        "EEE, dd MMM yyyy HH:mm:ss z",
-        Locale.US);
+    public static final int RANGE_NOT_SATISFIABLE = 416; // "Requested Range Not Satisfiable"
 
     public int responseCode = OK;
     public String responseText = "OK";
 
     public Map<String, String> headers = new LinkedHashMap<String, String>();
 
-    // one or the other needs to be null
+    // at most one of these is set
     public String responseBodyText;
     public InputStream responseBodyStream;
+    public File responseBodyFile;
+
+    // the parts of responseBodyFile to send
+    public List<BodyPart> responseBodyParts;
+
+    /**
+     * @return whether the end of the body can be found without closing the connection
+     */
+    public boolean hasDelimitedBody() {
+      if (responseBodyText == null && responseBodyStream == null && responseBodyFile == null) {
+        return true;
+      }
+
+      String length = headers.get(CONTENT_LENGTH);
+
+      return length != null && !length.startsWith("-");
+    }
 
     @Override
     public String toString() {
@@ -200,6 +381,14 @@ class ResourceServerHandler implements Runnable {
   private static final String ACCEPT_RANGES = "Accept-Ranges";
   private static final String CONTENT_RANGE = "Content-Range";
   private static final String LAST_MODIFIED = "Last-Modified";
+  private static final String ACCEPT_ENCODING = "Accept-Encoding";
+  private static final String CONNECTION = "Connection";
+  private static final String CONTENT_ENCODING = "Content-Encoding";
+  private static final String ETAG = "ETag";
+  private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+  private static final String IF_NONE_MATCH = "If-None-Match";
+  private static final String IF_RANGE = "If-Range";
+  private static final String VARY = "Vary";
 
   private static final String ISO_8859_1 = "ISO-8859-1";
   private static final String US_ASCII = "US-ASCII";
@@ -214,6 +403,8 @@ class ResourceServerHandler implements Runnable {
   private static final String TYPE_JS = "text/javascript";
   private static final String TYPE_DART = "application/dart";
   private static final String TYPE_XML = "text/xml";
+  private static final String TYPE_JSON = "application/json";
+  private static final String TYPE_BYTERANGES = "multipart/byteranges";
 
   private static final String TYPE_JPEG = "image/jpeg";
   private static final String TYPE_GIF = "image/gif";
@@ -229,6 +420,8 @@ class ResourceServerHandler implements Runnable {
     contentMappings.put("css", TYPE_CSS);
     contentMappings.put("js", TYPE_JS);
     contentMappings.put("xml", TYPE_XML);
+    contentMappings.put("json", TYPE_JSON);
+    contentMappings.put("map", TYPE_JSON);
 
     contentMappings.put("dart", TYPE_DART);
 
@@ -242,6 +435,35 @@ class ResourceServerHandler implements Runnable {
 
   private static final String CRLF = "\r\n";
 
+  /**
+   * The number of requests served over a connection before it is closed.
+   */
+  private static final int MAX_KEEP_ALIVE_REQUESTS = 1000;
+
+  /**
+   * Smaller files are not worth gzipping.
+   */
+  private static final long MIN_COMPRESS_LENGTH = 1024;
+
+  /**
+   * Larger files are sent as they are, rather than compressed into memory.
+   */
+  private static final long MAX_COMPRESS_LENGTH = 32 * 1024 * 1024;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  /**
+   * How long a response may wait for the client to take more of it, in milliseconds, before the
+   * connection is closed. Unlike reads, channel writes do not observe the socket timeout.
+   */
+  private static final int WRITE_TIMEOUT = ResourceServer.KEEP_ALIVE_TIMEOUT;
+
+  /**
+   * How long the whole header of a request may take to arrive, in milliseconds, so that clients
+   * sending it a byte at a time cannot hold the handler threads.
+   */
+  private static final int HEADER_TIMEOUT = 10000;
+
   private static byte[] AGENT_CONTENT;
 
   /**
@@ -257,8 +479,43 @@ class ResourceServerHandler implements Runnable {
 
   private ResourceServer resourceServer;
 
+  private SocketChannel channel;
+
   private Socket socket;
 
+  /**
+   * Reads the requests; kept for the life of the connection, so that any bytes of the next request
+   * read ahead by the buffer are not lost.
+   */
+  private DataInputStream in;
+
+  /**
+   * The socket input under {@link #in}, which bounds the time taken by the request headers.
+   */
+  private DeadlineInputStream socketIn;
+
+  private int requestCount;
+
+  private volatile long idleSince = System.currentTimeMillis();
+
+  /**
+   * Waits for room to write when the client is slow to read; opened by the first such wait of a
+   * response.
+   */
+  private Selector writeSelector;
+
+  /**
+   * @return a formatter for RFC 1123 dates, as used in HTTP headers; formatters are not thread safe
+   */
+  private static DateFormat createDateFormat() {
+    // Last-Modified: Wed, 08 Jan 2003 23:11:55 GMT
+    DateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+
+    format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+    return format;
+  }
+
   @SuppressWarnings("unused")
   private static byte[] getJSAgentContent() {
     if (AGENT_CONTENT == null) {
@@ -297,48 +554,40 @@ class ResourceServerHandler implements Runnable {
     }
   }
 
-  public ResourceServerHandler(ResourceServer resourceServer, Socket socket) {
+  public ResourceServerHandler(ResourceServer resourceServer, SocketChannel channel) {
     this.resourceServer = resourceServer;
-    this.socket = socket;
+    this.channel = channel;
+    this.socket = channel.socket();
   }
 
   @Override
   public void run() {
     try {
-      DataInputStream in = new DataInputStream(socket.getInputStream());
+      if (in == null) {
+        // Bound the wait for the rest of a request once it has started to arrive.
+        socket.setSoTimeout(ResourceServer.KEEP_ALIVE_TIMEOUT);
 
-      HttpHeader header = parseHeader(in);
+        socketIn = new DeadlineInputStream(socket.getInputStream());
+        in = new DataInputStream(new BufferedInputStream(socketIn, BUFFER_SIZE));
+      }
 
-      if (header == null) {
-        trace("Resource server: socket closed early");
-        safeClose(socket);
-      } else if (isAllowableConnection(socket, header)) {
-        HttpResponse response;
-
-        if (HttpHeader.METHOD_GET.equals(header.method)
-            || HttpHeader.METHOD_HEAD.equals(header.method)) {
-          response = createGETResponse(header);
-        } else if (HttpHeader.METHOD_POST.equals(header.method)) {
-          response = createPOSTResponse(header, in);
-        } else {
-          response = createErrorResponse("Request type " + header.method + " not supported.");
-        }
+      // Serve the requests received so far, including any pipelined behind the first.
+      do {
+        if (!serveRequest()) {
+          close();
 
-        trace("Resource server: " + header);
-        if (isTracing()) {
-          if (response.responseCode != HttpResponse.OK) {
-            trace("       response: " + response);
-          }
+          return;
         }
+      } while (in.available() > 0);
 
-        sendResponse(response);
-      } else {
-        // do nothing
-      }
+      idleSince = System.currentTimeMillis();
 
-      socket.close();
+      resourceServer.connectionIdle(this);
+    } catch (SocketTimeoutException e) {
+      // The request was never completed.
+      close();
     } catch (IOException ioe) {
-      safeClose(socket);
+      close();
 
       // ignore java.net.SocketException: Connection reset
       // ignore java.net.SocketException: Broken pipe
@@ -346,14 +595,35 @@ class ResourceServerHandler implements Runnable {
         SDBGDebugCorePlugin.logError(ioe);
       }
     } catch (Throwable t) {
+      close();
+
       SDBGDebugCorePlugin.logError(t);
     }
   }
 
+  /**
+   * Close the connection.
+   */
+  void close() {
+    safeClose(socket);
+
+    resourceServer.connectionClosed(this);
+  }
+
+  SocketChannel getChannel() {
+    return channel;
+  }
+
+  /**
+   * @return the time the connection last finished serving a request
+   */
+  long getIdleSince() {
+    return idleSince;
+  }
+
   private HttpResponse addStandardResponseHeaders(HttpResponse response) {
     //&&&response.headers.put("Server", "Dart Editor v" + DartCore.getVersion());
     response.headers.put("Server", "Script Debugger v0");
-    response.headers.put("Connection", "close");
     return response;
   }
 
@@ -367,6 +637,13 @@ class ResourceServerHandler implements Runnable {
     return !file.getName().startsWith(".");
   }
 
+  /**
+   * @return a separator for the parts of a multipart body, which won't appear in the file content
+   */
+  private String createBoundary() {
+    return "SDBG_BOUNDARY_" + Long.toHexString(System.nanoTime());
+  }
+
   private HttpResponse createErrorResponse() {
     return createErrorResponse("");
   }
@@ -380,7 +657,7 @@ class ResourceServerHandler implements Runnable {
     response.headers.put(CONTENT_TYPE, "text/html");
     response.responseBodyText = "<html><head><title>404 Not Found</title></head><body>" + message
         + "</body></html>";
-    response.headers.put(CONTENT_LENGTH, Integer.toString(response.responseBodyText.length()));
+    response.headers.put(CONTENT_LENGTH, getBodyTextLength(response));
 
     return addStandardResponseHeaders(response);
   }
@@ -436,61 +713,119 @@ class ResourceServerHandler implements Runnable {
 
     HttpResponse response = new HttpResponse();
 
-    try {
-      // Last-Modified: Wed, 08 Jan 2003 23:11:55 GMT
-      Date date = new Date(javaFile.lastModified());
-      response.headers.put(LAST_MODIFIED, HttpResponse.RFC_1123_DATE_FORMAT.format(date));
-    } catch (ArrayIndexOutOfBoundsException ex) {
-      // This happens occasionally on Windows. 
-
-    } catch (Throwable t) {
-      SDBGDebugCorePlugin.logError(t);
-    }
+    long lastModified = javaFile.lastModified();
+    long length = javaFile.length();
 
     // Content-Type: text/html[; charset=UTF-8]
     String contentType = getContentType(getFileExtension(javaFile.getName()));
-    response.headers.put(CONTENT_TYPE, contentType);
 
-    // Cache-control: no-cache
+    boolean compressible = isCompressible(contentType);
+    boolean compress = compressible && !header.hasRanges() && header.acceptsGzip()
+        && length >= MIN_COMPRESS_LENGTH && length <= MAX_COMPRESS_LENGTH;
+
+    // Last-Modified: Wed, 08 Jan 2003 23:11:55 GMT
+    response.headers.put(LAST_MODIFIED, createDateFormat().format(new Date(lastModified)));
+
+    // ETag: "13c4a3f6d80-1b6"
+    String etag = createETag(lastModified, length, compress);
+    response.headers.put(ETAG, etag);
+
+    // Cache-control: no-cache; the browser revalidates each time it uses the file, which the ETag
+    // and Last-Modified headers answer with a 304 while the file is unchanged.
     response.headers.put(CACHE_CONTROL, "no-cache");
 
-    // Content-Length: 438
-    if (javaFile != null) {
-      long length = javaFile.length();
+    if (compressible) {
+      response.headers.put(VARY, ACCEPT_ENCODING);
+    }
 
-//      if (javaScriptContent != null) {
-//        length = javaScriptContent.length;
-//      }
+    if (isNotModified(header, etag, lastModified)) {
+      response.responseCode = HttpResponse.NOT_MODIFIED;
+      response.responseText = "Not Modified";
 
-      response.headers.put(CONTENT_LENGTH, Long.toString(length));
+      return addStandardResponseHeaders(response);
+    }
+
+    response.headers.put(CONTENT_TYPE, contentType);
+
+    if (compress) {
+      // The compressed length is needed for HEAD requests too.
+      byte[] content = resourceServer.getCompressedContent().getContent(
+          javaFile,
+          lastModified,
+          length);
+
+      response.headers.put(CONTENT_ENCODING, "gzip");
+      response.headers.put(CONTENT_LENGTH, Integer.toString(content.length));
+
+      if (!headOnly) {
+        response.responseBodyStream = new ByteArrayInputStream(content);
+      }
+
+      return addStandardResponseHeaders(response);
     }
 
-    if (!headOnly) {
-//      if (javaScriptContent != null) {
-//        response.responseBodyStream = new ByteArrayInputStream(javaScriptContent);
-//      } else {
-      List<int[]> ranges = header.getRanges();
+    // Indicate that we support requesting a subset of the document.
+    response.headers.put(ACCEPT_RANGES, "bytes");
 
-      if (ranges != null) {
-        byte[] rangeData = readRangeData(javaFile, ranges);
+    List<long[]> ranges = isRangeCurrent(header, etag, lastModified)
+        ? header.getRanges(length) : null;
 
-        response.responseBodyStream = new ByteArrayInputStream(rangeData);
+    if (ranges == null) {
+      // Content-Length: 438
+      response.headers.put(CONTENT_LENGTH, Long.toString(length));
 
-        response.responseCode = HttpResponse.PARTIAL_CONTENT;
-        response.responseText = "Partial Content";
+      response.responseBodyFile = javaFile;
+      response.responseBodyParts = Collections.singletonList(BodyPart.fromFile(0, length));
+    } else if (ranges.isEmpty()) {
+      response.responseCode = HttpResponse.RANGE_NOT_SATISFIABLE;
+      response.responseText = "Requested Range Not Satisfiable";
+
+      // Content-Range: bytes */Z
+      response.headers.put(CONTENT_RANGE, "bytes */" + length);
+      response.headers.put(CONTENT_LENGTH, Integer.toString(0));
+    } else if (ranges.size() == 1) {
+      long[] range = ranges.get(0);
+
+      response.responseCode = HttpResponse.PARTIAL_CONTENT;
+      response.responseText = "Partial Content";
+
+      // Content-Range: bytes X-Y/Z
+      response.headers.put(CONTENT_RANGE, formatContentRange(range, length));
+      response.headers.put(CONTENT_LENGTH, Long.toString(range[1] - range[0] + 1));
+
+      response.responseBodyFile = javaFile;
+      response.responseBodyParts = Collections.singletonList(BodyPart.fromFile(
+          range[0],
+          range[1] - range[0] + 1));
+    } else {
+      // Each range is sent as a part of a multipart/byteranges body, with its own headers.
+      String boundary = createBoundary();
+      List<BodyPart> parts = new ArrayList<BodyPart>();
 
-        response.headers.put(CONTENT_LENGTH, Long.toString(rangeData.length));
-        // Content-Range: bytes X-Y/Z
-        int[] range = ranges.get(0);
-        response.headers.put(CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/"
-            + rangeData.length);
-      } else {
-        response.responseBodyStream = new FileInputStream(javaFile);
+      for (long[] range : ranges) {
+        String partHeader = CRLF + "--" + boundary + CRLF + CONTENT_TYPE + ": " + contentType
+            + CRLF + CONTENT_RANGE + ": " + formatContentRange(range, length) + CRLF + CRLF;
+
+        parts.add(BodyPart.fromBytes(partHeader.getBytes(ISO_8859_1)));
+        parts.add(BodyPart.fromFile(range[0], range[1] - range[0] + 1));
       }
 
-      // Indicate that we support requesting a subset of the document.
-      response.headers.put(ACCEPT_RANGES, "bytes");
-//      }
+      parts.add(BodyPart.fromBytes((CRLF + "--" + boundary + "--" + CRLF).getBytes(ISO_8859_1)));
+
+      long contentLength = 0;
+
+      for (BodyPart part : parts) {
+        contentLength += part.length;
+      }
+
+      response.responseCode = HttpResponse.PARTIAL_CONTENT;
+      response.responseText = "Partial Content";
+
+      response.headers.put(CONTENT_TYPE, TYPE_BYTERANGES + "; boundary=" + boundary);
+      response.headers.put(CONTENT_LENGTH, Long.toString(contentLength));
+
+      response.responseBodyFile = javaFile;
+      response.responseBodyParts = parts;
     }
 
     addStandardResponseHeaders(response);
@@ -507,7 +842,7 @@ class ResourceServerHandler implements Runnable {
 
     response.headers.put(CONTENT_TYPE, "text/html");
     response.responseBodyText = "<html><head><title>401 Unauthorized</title></head><body>User agent not allowed.</body></html>";
-    response.headers.put(CONTENT_LENGTH, Integer.toString(response.responseBodyText.length()));
+    response.headers.put(CONTENT_LENGTH, getBodyTextLength(response));
 
     addStandardResponseHeaders(response);
 
@@ -536,7 +871,11 @@ class ResourceServerHandler implements Runnable {
     if ("/log".equals(file)) {
       handleLoggingPost(str);
 
-      return addStandardResponseHeaders(new HttpResponse());
+      HttpResponse response = new HttpResponse();
+
+      response.headers.put(CONTENT_LENGTH, Integer.toString(0));
+
+      return addStandardResponseHeaders(response);
     } else {
       // 404 NOT FOUND
       return createErrorResponse();
@@ -559,6 +898,15 @@ class ResourceServerHandler implements Runnable {
     return response;
   }
 
+  /**
+   * The entity tag of a file, from its modification time and length. The gzipped form of the file
+   * has its own tag.
+   */
+  private String createETag(long lastModified, long length, boolean compressed) {
+    return "\"" + Long.toHexString(lastModified) + "-" + Long.toHexString(length)
+        + (compressed ? "-gzip" : "") + "\"";
+  }
+
   /**
    * @return the given string with any %20 sequences decoded
    */
@@ -616,6 +964,31 @@ class ResourceServerHandler implements Runnable {
 //    return content.getBytes(Charsets.UTF_8);
 //  }
 
+  private void discardBody(HttpResponse response) throws IOException {
+    if (response.responseBodyStream != null) {
+      response.responseBodyStream.close();
+    }
+
+    response.responseBodyText = null;
+    response.responseBodyStream = null;
+    response.responseBodyFile = null;
+    response.responseBodyParts = null;
+  }
+
+  /**
+   * @return the Content-Range value for the given range of a file: bytes X-Y/Z
+   */
+  private String formatContentRange(long[] range, long length) {
+    return "bytes " + range[0] + "-" + range[1] + "/" + length;
+  }
+
+  /**
+   * @return the Content-Length of a text body: that of the bytes it is sent as, not of the string
+   */
+  private String getBodyTextLength(HttpResponse response) {
+    return Integer.toString(response.responseBodyText.getBytes(Charset.forName(US_ASCII)).length);
+  }
+
   private String getContentType(String extension) {
     if (extension != null) {
       extension = extension.toLowerCase();
@@ -712,20 +1085,30 @@ class ResourceServerHandler implements Runnable {
     return false;
   }
 
+  private boolean isCompressible(String contentType) {
+    return contentType.startsWith("text/") || contentType.startsWith(TYPE_DART)
+        || contentType.contains("javascript") || contentType.contains("json")
+        || contentType.contains("xml");
+  }
+
   private boolean isConnectionReset(IOException ioe) {
     // ignore java.net.SocketException: Connection reset
     // ignore java.net.SocketException: Broken pipe
     // ignore java.net.SocketException: Software caused connection abort: socket write error
 
+    // ignore java.net.SocketException: Socket closed, from closing an idle connection on shutdown
+
     if (ioe instanceof SocketException) {
-      String message = ioe.getMessage().toLowerCase();
+      String message = ioe.getMessage();
 
       if (message == null) {
         return false;
       }
 
+      message = message.toLowerCase();
+
       return message.contains("connection rese") || message.contains("connection abort")
-          || message.contains("broken pipe");
+          || message.contains("broken pipe") || message.contains("socket closed");
     }
 
     return false;
@@ -739,6 +1122,68 @@ class ResourceServerHandler implements Runnable {
 //    return javaFile.getName().endsWith(".dart.js");
 //  }
 
+  /**
+   * @return whether the client's cached copy, described by its If-None-Match or If-Modified-Since
+   *         header, is still current
+   */
+  private boolean isNotModified(HttpHeader header, String etag, long lastModified) {
+    String ifNoneMatch = header.getHeaderKey(IF_NONE_MATCH);
+
+    // If-None-Match takes precedence over If-Modified-Since.
+    if (ifNoneMatch != null) {
+      for (String tag : ifNoneMatch.split(",")) {
+        tag = tag.trim();
+
+        if (tag.startsWith("W/")) {
+          tag = tag.substring(2);
+        }
+
+        if (tag.equals("*") || tag.equals(etag)) {
+          return true;
+        }
+      }
+
+      return false;
+    }
+
+    String ifModifiedSince = header.getHeaderKey(IF_MODIFIED_SINCE);
+
+    if (ifModifiedSince != null) {
+      try {
+        Date date = createDateFormat().parse(ifModifiedSince);
+
+        // HTTP dates only have a resolution of one second.
+        return lastModified / 1000 <= date.getTime() / 1000;
+      } catch (ParseException e) {
+        return false;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * @return whether a range request should be honoured; with an If-Range header, only if the
+   *         client's copy of the file is still current
+   */
+  private boolean isRangeCurrent(HttpHeader header, String etag, long lastModified) {
+    String ifRange = header.getHeaderKey(IF_RANGE);
+
+    if (ifRange == null) {
+      return true;
+    }
+
+    if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+      return ifRange.equals(etag);
+    }
+
+    try {
+      return createDateFormat().parse(ifRange).getTime() / 1000 == lastModified / 1000;
+    } catch (ParseException e) {
+      return false;
+    }
+  }
+
   private boolean isSpecialResource(String path) {
     for (String[] resourceInfo : embeddedResources) {
       if (resourceInfo[0].equals(path)) {
@@ -822,8 +1267,18 @@ class ResourceServerHandler implements Runnable {
     return null;
   }
 
-  @SuppressWarnings("deprecation")
   private HttpHeader parseHeader(DataInputStream in) throws IOException {
+    socketIn.setDeadline(System.currentTimeMillis() + HEADER_TIMEOUT);
+
+    try {
+      return readHeader(in);
+    } finally {
+      socketIn.setDeadline(0);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  private HttpHeader readHeader(DataInputStream in) throws IOException {
     HttpHeader header = new HttpHeader();
 
     String line = in.readLine();
@@ -868,80 +1323,139 @@ class ResourceServerHandler implements Runnable {
     return header;
   }
 
-  private byte[] readRangeData(File file, List<int[]> ranges) throws IOException {
-    ByteArrayOutputStream out = new ByteArrayOutputStream();
+  private void safeClose(Socket socket) {
+    try {
+      socket.close();
+    } catch (IOException e) {
+
+    }
+  }
 
-    RandomAccessFile f = new RandomAccessFile(file, "r");
+  private void sendResponse(HttpResponse response, boolean keepAlive) throws IOException {
+    response.headers.put(CONNECTION, keepAlive ? "keep-alive" : "close");
 
-    int maxLength = (int) f.length() - 1;
+    // Open the file before anything is sent, in case it has gone.
+    FileInputStream fileIn = null;
 
-    for (int[] range : ranges) {
-      if (range[1] > maxLength || range[1] == -1) {
-        range[1] = maxLength;
-      }
+    if (response.responseBodyFile != null) {
+      fileIn = new FileInputStream(response.responseBodyFile);
+    }
+
+    // Write without blocking, so that a client which stops reading can be timed out.
+    channel.configureBlocking(false);
+
+    try {
+      StringBuilder builder = new StringBuilder();
+
+      // HTTP/1.1 200 OK
+      builder.append("HTTP/1.1 " + response.responseCode + " " + response.responseText + CRLF);
 
-      if (range[0] >= range[1]) {
-        continue;
+      for (String key : response.headers.keySet()) {
+        builder.append(key + ": " + response.headers.get(key) + CRLF);
       }
 
-      f.seek(range[0]);
+      builder.append(CRLF);
 
-      int count = range[1] - range[0] + 1;
+      ByteBuffer headerBuffer = ByteBuffer.wrap(builder.toString().getBytes(ISO_8859_1));
 
-      byte[] temp = new byte[count];
+      if (response.responseBodyText != null) {
+        writeFully(headerBuffer, ByteBuffer.wrap(response.responseBodyText.getBytes(US_ASCII)));
+      } else if (response.responseBodyStream != null) {
+        writeFully(headerBuffer);
 
-      f.readFully(temp);
+        byte[] buffer = new byte[BUFFER_SIZE];
 
-      out.write(temp);
-    }
+        int count = response.responseBodyStream.read(buffer);
 
-    f.close();
+        while (count != -1) {
+          writeFully(ByteBuffer.wrap(buffer, 0, count));
 
-    return out.toByteArray();
-  }
+          count = response.responseBodyStream.read(buffer);
+        }
 
-  private void safeClose(Socket socket) {
-    try {
-      socket.close();
-    } catch (IOException e) {
+        response.responseBodyStream.close();
+      } else if (fileIn != null) {
+        writeFully(headerBuffer);
+
+        FileChannel fileChannel = fileIn.getChannel();
 
+        for (BodyPart part : response.responseBodyParts) {
+          if (part.bytes != null) {
+            writeFully(ByteBuffer.wrap(part.bytes));
+          } else {
+            transferFully(fileChannel, part.start, part.length);
+          }
+        }
+      } else {
+        writeFully(headerBuffer);
+      }
+    } finally {
+      if (fileIn != null) {
+        fileIn.close();
+      }
+
+      if (writeSelector != null) {
+        writeSelector.close();
+        writeSelector = null;
+      }
+
+      if (channel.isOpen()) {
+        // The requests are read through the blocking socket streams.
+        channel.configureBlocking(true);
+      }
     }
   }
 
-  private void sendResponse(HttpResponse response) throws IOException {
-    OutputStream out = socket.getOutputStream();
-
-    StringBuilder builder = new StringBuilder();
+  /**
+   * Read and answer the next request.
+   * 
+   * @return whether the connection should be kept open for another request
+   */
+  private boolean serveRequest() throws IOException {
+    HttpHeader header = parseHeader(in);
 
-    // HTTP/1.1 200 OK
-    builder.append("HTTP/1.1 " + response.responseCode + " " + response.responseText + CRLF);
+    if (header == null) {
+      if (requestCount == 0) {
+        trace("Resource server: socket closed early");
+      }
 
-    for (String key : response.headers.keySet()) {
-      builder.append(key + ": " + response.headers.get(key) + CRLF);
+      return false;
     }
 
-    builder.append(CRLF);
-
-    out.write(builder.toString().getBytes(ISO_8859_1));
+    if (!isAllowableConnection(socket, header)) {
+      return false;
+    }
 
-    if (response.responseBodyText != null) {
-      out.write(response.responseBodyText.getBytes(US_ASCII));
-    } else if (response.responseBodyStream != null) {
-      byte[] buffer = new byte[2048];
+    requestCount++;
 
-      int count = response.responseBodyStream.read(buffer);
+    HttpResponse response;
 
-      while (count != -1) {
-        out.write(buffer, 0, count);
+    if (HttpHeader.METHOD_GET.equals(header.method)
+        || HttpHeader.METHOD_HEAD.equals(header.method)) {
+      response = createGETResponse(header);
+    } else if (HttpHeader.METHOD_POST.equals(header.method)) {
+      response = createPOSTResponse(header, in);
+    } else {
+      response = createErrorResponse("Request type " + header.method + " not supported.");
+    }
 
-        count = response.responseBodyStream.read(buffer);
+    trace("Resource server: " + header);
+    if (isTracing()) {
+      if (response.responseCode != HttpResponse.OK) {
+        trace("       response: " + response);
       }
+    }
 
-      response.responseBodyStream.close();
+    if (HttpHeader.METHOD_HEAD.equals(header.method)) {
+      discardBody(response);
     }
 
-    out.flush();
-    out.close();
+    boolean keepAlive = header.isKeepAlive() && response.hasDelimitedBody()
+        && requestCount < MAX_KEEP_ALIVE_REQUESTS;
+
+    sendResponse(response, keepAlive);
+
+    return keepAlive;
   }
 
   private HttpResponse serveAvailableApps(HttpHeader header) throws IOException {
@@ -969,7 +1483,9 @@ class ResourceServerHandler implements Runnable {
 
         URLConnection conn = url.openConnection();
 
-        response.headers.put(CONTENT_LENGTH, Integer.toString(conn.getContentLength()));
+        if (conn.getContentLength() >= 0) {
+          response.headers.put(CONTENT_LENGTH, Integer.toString(conn.getContentLength()));
+        }
         response.headers.put(CONTENT_TYPE, resourceInfo[1]);
 
         if (!headOnly) {
@@ -1009,4 +1525,60 @@ class ResourceServerHandler implements Runnable {
   private void trace(String message) {
     Trace.trace(Trace.RESOURCE_SERVING, message);
   }
+
+  /**
+   * Send a region of a file to the socket, without copying it through the heap.
+   */
+  private void transferFully(FileChannel file, long position, long count) throws IOException {
+    while (count > 0) {
+      long transferred = file.transferTo(position, count, channel);
+
+      if (transferred <= 0) {
+        if (position >= file.size()) {
+          // Nothing is transferred past the end of the file.
+          throw new EOFException("File truncated while being served");
+        }
+
+        awaitWritable();
+      }
+
+      position += transferred;
+      count -= transferred;
+    }
+  }
+
+  /**
+   * Wait for the client to make room for more of the response.
+   * 
+   * @throws SocketTimeoutException if it does not within the write timeout
+   */
+  private void awaitWritable() throws IOException {
+    if (writeSelector == null) {
+      writeSelector = Selector.open();
+    }
+
+    SelectionKey key = channel.register(writeSelector, SelectionKey.OP_WRITE);
+
+    try {
+      if (writeSelector.select(WRITE_TIMEOUT) == 0) {
+        throw new SocketTimeoutException("The client stopped reading the response");
+      }
+    } finally {
+      key.cancel();
+
+      // Deregister the cancelled key, so the channel can be put back into blocking mode.
+      writeSelector.selectNow();
+    }
+  }
+
+  private void writeFully(ByteBuffer... buffers) throws IOException {
+    for (ByteBuffer buffer : buffers) {
+      while (buffer.hasRemaining()) {
+        // A gathering write; it also sends the following buffers, if it can.
+        if (channel.write(buffers) == 0) {
+          awaitWritable();
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.utilities;
+
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * The last characters written to an output stream of a process, decoded with the platform's
+ * default charset, as the processes of the platform write. Whole lines are passed on to the
+ * listener, if there is one, as they are completed; a line longer than {@link #MAX_LINE_LENGTH} is
+ * passed on in pieces of that length.
+ */
+class OutputTail {
+  static final int MAX_LINE_LENGTH = 64 * 1024;
+
+  private int maxSize;
+  private ProcessRunner.OutputListener listener;
+  private boolean stderr;
+
+  private CharsetDecoder decoder = Charset.defaultCharset().newDecoder().onMalformedInput(
+      CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private ByteBuffer bytes = ByteBuffer.allocate(0);
+  private CharBuffer chars = CharBuffer.allocate(ProcessOutputPump.BUFFER_SIZE);
+
+  private StringBuilder tail = new StringBuilder();
+  private StringBuilder line = new StringBuilder();
+
+  OutputTail(int maxSize, ProcessRunner.OutputListener listener, boolean stderr) {
+    this.maxSize = maxSize;
+    this.listener = listener;
+    this.stderr = stderr;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return tail.length() > maxSize ? tail.substring(tail.length() - maxSize) : tail.toString();
+  }
+
+  synchronized void append(byte[] buffer, int count) {
+    if (bytes.remaining() > 0) {
+      // Bytes of a character split over two reads are left over.
+      ByteBuffer joined = ByteBuffer.allocate(bytes.remaining() + count);
+      joined.put(bytes).put(buffer, 0, count).flip();
+      bytes = joined;
+    } else {
+      bytes = ByteBuffer.wrap(buffer, 0, count);
+    }
+
+    while (decoder.decode(bytes, chars, false).isOverflow()) {
+      drain();
+    }
+
+    drain();
+
+    if (bytes.remaining() > 0) {
+      // The buffer belongs to the pump; keep a copy of what is left.
+      ByteBuffer left = ByteBuffer.allocate(bytes.remaining());
+      left.put(bytes).flip();
+      bytes = left;
+    }
+  }
+
+  /**
+   * Called once the stream is closed, to pass on the last line even if it is not terminated.
+   */
+  synchronized void finish() {
+    decoder.decode(bytes, chars, true);
+    decoder.flush(chars);
+    drain();
+
+    if (line.length() > 0) {
+      fireLine();
+    }
+  }
+
+  private void drain() {
+    chars.flip();
+
+    tail.append(chars);
+
+    // Trim only once in a while, rather than moving the characters on every read.
+    if (tail.length() > maxSize + maxSize / 4) {
+      tail.delete(0, tail.length() - maxSize);
+    }
+
+    if (listener != null) {
+      while (chars.hasRemaining()) {
+        char c = chars.get();
+
+        if (c == '\n') {
+          fireLine();
+        } else {
+          line.append(c);
+
+          if (line.length() == MAX_LINE_LENGTH) {
+            // Output without line breaks must not pile up.
+            fireLine();
+          }
+        }
+      }
+    }
+
+    chars.clear();
+  }
+
+  private void fireLine() {
+    int length = line.length();
+    if (length > 0 && line.charAt(length - 1) == '\r') {
+      line.setLength(length - 1);
+    }
+
+    String text = line.toString();
+    line.setLength(0);
+
+    try {
+      listener.lineRead(text, stderr);
+    } catch (RuntimeException e) {
+      // The listener misses the line; the process, and the other lines, are not affected.
+      SDBGDebugCorePlugin.logError(e);
+    }
+  }
+}
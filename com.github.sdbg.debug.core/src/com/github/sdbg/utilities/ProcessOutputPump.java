@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.utilities;
+
+import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the output of all the processes started by {@link ProcessRunner}s on a single thread,
+ * rather than on two threads per process, and reports when they exit. The streams of a process
+ * cannot be selected on, so the thread polls them for the bytes available; it reads as long as any
+ * process writes, and waits longer and longer between polls while they are all quiet.
+ */
+class ProcessOutputPump implements Runnable {
+  private static class Entry {
+    private Process process;
+    private OutputTail stdout;
+    private OutputTail stderr;
+    private Runnable exited;
+
+    Entry(Process process, OutputTail stdout, OutputTail stderr, Runnable exited) {
+      this.process = process;
+      this.stdout = stdout;
+      this.stderr = stderr;
+      this.exited = exited;
+    }
+
+    boolean hasExited() {
+      try {
+        process.exitValue();
+        return true;
+      } catch (IllegalThreadStateException e) {
+        return false;
+      }
+    }
+  }
+
+  static final int BUFFER_SIZE = 8192;
+
+  private static final long MIN_POLL_DELAY = 1;
+  private static final long MAX_POLL_DELAY = 50;
+
+  private static ProcessOutputPump pump;
+
+  static synchronized ProcessOutputPump getPump() {
+    if (pump == null) {
+      pump = new ProcessOutputPump();
+
+      Thread thread = new Thread(pump, "Process Output Pump");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    return pump;
+  }
+
+  /**
+   * Reads what the stream has available, without blocking.
+   * 
+   * @return whether anything was read
+   */
+  private static boolean pump(InputStream in, OutputTail tail, byte[] buffer) {
+    try {
+      int available = in.available();
+      if (available <= 0) {
+        return false;
+      }
+
+      int count = in.read(buffer, 0, Math.min(available, buffer.length));
+      if (count <= 0) {
+        return false;
+      }
+
+      tail.append(buffer, count);
+      return true;
+    } catch (IOException e) {
+      // The stream was closed, as the process was destroyed
+      return false;
+    }
+  }
+
+  // Only used by the pump thread
+  private byte[] buffer = new byte[BUFFER_SIZE];
+
+  // Guarded by this
+  private List<Entry> entries = new ArrayList<Entry>();
+  private long delay = MIN_POLL_DELAY;
+
+  private ProcessOutputPump() {
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        List<Entry> snapshot;
+
+        synchronized (this) {
+          while (entries.isEmpty()) {
+            wait();
+          }
+
+          snapshot = new ArrayList<Entry>(entries);
+        }
+
+        boolean active = false;
+
+        for (Entry entry : snapshot) {
+          try {
+            active |= pump(entry);
+          } catch (RuntimeException e) {
+            // Not expected, as the tails contain the failures of the listeners; logged rather than
+            // losing the pump for every process.
+            SDBGDebugCorePlugin.logError(e);
+          }
+        }
+
+        synchronized (this) {
+          if (active) {
+            delay = MIN_POLL_DELAY;
+          } else if (!entries.isEmpty()) {
+            // Returns early, with the shortest delay, when a process is added
+            wait(delay);
+            delay = Math.min(delay * 2, MAX_POLL_DELAY);
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  synchronized void add(Process process, OutputTail stdout, OutputTail stderr, Runnable exited) {
+    entries.add(new Entry(process, stdout, stderr, exited));
+    delay = MIN_POLL_DELAY;
+    notifyAll();
+  }
+
+  private void finish(Entry entry) {
+    remove(entry);
+
+    try {
+      entry.stdout.finish();
+      entry.stderr.finish();
+    } finally {
+      entry.exited.run();
+    }
+  }
+
+  /**
+   * @return whether anything was read
+   */
+  private boolean pump(Entry entry) {
+    // Once the process has exited, all it wrote is in the pipes, and no more reads mean that the
+    // output has been drained. Processes it started may still hold the pipes open; what they write
+    // afterwards is not waited for.
+    boolean exited = entry.hasExited();
+
+    boolean read = pump(entry.process.getInputStream(), entry.stdout, buffer);
+    read |= pump(entry.process.getErrorStream(), entry.stderr, buffer);
+
+    if (exited && !read) {
+      finish(entry);
+    }
+
+    return read;
+  }
+
+  private synchronized void remove(Entry entry) {
+    entries.remove(entry);
+  }
+}
@@ -14,13 +14,13 @@
 
 package com.github.sdbg.utilities;
 
-import com.github.sdbg.debug.core.SDBGDebugCorePlugin;
-
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.io.UnsupportedEncodingException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.core.runtime.OperationCanceledException;
@@ -28,17 +28,34 @@ import org.eclipse.core.runtime.OperationCanceledException;
 /**
  * Execute the process created by the given process builder; collect the results and the exit code.
  * The process runs to completion before the run() method returns.
+ * <p>
+ * The output of the process is read by a pump shared with all other runners, and only its last
+ * {@link #getMaxOutputSize()} characters are kept for each stream.
  * 
  * @coverage dart.tools.core.dart2js
  */
 public class ProcessRunner {
+  /**
+   * Receives the output of the process line by line, on the thread reading it; a line which is
+   * not terminated is passed on once the process has exited. A RuntimeException thrown by the
+   * listener is logged, and the listener is passed the next line as usual.
+   */
+  public static interface OutputListener {
+    void lineRead(String line, boolean stderr);
+  }
+
+  public static final int DEFAULT_MAX_OUTPUT_SIZE = 256 * 1024;
+
   private ProcessBuilder processBuilder;
 
+  private int maxOutputSize = DEFAULT_MAX_OUTPUT_SIZE;
+  private OutputListener outputListener;
+
   private int exitCode;
-  private StringBuffer stdout = new StringBuffer();
-  private StringBuffer stderr = new StringBuffer();
+  private OutputTail stdout;
+  private OutputTail stderr;
 
-  private Thread processThread;
+  private FutureTask<Integer> exit;
   private Process process;
 
   public ProcessRunner(ProcessBuilder processBuilder) {
@@ -54,27 +71,26 @@ public class ProcessRunner {
   public void await(IProgressMonitor monitor, int maxDelayMillis) throws IOException {
     long exitTime = maxDelayMillis > 0 ? System.currentTimeMillis() + maxDelayMillis : 0;
 
-    try {
-      // Run the process; check periodically for user cancellation.
-      while (processThread.isAlive()) {
-        if (monitor != null && monitor.isCanceled()) {
-          return;
-        }
+    // Wait for the process; check periodically for user cancellation.
+    while (monitor == null || !monitor.isCanceled()) {
+      long delay = 100;
 
-        if (exitTime != 0 && System.currentTimeMillis() > exitTime) {
+      if (exitTime != 0) {
+        delay = Math.min(delay, exitTime - System.currentTimeMillis());
+        if (delay <= 0) {
           return;
         }
+      }
 
-        processThread.join(100);
+      if (waitForExit(delay)) {
+        return;
       }
-    } catch (InterruptedException e) {
-      throw new IOException(e);
     }
   }
 
   public void dispose() {
     if (process != null) {
-      // This is set to null in runAsync().
+      // Has no effect once the process has exited.
       process.destroy();
     }
   }
@@ -83,16 +99,28 @@ public class ProcessRunner {
     return exitCode;
   }
 
+  /**
+   * Returns a future completed with the exit code, once the process has exited and its output has
+   * been read; null if the process has not been started.
+   */
+  public Future<Integer> getExitFuture() {
+    return exit;
+  }
+
+  public int getMaxOutputSize() {
+    return maxOutputSize;
+  }
+
   public String getStdErr() {
-    return stderr.toString();
+    return stderr != null ? stderr.toString() : "";
   }
 
   public String getStdOut() {
-    return stdout.toString();
+    return stdout != null ? stdout.toString() : "";
   }
 
   public boolean isRunning() {
-    return process != null && processThread != null && processThread.isAlive();
+    return exit != null && !exit.isDone();
   }
 
   /**
@@ -102,47 +130,7 @@ public class ProcessRunner {
    * @throws IOException
    */
   public void runAsync() throws IOException {
-    exitCode = 0;
-    stdout.setLength(0);
-    stderr.setLength(0);
-
-    process = processBuilder.start();
-
-    // Read from stdout.
-    final Thread stdoutThread = new Thread(new Runnable() {
-      @Override
-      public void run() {
-        pipeOutput(process.getInputStream(), stdout);
-      }
-    });
-
-    // Read from stderr.
-    final Thread stderrThread = new Thread(new Runnable() {
-      @Override
-      public void run() {
-        pipeOutput(process.getErrorStream(), stderr);
-      }
-    });
-
-    processThread = new Thread(new Runnable() {
-      @Override
-      public void run() {
-        try {
-          exitCode = process.waitFor();
-
-          process = null;
-
-          stdoutThread.join();
-          stderrThread.join();
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-        }
-      }
-    });
-
-    processThread.start();
-    stdoutThread.start();
-    stderrThread.start();
+    start();
   }
 
   /**
@@ -156,86 +144,32 @@ public class ProcessRunner {
    * @throws OperationCanceledException if the user cancelled the operation
    */
   public int runSync(IProgressMonitor monitor) throws IOException {
-    exitCode = 0;
-    stdout.setLength(0);
-    stderr.setLength(0);
-
-    final Process process = processBuilder.start();
-
-    processThread = new Thread(new Runnable() {
-      @Override
-      public void run() {
-        try {
-          exitCode = process.waitFor();
-        } catch (InterruptedException e) {
-          Thread.currentThread().interrupt();
-        }
-      }
-    });
-
-    // Read from stdout.
-    Thread stdoutThread = new Thread(new Runnable() {
-      @Override
-      public void run() {
-        pipeOutput(process.getInputStream(), stdout);
-      }
-    });
-
-    // Read from stderr.
-    Thread stderrThread = new Thread(new Runnable() {
-      @Override
-      public void run() {
-        pipeOutput(process.getErrorStream(), stderr);
-      }
-    });
-
-    processThread.start();
-    stdoutThread.start();
-    stderrThread.start();
+    start();
 
     processStarted(process);
 
-    try {
-      // Run the process; check periodically for user cancellation.
-      while (processThread.isAlive()) {
-        if (monitor != null && monitor.isCanceled()) {
-          process.destroy();
-
-          throw new OperationCanceledException();
-        }
+    // Run the process; check periodically for user cancellation.
+    while (!waitForExit(100)) {
+      if (monitor != null && monitor.isCanceled()) {
+        process.destroy();
 
-        processThread.join(100);
+        throw new OperationCanceledException();
       }
-
-      // Make sure we've read all the output.
-      stdoutThread.join();
-      stderrThread.join();
-
-      return exitCode;
-    } catch (InterruptedException e) {
-      throw new IOException(e);
     }
-  }
-
-  protected void pipeOutput(InputStream in, StringBuffer builder) {
-    try {
-      Reader reader = new InputStreamReader(in, "UTF-8");
-      char[] buffer = new char[512];
 
-      int count = reader.read(buffer);
-
-      while (count != -1) {
-        builder.append(buffer, 0, count);
+    return exitCode;
+  }
 
-        count = reader.read(buffer);
-      }
-    } catch (UnsupportedEncodingException e) {
-      //&&&DartCore.logError(e);
-      SDBGDebugCorePlugin.logError(e);
-    } catch (IOException e) {
-      // This exception is expected.
+  /**
+   * Sets the number of characters kept of each output stream; takes effect the next time the
+   * process is run.
+   */
+  public void setMaxOutputSize(int maxOutputSize) {
+    this.maxOutputSize = maxOutputSize;
+  }
 
-    }
+  public void setOutputListener(OutputListener outputListener) {
+    this.outputListener = outputListener;
   }
 
   /**
@@ -248,4 +182,46 @@ public class ProcessRunner {
   protected void processStarted(Process process) throws IOException {
   }
 
+  private void start() throws IOException {
+    exitCode = 0;
+    stdout = new OutputTail(maxOutputSize, outputListener, false);
+    stderr = new OutputTail(maxOutputSize, outputListener, true);
+
+    final FutureTask<Integer> processExit = new FutureTask<Integer>(new Callable<Integer>() {
+      @Override
+      public Integer call() {
+        return exitCode;
+      }
+    });
+
+    final Process startedProcess = processBuilder.start();
+
+    process = startedProcess;
+    exit = processExit;
+
+    ProcessOutputPump.getPump().add(startedProcess, stdout, stderr, new Runnable() {
+      @Override
+      public void run() {
+        exitCode = startedProcess.exitValue();
+        processExit.run();
+      }
+    });
+  }
+
+  /**
+   * @return whether the process has exited, and its output has been read
+   */
+  private boolean waitForExit(long millis) throws IOException {
+    try {
+      exit.get(millis, TimeUnit.MILLISECONDS);
+      return true;
+    } catch (TimeoutException e) {
+      return false;
+    } catch (InterruptedException e) {
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.core.test.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.Assert;
+
+/**
+ * Records the events received by a listener under test, so that the test can wait for them to
+ * arrive from another thread. Listeners extend it and {@link #add(Object)} what they receive.
+ */
+public class EventRecorder<T> {
+  private static final long TIMEOUT = 5000;
+
+  private List<T> events = new ArrayList<T>();
+
+  public synchronized void add(T event) {
+    events.add(event);
+    notifyAll();
+  }
+
+  /**
+   * Waits for at least the given number of events, failing the test if they have not all arrived
+   * within 5 seconds.
+   * 
+   * @return the events received so far
+   */
+  public synchronized List<T> waitFor(int count) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT);
+
+    while (events.size() < count) {
+      long remaining = deadline - System.nanoTime();
+
+      if (remaining <= 0) {
+        Assert.fail("Expected " + count + " events, received " + events);
+      }
+
+      TimeUnit.NANOSECONDS.timedWait(this, remaining);
+    }
+
+    return new ArrayList<T>(events);
+  }
+
+}
@@ -21,10 +21,15 @@ public class TestAll {
   public static Test suite() {
     TestSuite suite = new TestSuite("Tests in " + TestAll.class.getPackage().getName());
     //suite.addTest(com.github.sdbg.debug.core.configs.TestAll.suite());
+    suite.addTest(com.github.sdbg.debug.core.internal.android.TestAll.suite());
+    suite.addTest(com.github.sdbg.debug.core.internal.forwarder.TestAll.suite());
+    suite.addTest(com.github.sdbg.debug.core.internal.util.TestAll.suite());
     suite.addTest(com.github.sdbg.debug.core.internal.webkit.model.TestAll.suite());
+    suite.addTest(com.github.sdbg.debug.core.internal.webkit.protocol.TestAll.suite());
     //suite.addTest(com.github.sdbg.debug.core.server.TestAll.suite());
     suite.addTest(com.github.sdbg.debug.core.internal.sourcemaps.TestAll.suite());
     suite.addTest(com.github.sdbg.debug.core.util.TestAll.suite());
+    suite.addTest(com.github.sdbg.utilities.TestAll.suite());
     return suite;
   }
 }
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.android;
+
+import junit.framework.TestCase;
+
+/**
+ * How long {@link ADBManager} takes to list the devices of an adb server, and to run a shell
+ * command on each of them, against a {@link FakeADBServer} with {@link #DEVICE_COUNT} devices. It
+ * prints one line with the average milliseconds for each; spawning adb for the list, and getprop
+ * for each device, used to take seconds.
+ */
+public class ADBClientBenchmark extends TestCase {
+  private static final int DEVICE_COUNT = 20;
+
+  private static final int ROUNDS = 50;
+
+  private FakeADBServer server;
+
+  public void test_latency() throws Exception {
+    server = new FakeADBServer();
+
+    for (int i = 0; i < DEVICE_COUNT; i++) {
+      server.addDevice("device-" + i, "Pixel " + i);
+    }
+
+    ADBManager manager = new ADBManager(new ADBClient("127.0.0.1", server.getPort()));
+
+    // Warm up
+    for (int i = 0; i < 20; i++) {
+      manager.getDevices();
+    }
+
+    long start = System.nanoTime();
+
+    for (int i = 0; i < ROUNDS; i++) {
+      manager.getDevices();
+    }
+
+    long devicesNanos = (System.nanoTime() - start) / ROUNDS;
+
+    start = System.nanoTime();
+
+    for (int i = 0; i < ROUNDS; i++) {
+      for (ADBDeviceInfo device : manager.getDevices()) {
+        manager.shell(device.getId(), "getprop", "ro.product.model");
+      }
+    }
+
+    long shellNanos = (System.nanoTime() - start) / ROUNDS;
+
+    System.out.println(String.format(
+        "ADB client, %d devices: %.2f ms to list, %.2f ms to list and run a shell command on each",
+        DEVICE_COUNT,
+        devicesNanos / 1000000.0,
+        shellNanos / 1000000.0));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (server != null) {
+      server.close();
+    }
+
+    super.tearDown();
+  }
+
+}
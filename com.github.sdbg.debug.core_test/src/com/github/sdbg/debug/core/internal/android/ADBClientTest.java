@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.android;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+
+import com.github.sdbg.core.test.util.EventRecorder;
+
+public class ADBClientTest extends TestCase {
+
+  private static class RecordingListener extends EventRecorder<List<ADBDeviceInfo>> implements
+      ADBClient.DeviceListListener {
+    private volatile IOException failure;
+
+    @Override
+    public void devicesChanged(List<ADBDeviceInfo> devices) {
+      add(devices);
+    }
+
+    @Override
+    public void trackingFailed(IOException exception) {
+      failure = exception;
+    }
+  }
+
+  private static final int DEVICE_COUNT = 20;
+
+  private FakeADBServer server;
+  private ADBClient client;
+
+  public void test_forward() throws Exception {
+    client.forward("device-3", "tcp:9222", "localabstract:chrome_devtools_remote", false);
+    client.forward("device-4", "tcp:9223", "tcp:8080", true);
+
+    assertEquals(
+        Arrays.asList(
+            "device-3 tcp:9222;localabstract:chrome_devtools_remote",
+            "device-4 norebind:tcp:9223;tcp:8080"),
+        server.getForwards());
+
+    client.killForward("device-3", "tcp:9222");
+    assertEquals(1, server.getForwards().size());
+
+    try {
+      client.killForward("device-3", "tcp:9222");
+      fail();
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("not found"));
+    }
+  }
+
+  public void test_getDevices() throws Exception {
+    List<ADBDeviceInfo> devices = client.getDevices();
+
+    assertEquals(DEVICE_COUNT, devices.size());
+    assertEquals("device-0", devices.get(0).getId());
+    assertEquals("Pixel 0", devices.get(0).getName());
+    assertEquals(Arrays.asList("host:devices-l"), server.getRequests());
+  }
+
+  public void test_manager() throws Exception {
+    ADBManager manager = new ADBManager(client);
+
+    List<ADBDeviceInfo> devices = manager.getDevices();
+
+    assertEquals(DEVICE_COUNT, devices.size());
+
+    for (ADBDeviceInfo device : devices) {
+      assertEquals(
+          device.getName() + "\r\n",
+          manager.shell(device.getId(), "getprop", "ro.product.model"));
+    }
+  }
+
+  public void test_managerErrors() throws Exception {
+    ADBManager manager = new ADBManager(client);
+
+    try {
+      manager.shell("missing", "echo", "hello");
+      fail();
+    } catch (CoreException e) {
+      assertTrue(e.getMessage().contains("not found"));
+    }
+  }
+
+  public void test_shell() throws Exception {
+    assertEquals("hello world\r\n", client.shell("device-7", "echo hello world"));
+    assertEquals(
+        Arrays.asList("host:transport:device-7", "shell:echo hello world"),
+        server.getRequests());
+  }
+
+  public void test_trackDevices() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    Closeable tracker = client.trackDevices(listener);
+
+    try {
+      assertEquals(DEVICE_COUNT, listener.waitFor(1).get(0).size());
+
+      server.addDevice("device-new", "Nexus 7");
+      List<ADBDeviceInfo> devices = listener.waitFor(2).get(1);
+      assertEquals(DEVICE_COUNT + 1, devices.size());
+      assertEquals("device-new", devices.get(DEVICE_COUNT).getId());
+
+      server.removeDevice("device-0");
+      assertEquals(DEVICE_COUNT, listener.waitFor(3).get(2).size());
+    } finally {
+      tracker.close();
+    }
+
+    Thread.sleep(100);
+    assertNull(listener.failure);
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    server = new FakeADBServer();
+
+    for (int i = 0; i < DEVICE_COUNT; i++) {
+      server.addDevice("device-" + i, "Pixel " + i);
+    }
+
+    client = new ADBClient("127.0.0.1", server.getPort());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.close();
+
+    super.tearDown();
+  }
+
+}
@@ -0,0 +1,182 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.android;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.CoreException;
+
+import com.github.sdbg.core.test.util.EventRecorder;
+
+public class ADBDeviceRegistryTest extends TestCase {
+
+  private static class RecordingListener extends EventRecorder<String> implements
+      ADBDeviceRegistry.DeviceListener {
+    @Override
+    public void deviceAttached(ADBDeviceInfo device) {
+      add("attached " + device.getId() + " " + device.getName());
+    }
+
+    @Override
+    public void deviceDetached(ADBDeviceInfo device) {
+      add("detached " + device.getId());
+    }
+  }
+
+  private static final int DEVICE_COUNT = 15;
+  private static final long SHELL_DELAY = 200;
+
+  private FakeADBServer server;
+  private ADBDeviceRegistry registry;
+
+  public void test_concurrentProbing() throws Exception {
+    List<ADBDeviceInfo> devices = registry.getDevices();
+
+    assertEquals(DEVICE_COUNT, devices.size());
+    assertEquals("device-0", devices.get(0).getId());
+    assertEquals("Pixel 0", devices.get(0).getName());
+
+    // The devices are not probed one after the other.
+    assertTrue(
+        "At most " + server.getMaxRunningShells() + " probes ran at once",
+        server.getMaxRunningShells() > 1);
+  }
+
+  public void test_getProperties() throws Exception {
+    Map<String, String> properties = registry.getProperties("device-3");
+    assertEquals("Pixel 3", properties.get(ADBDeviceRegistry.MODEL_PROPERTY));
+    assertEquals("19", properties.get("ro.build.version.sdk"));
+
+    assertNull(registry.getProperties("missing"));
+  }
+
+  public void test_listeners() throws Exception {
+    registry.getDevices();
+
+    RecordingListener listener = new RecordingListener();
+    registry.addListener(listener);
+
+    // The devices attached already are replayed.
+    assertEquals(DEVICE_COUNT, listener.waitFor(DEVICE_COUNT).size());
+
+    server.addDevice("device-new", "Nexus 7");
+    assertEquals("attached device-new Nexus 7", listener.waitFor(DEVICE_COUNT + 1).get(
+        DEVICE_COUNT));
+
+    server.removeDevice("device-0");
+    assertEquals("detached device-0", listener.waitFor(DEVICE_COUNT + 2).get(DEVICE_COUNT + 1));
+
+    registry.removeListener(listener);
+    server.removeDevice("device-1");
+
+    Thread.sleep(100);
+    assertEquals(DEVICE_COUNT + 2, listener.waitFor(0).size());
+  }
+
+  public void test_propertiesCached() throws Exception {
+    registry.getDevices();
+    int requestCount = server.getRequests().size();
+
+    assertEquals(DEVICE_COUNT, registry.getDevices().size());
+    assertEquals(DEVICE_COUNT, registry.getDevices().size());
+
+    assertEquals(requestCount, server.getRequests().size());
+  }
+
+  public void test_trackerFailsWhileStarting() throws Exception {
+    registry.dispose();
+
+    // The first tracker fails before trackDevices() has even returned it.
+    registry = new ADBDeviceRegistry(new ADBClient("127.0.0.1", server.getPort()) {
+      private boolean failed;
+
+      @Override
+      public Closeable trackDevices(DeviceListListener listener) throws IOException {
+        if (failed) {
+          return super.trackDevices(listener);
+        }
+
+        failed = true;
+        listener.trackingFailed(new EOFException("Closed by the server"));
+
+        return new Closeable() {
+          @Override
+          public void close() {
+            // Nothing was opened
+          }
+        };
+      }
+    });
+    registry.start();
+
+    // The failed tracker is dropped, and tracking is started again.
+    long deadline = System.currentTimeMillis() + 10000;
+    List<ADBDeviceInfo> devices = null;
+
+    while (devices == null) {
+      try {
+        devices = registry.getDevices();
+      } catch (CoreException e) {
+        assertTrue(e.toString(), System.currentTimeMillis() < deadline);
+        Thread.sleep(100);
+      }
+    }
+
+    assertEquals(DEVICE_COUNT, devices.size());
+  }
+
+  public void test_trackingFailed() throws Exception {
+    registry.getDevices();
+
+    RecordingListener listener = new RecordingListener();
+    registry.addListener(listener);
+    listener.waitFor(DEVICE_COUNT);
+
+    server.close();
+
+    List<String> events = listener.waitFor(2 * DEVICE_COUNT);
+    assertEquals("detached device-0", events.get(DEVICE_COUNT));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    server = new FakeADBServer();
+    server.setShellDelay(SHELL_DELAY);
+
+    for (int i = 0; i < DEVICE_COUNT; i++) {
+      server.addDevice("device-" + i, "Pixel " + i);
+    }
+
+    registry = new ADBDeviceRegistry(new ADBClient("127.0.0.1", server.getPort()));
+    registry.start();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    registry.dispose();
+    server.close();
+
+    super.tearDown();
+  }
+
+}
@@ -0,0 +1,297 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.android;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An adb server on loopback, answering the host protocol requests made by {@link ADBClient} from a
+ * scripted set of devices.
+ */
+class FakeADBServer implements Runnable {
+  private ServerSocket serverSocket;
+
+  // Model by device id; guarded by this
+  private Map<String, String> devices = new LinkedHashMap<String, String>();
+  private List<String> forwards = new ArrayList<String>();
+  private List<OutputStream> trackers = new ArrayList<OutputStream>();
+  private List<String> requests = new ArrayList<String>();
+  private long shellDelay;
+  private int runningShells;
+  private int maxRunningShells;
+
+  FakeADBServer() throws IOException {
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+    Thread thread = new Thread(this, "Fake ADB Server");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  void addDevice(String id, String model) throws IOException {
+    synchronized (this) {
+      devices.put(id, model);
+    }
+
+    updateTrackers();
+  }
+
+  void close() throws IOException {
+    serverSocket.close();
+
+    synchronized (this) {
+      for (OutputStream out : trackers) {
+        out.close();
+      }
+    }
+  }
+
+  synchronized List<String> getForwards() {
+    return new ArrayList<String>(forwards);
+  }
+
+  int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  synchronized List<String> getRequests() {
+    return new ArrayList<String>(requests);
+  }
+
+  void removeDevice(String id) throws IOException {
+    synchronized (this) {
+      devices.remove(id);
+    }
+
+    updateTrackers();
+  }
+
+  /**
+   * Returns the most shell commands that have been running at the same time.
+   */
+  synchronized int getMaxRunningShells() {
+    return maxRunningShells;
+  }
+
+  /**
+   * Makes every shell command take the given time, the way a slow device does.
+   */
+  synchronized void setShellDelay(long shellDelay) {
+    this.shellDelay = shellDelay;
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        final Socket socket = serverSocket.accept();
+
+        Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              serve(socket);
+            } catch (IOException e) {
+              // The client went away
+            }
+          }
+        }, "Fake ADB Connection");
+        thread.setDaemon(true);
+        thread.start();
+      }
+    } catch (IOException e) {
+      // Closed
+    }
+  }
+
+  private synchronized String getDeviceList(boolean longFormat) {
+    StringBuilder builder = new StringBuilder();
+
+    for (Map.Entry<String, String> entry : devices.entrySet()) {
+      builder.append(entry.getKey() + "\tdevice");
+      if (longFormat) {
+        builder.append(" product:fake model:" + entry.getValue().replace(' ', '_')
+            + " device:fake");
+      }
+      builder.append('\n');
+    }
+
+    return builder.toString();
+  }
+
+  private String readRequest(DataInputStream in) throws IOException {
+    byte[] length = new byte[4];
+    in.readFully(length);
+
+    byte[] request = new byte[Integer.parseInt(new String(length, "US-ASCII"), 16)];
+    in.readFully(request);
+
+    String result = new String(request, "UTF-8");
+
+    synchronized (this) {
+      requests.add(result);
+    }
+
+    return result;
+  }
+
+  private void serve(Socket socket) throws IOException {
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+    OutputStream out = socket.getOutputStream();
+
+    try {
+      String request = readRequest(in);
+
+      if (request.equals("host:devices") || request.equals("host:devices-l")) {
+        writeOkay(out);
+        writeString(out, getDeviceList(request.endsWith("-l")));
+      } else if (request.equals("host:track-devices")) {
+        writeOkay(out);
+
+        synchronized (this) {
+          writeString(out, getDeviceList(false));
+          trackers.add(out);
+        }
+
+        // Keep the connection open until the client closes it.
+        while (in.read() != -1) {
+        }
+      } else if (request.equals("host:kill")) {
+        writeOkay(out);
+      } else if (request.startsWith("host-serial:")) {
+        String[] parts = request.split(":", 4);
+        String deviceId = parts[1];
+
+        synchronized (this) {
+          if (!devices.containsKey(deviceId)) {
+            writeFail(out, "device '" + deviceId + "' not found");
+          } else if (parts[2].equals("forward")) {
+            forwards.add(deviceId + " " + parts[3]);
+            writeOkay(out);
+          } else if (parts[2].equals("killforward")) {
+            boolean removed = false;
+            for (String forward : new ArrayList<String>(forwards)) {
+              if (forward.startsWith(deviceId + " " + parts[3] + ";")) {
+                removed = forwards.remove(forward);
+              }
+            }
+
+            if (removed) {
+              writeOkay(out);
+            } else {
+              writeFail(out, "listener '" + parts[3] + "' not found");
+            }
+          } else {
+            writeFail(out, "unknown service");
+          }
+        }
+      } else if (request.startsWith("host:transport:")) {
+        String deviceId = request.substring("host:transport:".length());
+        String model;
+
+        synchronized (this) {
+          model = devices.get(deviceId);
+        }
+
+        if (model == null) {
+          writeFail(out, "device '" + deviceId + "' not found");
+          return;
+        }
+
+        writeOkay(out);
+
+        String command = readRequest(in);
+        long delay;
+
+        synchronized (this) {
+          delay = shellDelay;
+          runningShells++;
+          maxRunningShells = Math.max(maxRunningShells, runningShells);
+        }
+
+        try {
+          if (delay > 0) {
+            Thread.sleep(delay);
+          }
+        } catch (InterruptedException e) {
+          // Answer right away
+        } finally {
+          synchronized (this) {
+            runningShells--;
+          }
+        }
+
+        if (command.equals("shell:getprop")) {
+          writeOkay(out);
+          out.write(("[ro.build.version.sdk]: [19]\r\n[ro.product.model]: [" + model + "]\r\n")
+              .getBytes("UTF-8"));
+        } else if (command.equals("shell:getprop ro.product.model")) {
+          writeOkay(out);
+          out.write((model + "\r\n").getBytes("UTF-8"));
+        } else if (command.startsWith("shell:echo ")) {
+          writeOkay(out);
+          out.write((command.substring("shell:echo ".length()) + "\r\n").getBytes("UTF-8"));
+        } else {
+          writeFail(out, "unknown service");
+        }
+      } else {
+        writeFail(out, "unknown host service");
+      }
+    } finally {
+      synchronized (this) {
+        trackers.remove(out);
+      }
+
+      socket.close();
+    }
+  }
+
+  private void updateTrackers() throws IOException {
+    synchronized (this) {
+      String list = getDeviceList(false);
+
+      for (OutputStream out : trackers) {
+        writeString(out, list);
+      }
+    }
+  }
+
+  private void writeFail(OutputStream out, String message) throws IOException {
+    out.write("FAIL".getBytes("US-ASCII"));
+    writeString(out, message);
+  }
+
+  private void writeOkay(OutputStream out) throws IOException {
+    out.write("OKAY".getBytes("US-ASCII"));
+    out.flush();
+  }
+
+  private void writeString(OutputStream out, String string) throws IOException {
+    byte[] bytes = string.getBytes("UTF-8");
+
+    out.write(String.format("%04x", bytes.length).getBytes("US-ASCII"));
+    out.write(bytes);
+    out.flush();
+  }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.forwarder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import com.github.sdbg.debug.core.internal.forwarder.HostReversePortForwarder.Forward;
+import com.github.sdbg.utilities.NetUtils;
+
+/**
+ * Throughput of a {@link DeviceReversePortForwarder} and {@link HostReversePortForwarder} pair
+ * connected over loopback, the way a device loading a large application pulls files from the host
+ * through many parallel connections. Each connection downloads {@link #TRANSFER_SIZE} bytes from a
+ * server on the host. It prints the throughput in MB/s of all the connections together, for each
+ * number of selector threads and of connections; a selector thread count of 0 is the single
+ * forwarder thread. The last line is the memory left in the buffer pool once the tunnels close.
+ */
+public class ReversePortForwarderBenchmark extends TestCase {
+
+  /**
+   * Serves {@link #TRANSFER_SIZE} bytes to every connection, then closes it.
+   */
+  private static class SourceServer implements Runnable {
+    private ServerSocket serverSocket;
+
+    SourceServer() throws IOException {
+      serverSocket = new ServerSocket(0);
+
+      Thread thread = new Thread(this, "Source Server");
+      thread.setDaemon(true);
+      thread.start();
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (true) {
+          final Socket socket = serverSocket.accept();
+
+          Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+              try {
+                OutputStream out = socket.getOutputStream();
+                byte[] chunk = new byte[64 * 1024];
+
+                for (int sent = 0; sent < TRANSFER_SIZE; sent += chunk.length) {
+                  out.write(chunk, 0, Math.min(chunk.length, TRANSFER_SIZE - sent));
+                }
+
+                socket.close();
+              } catch (IOException e) {
+                // The client went away
+              }
+            }
+          });
+          thread.setDaemon(true);
+          thread.start();
+        }
+      } catch (IOException e) {
+        // Closed
+      }
+    }
+
+    void close() throws IOException {
+      serverSocket.close();
+    }
+
+    int getPort() {
+      return serverSocket.getLocalPort();
+    }
+  }
+
+  private static final int TRANSFER_SIZE = 4 * 1024 * 1024;
+  private static final int TOTAL_SIZE = 256 * 1024 * 1024;
+
+  private SourceServer server;
+
+  public void test_throughput() throws Exception {
+    int[] connectionCounts = {1, 8, 32};
+    int defaultSelectorThreadCount = ReversePortForwarder.getDefaultSelectorThreadCount();
+    int[] selectorThreadCounts = defaultSelectorThreadCount > 0 ? new int[] {
+        0, defaultSelectorThreadCount} : new int[] {0};
+
+    System.out.println("Reverse port forwarder benchmark: " + TOTAL_SIZE / 1024 / 1024
+        + " MB per run, " + TRANSFER_SIZE / 1024 / 1024 + " MB per connection");
+
+    for (int selectorThreadCount : selectorThreadCounts) {
+      for (int connectionCount : connectionCounts) {
+        // Warm up
+        run(selectorThreadCount, connectionCount, TOTAL_SIZE / 4);
+
+        long nanos = run(selectorThreadCount, connectionCount, TOTAL_SIZE);
+
+        System.out.println(String.format(
+            "  %d selector threads, %2d connections %,10.1f MB/s",
+            selectorThreadCount,
+            connectionCount,
+            TOTAL_SIZE / 1024.0 / 1024.0 / (nanos / 1000000000.0)));
+      }
+    }
+
+    System.out.println("  " + BufferPool.getDefault().getPooledBytes() / 1024
+        + " KB of buffers pooled");
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    server = new SourceServer();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    server.close();
+
+    super.tearDown();
+  }
+
+  /**
+   * Downloads the given number of bytes through a new forwarder pair, spread over the given number
+   * of parallel connections.
+   * 
+   * @return the time taken, in nanoseconds
+   */
+  private long run(int selectorThreadCount, int connectionCount, int totalSize) throws Exception {
+    int commandPort = NetUtils.findUnusedPort(0);
+    final int devicePort = NetUtils.findUnusedPort(0);
+
+    final DeviceReversePortForwarder device = new DeviceReversePortForwarder(
+        commandPort,
+        new int[] {devicePort});
+    device.setSelectorThreadCount(selectorThreadCount);
+
+    Thread deviceThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          device.run();
+        } catch (IOException e) {
+          // The command channel was closed
+        }
+      }
+    }, "Device Reverse Port Forwarder");
+    deviceThread.start();
+
+    HostReversePortForwarder host = new HostReversePortForwarder(new Forward(
+        "localhost",
+        server.getPort(),
+        devicePort));
+    host.setSelectorThreadCount(selectorThreadCount);
+
+    connect(host, commandPort);
+    host.start();
+
+    try {
+      final int downloadsPerConnection = Math.max(1, totalSize / TRANSFER_SIZE / connectionCount);
+      final CountDownLatch done = new CountDownLatch(connectionCount);
+      final List<Throwable> errors = new ArrayList<Throwable>();
+
+      long start = System.nanoTime();
+
+      for (int i = 0; i < connectionCount; i++) {
+        new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              for (int j = 0; j < downloadsPerConnection; j++) {
+                download(devicePort);
+              }
+            } catch (Throwable t) {
+              synchronized (errors) {
+                errors.add(t);
+              }
+            } finally {
+              done.countDown();
+            }
+          }
+        }, "Benchmark Client " + i).start();
+      }
+
+      done.await();
+
+      long nanos = System.nanoTime() - start;
+
+      if (!errors.isEmpty()) {
+        throw new Exception(errors.get(0));
+      }
+
+      return nanos;
+    } finally {
+      host.stop();
+      deviceThread.join();
+    }
+  }
+
+  private void connect(HostReversePortForwarder host, int commandPort) throws Exception {
+    for (int i = 0; i < 100; i++) {
+      try {
+        host.connect("localhost", commandPort);
+        return;
+      } catch (IOException e) {
+        Thread.sleep(50);
+      }
+    }
+
+    fail("Could not connect to the device forwarder");
+  }
+
+  private void download(int port) throws IOException {
+    Socket socket = new Socket("localhost", port);
+
+    try {
+      InputStream in = socket.getInputStream();
+      byte[] buffer = new byte[64 * 1024];
+      long received = 0;
+
+      for (int count = in.read(buffer); count != -1; count = in.read(buffer)) {
+        received += count;
+      }
+
+      if (received != TRANSFER_SIZE) {
+        throw new IOException("Received " + received + " bytes out of " + TRANSFER_SIZE);
+      }
+    } finally {
+      socket.close();
+    }
+  }
+
+}
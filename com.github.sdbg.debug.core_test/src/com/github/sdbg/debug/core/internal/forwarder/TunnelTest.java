@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.forwarder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+
+import junit.framework.TestCase;
+
+public class TunnelTest extends TestCase {
+
+  /**
+   * A channel that always has more to read, and fails every write.
+   */
+  private static class FailingChannel implements ByteChannel {
+    @Override
+    public void close() {
+
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public int read(ByteBuffer buffer) {
+      int count = buffer.remaining();
+
+      buffer.position(buffer.limit());
+
+      return count;
+    }
+
+    @Override
+    public int write(ByteBuffer buffer) throws IOException {
+      throw new IOException("Broken pipe");
+    }
+  }
+
+  public void testCloseAfterGrowFailure() throws Exception {
+    BufferPool pool = new BufferPool();
+    Tunnel tunnel = new Tunnel(null, "test", pool);
+
+    tunnel.setLeftChannel(new FailingChannel());
+    tunnel.setRightChannel(new FailingChannel());
+
+    try {
+      tunnel.spoolLeftToRight(null);
+
+      fail();
+    } catch (IOException e) {
+      tunnel.close();
+    }
+
+    // The buffer that was grown from, and the one it grew into, are each pooled once.
+    assertEquals(BufferPool.MIN_BUFFER_SIZE * 3, pool.getPooledBytes());
+
+    ByteBuffer first = pool.acquire(BufferPool.MIN_BUFFER_SIZE);
+    ByteBuffer second = pool.acquire(BufferPool.MIN_BUFFER_SIZE);
+
+    assertNotSame(first, second);
+  }
+
+}
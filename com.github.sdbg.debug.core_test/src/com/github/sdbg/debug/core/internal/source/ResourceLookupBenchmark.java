@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.source;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+
+import com.github.sdbg.core.test.util.TestProject;
+
+/**
+ * The time taken by {@link WorkspaceSourceContainer} to find the resource for a script path, with
+ * and without the lookup cache, in a workspace of {@link #PROJECT_COUNT} projects. The paths are
+ * a mix of workspace paths, file system paths and paths that only match a project's tail, the way
+ * they come from source maps. It prints the average microseconds per lookup, first uncached, where
+ * every lookup searches the workspace, then cached, where repeated paths are answered from the
+ * cache; the gap between the two is what the cache saves per script parsed or frame shown.
+ */
+public class ResourceLookupBenchmark extends TestCase {
+
+  private static final int PROJECT_COUNT = 50;
+  private static final int FILE_COUNT = 20;
+  private static final int ROUNDS = 20;
+
+  private List<TestProject> projects = new ArrayList<TestProject>();
+
+  private List<String> paths = new ArrayList<String>();
+
+  public void test_lookup() throws Exception {
+    // Warm up both paths through the code.
+    time(false, 1);
+    time(true, 1);
+
+    long uncached = time(false, ROUNDS);
+    long cached = time(true, ROUNDS);
+
+    int lookups = ROUNDS * paths.size();
+
+    System.out.println("Resource lookup benchmark: " + PROJECT_COUNT + " projects, "
+        + paths.size() + " paths");
+    System.out.println(String.format("  uncached %,10.2f us/lookup", uncached / 1000.0 / lookups));
+    System.out.println(String.format("  cached   %,10.2f us/lookup", cached / 1000.0 / lookups));
+
+    // A structural change drops the cached results.
+    IFile file = projects.get(0).setFileContent("added.js", "// added");
+
+    String path = file.getFullPath().toString();
+
+    assertEquals(file, WorkspaceSourceContainer.locatePathAsResource(path));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    for (int i = 0; i < PROJECT_COUNT; i++) {
+      TestProject project = new TestProject("lookup_" + i);
+
+      projects.add(project);
+
+      for (int j = 0; j < FILE_COUNT; j++) {
+        IFile file = project.setFileContent("web/lib/file" + j + ".js", "// file " + j);
+
+        paths.add(file.getFullPath().toString());
+        paths.add(file.getLocation().toOSString());
+        paths.add("/" + project.getProject().getName() + "/web/lib/file" + j + ".js");
+        paths.add("lib/file" + j + ".js");
+      }
+
+      paths.add("/" + project.getProject().getName() + "/web/missing.js");
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (TestProject project : projects) {
+      project.dispose();
+    }
+
+    super.tearDown();
+  }
+
+  /**
+   * @return the time taken to look up all the paths the given number of times, in nanoseconds
+   */
+  private long time(boolean cached, int rounds) {
+    long start = System.nanoTime();
+
+    for (int i = 0; i < rounds; i++) {
+      for (String path : paths) {
+        if (cached) {
+          WorkspaceSourceContainer.locatePathAsResource(path);
+        } else {
+          WorkspaceSourceContainer.findPathAsResource(path);
+        }
+      }
+    }
+
+    return System.nanoTime() - start;
+  }
+
+}
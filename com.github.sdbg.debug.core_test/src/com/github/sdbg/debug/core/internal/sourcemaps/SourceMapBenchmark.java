@@ -0,0 +1,334 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+import java.io.File;
+import java.io.InputStreamReader;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.Path;
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import com.github.sdbg.utilities.Streams;
+
+/**
+ * Parse speed, retained heap and lookup latency of {@link SourceMap}, measured against the test
+ * fixture maps. Each test prints one line per fixture: decode and parse rates in MB/s of map text,
+ * with the old split decoder as a baseline, the bytes of heap a parsed map keeps alive per segment,
+ * and the average time of a forward or reverse lookup in nanoseconds.
+ */
+public class SourceMapBenchmark extends TestCase {
+
+  /**
+   * The previous decoder, which splits the mappings into lines and segments and decodes each
+   * segment with {@link VlqDecoder#decode(String)}. Kept as a baseline for the single pass decoder.
+   */
+  private static class SplitDecoder {
+    private SourceMapMappings.Builder builder = new SourceMapMappings.Builder();
+
+    private int originalFileIndex = 0;
+    private int originalLine = 0;
+    private int originalColumn = 0;
+    private int nameIndex = 0;
+
+    SourceMapMappings decode(String mapStr, int sourceCount) {
+      for (String line : mapStr.split(";", -1)) {
+        builder.startLine();
+
+        if (line.length() > 0) {
+          decodeLine(line.split(","));
+        }
+      }
+
+      return builder.build(sourceCount);
+    }
+
+    private void decodeLine(String[] mappings) {
+      int generatedColumn = 0;
+
+      for (String mapping : mappings) {
+        int[] indexes = VlqDecoder.decode(mapping);
+
+        if (indexes.length == 1 || indexes.length == 4 || indexes.length == 5) {
+          generatedColumn += indexes[0];
+
+          if (indexes.length < 4) {
+            builder.addSegment(
+                generatedColumn,
+                SourceMapMappings.NO_INDEX,
+                0,
+                0,
+                SourceMapMappings.NO_INDEX);
+            continue;
+          }
+
+          originalFileIndex += indexes[1];
+          originalLine += indexes[2];
+          originalColumn += indexes[3];
+
+          int mappedNameIndex = SourceMapMappings.NO_INDEX;
+
+          if (indexes.length > 4) {
+            nameIndex += indexes[4];
+            mappedNameIndex = nameIndex;
+          }
+
+          builder.addSegment(
+              generatedColumn,
+              originalFileIndex,
+              originalLine,
+              originalColumn,
+              mappedNameIndex);
+        }
+      }
+    }
+  }
+  private static final String[] FIXTURES = {"solar.dart.js.map", "main.dart.map"};
+
+  private static final int WARMUP_COUNT = 5;
+  private static final int ITERATION_COUNT = 100;
+  private static final int RETAINED_COUNT = 50;
+
+  private static long usedMemory() {
+    Runtime runtime = Runtime.getRuntime();
+
+    for (int i = 0; i < 4; i++) {
+      System.gc();
+    }
+
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  public void testCachedLoadSpeed() throws Exception {
+    File directory = File.createTempFile("sourcemaps", "");
+    directory.delete();
+
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+
+    try {
+      for (String fixture : FIXTURES) {
+        String contents = load(fixture);
+        IPath path = Path.fromPortableString(fixture);
+        String key = SourceMapCache.createKey(fixture, contents.getBytes("UTF-8"));
+
+        cache.put(key, SourceMap.createFrom(path, contents));
+
+        for (int i = 0; i < WARMUP_COUNT; i++) {
+          cache.get(path, SourceMapCache.createKey(fixture, contents.getBytes("UTF-8")));
+        }
+
+        long startTime = System.nanoTime();
+
+        for (int i = 0; i < ITERATION_COUNT; i++) {
+          // Include hashing the contents, as a reload has to do that too.
+          key = SourceMapCache.createKey(fixture, contents.getBytes("UTF-8"));
+
+          assertNotNull(cache.get(path, key));
+        }
+
+        long elapsed = System.nanoTime() - startTime;
+
+        System.out.printf(
+            "%s: cached source maps load at %.2f MB/s\n",
+            fixture,
+            megabytesPerSecond(contents.length(), elapsed));
+      }
+    } finally {
+      cache.clear();
+      directory.delete();
+    }
+  }
+
+  public void testDecodeSpeed() throws Exception {
+    for (String fixture : FIXTURES) {
+      JSONObject obj = new JSONObject(load(fixture));
+      String mapStr = obj.getString("mappings");
+      String[] sources = toArray(obj.getJSONArray("sources"));
+      String[] names = toArray(obj.getJSONArray("names"));
+
+      SourceMapMappings expected = new SplitDecoder().decode(mapStr, sources.length);
+      SourceMapMappings actual = SourceMapDecoder.decode(sources, names, mapStr);
+
+      assertTrue(Arrays.equals(expected.lineOffsets, actual.lineOffsets));
+      assertTrue(Arrays.equals(expected.columns, actual.columns));
+      assertTrue(Arrays.equals(expected.sourceIndexes, actual.sourceIndexes));
+      assertTrue(Arrays.equals(expected.originalLines, actual.originalLines));
+      assertTrue(Arrays.equals(expected.originalColumns, actual.originalColumns));
+      assertTrue(Arrays.equals(expected.nameIndexes, actual.nameIndexes));
+
+      for (int i = 0; i < WARMUP_COUNT * 10; i++) {
+        new SplitDecoder().decode(mapStr, sources.length);
+        SourceMapDecoder.decode(sources, names, mapStr);
+      }
+
+      long startTime = System.nanoTime();
+
+      for (int i = 0; i < ITERATION_COUNT; i++) {
+        new SplitDecoder().decode(mapStr, sources.length);
+      }
+
+      long splitElapsed = System.nanoTime() - startTime;
+
+      startTime = System.nanoTime();
+
+      for (int i = 0; i < ITERATION_COUNT; i++) {
+        SourceMapDecoder.decode(sources, names, mapStr);
+      }
+
+      long streamingElapsed = System.nanoTime() - startTime;
+
+      System.out.printf(
+          "%s: mappings decode at %.2f MB/s (split decoder: %.2f MB/s)\n",
+          fixture,
+          megabytesPerSecond(mapStr.length(), streamingElapsed),
+          megabytesPerSecond(mapStr.length(), splitElapsed));
+    }
+  }
+
+  public void testLookupLatency() throws Exception {
+    for (String fixture : FIXTURES) {
+      SourceMap map = SourceMapTest.loadMap(getClass(), fixture);
+      int lineCount = map.getMappings().getLineCount();
+
+      int lookups = 0;
+      int hits = 0;
+      long startTime = System.nanoTime();
+
+      for (int i = 0; i < ITERATION_COUNT; i++) {
+        for (int line = 0; line < lineCount; line++) {
+          for (int column = 0; column < 80; column += 8) {
+            if (map.getMappingFor(line, column) != null) {
+              hits++;
+            }
+
+            lookups++;
+          }
+        }
+      }
+
+      long elapsed = System.nanoTime() - startTime;
+
+      System.out.printf(
+          "%s: %d lookups (%d hits) at %.1f ns/lookup\n",
+          fixture,
+          lookups,
+          hits,
+          (double) elapsed / lookups);
+    }
+  }
+
+  public void testParseSpeed() throws Exception {
+    for (String fixture : FIXTURES) {
+      String contents = load(fixture);
+      IPath path = Path.fromPortableString(fixture);
+
+      for (int i = 0; i < WARMUP_COUNT; i++) {
+        SourceMap.createFrom(path, contents);
+      }
+
+      long startTime = System.nanoTime();
+
+      for (int i = 0; i < ITERATION_COUNT; i++) {
+        SourceMap.createFrom(path, contents);
+      }
+
+      long elapsed = System.nanoTime() - startTime;
+
+      System.out.printf(
+          "%s: source maps parse at %.2f MB/s\n",
+          fixture,
+          megabytesPerSecond(contents.length(), elapsed));
+    }
+  }
+
+  public void testRetainedSize() throws Exception {
+    for (String fixture : FIXTURES) {
+      String contents = load(fixture);
+      IPath path = Path.fromPortableString(fixture);
+      SourceMap[] maps = new SourceMap[RETAINED_COUNT];
+
+      long before = usedMemory();
+
+      for (int i = 0; i < maps.length; i++) {
+        maps[i] = SourceMap.createFrom(path, contents);
+      }
+
+      long after = usedMemory();
+
+      int segmentCount = maps[0].getMappings().getSegmentCount();
+      double bytesPerMap = (double) (after - before) / maps.length;
+
+      System.out.printf(
+          "%s: %d segments, %.0f bytes retained per map (%.1f bytes/segment)\n",
+          fixture,
+          segmentCount,
+          bytesPerMap,
+          bytesPerMap / segmentCount);
+    }
+  }
+
+  public void testReverseLookupLatency() throws Exception {
+    for (String fixture : FIXTURES) {
+      SourceMap map = SourceMapTest.loadMap(getClass(), fixture);
+
+      int lookups = 0;
+      int hits = 0;
+      long startTime = System.nanoTime();
+
+      for (int i = 0; i < ITERATION_COUNT; i++) {
+        for (String source : map.getSourceNames()) {
+          for (int line = 0; line < 500; line++) {
+            hits += map.getReverseMappingsFor(source, line).size();
+            lookups++;
+          }
+        }
+      }
+
+      long elapsed = System.nanoTime() - startTime;
+
+      System.out.printf(
+          "%s: %d reverse lookups (%d locations) at %.1f ns/lookup\n",
+          fixture,
+          lookups,
+          hits,
+          (double) elapsed / lookups);
+    }
+  }
+
+  private String load(String name) throws Exception {
+    return Streams.loadAndClose(new InputStreamReader(getClass().getResourceAsStream(name), "UTF-8"));
+  }
+
+  private double megabytesPerSecond(int length, long elapsedNanos) {
+    double byteCount = (double) length * ITERATION_COUNT;
+
+    return (byteCount / (1024 * 1024)) / (elapsedNanos / 1000000000.0);
+  }
+
+  private String[] toArray(JSONArray arr) throws Exception {
+    String[] strs = new String[arr.length()];
+
+    for (int i = 0; i < strs.length; i++) {
+      strs[i] = arr.getString(i);
+    }
+
+    return strs;
+  }
+
+}
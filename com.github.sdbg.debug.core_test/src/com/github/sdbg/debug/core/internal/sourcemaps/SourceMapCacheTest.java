@@ -0,0 +1,208 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.sourcemaps;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.Path;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class SourceMapCacheTest extends TestCase {
+  private File directory;
+
+  public void testContents() throws Exception {
+    byte[] bytes = ("{\"version\": 3, \"sources\": [\"foo.js\", \"bar.js\"], \"names\": [], "
+        + "\"sourcesContent\": [null, \"var b;\"], \"mappings\": \"AAAA\"}").getBytes("UTF-8");
+
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+    SourceMap map = SourceMap.createFrom(Path.fromPortableString("out.js.map"), bytes, "UTF-8");
+
+    cache.put("out", map);
+
+    SourceMap cachedMap = cache.get(map.getPath(), "out");
+
+    assertFalse(cachedMap.hasSourceContent("foo.js"));
+    assertTrue(cachedMap.hasSourceContent("bar.js"));
+
+    // The content is read from the raw map kept next to the entry.
+    FileOutputStream out = new FileOutputStream(cache.getContentsFile("out"));
+    out.write(bytes);
+    out.close();
+
+    cachedMap.getContents().setFile(cache.getContentsFile("out"), "UTF-8", bytes.length);
+
+    assertEquals("var b;", cachedMap.getSourceContent("bar.js"));
+
+    cache.clear();
+
+    assertFalse(cache.getContentsFile("out").exists());
+  }
+
+  public void testCorruptEntry() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+    SourceMap map = SourceMapTest.loadMap(getClass(), "main.dart.map");
+    String key = SourceMapCache.createKey("main.dart.map", new byte[] {1});
+
+    cache.put(key, map);
+
+    File[] files = directory.listFiles();
+    assertEquals(1, files.length);
+
+    // Truncate the entry.
+    FileOutputStream out = new FileOutputStream(files[0]);
+    out.write(new byte[] {0x53, 0x44});
+    out.close();
+
+    assertNull(cache.get(map.getPath(), key));
+    assertFalse(files[0].exists());
+  }
+
+  public void testCorruptLength() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+    SourceMap map = SourceMapTest.loadMap(getClass(), "main.dart.map");
+    String key = SourceMapCache.createKey("main.dart.map", new byte[] {1});
+
+    cache.put(key, map);
+
+    File file = directory.listFiles()[0];
+
+    // The length of the file name, after the magic number and the format and map versions.
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    out.seek(12);
+    out.writeInt(Integer.MAX_VALUE - 1);
+    out.close();
+
+    assertNull(cache.get(map.getPath(), key));
+    assertFalse(file.exists());
+  }
+
+  public void testCorruptIndex() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+    SourceMap map = SourceMapTest.loadMap(getClass(), "main.dart.map");
+    String key = SourceMapCache.createKey("main.dart.map", new byte[] {1});
+
+    assertNull(map.getContents());
+
+    cache.put(key, map);
+
+    File file = directory.listFiles()[0];
+
+    // The last name index, just before the missing contents marker.
+    RandomAccessFile out = new RandomAccessFile(file, "rw");
+    out.seek(file.length() - 8);
+    out.writeInt(map.getNames().length);
+    out.close();
+
+    assertNull(cache.get(map.getPath(), key));
+    assertFalse(file.exists());
+  }
+
+  public void testCreateKey() {
+    byte[] contents = {1, 2, 3};
+
+    assertEquals(
+        SourceMapCache.createKey("http://localhost/a.js.map", contents),
+        SourceMapCache.createKey("http://localhost/a.js.map", contents));
+    assertFalse(SourceMapCache.createKey("http://localhost/a.js.map", contents).equals(
+        SourceMapCache.createKey("http://localhost/b.js.map", contents)));
+    assertFalse(SourceMapCache.createKey("http://localhost/a.js.map", contents).equals(
+        SourceMapCache.createKey("http://localhost/a.js.map", new byte[] {1, 2, 4})));
+  }
+
+  public void testEviction() throws Exception {
+    SourceMap map = SourceMapTest.loadMap(getClass(), "solar.dart.js.map");
+
+    SourceMapCache cache = new SourceMapCache(directory, Long.MAX_VALUE);
+    cache.put("first", map);
+
+    long entrySize = directory.listFiles()[0].length();
+
+    // Room for two entries.
+    cache = new SourceMapCache(directory, entrySize * 2 + entrySize / 2);
+
+    new File(directory, "first.smc").setLastModified(System.currentTimeMillis() - 20000);
+    cache.put("second", map);
+    new File(directory, "second.smc").setLastModified(System.currentTimeMillis() - 10000);
+
+    // Reading the first entry makes it the most recently used one.
+    assertNotNull(cache.get(map.getPath(), "first"));
+
+    cache.put("third", map);
+
+    assertTrue(new File(directory, "first.smc").exists());
+    assertFalse(new File(directory, "second.smc").exists());
+    assertTrue(new File(directory, "third.smc").exists());
+  }
+
+  public void testMiss() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+
+    assertNull(cache.get(Path.fromPortableString("foo.js.map"), "missing"));
+  }
+
+  public void testRoundTrip() throws Exception {
+    SourceMapCache cache = new SourceMapCache(directory, SourceMapCache.DEFAULT_MAX_SIZE);
+    SourceMap map = SourceMapTest.loadMap(getClass(), "solar.dart.js.map");
+
+    cache.put("solar", map);
+
+    SourceMap cachedMap = cache.get(map.getPath(), "solar");
+
+    assertNotNull(cachedMap);
+    assertEquals(map.getVersion(), cachedMap.getVersion());
+    assertEquals(map.getFile(), cachedMap.getFile());
+    assertArrayEquals(map.getSourceNames(), cachedMap.getSourceNames());
+
+    for (int line = 0; line < map.getMappings().getLineCount(); line++) {
+      for (int column = -1; column < 100; column += 7) {
+        assertEquals(
+            String.valueOf(map.getMappingFor(line, column)),
+            String.valueOf(cachedMap.getMappingFor(line, column)));
+      }
+    }
+
+    assertEquals(
+        String.valueOf(map.getReverseMappingsFor("file:///C:/Users/username/solar/solar.dart", 34)),
+        String.valueOf(cachedMap.getReverseMappingsFor(
+            "file:///C:/Users/username/solar/solar.dart",
+            34)));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    directory = File.createTempFile("sourcemaps", "");
+    directory.delete();
+
+    if (!directory.mkdirs()) {
+      throw new IOException("unable to create " + directory);
+    }
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    for (File file : directory.listFiles()) {
+      file.delete();
+    }
+
+    directory.delete();
+  }
+
+}
@@ -14,97 +14,176 @@
 
 package com.github.sdbg.debug.core.internal.sourcemaps;
 
-public class SourceMapTest /*&&&extends AbstractDartCoreTest*/{
-//&&&  
-//
-//  private static String TEST_SOURCE = "{\nversion : 3,\nfile: \"out.js\",\n"
-//      + "sourceRoot : \"\",\nsources: [\"foo.js\", \"bar.js\"],\n"
-//      + "names: [\"src\", \"maps\", \"are\", \"fun\"],\n" + "mappings: \"AA,AB;;ABCDE;\"\n}\n";
-//
-//  public void testDwcParse() throws Exception {
-//    IFile file = testProject.setFileContent(
-//        "main.dart.map",
-//        getClass().getResourceAsStream("main.dart.map"));
-//
-//    SourceMap map = SourceMap.createFrom(file);
-//
-//    assertEquals(3, map.getVersion());
-//    // [24:0,-1] ==> ../main.dart,14,0
-//    assertEquals("../main.dart,15,0", map.getMappingFor(24, 0).toString());
-//  }
-//
-//  public void testSimpleParse() throws Exception {
-//    String[] expectedNames = {"foo.js", "bar.js"};
-//
-//    IFile file = testProject.setFileContent("foo.dart.js.map", TEST_SOURCE);
-//
-//    SourceMap map = SourceMap.createFrom(file);
-//
-//    assertEquals(3, map.getVersion());
-//    assertEquals("out.js", map.getFile());
-//    assertArrayEquals(expectedNames, map.getSourceNames());
-//    assertEquals(null, map.getMappingFor(1, 0));
-//    assertEquals("foo.js,1,-1", map.getMappingFor(2, -1).toString());
-//    assertEquals("foo.js,1,-1", map.getMappingFor(2, 0).toString());
-//    assertEquals("foo.js,1,-1", map.getMappingFor(2, 1).toString());
-//  }
-//
-//  public void testSolarParse() throws Exception {
-//    IFile file = testProject.setFileContent(
-//        "foo.dart.js.map",
-//        getClass().getResourceAsStream("solar.dart.js.map"));
-//
-//    SourceMap map = SourceMap.createFrom(file);
-//
-//    assertEquals(3, map.getVersion());
-//    assertEquals(
-//        "file:///C:/tools/eclipse_37/dart-sdk/lib/_internal/compiler/implementation/lib/regexp_helper.dart,84,36",
-//        map.getMappingFor(100, -1).toString());
-//    assertEquals(
-//        "file:///C:/Users/username/solar/solar.dart,263,2",
-//        map.getMappingFor(1351, -1).toString());
-//    assertEquals(
-//        "file:///C:/Users/username/solar/solar.dart,264,8",
-//        map.getMappingFor(1351, 17).toString());
-//    assertEquals(
-//        "file:///C:/Users/username/solar/solar.dart,263,2",
-//        map.getMappingFor(1351, 18).toString());
-//    assertEquals(
-//        "file:///C:/Users/username/solar/solar.dart,264,19",
-//        map.getMappingFor(1353, 6).toString());
-//    assertEquals(
-//        "file:///C:/Users/username/solar/solar.dart,264,8",
-//        map.getMappingFor(1353, 60).toString());
-//  }
-//
-//  public void x_testParseSpeed() throws Exception {
-//    URL bundleURL = FileLocator.find(DartDebugCoreTestPlugin.getPlugin().getBundle(), new Path(
-//        "src/com/google/dart/tools/debug/core/sourcemaps/solar.dart.js.map"), null);
-//    URL fileURL = FileLocator.toFileURL(bundleURL);
-//    File file = new File(fileURL.toURI());
-//
-//    int warmup = 2;
-//
-//    while (warmup-- > 0) {
-//      SourceMap.createFrom(file);
-//    }
-//
-//    long length = file.length();
-//    int iterationCount = 100;
-//
-//    long startTime = System.currentTimeMillis();
-//
-//    for (int i = 0; i < iterationCount; i++) {
-//      SourceMap.createFrom(file);
-//    }
-//
-//    long elapsed = System.currentTimeMillis() - startTime;
-//    double byteCount = length * iterationCount;
-//
-//    double mbps = (byteCount / (1024 * 1024)) / (elapsed / 1000.0);
-//
-//    // Currently 9.84 MB/s.
-//    System.out.printf("source maps parse at %.2f MB/s\n", mbps);
-//  }
-//
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.runtime.Path;
+
+import com.github.sdbg.utilities.Streams;
+
+import static org.junit.Assert.assertArrayEquals;
+
+public class SourceMapTest extends TestCase {
+
+  private static String TEST_SOURCE = "{\nversion : 3,\nfile: \"out.js\",\n"
+      + "sourceRoot : \"\",\nsources: [\"foo.js\", \"bar.js\"],\n"
+      + "names: [\"src\", \"maps\", \"are\", \"fun\"],\n" + "mappings: \"AA,AB;;ABCDE;\"\n}\n";
+
+  static SourceMap loadMap(Class<?> clazz, String name) throws Exception {
+    String contents = Streams.loadAndClose(new InputStreamReader(
+        clazz.getResourceAsStream(name),
+        "UTF-8"));
+
+    return SourceMap.createFrom(Path.fromPortableString(name), contents);
+  }
+
+  public void testDwcParse() throws Exception {
+    SourceMap map = loadMap(getClass(), "main.dart.map");
+
+    assertEquals(3, map.getVersion());
+    // [24:0,-1] ==> ../main.dart,14,0
+    assertEquals("../main.dart,15,0", map.getMappingFor(24, 0).toString());
+  }
+
+  public void testReverseMappings() throws Exception {
+    SourceMap map = loadMap(getClass(), "solar.dart.js.map");
+
+    List<SourceMapInfo> mappings = map.getReverseMappingsFor(
+        "file:///C:/Users/username/solar/solar.dart",
+        34);
+
+    assertEquals(3, mappings.size());
+    assertEquals(2046, mappings.get(0).getLine());
+    assertEquals(7, mappings.get(0).getColumn());
+    assertEquals(2047, mappings.get(1).getLine());
+    assertEquals(7, mappings.get(1).getColumn());
+    assertEquals(2048, mappings.get(2).getLine());
+    assertEquals(2, mappings.get(2).getColumn());
+
+    assertEquals(
+        0,
+        map.getReverseMappingsFor("file:///C:/Users/username/solar/missing.dart", 34).size());
+  }
+
+  public void testReverseMappingsPreferNonZeroWidth() throws Exception {
+    // Generated line 0: [0,0) => foo.js:3, [0,2) => foo.js:4, [2,-1) => foo.js:3
+    String source = "{version : 3, file: \"out.js\", sources: [\"foo.js\"], names: [], "
+        + "mappings: \"AAGA,AACA,EADA\"}";
+
+    SourceMap map = SourceMap.createFrom(Path.fromPortableString("out.js.map"), source);
+
+    List<SourceMapInfo> mappings = map.getReverseMappingsFor("foo.js", 3);
+
+    assertEquals(1, mappings.size());
+    assertEquals(0, mappings.get(0).getLine());
+    assertEquals(2, mappings.get(0).getColumn());
+  }
+
+  public void testSourcesContent() throws Exception {
+    String source = ")]}'\n{\"version\": 3, \"file\": \"out.js\", "
+        + "\"x_extension\": {\"sourcesContent\": [\"ignored\"]}, "
+        + "\"sources\": [\"foo.js\", \"bar.js\", \"baz.js\"], \"names\": [], "
+        + "\"sourcesContent\": [\"var a = \\\"\\u00e9\\\";\\n\", null, \"// \u00fc\"], "
+        + "\"mappings\": \"AAAA;ACAA\"}";
+
+    File file = File.createTempFile("out", ".js.map");
+
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      out.write(source.getBytes("UTF-8"));
+      out.close();
+
+      SourceMap map = SourceMap.createFrom(file);
+
+      assertArrayEquals(new String[] {"foo.js", "bar.js", "baz.js"}, map.getSourceNames());
+      assertEquals("bar.js,0,0", map.getMappingFor(1, 0).toString());
+
+      assertTrue(map.hasSourceContent("foo.js"));
+      assertFalse(map.hasSourceContent("bar.js"));
+      assertFalse(map.hasSourceContent("missing.js"));
+
+      assertEquals("var a = \"\u00e9\";\n", map.getSourceContent("foo.js"));
+      assertEquals(null, map.getSourceContent("bar.js"));
+      assertEquals("// \u00fc", map.getSourceContent("baz.js"));
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testSourcesContentChanged() throws Exception {
+    String source = "{\"version\": 3, \"sources\": [\"foo.js\"], \"names\": [], "
+        + "\"sourcesContent\": [\"var a;\"], \"mappings\": \"AAAA\"}";
+
+    File file = File.createTempFile("out", ".js.map");
+
+    try {
+      FileOutputStream out = new FileOutputStream(file);
+      out.write(source.getBytes("UTF-8"));
+      out.close();
+
+      SourceMap map = SourceMap.createFrom(file);
+
+      assertEquals("var a;", map.getSourceContent("foo.js"));
+
+      // The offsets of the map no longer point at the content; it is scanned again.
+      out = new FileOutputStream(file);
+      out.write(("\n\n" + source.replace("var a;", "var b;")).getBytes("UTF-8"));
+      out.close();
+
+      assertEquals("var b;", map.getSourceContent("foo.js"));
+
+      // A rescan that does not match the sources of the map has no content for them.
+      out = new FileOutputStream(file);
+      out.write(source.replace("[\"var a;\"]", "[\"var a;\", \"var c;\"]").getBytes("UTF-8"));
+      out.close();
+
+      assertEquals(null, map.getSourceContent("foo.js"));
+    } finally {
+      file.delete();
+    }
+  }
+
+  public void testSimpleParse() throws Exception {
+    String[] expectedNames = {"foo.js", "bar.js"};
+
+    SourceMap map = SourceMap.createFrom(Path.fromPortableString("foo.dart.js.map"), TEST_SOURCE);
+
+    assertEquals(3, map.getVersion());
+    assertEquals("out.js", map.getFile());
+    assertArrayEquals(expectedNames, map.getSourceNames());
+    assertEquals(null, map.getMappingFor(1, 0));
+    assertEquals("foo.js,1,-1", map.getMappingFor(2, -1).toString());
+    assertEquals("foo.js,1,-1", map.getMappingFor(2, 0).toString());
+    assertEquals("foo.js,1,-1", map.getMappingFor(2, 1).toString());
+    assertEquals("are", map.getMappingFor(2, 1).getName());
+    assertEquals(null, map.getMappingFor(3, 0));
+  }
+
+  public void testSolarParse() throws Exception {
+    SourceMap map = loadMap(getClass(), "solar.dart.js.map");
+
+    assertEquals(3, map.getVersion());
+    assertEquals(
+        "file:///C:/tools/eclipse_37/dart-sdk/lib/_internal/compiler/implementation/lib/regexp_helper.dart,84,36",
+        map.getMappingFor(100, -1).toString());
+    assertEquals(
+        "file:///C:/Users/username/solar/solar.dart,263,2",
+        map.getMappingFor(1351, -1).toString());
+    // Columns 0 - 17 are covered by a segment without an original location.
+    assertEquals(null, map.getMappingFor(1351, 17));
+    assertEquals(
+        "file:///C:/Users/username/solar/solar.dart,263,2",
+        map.getMappingFor(1351, 18).toString());
+    assertEquals(
+        "file:///C:/Users/username/solar/solar.dart,264,19",
+        map.getMappingFor(1353, 6).toString());
+    assertEquals(
+        "file:///C:/Users/username/solar/solar.dart,264,8",
+        map.getMappingFor(1353, 60).toString());
+  }
+
 }
@@ -0,0 +1,179 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import junit.framework.TestCase;
+
+import com.github.sdbg.debug.core.internal.util.PooledBrowser.Tab;
+import com.github.sdbg.debug.core.internal.webkit.protocol.ChromiumTargetWatcher;
+import com.github.sdbg.debug.core.internal.webkit.protocol.FakeDevToolsServer;
+
+public class PooledBrowserTest extends TestCase {
+
+  /**
+   * A browser process which runs until it is destroyed, or told to exit.
+   */
+  private static class FakeProcess extends Process {
+    private boolean exited;
+
+    @Override
+    public void destroy() {
+      exit();
+    }
+
+    @Override
+    public synchronized int exitValue() {
+      if (!exited) {
+        throw new IllegalThreadStateException("The browser is running");
+      }
+
+      return 0;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+      return new ByteArrayInputStream(new byte[0]);
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+      return new ByteArrayOutputStream();
+    }
+
+    @Override
+    public synchronized int waitFor() throws InterruptedException {
+      while (!exited) {
+        wait();
+      }
+
+      return 0;
+    }
+
+    synchronized void exit() {
+      exited = true;
+      notifyAll();
+    }
+  }
+
+  private static final String APP_URL = "http://127.0.0.1:8080/app.html";
+
+  private FakeDevToolsServer server;
+  private FakeProcess process;
+  private ChromiumTargetWatcher watcher;
+  private PooledBrowser browser;
+
+  public void test_browserExit() throws Exception {
+    Tab tab = browser.openTab(APP_URL);
+
+    process.exit();
+    server.close();
+
+    assertEquals(0, tab.waitFor());
+    assertEquals(0, tab.exitValue());
+    assertFalse(browser.isAlive());
+  }
+
+  public void test_closeTab() throws Exception {
+    Tab tab = browser.openTab(APP_URL);
+
+    assertTrue(watcher.hasTarget(tab.getTargetId()));
+    assertOpen(tab);
+
+    tab.destroy();
+
+    // The tab and its browser context are gone; the browser keeps running.
+    assertEquals(0, tab.waitFor());
+    assertEquals(0, tab.exitValue());
+    assertFalse(watcher.hasTarget(tab.getTargetId()));
+    assertNull(server.getBrowserContext(tab.getTargetId()));
+    assertTrue(browser.isAlive());
+  }
+
+  public void test_nextLaunch() throws Exception {
+    Tab first = browser.openTab(APP_URL);
+    Tab second = browser.openTab(APP_URL);
+
+    // The tab of the previous launch is closed for the next one.
+    assertEquals(0, first.exitValue());
+    assertOpen(second);
+    assertFalse(first.getTargetId().equals(second.getTargetId()));
+  }
+
+  public void test_tabClosedInBrowser() throws Exception {
+    Tab tab = browser.openTab(APP_URL);
+
+    server.removeTarget(tab.getTargetId());
+
+    assertEquals(0, tab.waitFor());
+    assertEquals(0, tab.exitValue());
+  }
+
+  public void test_watcherClosed() throws Exception {
+    Tab tab = browser.openTab(APP_URL);
+
+    // The tab can no longer be followed, though the browser still runs.
+    watcher.close();
+
+    assertEquals(0, tab.exitValue());
+    assertEquals(0, tab.waitFor());
+    assertTrue(browser.isAlive());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    server = new FakeDevToolsServer(true, true);
+    server.addTarget("1", "page", "about:blank", false);
+
+    process = new FakeProcess();
+    watcher = ChromiumTargetWatcher.connect("127.0.0.1", server.getPort());
+    browser = new PooledBrowser(
+        process,
+        server.getPort(),
+        new ListeningStream(),
+        "Fake browser",
+        "fake",
+        watcher);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    browser.dispose();
+    server.close();
+
+    super.tearDown();
+  }
+
+  private void assertOpen(Tab tab) {
+    try {
+      tab.exitValue();
+      fail("expected the tab to be open");
+    } catch (IllegalThreadStateException e) {
+      // Open
+    }
+  }
+
+}
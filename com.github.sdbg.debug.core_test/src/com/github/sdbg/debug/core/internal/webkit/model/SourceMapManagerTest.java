@@ -14,10 +14,86 @@
 
 package com.github.sdbg.debug.core.internal.webkit.model;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 import junit.framework.TestCase;
 
+import org.eclipse.core.resources.IResource;
+
+import com.github.sdbg.debug.core.internal.util.URLStorage;
+import com.github.sdbg.debug.core.model.IResourceResolver;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
 public class SourceMapManagerTest extends TestCase {
 
+  /**
+   * Resolves no URL to a workspace resource, so that maps are fetched over HTTP.
+   */
+  private static class NullResourceResolver implements IResourceResolver {
+    @Override
+    public String getUrlForFile(File file) {
+      return null;
+    }
+
+    @Override
+    public String getUrlForResource(IResource resource) {
+      return null;
+    }
+
+    @Override
+    public String getUrlRegexForResource(IResource resource) {
+      return null;
+    }
+
+    @Override
+    public IResource resolveUrl(String url) {
+      return null;
+    }
+  }
+
+  /**
+   * Records the thread a completion ran on.
+   */
+  private static class Completion implements Runnable {
+    private CountDownLatch done = new CountDownLatch(1);
+    private volatile Thread thread;
+
+    @Override
+    public void run() {
+      thread = Thread.currentThread();
+      done.countDown();
+    }
+
+    boolean await() throws InterruptedException {
+      return done.await(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * For completions which are not expected to run.
+     */
+    boolean awaitBriefly() throws InterruptedException {
+      return done.await(200, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private HttpServer server;
+  private SourceMapManager manager;
+
+  // Released by the test, to let the fetch of slow.map finish
+  private CountDownLatch slowMapRelease = new CountDownLatch(1);
+  private CountDownLatch slowMapRequested = new CountDownLatch(1);
+
   public void testGetMappingFor() {
     // TODO(devoncarew):
 
@@ -36,4 +112,106 @@ public class SourceMapManagerTest extends TestCase {
     //fail("Not yet implemented");
   }
 
+  public void testParseAfterDispose() throws Exception {
+    manager.dispose();
+
+    Completion completion = new Completion();
+    manager.handleScriptParsed(getStorage("app.js"), getUrl("fast.map"), completion);
+
+    assertFalse(completion.awaitBriefly());
+    assertFalse(manager.isMapSource(getStorage("app.js")));
+  }
+
+  public void testParseOffThread() throws Exception {
+    URLStorage script = getStorage("app.js");
+    Completion completion = new Completion();
+
+    // The map is not served until released; the caller does not wait for it.
+    manager.handleScriptParsed(script, getUrl("slow.map"), completion);
+    assertTrue(slowMapRequested.await(5, TimeUnit.SECONDS));
+    assertFalse(manager.isMapSource(script));
+
+    slowMapRelease.countDown();
+
+    assertTrue(completion.await());
+    assertTrue(completion.thread.getName().startsWith("Source map parser"));
+    assertTrue(manager.isMapSource(script));
+    assertEquals(Arrays.asList("slow.dart"), manager.getSourcePaths(script));
+  }
+
+  public void testSupersededParse() throws Exception {
+    URLStorage script = getStorage("app.js");
+    Completion slowCompletion = new Completion();
+    Completion fastCompletion = new Completion();
+
+    manager.handleScriptParsed(script, getUrl("slow.map"), slowCompletion);
+    assertTrue(slowMapRequested.await(5, TimeUnit.SECONDS));
+
+    // The script is parsed again, and its new map is published first.
+    manager.handleScriptParsed(script, getUrl("fast.map"), fastCompletion);
+    assertTrue(fastCompletion.await());
+    assertEquals(Arrays.asList("fast.dart"), manager.getSourcePaths(script));
+
+    // The earlier parse finishes last, and is dropped.
+    slowMapRelease.countDown();
+
+    assertFalse(slowCompletion.awaitBriefly());
+    assertEquals(Arrays.asList("fast.dart"), manager.getSourcePaths(script));
+    assertFalse(manager.isMapTarget("slow.dart"));
+    assertTrue(manager.isMapTarget("fast.dart"));
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), 0), 0);
+    server.createContext("/", new HttpHandler() {
+      @Override
+      public void handle(HttpExchange exchange) throws IOException {
+        String name = exchange.getRequestURI().getPath().substring(1);
+
+        if (name.equals("slow.map")) {
+          slowMapRequested.countDown();
+
+          try {
+            slowMapRelease.await();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        }
+
+        String map = "{\"version\":3,\"file\":\"app.js\",\"sources\":[\""
+            + name.replace(".map", ".dart") + "\"],\"names\":[],\"mappings\":\"AAAA\"}";
+        byte[] body = map.getBytes("UTF-8");
+
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+      }
+    });
+    server.setExecutor(Executors.newCachedThreadPool());
+    server.start();
+
+    manager = new SourceMapManager(new NullResourceResolver());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    slowMapRelease.countDown();
+    manager.dispose();
+    server.stop(0);
+
+    super.tearDown();
+  }
+
+  private URLStorage getStorage(String name) throws Exception {
+    return new URLStorage(new URL(getUrl(name)));
+  }
+
+  private String getUrl(String name) {
+    return "http://127.0.0.1:" + server.getAddress().getPort() + "/" + name;
+  }
+
 }
@@ -22,6 +22,7 @@ public class TestAll {
     TestSuite suite = new TestSuite("Tests in " + TestAll.class.getPackage().getName());
     suite.addTestSuite(SourceMapManagerTest.class);
     suite.addTestSuite(BreakpointManagerTest.class);
+    suite.addTestSuite(WebkitStreamMonitorTest.class);
     return suite;
   }
 }
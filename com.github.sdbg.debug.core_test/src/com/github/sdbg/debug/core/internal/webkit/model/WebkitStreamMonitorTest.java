@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.model;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.eclipse.debug.core.IStreamListener;
+import org.eclipse.debug.core.model.IStreamMonitor;
+
+import com.github.sdbg.core.test.util.EventRecorder;
+
+public class WebkitStreamMonitorTest extends TestCase {
+
+  private static class RecordingListener extends EventRecorder<String> implements IStreamListener {
+    @Override
+    public void streamAppended(String text, IStreamMonitor monitor) {
+      add(text);
+    }
+  }
+
+  private static final long INTERVAL = 200;
+
+  public void test_batchedDelivery() throws Exception {
+    WebkitStreamMonitor monitor = new WebkitStreamMonitor(1024 * 1024, INTERVAL);
+    RecordingListener listener = new RecordingListener();
+    monitor.addListener(listener);
+
+    monitor.messageAdded("first");
+    assertEquals(1, listener.waitFor(1).size());
+
+    // These arrive within the interval, and are delivered together.
+    monitor.messageAdded("second");
+    monitor.messageAdded("third");
+
+    List<String> appended = listener.waitFor(2);
+    assertEquals(2, appended.size());
+    assertEquals("first\n", appended.get(0));
+    assertEquals("second\nthird\n", appended.get(1));
+
+    assertEquals("first\nsecond\nthird\n", monitor.getContents());
+  }
+
+  public void test_boundedBuffer() throws Exception {
+    WebkitStreamMonitor monitor = new WebkitStreamMonitor(16 * 1024, INTERVAL);
+    RecordingListener listener = new RecordingListener();
+    monitor.addListener(listener);
+
+    monitor.messageAdded("start");
+    listener.waitFor(1);
+
+    for (int i = 0; i < 1000; i++) {
+      monitor.messageAdded("message " + i);
+    }
+
+    assertTrue(monitor.getBufferSize() <= 16 * 1024);
+
+    String appended = listener.waitFor(2).get(1);
+    assertTrue(appended.startsWith("["));
+    assertTrue(appended.contains("messages dropped"));
+    assertTrue(appended.endsWith("message 999\n"));
+    assertFalse(appended.contains("message 0\n"));
+
+    String contents = monitor.getContents();
+    assertTrue(contents.startsWith("["));
+    assertFalse(contents.contains("start"));
+    assertTrue(contents.endsWith("message 999\n"));
+  }
+
+  public void test_coalesceRepeats() throws Exception {
+    WebkitStreamMonitor monitor = new WebkitStreamMonitor(1024 * 1024, INTERVAL);
+    RecordingListener listener = new RecordingListener();
+    monitor.addListener(listener);
+
+    monitor.messageAdded("start");
+    listener.waitFor(1);
+
+    monitor.messageAdded("tick");
+    for (int count = 2; count <= 50; count++) {
+      monitor.messageRepeatCountUpdated(count);
+    }
+    monitor.messageAdded("tock");
+    monitor.messageAdded("tock");
+
+    List<String> appended = listener.waitFor(2);
+    assertEquals(2, appended.size());
+    assertEquals("tick (x50)\ntock (x2)\n", appended.get(1));
+
+    // Repeats arriving after the message was delivered start a new record.
+    monitor.messageAdded("tick");
+    listener.waitFor(3);
+    monitor.messageRepeatCountUpdated(2);
+    monitor.messageRepeatCountUpdated(3);
+
+    appended = listener.waitFor(4);
+    assertEquals("tick (x2)\n", appended.get(3));
+  }
+
+  public void test_messagesCleared() throws Exception {
+    WebkitStreamMonitor monitor = new WebkitStreamMonitor(1024 * 1024, INTERVAL);
+    RecordingListener listener = new RecordingListener();
+    monitor.addListener(listener);
+
+    monitor.messageAdded("foo");
+    listener.waitFor(1);
+
+    monitor.messagesCleared();
+
+    assertEquals("", monitor.getContents());
+    assertEquals(0, monitor.getBufferSize());
+  }
+
+}
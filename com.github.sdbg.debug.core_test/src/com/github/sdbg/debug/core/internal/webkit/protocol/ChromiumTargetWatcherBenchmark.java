@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * How soon a tab opened by a starting browser is found, and how many HTTP requests it takes, by a
+ * {@link ChromiumTargetWatcher} and by polling /json every 25 ms the way the launcher used to. The
+ * tab opens {@link #TAB_DELAY} ms after the search starts. It prints one line with the
+ * milliseconds from the tab opening to it being found, and the request count, for each way; the
+ * watcher makes its two requests however long the browser takes.
+ */
+public class ChromiumTargetWatcherBenchmark extends TestCase {
+  private static final String APP_URL = "http://127.0.0.1:8080/app.html";
+
+  private static final long TAB_DELAY = 300;
+  private static final long POLL_DELAY = 25;
+
+  private static boolean hasTab(List<ChromiumTabInfo> tabs) {
+    for (ChromiumTabInfo tab : tabs) {
+      if (APP_URL.equals(tab.getUrl())) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  private FakeDevToolsServer server;
+
+  // When the last tab opened by openTabLater() was, in nanoseconds
+  private volatile long openedNanos;
+
+  public void test_timeToAttach() throws Exception {
+    // Watching
+    server = new FakeDevToolsServer(true, true);
+    server.addTarget("1", "page", "about:blank", false);
+
+    ChromiumTargetWatcher watcher = ChromiumTargetWatcher.connect("127.0.0.1", server.getPort());
+
+    try {
+      openTabLater();
+
+      while (!hasTab(watcher.getTabs())) {
+        watcher.awaitChange(watcher.getVersion(), 100);
+      }
+    } finally {
+      watcher.close();
+    }
+
+    long watchNanos = System.nanoTime() - openedNanos;
+    int watchRequestCount = server.getHttpRequests().size();
+
+    server.close();
+
+    // Polling
+    server = new FakeDevToolsServer(true, true);
+    server.addTarget("1", "page", "about:blank", false);
+
+    openTabLater();
+
+    while (!hasTab(ChromiumConnector.getAvailableTabs("127.0.0.1", server.getPort()))) {
+      Thread.sleep(POLL_DELAY);
+    }
+
+    long pollNanos = System.nanoTime() - openedNanos;
+    int pollRequestCount = server.getHttpRequests().size();
+
+    System.out.println(String.format(
+        "Tab found %.2f ms after it opened watching targets (%d requests), "
+            + "%.2f ms polling /json (%d requests)",
+        watchNanos / 1000000.0,
+        watchRequestCount,
+        pollNanos / 1000000.0,
+        pollRequestCount));
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (server != null) {
+      server.close();
+    }
+
+    super.tearDown();
+  }
+
+  /**
+   * Opens the app tab after {@link #TAB_DELAY}, as a starting browser would.
+   */
+  private void openTabLater() {
+    final FakeDevToolsServer browser = server;
+
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(TAB_DELAY);
+          openedNanos = System.nanoTime();
+          browser.addTarget("2", "page", APP_URL, false);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+}
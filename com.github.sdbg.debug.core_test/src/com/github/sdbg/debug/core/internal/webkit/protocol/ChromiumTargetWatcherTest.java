@@ -0,0 +1,216 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.json.JSONObject;
+
+public class ChromiumTargetWatcherTest extends TestCase {
+  private static final String APP_URL = "http://127.0.0.1:8080/app.html";
+
+  private static final long TAB_DELAY = 300;
+
+  private static ChromiumTabInfo findTab(List<ChromiumTabInfo> tabs, String url) {
+    for (ChromiumTabInfo tab : tabs) {
+      if (url.equals(tab.getUrl())) {
+        return tab;
+      }
+    }
+
+    return null;
+  }
+
+  private FakeDevToolsServer server;
+
+  public void test_browserContextTab() throws Exception {
+    server = new FakeDevToolsServer(true, true);
+    server.addTarget("1", "page", "chrome://version/", false);
+
+    ChromiumTargetWatcher watcher = ChromiumTargetWatcher.connect("127.0.0.1", server.getPort());
+
+    try {
+      String context = watcher.sendCommand("Target.createBrowserContext", null).getString(
+          "browserContextId");
+      String targetId = watcher.sendCommand(
+          "Target.createTarget",
+          new JSONObject().put("url", "about:blank").put("browserContextId", context)).getString(
+          "targetId");
+
+      // The target is reported before the command returns.
+      assertTrue(watcher.hasTarget(targetId));
+      assertEquals(context, server.getBrowserContext(targetId));
+      assertEquals(2, watcher.getTabs().size());
+
+      long version = watcher.getVersion();
+      watcher.sendCommand(
+          "Target.disposeBrowserContext",
+          new JSONObject().put("browserContextId", context));
+      assertTrue(watcher.awaitChange(version, 5000));
+
+      // Only the tab of the context is closed.
+      assertFalse(watcher.hasTarget(targetId));
+      assertTrue(watcher.hasTarget("1"));
+    } finally {
+      watcher.close();
+    }
+  }
+
+  public void test_commandError() throws Exception {
+    server = new FakeDevToolsServer(true, true);
+
+    ChromiumTargetWatcher watcher = ChromiumTargetWatcher.connect("127.0.0.1", server.getPort());
+
+    try {
+      watcher.sendCommand("Storage.clearDataForOrigin", null);
+      fail("expected an IOException");
+    } catch (IOException e) {
+      assertTrue(e.getMessage().contains("wasn't found"));
+    } finally {
+      watcher.close();
+    }
+
+    try {
+      watcher.sendCommand("Target.createBrowserContext", null);
+      fail("expected an IOException");
+    } catch (IOException e) {
+      // Closed
+    }
+  }
+
+  public void test_existingTargets() throws Exception {
+    server = new FakeDevToolsServer(true, true);
+    server.addTarget("1", "page", "chrome://version/", false);
+    server.addTarget("2", "page", APP_URL, true);
+    server.addTarget("3", "browser", "", false);
+    server.addTarget("4", "tab", APP_URL, false);
+    server.addTarget("5", "service_worker", "http://127.0.0.1:8080/worker.js", false);
+
+    ChromiumTargetWatcher watcher = ChromiumTargetWatcher.connect("127.0.0.1", server.getPort());
+
+    try {
+      // The browser and the tab target around a page are not listed by /json.
+      List<ChromiumTabInfo> tabs = watcher.getTabs();
+      assertEquals(3, tabs.size());
+
+      ChromiumTabInfo versionTab = findTab(tabs, "chrome://version/");
+      assertEquals(
+          "ws://127.0.0.1:" + server.getPort() + "/devtools/page/1",
+          versionTab.getWebSocketDebuggerUrl());
+      assertEquals("/devtools/page/1", versionTab.getWebSocketDebuggerFile());
+
+      // Another debugger is attached to it.
+      assertNull(findTab(tabs, APP_URL).getWebSocketDebuggerUrl());
+    } finally {
+      watcher.close();
+    }
+  }
+
+  public void test_noBrowserEndpoint() throws Exception {
+    server = new FakeDevToolsServer(false, false);
+    server.addTarget("1", "page", APP_URL, false);
+
+    assertNull(ChromiumTargetWatcher.connect("127.0.0.1", server.getPort()));
+    assertEquals(1, ChromiumConnector.getAvailableTabs("127.0.0.1", server.getPort()).size());
+  }
+
+  public void test_noTargetDomain() throws Exception {
+    server = new FakeDevToolsServer(true, false);
+
+    assertNull(ChromiumTargetWatcher.connect("127.0.0.1", server.getPort()));
+  }
+
+  public void test_targetChanges() throws Exception {
+    server = new FakeDevToolsServer(true, true);
+    server.addTarget("1", "page", "about:blank", false);
+
+    ChromiumTargetWatcher watcher = ChromiumTargetWatcher.connect("127.0.0.1", server.getPort());
+
+    try {
+      long version = watcher.getVersion();
+      assertFalse(watcher.awaitChange(version, 50));
+
+      server.addTarget("1", "page", APP_URL, false);
+      assertTrue(watcher.awaitChange(version, 5000));
+      assertNotNull(findTab(watcher.getTabs(), APP_URL));
+
+      version = watcher.getVersion();
+      server.removeTarget("1");
+      assertTrue(watcher.awaitChange(version, 5000));
+      assertEquals(0, watcher.getTabs().size());
+    } finally {
+      watcher.close();
+    }
+  }
+
+  /**
+   * A tab opened by the browser is found without polling /json.
+   */
+  public void test_watchRequests() throws Exception {
+    server = new FakeDevToolsServer(true, true);
+    server.addTarget("1", "page", "about:blank", false);
+
+    ChromiumTargetWatcher watcher = ChromiumTargetWatcher.connect("127.0.0.1", server.getPort());
+
+    try {
+      openTabLater("2");
+
+      while (findTab(watcher.getTabs(), APP_URL) == null) {
+        assertTrue(watcher.awaitChange(watcher.getVersion(), 5000));
+      }
+    } finally {
+      watcher.close();
+    }
+
+    assertEquals(
+        Arrays.asList("/json/version", "/devtools/browser/fake"),
+        server.getHttpRequests());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    if (server != null) {
+      server.close();
+    }
+
+    super.tearDown();
+  }
+
+  /**
+   * Opens the app tab after {@link #TAB_DELAY}, as a starting browser would.
+   */
+  private void openTabLater(final String id) {
+    final FakeDevToolsServer browser = server;
+
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(TAB_DELAY);
+          browser.addTarget(id, "page", APP_URL, false);
+        } catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    });
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+}
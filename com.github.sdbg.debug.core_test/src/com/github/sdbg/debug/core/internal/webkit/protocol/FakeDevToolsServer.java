@@ -0,0 +1,365 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+/**
+ * The DevTools endpoint of a browser on loopback: /json, /json/version, and a browser-level
+ * websocket which supports Target.setDiscoverTargets, and the commands to open and close tabs in
+ * browser contexts. Targets are also added and removed by the test.
+ */
+public class FakeDevToolsServer implements Runnable {
+  private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+  private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+      + "abcdefghijklmnopqrstuvwxyz0123456789+/";
+
+  private static String encodeBase64(byte[] bytes) {
+    StringBuilder builder = new StringBuilder();
+
+    for (int i = 0; i < bytes.length; i += 3) {
+      int b = (bytes[i] & 0xff) << 16;
+      b |= i + 1 < bytes.length ? (bytes[i + 1] & 0xff) << 8 : 0;
+      b |= i + 2 < bytes.length ? bytes[i + 2] & 0xff : 0;
+
+      builder.append(BASE64.charAt(b >> 18 & 0x3f));
+      builder.append(BASE64.charAt(b >> 12 & 0x3f));
+      builder.append(i + 1 < bytes.length ? BASE64.charAt(b >> 6 & 0x3f) : '=');
+      builder.append(i + 2 < bytes.length ? BASE64.charAt(b & 0x3f) : '=');
+    }
+
+    return builder.toString();
+  }
+
+  private ServerSocket serverSocket;
+  private boolean browserEndpoint;
+  private boolean targetDomain;
+
+  // Guarded by this
+  private Map<String, JSONObject> targets = new LinkedHashMap<String, JSONObject>();
+  private List<OutputStream> watchers = new ArrayList<OutputStream>();
+  private List<String> httpRequests = new ArrayList<String>();
+  private Map<String, String> targetContexts = new HashMap<String, String>();
+  private int nextId;
+
+  /**
+   * @param browserEndpoint whether /json/version lists a browser websocket, as it does since
+   *          Chrome 61
+   * @param targetDomain whether the websocket supports the Target domain
+   */
+  public FakeDevToolsServer(boolean browserEndpoint, boolean targetDomain) throws IOException {
+    this.browserEndpoint = browserEndpoint;
+    this.targetDomain = targetDomain;
+
+    serverSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+
+    Thread thread = new Thread(this, "Fake DevTools Server");
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  public void addTarget(String id, String type, String url, boolean attached) throws Exception {
+    JSONObject targetInfo = new JSONObject();
+    targetInfo.put("targetId", id);
+    targetInfo.put("type", type);
+    targetInfo.put("title", url);
+    targetInfo.put("url", url);
+    targetInfo.put("attached", attached);
+
+    synchronized (this) {
+      boolean created = !targets.containsKey(id);
+      targets.put(id, targetInfo);
+
+      notifyWatchers(
+          created ? "Target.targetCreated" : "Target.targetInfoChanged",
+          new JSONObject().put("targetInfo", targetInfo));
+    }
+  }
+
+  public void close() throws IOException {
+    serverSocket.close();
+
+    synchronized (this) {
+      for (OutputStream out : watchers) {
+        out.close();
+      }
+    }
+  }
+
+  public synchronized String getBrowserContext(String targetId) {
+    return targetContexts.get(targetId);
+  }
+
+  public synchronized List<String> getHttpRequests() {
+    return new ArrayList<String>(httpRequests);
+  }
+
+  public int getPort() {
+    return serverSocket.getLocalPort();
+  }
+
+  public void removeTarget(String id) throws Exception {
+    synchronized (this) {
+      targets.remove(id);
+      targetContexts.remove(id);
+      notifyWatchers("Target.targetDestroyed", new JSONObject().put("targetId", id));
+    }
+  }
+
+  @Override
+  public void run() {
+    try {
+      while (true) {
+        final Socket socket = serverSocket.accept();
+
+        Thread thread = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              serve(socket);
+            } catch (Exception e) {
+              // The client went away
+            }
+          }
+        }, "Fake DevTools Connection");
+        thread.setDaemon(true);
+        thread.start();
+      }
+    } catch (IOException e) {
+      // Closed
+    }
+  }
+
+  private synchronized String getTargetList() throws Exception {
+    JSONArray list = new JSONArray();
+
+    for (JSONObject targetInfo : targets.values()) {
+      String id = targetInfo.getString("targetId");
+
+      JSONObject tab = new JSONObject();
+      tab.put("id", id);
+      tab.put("type", targetInfo.getString("type"));
+      tab.put("title", targetInfo.getString("title"));
+      tab.put("url", targetInfo.getString("url"));
+      if (!targetInfo.getBoolean("attached")) {
+        tab.put("webSocketDebuggerUrl", "ws://127.0.0.1:" + getPort() + "/devtools/page/" + id);
+      }
+
+      list.put(tab);
+    }
+
+    return list.toString();
+  }
+
+  /**
+   * Called with the lock held.
+   */
+  private void notifyWatchers(String method, JSONObject params) throws Exception {
+    String message = new JSONObject().put("method", method).put("params", params).toString();
+
+    for (OutputStream out : new ArrayList<OutputStream>(watchers)) {
+      try {
+        writeFrame(out, message);
+      } catch (IOException e) {
+        // The watcher went away; its connection thread may not have noticed yet
+        watchers.remove(out);
+      }
+    }
+  }
+
+  /**
+   * Called with the lock held.
+   * 
+   * @return the result of the command, or null if it is not supported
+   */
+  private JSONObject handleCommand(String method, JSONObject params) throws Exception {
+    if (method.equals("Target.createBrowserContext")) {
+      return new JSONObject().put("browserContextId", "context" + nextId++);
+    } else if (method.equals("Target.createTarget")) {
+      String id = "target" + nextId++;
+
+      addTarget(id, "page", params.getString("url"), false);
+      if (params.has("browserContextId")) {
+        targetContexts.put(id, params.getString("browserContextId"));
+      }
+
+      return new JSONObject().put("targetId", id);
+    } else if (method.equals("Target.closeTarget")) {
+      removeTarget(params.getString("targetId"));
+
+      return new JSONObject().put("success", true);
+    } else if (method.equals("Target.disposeBrowserContext")) {
+      String context = params.getString("browserContextId");
+
+      for (String id : new ArrayList<String>(targets.keySet())) {
+        if (context.equals(targetContexts.get(id))) {
+          removeTarget(id);
+        }
+      }
+
+      return new JSONObject();
+    } else {
+      return null;
+    }
+  }
+
+  private String readFrame(DataInputStream in) throws IOException {
+    int opcode = in.readUnsignedByte() & 0x0f;
+    int length = in.readUnsignedByte() & 0x7f;
+
+    if (length == 126) {
+      length = in.readUnsignedShort();
+    } else if (length == 127) {
+      length = (int) in.readLong();
+    }
+
+    byte[] mask = new byte[4];
+    in.readFully(mask);
+
+    byte[] payload = new byte[length];
+    in.readFully(payload);
+
+    for (int i = 0; i < length; i++) {
+      payload[i] ^= mask[i % 4];
+    }
+
+    return opcode == 8 ? null : new String(payload, "UTF-8");
+  }
+
+  @SuppressWarnings("deprecation")
+  private void serve(Socket socket) throws Exception {
+    DataInputStream in = new DataInputStream(socket.getInputStream());
+    OutputStream out = socket.getOutputStream();
+
+    try {
+      String path = in.readLine().split(" ")[1];
+      Map<String, String> headers = new HashMap<String, String>();
+
+      for (String line = in.readLine(); line != null && line.length() > 0; line = in.readLine()) {
+        int colon = line.indexOf(':');
+        headers.put(
+            line.substring(0, colon).trim().toLowerCase(),
+            line.substring(colon + 1).trim());
+      }
+
+      synchronized (this) {
+        httpRequests.add(path);
+      }
+
+      if (path.equals("/json/version") && browserEndpoint) {
+        writeResponse(out, 200, new JSONObject().put("Browser", "Fake/1.0").put(
+            "webSocketDebuggerUrl",
+            "ws://127.0.0.1:" + getPort() + "/devtools/browser/fake").toString());
+      } else if (path.equals("/json") || path.equals("/json/list")) {
+        writeResponse(out, 200, getTargetList());
+      } else if (path.equals("/devtools/browser/fake") && browserEndpoint) {
+        serveWebSocket(in, out, headers.get("sec-websocket-key"));
+      } else {
+        writeResponse(out, 404, "Not Found");
+      }
+    } finally {
+      synchronized (this) {
+        watchers.remove(out);
+      }
+
+      socket.close();
+    }
+  }
+
+  private void serveWebSocket(DataInputStream in, OutputStream out, String key) throws Exception {
+    MessageDigest digest = MessageDigest.getInstance("SHA-1");
+    String accept = encodeBase64(digest.digest((key + WEBSOCKET_GUID).getBytes("US-ASCII")));
+
+    out.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\n"
+        + "Connection: Upgrade\r\nSec-WebSocket-Accept: " + accept + "\r\n\r\n")
+        .getBytes("US-ASCII"));
+    out.flush();
+
+    for (String text = readFrame(in); text != null; text = readFrame(in)) {
+      JSONObject request = new JSONObject(text);
+      JSONObject response = new JSONObject().put("id", request.getInt("id"));
+
+      synchronized (this) {
+        String method = request.getString("method");
+        JSONObject result = null;
+
+        if (method.equals("Target.setDiscoverTargets") && targetDomain) {
+          for (JSONObject targetInfo : targets.values()) {
+            writeFrame(out, new JSONObject().put("method", "Target.targetCreated").put(
+                "params",
+                new JSONObject().put("targetInfo", targetInfo)).toString());
+          }
+
+          watchers.add(out);
+          result = new JSONObject();
+        } else if (targetDomain) {
+          result = handleCommand(method, request.optJSONObject("params"));
+        }
+
+        if (result != null) {
+          response.put("result", result);
+        } else {
+          response.put("error", new JSONObject().put("code", -32601).put(
+              "message",
+              "'" + request.getString("method") + "' wasn't found"));
+        }
+
+        writeFrame(out, response.toString());
+      }
+    }
+  }
+
+  private void writeFrame(OutputStream out, String text) throws IOException {
+    byte[] payload = text.getBytes("UTF-8");
+
+    out.write(0x81);
+
+    if (payload.length < 126) {
+      out.write(payload.length);
+    } else {
+      out.write(126);
+      out.write(payload.length >> 8);
+      out.write(payload.length & 0xff);
+    }
+
+    out.write(payload);
+    out.flush();
+  }
+
+  private void writeResponse(OutputStream out, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes("UTF-8");
+
+    out.write(("HTTP/1.1 " + status + (status == 200 ? " OK" : " Not Found")
+        + "\r\nContent-Type: application/json; charset=UTF-8\r\nContent-Length: " + bytes.length
+        + "\r\n\r\n").getBytes("US-ASCII"));
+    out.write(bytes);
+    out.flush();
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import junit.framework.TestCase;
+
+public class WebkitFutureTest extends TestCase {
+
+  public void testCallbacks() throws Exception {
+    final List<String> results = new ArrayList<String>();
+
+    WebkitCallback<String> callback = new WebkitCallback<String>() {
+      @Override
+      public void handleResult(WebkitResult<String> result) {
+        results.add(result.getResult());
+      }
+    };
+
+    WebkitFuture<String> future = new WebkitFuture<String>();
+    future.addCallback(callback);
+
+    future.handleResult(createResult("foo"));
+
+    // Only the first result counts.
+    future.handleResult(createResult("bar"));
+
+    future.addCallback(callback);
+
+    assertEquals(2, results.size());
+    assertEquals("foo", results.get(0));
+    assertEquals("foo", results.get(1));
+  }
+
+  public void testCancel() throws Exception {
+    WebkitFuture<String> future = new WebkitFuture<String>();
+
+    assertTrue(future.cancel(false));
+    assertTrue(future.isCancelled());
+    assertTrue(future.isDone());
+
+    future.handleResult(createResult("foo"));
+
+    try {
+      future.get();
+      fail();
+    } catch (CancellationException e) {
+
+    }
+  }
+
+  public void testGet() throws Exception {
+    final WebkitFuture<String> future = new WebkitFuture<String>();
+
+    assertFalse(future.isDone());
+
+    new Thread() {
+      @Override
+      public void run() {
+        future.handleResult(createResult("foo"));
+      }
+    }.start();
+
+    assertEquals("foo", future.get().getResult());
+    assertTrue(future.isDone());
+    assertFalse(future.isCancelled());
+  }
+
+  public void testGetTimeout() throws Exception {
+    WebkitFuture<String> future = new WebkitFuture<String>();
+
+    try {
+      future.get(10, TimeUnit.MILLISECONDS);
+      fail();
+    } catch (TimeoutException e) {
+
+    }
+  }
+
+  private WebkitResult<String> createResult(String value) {
+    WebkitResult<String> result = new WebkitResult<String>();
+    result.setResult(value);
+    return result;
+  }
+
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Decode throughput and allocation of inbound protocol messages, through {@link WebkitJsonReader}
+ * and, as a baseline, through org.json. The traffic replayed is shaped like a session stepping
+ * through a Dart application: scripts being parsed, pauses with deep stacks, and variables being
+ * expanded. It prints one line: the rate in MB/s of message text decoded into protocol objects, and
+ * the bytes allocated per message on the decoding thread, which reads -1 on VMs that do not count
+ * them.
+ */
+public class WebkitJsonBenchmark extends TestCase {
+
+  /**
+   * A way of decoding a message into protocol objects.
+   */
+  private static interface Decoder {
+    public Object decode(String message) throws JSONException;
+  }
+
+  private static final int WARMUP_COUNT = 20;
+  private static final int ITERATION_COUNT = 200;
+
+  private static String createGetPropertiesReply(int id, int count) {
+    StringBuilder builder = new StringBuilder();
+
+    builder.append("{\"id\":" + id + ",\"result\":{\"result\":[");
+
+    for (int i = 0; i < count; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+
+      builder.append("{\"name\":\"field" + i + "\",\"value\":" + createRemoteObject(i)
+          + ",\"writable\":true,\"configurable\":true,\"enumerable\":true,\"isOwn\":true}");
+    }
+
+    builder.append("]}}");
+
+    return builder.toString();
+  }
+
+  private static String createPausedNotification(int depth) {
+    StringBuilder builder = new StringBuilder();
+
+    builder.append("{\"method\":\"Debugger.paused\",\"params\":{\"callFrames\":[");
+
+    for (int i = 0; i < depth; i++) {
+      if (i > 0) {
+        builder.append(',');
+      }
+
+      builder.append("{\"callFrameId\":\"{\\\"ordinal\\\":" + i + ",\\\"injectedScriptId\\\":3}\","
+          + "\"functionName\":\"Library.method" + i + "\",\"location\":{\"scriptId\":\"" + (40 + i)
+          + "\",\"lineNumber\":" + (i * 7) + ",\"columnNumber\":" + i + "},\"scopeChain\":[");
+
+      String[] scopeTypes = {"local", "closure", "library", "global"};
+
+      for (int j = 0; j < scopeTypes.length; j++) {
+        if (j > 0) {
+          builder.append(',');
+        }
+
+        builder.append("{\"type\":\"" + scopeTypes[j] + "\",\"object\":"
+            + createRemoteObject(i * 10 + j) + "}");
+      }
+
+      builder.append("],\"this\":" + createRemoteObject(i) + "}");
+    }
+
+    builder.append("],\"reason\":\"other\",\"hitBreakpoints\":[\"1:12:0:main.dart\"]}}");
+
+    return builder.toString();
+  }
+
+  private static String createRemoteObject(int i) {
+    if (i % 3 == 0) {
+      return "{\"type\":\"number\",\"value\":" + i + ",\"description\":\"" + i + "\"}";
+    } else if (i % 3 == 1) {
+      return "{\"type\":\"string\",\"value\":\"line " + i + "\\nwith \\\"quotes\\\"\"}";
+    } else {
+      return "{\"type\":\"object\",\"objectId\":\"{\\\"injectedScriptId\\\":3,\\\"id\\\":" + i
+          + "}\",\"className\":\"List\",\"description\":\"List[" + i + "]\"}";
+    }
+  }
+
+  private static String createScriptParsedNotification(int i) {
+    return "{\"method\":\"Debugger.scriptParsed\",\"params\":{\"scriptId\":\"" + i
+        + "\",\"url\":\"http://localhost:8080/packages/app/src/file" + i + ".dart\","
+        + "\"startLine\":0,\"startColumn\":0,\"endLine\":" + (i * 13)
+        + ",\"endColumn\":1,\"isContentScript\":false,\"sourceMapURL\":\"file" + i
+        + ".dart.js.map\",\"hasSourceURL\":false}}";
+  }
+
+  private static List<String> createTraffic() {
+    List<String> traffic = new ArrayList<String>();
+
+    for (int i = 0; i < 50; i++) {
+      traffic.add(createScriptParsedNotification(i));
+    }
+
+    for (int i = 0; i < 10; i++) {
+      traffic.add(createPausedNotification(25));
+
+      for (int j = 0; j < 5; j++) {
+        traffic.add(createGetPropertiesReply(i * 5 + j, 40));
+      }
+
+      traffic.add("{\"method\":\"Debugger.resumed\"}");
+      traffic.add("{\"method\":\"Profiler.resetProfiles\"}");
+    }
+
+    return traffic;
+  }
+
+  /**
+   * @return the bytes allocated by the current thread, or -1 if the VM does not tell
+   */
+  private static long getAllocatedBytes() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+
+    try {
+      Method method = Class.forName("com.sun.management.ThreadMXBean").getMethod(
+          "getThreadAllocatedBytes",
+          long.class);
+
+      return (Long) method.invoke(bean, Thread.currentThread().getId());
+    } catch (Exception e) {
+      return -1;
+    }
+  }
+
+  public void testDecodeSpeed() throws Exception {
+    List<String> traffic = createTraffic();
+    long totalLength = 0;
+
+    for (String message : traffic) {
+      totalLength += message.length();
+    }
+
+    Decoder jsonDecoder = new Decoder() {
+      @Override
+      public Object decode(String message) throws JSONException {
+        JSONObject object = new JSONObject(message);
+
+        if (object.has("id")) {
+          return WebkitPropertyDescriptor.createFrom(object.getJSONObject("result").getJSONArray(
+              "result"));
+        }
+
+        String method = object.getString("method");
+        JSONObject params = object.optJSONObject("params");
+
+        if (method.equals("Debugger.scriptParsed")) {
+          return WebkitScript.createFrom(params);
+        } else if (method.equals("Debugger.paused")) {
+          return WebkitCallFrame.createFrom(params.getJSONArray("callFrames"));
+        } else {
+          return null;
+        }
+      }
+    };
+
+    Decoder streamingDecoder = new Decoder() {
+      @Override
+      public Object decode(String message) throws JSONException {
+        WebkitJsonReader reader = new WebkitJsonReader(message);
+        String method = null;
+        int valuePos = -1;
+
+        reader.beginObject();
+
+        while (reader.hasNext()) {
+          String name = reader.nextName();
+
+          if (name.equals("method")) {
+            method = reader.nextString();
+
+            if (!method.startsWith("Debugger.")) {
+              return null;
+            }
+          } else if (name.equals("params") || name.equals("result")) {
+            valuePos = reader.getPosition();
+            reader.skipValue();
+          } else {
+            reader.skipValue();
+          }
+        }
+
+        reader.endObject();
+
+        reader = new WebkitJsonReader(message, valuePos);
+
+        if (method == null) {
+          reader.beginObject();
+          reader.nextName();
+
+          return WebkitPropertyDescriptor.readArrayFrom(reader);
+        } else if (method.equals("Debugger.scriptParsed")) {
+          return WebkitScript.readFrom(reader);
+        } else if (method.equals("Debugger.paused")) {
+          reader.beginObject();
+          reader.nextName();
+
+          return WebkitCallFrame.readListFrom(reader);
+        } else {
+          return null;
+        }
+      }
+    };
+
+    double[] jsonResults = measure(jsonDecoder, traffic);
+    double[] streamingResults = measure(streamingDecoder, traffic);
+
+    System.out.printf(
+        "protocol messages decode at %.2f MB/s, %.0f bytes allocated per message "
+            + "(org.json: %.2f MB/s, %.0f bytes allocated per message)\n",
+        megabytesPerSecond(totalLength, streamingResults[0]),
+        streamingResults[1],
+        megabytesPerSecond(totalLength, jsonResults[0]),
+        jsonResults[1]);
+  }
+
+  /**
+   * @return the average nanoseconds per pass over the traffic, and the average bytes allocated per
+   *         message
+   */
+  private double[] measure(Decoder decoder, List<String> traffic) throws JSONException {
+    for (int i = 0; i < WARMUP_COUNT; i++) {
+      for (String message : traffic) {
+        decoder.decode(message);
+      }
+    }
+
+    long startBytes = getAllocatedBytes();
+    long startTime = System.nanoTime();
+
+    for (int i = 0; i < ITERATION_COUNT; i++) {
+      for (String message : traffic) {
+        decoder.decode(message);
+      }
+    }
+
+    long elapsed = System.nanoTime() - startTime;
+    long allocated = startBytes == -1 ? -1 : getAllocatedBytes() - startBytes;
+
+    return new double[] {
+        (double) elapsed / ITERATION_COUNT,
+        (double) allocated / (ITERATION_COUNT * traffic.size())};
+  }
+
+  private double megabytesPerSecond(long length, double nanosPerPass) {
+    return (length / (1024.0 * 1024.0)) / (nanosPerPass / 1000000000.0);
+  }
+
+}
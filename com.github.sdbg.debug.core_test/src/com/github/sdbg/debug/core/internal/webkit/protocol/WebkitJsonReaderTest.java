@@ -0,0 +1,219 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import com.github.sdbg.debug.core.internal.webkit.protocol.WebkitConnection.StreamingNotificationHandler;
+
+import java.net.URI;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+public class WebkitJsonReaderTest extends TestCase {
+  private static final String PROPERTIES = "[{\"name\":\"__proto__\",\"value\":{"
+      + "\"type\":\"object\",\"objectId\":\"{\\\"id\\\":1}\",\"className\":\"Object\","
+      + "\"description\":\"Object\"},\"writable\":true,\"configurable\":true,\"enumerable\":true},"
+      + "{\"name\":\"count\",\"value\":{\"type\":\"number\",\"value\":1e3},"
+      + "\"writable\":\"true\",\"enumerable\":true,\"extra\":[1,{\"a\":[]}]},"
+      + "{\"name\":\"@staticFields\",\"value\":{\"type\":\"object\",\"objectId\":\"2\"}},"
+      + "{\"name\":\"s\",\"value\":{\"type\":\"string\",\"value\":\"a\\\"b\\u0041\\n\"},"
+      + "\"get\":{\"type\":\"function\",\"objectId\":\"3\"}}]";
+
+  private static final String CALL_FRAMES = "[{\"callFrameId\":\"0\","
+      + "\"functionName\":\"Object._noSuchMethod@0x1a2b\","
+      + "\"location\":{\"scriptId\":\"10\",\"lineNumber\":4,\"columnNumber\":2},"
+      + "\"this\":{\"type\":\"object\",\"objectId\":\"4\"}},"
+      + "{\"callFrameId\":\"1\",\"functionName\":\"main\",\"location\":{\"scriptId\":\"10\","
+      + "\"lineNumber\":12},\"scopeChain\":[{\"type\":\"local\",\"object\":{\"type\":\"object\","
+      + "\"objectId\":\"5\"}},{\"type\":\"global\",\"object\":{\"type\":\"object\","
+      + "\"objectId\":\"6\"}}],\"this\":{\"type\":\"undefined\"}},"
+      + "{\"callFrameId\":\"2\",\"functionName\":\"\",\"location\":{\"scriptId\":\"11\","
+      + "\"lineNumber\":0,\"columnNumber\":0},\"this\":{\"type\":\"object\",\"objectId\":\"7\"}}]";
+
+  private static final String SCRIPT = "{\"scriptId\":\"10\","
+      + "\"url\":\"http://localhost/main.dart\",\"startLine\":1,\"startColumn\":2,\"endLine\":30,"
+      + "\"endColumn\":4,\"isContentScript\":false,\"sourceMapURL\":\"main.dart.js.map\","
+      + "\"hasSourceURL\":false}";
+
+  public void testCallFrames() throws Exception {
+    List<WebkitCallFrame> expected = WebkitCallFrame.createFrom(new JSONArray(CALL_FRAMES));
+    List<WebkitCallFrame> actual = WebkitCallFrame.readListFrom(new WebkitJsonReader(CALL_FRAMES));
+
+    assertEquals(2, actual.size());
+    assertEquals(expected.size(), actual.size());
+
+    for (int i = 0; i < expected.size(); i++) {
+      WebkitCallFrame e = expected.get(i);
+      WebkitCallFrame a = actual.get(i);
+
+      assertEquals(e.getCallFrameId(), a.getCallFrameId());
+      assertEquals(e.getFunctionName(), a.getFunctionName());
+      assertEquals(e.getLocation().toString(), a.getLocation().toString());
+      assertEquals(e.getThisObject().getObjectId(), a.getThisObject().getObjectId());
+      assertEquals(e.getThisObject().getType(), a.getThisObject().getType());
+
+      if (e.getScopeChain() == null) {
+        assertNull(a.getScopeChain());
+      } else {
+        assertEquals(e.getScopeChain().length, a.getScopeChain().length);
+
+        for (int j = 0; j < e.getScopeChain().length; j++) {
+          assertEquals(e.getScopeChain()[j].getType(), a.getScopeChain()[j].getType());
+          assertEquals(
+              e.getScopeChain()[j].getObject().getObjectId(),
+              a.getScopeChain()[j].getObject().getObjectId());
+        }
+      }
+    }
+
+    assertEquals(-1, actual.get(0).getLocation().getColumnNumber());
+  }
+
+  public void testConversions() throws Exception {
+    String text = "{\"i\":\"12\",\"d\":2.5,\"b\":\"TRUE\",\"s\":7,\"n\":null,\"o\":{\"x\":1},"
+        + "\"l\":12345678901}";
+    JSONObject object = new JSONObject(text);
+    WebkitJsonReader reader = new WebkitJsonReader(text);
+
+    reader.beginObject();
+    assertEquals("i", reader.nextName());
+    assertEquals(object.getInt("i"), reader.nextInt());
+    reader.nextName();
+    assertEquals(object.getInt("d"), reader.nextInt());
+    reader.nextName();
+    assertEquals(object.getBoolean("b"), reader.nextBoolean());
+    reader.nextName();
+    assertEquals(object.getString("s"), reader.nextString());
+    reader.nextName();
+    assertEquals(object.getString("n"), reader.nextString());
+    reader.nextName();
+    assertEquals(object.getString("o"), reader.nextString());
+    reader.nextName();
+    assertEquals(object.get("l"), reader.nextValue());
+    assertFalse(reader.hasNext());
+    reader.endObject();
+  }
+
+  public void testMalformed() throws Exception {
+    try {
+      WebkitPropertyDescriptor.readArrayFrom(new WebkitJsonReader("[{\"name\":\"a\",\"value\":{"));
+      fail();
+    } catch (JSONException e) {
+
+    }
+
+    try {
+      WebkitScript.readFrom(new WebkitJsonReader("{\"url\":\"unterminated}"));
+      fail();
+    } catch (JSONException e) {
+
+    }
+  }
+
+  public void testNotificationRouting() throws Exception {
+    final CountDownLatch latch = new CountDownLatch(1);
+    final String[] url = new String[1];
+
+    WebkitConnection connection = new WebkitConnection(new URI("ws://localhost:1/devtools"));
+
+    connection.registerNotificationHandler("Debugger.", new StreamingNotificationHandler() {
+      @Override
+      void readNotification(String method, WebkitJsonReader params) throws JSONException {
+        url[0] = WebkitScript.readFrom(params).getUrl();
+        latch.countDown();
+      }
+    });
+
+    // Notifications for domains without a handler are dropped without decoding their parameters.
+    connection.processMessage("{\"method\":\"Profiler.resetProfiles\",\"params\":{\"bad\":");
+    connection.processMessage("{\"params\":" + SCRIPT + ",\"method\":\"Debugger.scriptParsed\"}");
+
+    assertTrue(latch.await(5, TimeUnit.SECONDS));
+    assertEquals("http://localhost/main.dart", url[0]);
+
+    connection.close();
+  }
+
+  public void testPropertyDescriptors() throws Exception {
+    WebkitPropertyDescriptor[] expected = WebkitPropertyDescriptor.createFrom(new JSONArray(
+        PROPERTIES));
+    WebkitPropertyDescriptor[] actual = WebkitPropertyDescriptor.readArrayFrom(
+        new WebkitJsonReader(PROPERTIES));
+
+    assertEquals(expected.length, actual.length);
+
+    for (int i = 0; i < expected.length; i++) {
+      WebkitPropertyDescriptor e = expected[i];
+      WebkitPropertyDescriptor a = actual[i];
+
+      assertEquals(e.getName(), a.getName());
+      assertEquals(e.isEnumerable(), a.isEnumerable());
+      assertEquals(e.isWritable(), a.isWritable());
+      assertEquals(e.isConfigurable(), a.isConfigurable());
+      assertEquals(e.getValue().getType(), a.getValue().getType());
+      assertEquals(e.getValue().getObjectId(), a.getValue().getObjectId());
+      assertEquals(e.getValue().getClassName(), a.getValue().getClassName());
+      assertEquals(e.getValue().getDescription(), a.getValue().getDescription());
+      assertEquals(e.getValue().getValue(), a.getValue().getValue());
+      assertEquals(e.getGetterFunction() == null, a.getGetterFunction() == null);
+    }
+
+    assertFalse(actual[0].isEnumerable());
+    assertEquals("{\"id\":1}", actual[0].getValue().getObjectId());
+    assertEquals("1000.0", actual[1].getValue().getValue());
+    assertEquals("Type", actual[2].getValue().getClassName());
+    assertEquals("a\"bA\n", actual[3].getValue().getValue());
+  }
+
+  public void testScript() throws Exception {
+    WebkitScript expected = WebkitScript.createFrom(new JSONObject(SCRIPT));
+    WebkitScript actual = WebkitScript.readFrom(new WebkitJsonReader(SCRIPT));
+
+    assertEquals(expected.getScriptId(), actual.getScriptId());
+    assertEquals(expected.getUrl(), actual.getUrl());
+    assertEquals(expected.getStartLine(), actual.getStartLine());
+    assertEquals(2, actual.getStartColumn());
+    assertEquals(expected.getStartColumn(), actual.getStartColumn());
+    assertEquals(expected.getEndLine(), actual.getEndLine());
+    assertEquals(expected.getEndColumn(), actual.getEndColumn());
+    assertEquals(expected.getSourceMapURL(), actual.getSourceMapURL());
+  }
+
+  public void testSkipValue() throws Exception {
+    String text = "{\"a\":{\"b\":[1,2,{\"c\":\"]}\\\"\"}]},\"d\":-1.5e3,\"e\":\"x\"}";
+    WebkitJsonReader reader = new WebkitJsonReader(text);
+
+    reader.beginObject();
+    assertEquals("a", reader.nextName());
+    reader.skipValue();
+    assertEquals("d", reader.nextName());
+    reader.skipValue();
+    assertEquals("e", reader.nextName());
+
+    int position = reader.getPosition();
+
+    assertEquals("x", reader.nextString());
+    assertEquals("x", new WebkitJsonReader(text, position).nextString());
+    assertFalse(reader.hasNext());
+    reader.endObject();
+  }
+
+}
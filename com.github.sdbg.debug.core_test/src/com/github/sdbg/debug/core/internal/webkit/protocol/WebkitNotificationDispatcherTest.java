@@ -0,0 +1,175 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.internal.webkit.protocol;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class WebkitNotificationDispatcherTest extends TestCase {
+  private WebkitNotificationDispatcher dispatcher;
+
+  public void testClose() throws Exception {
+    final CountDownLatch running = new CountDownLatch(1);
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+
+    dispatcher.dispatch("Debugger.", new Runnable() {
+      @Override
+      public void run() {
+        running.countDown();
+
+        try {
+          blocked.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+
+        }
+
+        handled.add("running");
+      }
+    });
+
+    dispatcher.dispatch("Debugger.", new Runnable() {
+      @Override
+      public void run() {
+        handled.add("queued");
+      }
+    });
+
+    assertTrue(running.await(5, TimeUnit.SECONDS));
+
+    dispatcher.close();
+
+    dispatcher.dispatch("Debugger.", new Runnable() {
+      @Override
+      public void run() {
+        handled.add("late");
+      }
+    });
+
+    // The queued and late handlers are dropped; the running one completes.
+    WebkitDispatchStats stats = dispatcher.getStats().get(0);
+
+    assertEquals(0, stats.getQueueDepth());
+    assertEquals(1, stats.getDispatchCount());
+
+    blocked.countDown();
+
+    while (handled.isEmpty()) {
+      Thread.sleep(10);
+    }
+
+    assertEquals(Collections.singletonList("running"), handled);
+  }
+
+  public void testDomainsRunConcurrently() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch consoleHandled = new CountDownLatch(1);
+
+    dispatcher.dispatch("Debugger.", new Runnable() {
+      @Override
+      public void run() {
+        try {
+          blocked.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+
+        }
+      }
+    });
+
+    dispatcher.dispatch("Console.", new Runnable() {
+      @Override
+      public void run() {
+        consoleHandled.countDown();
+      }
+    });
+
+    // A slow Debugger. handler does not hold up the other domains.
+    assertTrue(consoleHandled.await(5, TimeUnit.SECONDS));
+
+    blocked.countDown();
+  }
+
+  public void testOrderWithinDomain() throws Exception {
+    final List<Integer> handled = Collections.synchronizedList(new ArrayList<Integer>());
+    final CountDownLatch done = new CountDownLatch(1);
+
+    for (int i = 0; i < 1000; i++) {
+      final int index = i;
+
+      dispatcher.dispatch("Debugger.", new Runnable() {
+        @Override
+        public void run() {
+          handled.add(index);
+
+          if (index == 999) {
+            done.countDown();
+          }
+        }
+      });
+    }
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+
+    for (int i = 0; i < 1000; i++) {
+      assertEquals(i, handled.get(i).intValue());
+    }
+  }
+
+  public void testStats() throws Exception {
+    final CountDownLatch blocked = new CountDownLatch(1);
+    final CountDownLatch done = new CountDownLatch(3);
+
+    for (int i = 0; i < 3; i++) {
+      dispatcher.dispatch("Runtime.", new Runnable() {
+        @Override
+        public void run() {
+          try {
+            blocked.await(5, TimeUnit.SECONDS);
+          } catch (InterruptedException e) {
+
+          }
+
+          done.countDown();
+        }
+      });
+    }
+
+    WebkitDispatchStats stats = dispatcher.getStats().get(0);
+
+    assertEquals("Runtime.", stats.getDomain());
+    assertTrue(stats.getQueueDepth() >= 2);
+
+    blocked.countDown();
+
+    assertTrue(done.await(5, TimeUnit.SECONDS));
+
+    stats = dispatcher.getStats().get(0);
+
+    assertEquals(0, stats.getQueueDepth());
+    assertTrue(stats.getMaxQueueDepth() >= 2);
+    assertEquals(3, stats.getDispatchCount());
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    dispatcher = new WebkitNotificationDispatcher();
+  }
+
+}
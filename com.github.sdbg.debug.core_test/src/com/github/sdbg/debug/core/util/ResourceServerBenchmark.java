@@ -0,0 +1,309 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.core.util;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import junit.framework.TestCase;
+
+import org.eclipse.core.resources.IFile;
+
+import com.github.sdbg.core.test.util.TestProject;
+
+/**
+ * Requests per second and bytes transferred by the {@link ResourceServer}, for a page load shaped
+ * like a Dart application: a page, a few scripts and stylesheets, and a large compiled script. The
+ * clients reload the page over and over, the way a browser does while the developer edits and
+ * refreshes. It prints a line per way of talking to the server, with or without keep-alive, gzip
+ * and revalidation: the requests and kilobytes served per second by all the clients together, and
+ * the average bytes on the wire per request, which shows what compression and 304s save.
+ */
+public class ResourceServerBenchmark extends TestCase {
+
+  /**
+   * How a client talks to the server.
+   */
+  private static class Mode {
+    String name;
+    boolean keepAlive;
+    boolean gzip;
+    boolean revalidate;
+
+    Mode(String name, boolean keepAlive, boolean gzip, boolean revalidate) {
+      this.name = name;
+      this.keepAlive = keepAlive;
+      this.gzip = gzip;
+      this.revalidate = revalidate;
+    }
+  }
+
+  /**
+   * A client, requesting all the files of the page in turn; on every load after the first, a
+   * revalidating client sends the ETags it was given.
+   */
+  private static class Client implements Runnable {
+    private int port;
+    private List<String> paths;
+    private Mode mode;
+    private long deadline;
+    private CountDownLatch done;
+
+    private String[] etags;
+    private Socket socket;
+    private DataInputStream in;
+    private OutputStream out;
+
+    long requestCount;
+    long byteCount;
+    Throwable error;
+
+    Client(int port, List<String> paths, Mode mode, long deadline, CountDownLatch done) {
+      this.port = port;
+      this.paths = paths;
+      this.mode = mode;
+      this.deadline = deadline;
+      this.done = done;
+
+      etags = new String[paths.size()];
+    }
+
+    @Override
+    public void run() {
+      try {
+        while (System.currentTimeMillis() < deadline) {
+          for (int i = 0; i < paths.size(); i++) {
+            request(i);
+          }
+        }
+
+        close();
+      } catch (Throwable t) {
+        error = t;
+      } finally {
+        done.countDown();
+      }
+    }
+
+    private void close() throws IOException {
+      if (socket != null) {
+        socket.close();
+        socket = null;
+      }
+    }
+
+    @SuppressWarnings("deprecation")
+    private void request(int index) throws IOException {
+      if (socket == null) {
+        socket = new Socket("localhost", port);
+        socket.setTcpNoDelay(true);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = socket.getOutputStream();
+      }
+
+      StringBuilder builder = new StringBuilder();
+
+      builder.append("GET " + paths.get(index) + " HTTP/1.1\r\n");
+      builder.append("Host: localhost:" + port + "\r\n");
+      builder.append(mode.keepAlive ? "Connection: keep-alive\r\n" : "Connection: close\r\n");
+
+      if (mode.gzip) {
+        builder.append("Accept-Encoding: gzip, deflate\r\n");
+      }
+
+      if (mode.revalidate && etags[index] != null) {
+        builder.append("If-None-Match: " + etags[index] + "\r\n");
+      }
+
+      builder.append("\r\n");
+
+      out.write(builder.toString().getBytes("US-ASCII"));
+      out.flush();
+
+      String line = in.readLine();
+      long bytes = line.length() + 2;
+      int status = Integer.parseInt(line.split(" ")[1]);
+      int length = 0;
+
+      for (line = in.readLine(); line.length() > 0; line = in.readLine()) {
+        bytes += line.length() + 2;
+
+        int colon = line.indexOf(':');
+        String key = line.substring(0, colon);
+        String value = line.substring(colon + 1).trim();
+
+        if (key.equalsIgnoreCase("Content-Length")) {
+          length = Integer.parseInt(value);
+        } else if (key.equalsIgnoreCase("ETag")) {
+          etags[index] = value;
+        }
+      }
+
+      bytes += 2;
+
+      if (status != 200 && status != 304) {
+        throw new IOException("Unexpected response " + status + " for " + paths.get(index));
+      }
+
+      if (status == 200) {
+        in.readFully(new byte[length]);
+        bytes += length;
+      }
+
+      requestCount++;
+      byteCount += bytes;
+
+      if (!mode.keepAlive) {
+        close();
+      }
+    }
+  }
+
+  private static final int CLIENT_COUNT = 4;
+  private static final long WARMUP_MILLIS = 1000;
+  private static final long RUN_MILLIS = 5000;
+
+  private ResourceServer server;
+  private TestProject project;
+
+  public void test_load() throws Exception {
+    List<String> paths = createPage();
+
+    Mode[] modes = new Mode[] {
+        new Mode("connection per request", false, false, false),
+        new Mode("keep-alive", true, false, false),
+        new Mode("keep-alive, gzip", true, true, false),
+        new Mode("keep-alive, gzip, revalidate", true, true, true)};
+
+    System.out.println("Resource server benchmark: " + CLIENT_COUNT + " clients, " + paths.size()
+        + " files per page load");
+
+    for (Mode mode : modes) {
+      run(paths, mode, WARMUP_MILLIS);
+
+      long[] results = run(paths, mode, RUN_MILLIS);
+
+      long requests = results[0];
+      long bytes = results[1];
+
+      System.out.println(String.format(
+          "  %-30s %,10.0f requests/s %,12.0f KB/s %,10d bytes/request",
+          mode.name,
+          requests * 1000.0 / RUN_MILLIS,
+          bytes * 1000.0 / RUN_MILLIS / 1024,
+          requests == 0 ? 0 : bytes / requests));
+    }
+  }
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+
+    server = new ResourceServer();
+    project = new TestProject();
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    project.dispose();
+    server.shutdown();
+
+    super.tearDown();
+  }
+
+  private String createContent(String line, int length) {
+    StringBuilder builder = new StringBuilder(length + line.length() + 16);
+
+    for (int i = 0; builder.length() < length; i++) {
+      builder.append(line.replace("#", Integer.toString(i)));
+      builder.append('\n');
+    }
+
+    return builder.toString();
+  }
+
+  /**
+   * @return the paths of the files making up the page
+   */
+  private List<String> createPage() throws Exception {
+    List<IFile> files = new ArrayList<IFile>();
+
+    files.add(project.setFileContent("index.html", createContent(
+        "<div id=\"item#\" class=\"item\">Item #</div>",
+        4 * 1024)));
+    files.add(project.setFileContent(
+        "styles.css",
+        createContent(".item# { color: #333; margin: #px; }", 8 * 1024)));
+
+    for (int i = 0; i < 4; i++) {
+      files.add(project.setFileContent("lib" + i + ".js", createContent(
+          "function lib" + i + "_#(a, b) { return a.foo# + b.bar(#); }",
+          24 * 1024)));
+    }
+
+    files.add(project.setFileContent("main.dart.js", createContent(
+        "$.Foo$# = function(a) { this.a = a; return $.Bar$#(a, #); };",
+        1024 * 1024)));
+
+    List<String> paths = new ArrayList<String>();
+
+    for (IFile file : files) {
+      paths.add(new URL(server.getUrlForResource(file)).getPath());
+    }
+
+    return paths;
+  }
+
+  /**
+   * @return the number of requests, and of bytes received, by all the clients
+   */
+  private long[] run(List<String> paths, Mode mode, long millis) throws Exception {
+    long deadline = System.currentTimeMillis() + millis;
+    CountDownLatch done = new CountDownLatch(CLIENT_COUNT);
+
+    List<Client> clients = new ArrayList<Client>();
+
+    for (int i = 0; i < CLIENT_COUNT; i++) {
+      Client client = new Client(server.getPort(), paths, mode, deadline, done);
+
+      clients.add(client);
+
+      new Thread(client, "Load Test Client " + i).start();
+    }
+
+    done.await();
+
+    long[] results = new long[2];
+
+    for (Client client : clients) {
+      if (client.error != null) {
+        throw new Exception(client.error);
+      }
+
+      results[0] += client.requestCount;
+      results[1] += client.byteCount;
+    }
+
+    return results;
+  }
+
+}
@@ -14,13 +14,18 @@
 
 package com.github.sdbg.debug.core.util;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
+import java.net.Socket;
 import java.net.URL;
+import java.util.zip.GZIPInputStream;
 
 import junit.framework.TestCase;
 
@@ -62,6 +67,127 @@ public class ResourceServerTest extends TestCase {
     connection.getInputStream().close();
   }
 
+  public void test_conditionalGetETag() throws Exception {
+    IFile file = project.setFileContent("foo.txt", "foo");
+    String url = server.getUrlForResource(file);
+
+    HttpURLConnection connection = createConnection(url);
+    assertEquals(200, connection.getResponseCode());
+    String etag = connection.getHeaderField("ETag");
+    assertNotNull(etag);
+    connection.getInputStream().close();
+
+    connection = createConnection(url);
+    connection.setRequestProperty("If-None-Match", etag);
+    assertEquals(304, connection.getResponseCode());
+    assertEquals(etag, connection.getHeaderField("ETag"));
+    connection.disconnect();
+
+    project.setFileContent("foo.txt", "foobar");
+
+    connection = createConnection(url);
+    connection.setRequestProperty("If-None-Match", etag);
+    assertEquals(200, connection.getResponseCode());
+    assertEquals(
+        "foobar",
+        Streams.loadAndClose(new InputStreamReader(connection.getInputStream(), "UTF-8")));
+  }
+
+  public void test_conditionalGetLastModified() throws Exception {
+    IFile file = project.setFileContent("foo.txt", "foo");
+    String url = server.getUrlForResource(file);
+
+    HttpURLConnection connection = createConnection(url);
+    assertEquals(200, connection.getResponseCode());
+    long lastModified = connection.getLastModified();
+    assertTrue(lastModified > 0);
+    connection.getInputStream().close();
+
+    connection = createConnection(url);
+    connection.setIfModifiedSince(lastModified);
+    assertEquals(304, connection.getResponseCode());
+    connection.disconnect();
+  }
+
+  public void test_gzip() throws Exception {
+    StringBuilder builder = new StringBuilder();
+
+    for (int i = 0; i < 200; i++) {
+      builder.append("var foo" + i + " = " + i + ";\n");
+    }
+
+    String content = builder.toString();
+    IFile file = project.setFileContent("foo.js", content);
+    String url = server.getUrlForResource(file);
+
+    HttpURLConnection connection = createConnection(url);
+    connection.setRequestProperty("Accept-Encoding", "gzip");
+
+    assertEquals(200, connection.getResponseCode());
+    assertEquals("gzip", connection.getContentEncoding());
+    assertTrue(connection.getContentLength() < content.length());
+    assertEquals(content, Streams.loadAndClose(new InputStreamReader(new GZIPInputStream(
+        connection.getInputStream()), "UTF-8")));
+
+    // Clients that don't ask for gzip get the file as it is.
+    connection = createConnection(url);
+
+    assertEquals(200, connection.getResponseCode());
+    assertNull(connection.getContentEncoding());
+    assertEquals(content.length(), connection.getContentLength());
+    connection.getInputStream().close();
+  }
+
+  @SuppressWarnings("deprecation")
+  public void test_keepAlive() throws Exception {
+    IFile file = project.setFileContent("foo.txt", "foo");
+    String path = new URL(server.getUrlForResource(file)).getPath();
+
+    Socket socket = new Socket("localhost", server.getPort());
+    socket.setSoTimeout(3000);
+
+    try {
+      OutputStream out = socket.getOutputStream();
+      DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+
+      for (int i = 0; i < 3; i++) {
+        String connectionHeader = i == 2 ? "Connection: close\r\n" : "";
+
+        String request = "GET " + path + " HTTP/1.1\r\nHost: localhost\r\n" + connectionHeader
+            + "\r\n";
+
+        out.write(request.getBytes("US-ASCII"));
+        out.flush();
+
+        assertEquals("HTTP/1.1 200 OK", in.readLine());
+
+        String line = in.readLine();
+        int length = -1;
+
+        while (line != null && line.length() > 0) {
+          if (line.startsWith("Content-Length:")) {
+            length = Integer.parseInt(line.substring("Content-Length:".length()).trim());
+          } else if (line.startsWith("Connection:")) {
+            assertEquals(i == 2 ? "close" : "keep-alive", line.substring(
+                "Connection:".length()).trim());
+          }
+
+          line = in.readLine();
+        }
+
+        assertEquals(3, length);
+
+        byte[] body = new byte[length];
+        in.readFully(body);
+        assertEquals("foo", new String(body, "US-ASCII"));
+      }
+
+      assertEquals(-1, in.read());
+    } finally {
+      socket.close();
+    }
+  }
+
   public void test_onlyServeWorkspaceFiles() throws Exception {
     File file = File.createTempFile("foo", ".txt");
     Streams.storeAndClose("foo", new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
@@ -100,6 +226,56 @@ public class ResourceServerTest extends TestCase {
     file.delete();
   }
 
+  public void test_rangeMultiple() throws Exception {
+    IFile file = project.setFileContent("foo.txt", "0123456789");
+    String url = server.getUrlForResource(file);
+
+    HttpURLConnection connection = createConnection(url);
+    connection.setRequestProperty("Range", "bytes=0-1,-3");
+
+    assertEquals(206, connection.getResponseCode());
+
+    String contentType = connection.getContentType();
+    assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+
+    String boundary = contentType.substring(contentType.indexOf('=') + 1);
+    String body = Streams.loadAndClose(new InputStreamReader(connection.getInputStream(), "UTF-8"));
+
+    assertEquals(body.length(), connection.getContentLength());
+    assertEquals("\r\n--" + boundary + "\r\nContent-Type: text/plain\r\n"
+        + "Content-Range: bytes 0-1/10\r\n\r\n01\r\n--" + boundary
+        + "\r\nContent-Type: text/plain\r\nContent-Range: bytes 7-9/10\r\n\r\n789\r\n--"
+        + boundary + "--\r\n", body);
+  }
+
+  public void test_rangeNotSatisfiable() throws Exception {
+    IFile file = project.setFileContent("foo.txt", "0123456789");
+    String url = server.getUrlForResource(file);
+
+    HttpURLConnection connection = createConnection(url);
+    connection.setRequestProperty("Range", "bytes=20-");
+
+    assertEquals(416, connection.getResponseCode());
+    assertEquals("bytes */10", connection.getHeaderField("Content-Range"));
+
+    connection.disconnect();
+  }
+
+  public void test_rangeSingle() throws Exception {
+    IFile file = project.setFileContent("foo.txt", "0123456789");
+    String url = server.getUrlForResource(file);
+
+    HttpURLConnection connection = createConnection(url);
+    connection.setRequestProperty("Range", "bytes=2-4");
+
+    assertEquals(206, connection.getResponseCode());
+    assertEquals("bytes 2-4/10", connection.getHeaderField("Content-Range"));
+    assertEquals(3, connection.getContentLength());
+    assertEquals(
+        "234",
+        Streams.loadAndClose(new InputStreamReader(connection.getInputStream(), "UTF-8")));
+  }
+
   @Override
   protected void setUp() throws Exception {
     super.setUp();
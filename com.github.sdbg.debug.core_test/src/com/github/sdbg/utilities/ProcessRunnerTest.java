@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.utilities;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import junit.framework.TestCase;
+
+public class ProcessRunnerTest extends TestCase {
+
+  /**
+   * The child process: prints the given number of lines to stdout, then a line to stderr, then
+   * text without a line terminator; sleeps for the given time, and exits with the given code.
+   */
+  public static class Child {
+    public static void main(String[] args) throws Exception {
+      int lineCount = Integer.parseInt(args[0]);
+      long sleep = Long.parseLong(args[1]);
+
+      for (int i = 0; i < lineCount; i++) {
+        System.out.println("line " + i);
+      }
+
+      System.err.println("error");
+      System.out.print("partial");
+      System.out.flush();
+
+      Thread.sleep(sleep);
+
+      System.exit(Integer.parseInt(args[2]));
+    }
+  }
+
+  private static class RecordingListener implements ProcessRunner.OutputListener {
+    private List<String> lines = new ArrayList<String>();
+
+    @Override
+    public synchronized void lineRead(String line, boolean stderr) {
+      lines.add((stderr ? "err: " : "out: ") + line);
+    }
+  }
+
+  private static ProcessBuilder createChild(int lineCount, long sleep, int exitCode) {
+    return new ProcessBuilder(
+        System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+        "-cp",
+        System.getProperty("java.class.path"),
+        Child.class.getName(),
+        Integer.toString(lineCount),
+        Long.toString(sleep),
+        Integer.toString(exitCode));
+  }
+
+  private static int countThreads(String name) {
+    int count = 0;
+
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals(name)) {
+        count++;
+      }
+    }
+
+    return count;
+  }
+
+  public void test_boundedOutput() throws Exception {
+    ProcessRunner runner = new ProcessRunner(createChild(100000, 0, 0));
+    runner.setMaxOutputSize(1000);
+
+    assertEquals(0, runner.runSync(null));
+
+    String stdout = runner.getStdOut();
+    assertEquals(1000, stdout.length());
+    assertTrue(stdout.endsWith("line 99999\npartial"));
+  }
+
+  public void test_exitFuture() throws Exception {
+    ProcessRunner runner = new ProcessRunner(createChild(1, 200, 7));
+    runner.runAsync();
+
+    assertTrue(runner.isRunning());
+    assertEquals(7, runner.getExitFuture().get(30, TimeUnit.SECONDS).intValue());
+    assertFalse(runner.isRunning());
+    assertEquals(7, runner.getExitCode());
+    assertEquals("line 0\npartial", runner.getStdOut().replace("\r", ""));
+  }
+
+  public void test_failingListener() throws Exception {
+    final RecordingListener listener = new RecordingListener();
+
+    ProcessRunner runner = new ProcessRunner(createChild(3, 0, 0));
+    runner.setOutputListener(new ProcessRunner.OutputListener() {
+      @Override
+      public void lineRead(String line, boolean stderr) {
+        if (line.equals("line 1")) {
+          throw new IllegalStateException("Listener failed on " + line);
+        }
+
+        listener.lineRead(line, stderr);
+      }
+    });
+
+    // The listener only misses the line it failed on; the process runs to the end.
+    assertEquals(0, runner.runSync(null));
+    assertEquals(
+        Arrays.asList("out: line 0", "out: line 2", "err: error", "out: partial"),
+        listener.lines);
+    assertEquals("line 0\nline 1\nline 2\npartial", runner.getStdOut().replace("\r", ""));
+
+    // The pump carries on for the other processes.
+    assertEquals(1, countThreads("Process Output Pump"));
+    assertEquals(0, new ProcessRunner(createChild(1, 0, 0)).runSync(null));
+  }
+
+  public void test_longLine() throws Exception {
+    RecordingListener listener = new RecordingListener();
+    OutputTail tail = new OutputTail(1000, listener, false);
+
+    byte[] bytes = new byte[OutputTail.MAX_LINE_LENGTH + 10];
+    Arrays.fill(bytes, (byte) 'x');
+    bytes[bytes.length - 1] = '\n';
+
+    tail.append(bytes, bytes.length);
+
+    // A line without a break is passed on in pieces, rather than held.
+    assertEquals(2, listener.lines.size());
+    assertEquals(OutputTail.MAX_LINE_LENGTH + 5, listener.lines.get(0).length());
+    assertEquals("out: xxxxxxxxx", listener.lines.get(1));
+  }
+
+  public void test_outputListener() throws Exception {
+    RecordingListener listener = new RecordingListener();
+
+    ProcessRunner runner = new ProcessRunner(createChild(3, 0, 0));
+    runner.setOutputListener(listener);
+    runner.runSync(null);
+
+    assertEquals(
+        Arrays.asList("out: line 0", "out: line 1", "out: line 2", "err: error", "out: partial"),
+        listener.lines);
+  }
+
+  public void test_runSync() throws Exception {
+    ProcessRunner runner = new ProcessRunner(createChild(2, 0, 3));
+
+    assertEquals(3, runner.runSync(null));
+    assertEquals(3, runner.getExitCode());
+    assertEquals("line 0\nline 1\npartial", runner.getStdOut().replace("\r", ""));
+    assertEquals("error\n", runner.getStdErr().replace("\r", ""));
+  }
+
+  public void test_sharedPump() throws Exception {
+    int processCount = 10;
+
+    List<ProcessRunner> runners = new ArrayList<ProcessRunner>();
+
+    for (int i = 0; i < processCount; i++) {
+      ProcessRunner runner = new ProcessRunner(createChild(10, 1000, i));
+      runner.runAsync();
+      runners.add(runner);
+    }
+
+    // Three threads per process were started before; now one reads them all.
+    assertEquals(1, countThreads("Process Output Pump"));
+
+    for (int i = 0; i < processCount; i++) {
+      assertEquals(i, runners.get(i).getExitFuture().get(30, TimeUnit.SECONDS).intValue());
+      assertTrue(runners.get(i).getStdOut().contains("line 9"));
+    }
+  }
+
+}
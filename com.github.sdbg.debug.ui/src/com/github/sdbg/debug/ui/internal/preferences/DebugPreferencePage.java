@@ -41,6 +41,8 @@ public class DebugPreferencePage extends PreferencePage implements IWorkbenchPre
   private Button useSmartStepOverButton;
   private Button useSmartStepInOutButton;
 
+  private Button reuseBrowserProcessButton;
+
 //  private Button defaultBrowserButton;
 //  private Text browserNameText;
 //  private Button selectBrowserButton;
@@ -64,6 +66,8 @@ public class DebugPreferencePage extends PreferencePage implements IWorkbenchPre
     SDBGDebugCorePlugin.getPlugin().setInvokeToString(invokeToStringButton.getSelection());
     SDBGDebugCorePlugin.getPlugin().setUseSmartStepOver(useSmartStepOverButton.getSelection());
     SDBGDebugCorePlugin.getPlugin().setUseSmartStepInOut(useSmartStepInOutButton.getSelection());
+    SDBGDebugCorePlugin.getPlugin().setReuseBrowserProcess(
+        reuseBrowserProcessButton.getSelection());
 
 //    SDBGDebugCorePlugin.getPlugin().setBrowserPreferences(
 //        defaultBrowserButton.getSelection(),
@@ -109,6 +113,10 @@ public class DebugPreferencePage extends PreferencePage implements IWorkbenchPre
     useSmartStepInOutButton.setText("Skip non-sourcemapped JavaScript frames when stepping-in and out");
     GridDataFactory.swtDefaults().span(2, 1).applyTo(useSmartStepInOutButton);
 
+    reuseBrowserProcessButton = new Button(group, SWT.CHECK);
+    reuseBrowserProcessButton.setText("Keep Chrome running, and debug each launch in a new tab");
+    GridDataFactory.swtDefaults().span(2, 1).applyTo(reuseBrowserProcessButton);
+
 //    createBrowserConfig(composite, labelWidth);
 
     initFromPrefs();
@@ -184,6 +192,8 @@ public class DebugPreferencePage extends PreferencePage implements IWorkbenchPre
     invokeToStringButton.setSelection(SDBGDebugCorePlugin.getPlugin().getInvokeToString());
     useSmartStepOverButton.setSelection(SDBGDebugCorePlugin.getPlugin().getUseSmartStepOver());
     useSmartStepInOutButton.setSelection(SDBGDebugCorePlugin.getPlugin().getUseSmartStepInOut());
+    reuseBrowserProcessButton.setSelection(
+        SDBGDebugCorePlugin.getPlugin().getReuseBrowserProcess());
   }
 //
 //  private void setEnablement(boolean value) {
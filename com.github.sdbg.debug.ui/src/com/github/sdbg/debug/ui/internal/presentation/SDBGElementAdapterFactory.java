@@ -31,6 +31,7 @@ import org.eclipse.debug.internal.ui.viewers.model.provisional.IViewerInputProvi
 import org.eclipse.debug.internal.ui.viewers.model.provisional.IViewerUpdate;
 import org.eclipse.debug.ui.IDebugUIConstants;
 
+import com.github.sdbg.debug.core.model.ISDBGStackFrame;
 import com.github.sdbg.debug.core.model.ISDBGThread;
 import com.github.sdbg.debug.core.model.ISDBGVariable;
 
@@ -69,6 +70,7 @@ public class SDBGElementAdapterFactory implements IAdapterFactory {
     //&&&
     manager.registerAdapters(factory, ISDBGVariable.class);
     manager.registerAdapters(factory, ISDBGThread.class);
+    manager.registerAdapters(factory, ISDBGStackFrame.class);
 
 //&&&    
 //    if (!DartCore.isPluginsBuild()) {
@@ -80,6 +82,9 @@ public class SDBGElementAdapterFactory implements IAdapterFactory {
 
   private SDBGVariableLabelProvider dartiumLabelProvider = new SDBGVariableLabelProvider();
 
+  private IElementContentProvider variablesContentProvider = new SDBGVariablesContentProvider(
+      defaultAdapter);
+
   private static IElementContentProvider launchContentProvider = new SDBGLaunchContentProvider();
   private static IElementLabelProvider launchLabelProvider = new SDBGLaunchElementLabelProvider();
 
@@ -98,6 +103,10 @@ public class SDBGElementAdapterFactory implements IAdapterFactory {
         return launchContentProvider;
       }
 
+      if (adaptableObject instanceof ISDBGStackFrame || adaptableObject instanceof ISDBGVariable) {
+        return variablesContentProvider;
+      }
+
       // If we don't return the default debug adapter we won't be able to expand any variables.
       return defaultAdapter.getAdapter(adaptableObject, adapterType);
     }
@@ -126,6 +135,11 @@ public class SDBGElementAdapterFactory implements IAdapterFactory {
       }
     }
 
+    // Stack frames are only adapted here for their content; everything else is the platform's.
+    if (adaptableObject instanceof ISDBGStackFrame) {
+      return defaultAdapter.getAdapter(adaptableObject, adapterType);
+    }
+
     return null;
   }
 
@@ -136,6 +150,7 @@ public class SDBGElementAdapterFactory implements IAdapterFactory {
 
     adapterClasses.add(IElementLabelProvider.class);
     adapterClasses.add(IViewerInputProvider.class);
+    adapterClasses.add(IElementContentProvider.class);
 
 //&&&    
 //    // For the RCP, we override the content provider for ILaunches on order to shave
@@ -0,0 +1,201 @@
+/*
+ * Copyright (c) 2013, the Dart project authors.
+ * 
+ * Licensed under the Eclipse Public License v1.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ * 
+ * http://www.eclipse.org/legal/epl-v10.html
+ * 
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.github.sdbg.debug.ui.internal.presentation;
+
+import org.eclipse.core.runtime.IAdapterFactory;
+import org.eclipse.debug.core.DebugException;
+import org.eclipse.debug.core.model.IIndexedValue;
+import org.eclipse.debug.core.model.IValue;
+import org.eclipse.debug.core.model.IVariable;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IChildrenCountUpdate;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IChildrenUpdate;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IElementContentProvider;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IHasChildrenUpdate;
+import org.eclipse.debug.internal.ui.viewers.model.provisional.IViewerUpdate;
+import org.eclipse.debug.ui.IDebugUIConstants;
+import org.eclipse.jface.viewers.TreePath;
+
+import com.github.sdbg.debug.core.model.ISDBGStackFrame;
+import com.github.sdbg.debug.core.model.ISDBGValue;
+import com.github.sdbg.debug.core.model.ISDBGValue.IListLengthCallback;
+import com.github.sdbg.debug.core.model.IVariablesCallback;
+
+/**
+ * A content provider for stack frames and variables which does not park the viewer's update
+ * threads on the browser. The variables of a frame or value, or the length of a list, are fetched
+ * asynchronously first; the update is then handed to the platform's content provider, which finds
+ * them already in the model. The elements of each partition of a long list are fetched the same
+ * way; the partitioning itself, and logical structures, are left to the platform.
+ */
+@SuppressWarnings("restriction")
+public class SDBGVariablesContentProvider implements IElementContentProvider {
+
+  /**
+   * The platform's default array partition size. Shorter lists are shown without partitions, and
+   * their elements are fetched up front.
+   */
+  private static final int PARTITION_SIZE = 100;
+
+  private IAdapterFactory defaultAdapter;
+
+  public SDBGVariablesContentProvider(IAdapterFactory defaultAdapter) {
+    this.defaultAdapter = defaultAdapter;
+  }
+
+  @Override
+  public void update(IChildrenCountUpdate[] updates) {
+    for (final IChildrenCountUpdate update : updates) {
+      fetch(update, true, new Runnable() {
+        @Override
+        public void run() {
+          getDelegate(update).update(new IChildrenCountUpdate[] {update});
+        }
+      });
+    }
+  }
+
+  @Override
+  public void update(IChildrenUpdate[] updates) {
+    for (final IChildrenUpdate update : updates) {
+      fetch(update, true, new Runnable() {
+        @Override
+        public void run() {
+          getDelegate(update).update(new IChildrenUpdate[] {update});
+        }
+      });
+    }
+  }
+
+  @Override
+  public void update(IHasChildrenUpdate[] updates) {
+    for (final IHasChildrenUpdate update : updates) {
+      // Values answer this from what they already know; frames need their variables.
+      fetch(update, false, new Runnable() {
+        @Override
+        public void run() {
+          getDelegate(update).update(new IHasChildrenUpdate[] {update});
+        }
+      });
+    }
+  }
+
+  /**
+   * Fetch what the platform's content provider will ask the model for, then run the given
+   * continuation. Canceled updates are completed without it.
+   * 
+   * @param includeValues whether to fetch the variables of values, or only those of frames
+   */
+  private void fetch(final IViewerUpdate update, boolean includeValues, final Runnable then) {
+    final IVariablesCallback callback = new IVariablesCallback() {
+      @Override
+      public void variablesComputed(IVariable[] variables) {
+        proceed(update, then);
+      }
+    };
+
+    Object element = update.getElement();
+
+    try {
+      if (element instanceof ISDBGStackFrame && !isDebugView(update)) {
+        ((ISDBGStackFrame) element).computeVariables(callback);
+      } else if (element instanceof IVariable && includeValues) {
+        IValue value = ((IVariable) element).getValue();
+
+        if (value instanceof ISDBGValue) {
+          final ISDBGValue sdbgValue = (ISDBGValue) value;
+
+          if (sdbgValue.isListValue()) {
+            sdbgValue.computeListLength(new IListLengthCallback() {
+              @Override
+              public void listLengthComputed(int length) {
+                if (length <= PARTITION_SIZE && !update.isCanceled()) {
+                  sdbgValue.computeVariables(callback);
+                } else {
+                  proceed(update, then);
+                }
+              }
+            });
+          } else {
+            sdbgValue.computeVariables(callback);
+          }
+        } else if (value instanceof IIndexedValue) {
+          fetchPartition(update, (IIndexedValue) value, callback, then);
+        } else {
+          proceed(update, then);
+        }
+      } else {
+        proceed(update, then);
+      }
+    } catch (DebugException e) {
+      update.setStatus(e.getStatus());
+      update.done();
+    }
+  }
+
+  /**
+   * Fetch the elements of a partition of a list, which the platform asks the list for on the
+   * viewer's update thread. A partition of partitions has no elements of its own.
+   */
+  private void fetchPartition(IViewerUpdate update, IIndexedValue partition,
+      IVariablesCallback callback, Runnable then) throws DebugException {
+    ISDBGValue list = getPartitionedList(update.getElementPath());
+
+    if (list != null && partition.getSize() <= PARTITION_SIZE) {
+      list.computeVariables(partition.getInitialOffset(), partition.getSize(), callback);
+    } else {
+      proceed(update, then);
+    }
+  }
+
+  private IElementContentProvider getDelegate(IViewerUpdate update) {
+    return (IElementContentProvider) defaultAdapter.getAdapter(
+        update.getElement(),
+        IElementContentProvider.class);
+  }
+
+  /**
+   * @return the list value that the last element of the given path is a partition of, or null
+   */
+  private ISDBGValue getPartitionedList(TreePath path) throws DebugException {
+    for (int i = path.getSegmentCount() - 2; i >= 0; i--) {
+      if (!(path.getSegment(i) instanceof IVariable)) {
+        return null;
+      }
+
+      IValue value = ((IVariable) path.getSegment(i)).getValue();
+
+      if (value instanceof ISDBGValue) {
+        return ((ISDBGValue) value).isListValue() ? (ISDBGValue) value : null;
+      } else if (!(value instanceof IIndexedValue)) {
+        return null;
+      }
+    }
+
+    return null;
+  }
+
+  private boolean isDebugView(IViewerUpdate update) {
+    return IDebugUIConstants.ID_DEBUG_VIEW.equals(update.getPresentationContext().getId());
+  }
+
+  private void proceed(IViewerUpdate update, Runnable then) {
+    if (update.isCanceled() || getDelegate(update) == null) {
+      update.done();
+    } else {
+      then.run();
+    }
+  }
+
+}